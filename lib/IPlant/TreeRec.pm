@@ -889,6 +889,42 @@ Readonly my $DEFAULT_DEFAULT_SPECIES_TREE => 'bowers_rosids';
         return $resolver->resolve($search_params_ref);
     }
 
+    ##########################################################################
+    # Usage      : $map_ref = $treerec->get_reconciliation_map($json);
+    #
+    # Purpose    : Retrieves every reconciliation node of a gene family along
+    #              with the structure of the species tree, so that related
+    #              nodes can be found without a query for each node.
+    #
+    # Returns    : A reference to the reconciliation map.  See
+    #              IPlant::TreeRec::ReconciliationResolver->resolve_all()
+    #              for the format.
+    #
+    # Parameters : speciesTreeName - the name of the species tree.
+    #              familyName      - the name of the gene family.
+    #
+    # Throws     : IPlant::TreeRec::IllegalArgumentException
+    #              IPlant::TreeRec::TreeNotFoundException
+    sub get_reconciliation_map {
+        my ( $self, $json ) = @_;
+
+        # Parse the JSON that was provided to us.
+        my $search_params_ref = JSON->new()->decode($json);
+
+        # Use the default species tree name of one wasn't provided.
+        if ( !defined $search_params_ref->{speciesTreeName} ) {
+            $search_params_ref->{speciesTreeName}
+                = $default_species_tree_of{ ident $self };
+        }
+
+        # Create a new reconciliation resolver.
+        my $dbh      = $dbh_of{ ident $self };
+        my $resolver = IPlant::TreeRec::ReconciliationResolver->new($dbh);
+
+        # Resolve the whole reconciliation.
+        return $resolver->resolve_all($search_params_ref);
+    }
+
     ##########################################################################
     # Usage      : $results_ref = $treerec->genes_for_species($json);
     #
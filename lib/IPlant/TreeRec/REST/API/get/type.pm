@@ -18,20 +18,22 @@ use Readonly;
 
 # The argument preprocessing subroutines for the various object types.
 Readonly my %PREPROCESSOR_FOR => (
-    'related-nodes' => \&_preprocess_reconciliation_args,
-    'species-tree'  => \&_encode_species_tree_args,
-    'species-data'  => \&_encode_species_tree_args,
+    'related-nodes'      => \&_preprocess_reconciliation_args,
+    'reconciliation-map' => \&_preprocess_reconciliation_args,
+    'species-tree'       => \&_encode_species_tree_args,
+    'species-data'       => \&_encode_species_tree_args,
 );
 
 # The supported HTTP methods for the various object types.
 Readonly my %SUPPORTED_METHODS_FOR => (
-    'related-nodes'     => [qw( POST )],
-    'species-tree'      => [qw( GET POST )],
-    'species-data'      => [qw( GET POST )],
-    'gene-tree'         => [qw( GET POST )],
-    'gene-data'         => [qw( GET POST )],
-    'go-cloud'          => [qw( GET POST )],
-    'genes-for-species' => [qw( POST )],
+    'related-nodes'      => [qw( POST )],
+    'reconciliation-map' => [qw( POST )],
+    'species-tree'       => [qw( GET POST )],
+    'species-data'       => [qw( GET POST )],
+    'gene-tree'          => [qw( GET POST )],
+    'gene-data'          => [qw( GET POST )],
+    'go-cloud'           => [qw( GET POST )],
+    'genes-for-species'  => [qw( POST )],
 );
 
 # The name of the default species tree.
@@ -39,14 +41,15 @@ Readonly my $SPECIES_TREE => 'bowers_rosids';
 
 # The getter subroutines for the various object types.
 Readonly my %GETTER_FOR => (
-    'related-nodes'     => sub { $_[0]->resolve_reconciliations( $_[2] ) },
-    'species-tree'      => sub { $_[0]->get_species_tree_file( $_[2] ) },
-    'species-data'      => sub { $_[0]->get_species_tree_data( $_[2] ) },
-    'gene-tree'         => sub { $_[0]->get_gene_tree_file( $_[2] ) },
-    'gene-data'         => sub { $_[0]->get_gene_tree_data( $_[2] ) },
-    'go-cloud'          => sub { $_[0]->get_go_cloud( $_[2] ) },
-    'genes-for-species' => sub { $_[0]->genes_for_species( $_[2] ) },
-    'default'           => sub { $_[0]->get_file( $_[1], "" ) },
+    'related-nodes'      => sub { $_[0]->resolve_reconciliations( $_[2] ) },
+    'reconciliation-map' => sub { $_[0]->get_reconciliation_map( $_[2] ) },
+    'species-tree'       => sub { $_[0]->get_species_tree_file( $_[2] ) },
+    'species-data'       => sub { $_[0]->get_species_tree_data( $_[2] ) },
+    'gene-tree'          => sub { $_[0]->get_gene_tree_file( $_[2] ) },
+    'gene-data'          => sub { $_[0]->get_gene_tree_data( $_[2] ) },
+    'go-cloud'           => sub { $_[0]->get_go_cloud( $_[2] ) },
+    'genes-for-species'  => sub { $_[0]->genes_for_species( $_[2] ) },
+    'default'            => sub { $_[0]->get_file( $_[1], "" ) },
 );
 
 use base 'IPlant::TreeRec::REST::Handler';
@@ -102,7 +105,8 @@ use base 'IPlant::TreeRec::REST::Handler';
     #
     # Purpose    : Handles a GET request.
     #
-    # Returns    : An HTTP OK staus code.
+    # Returns    : An HTTP OK status code, or HTTP_NOT_MODIFIED if the
+    #              caller's cached copy of the response is still current.
     #
     # Parameters : $request  - the request.
     #              $response - the response.
@@ -142,7 +146,8 @@ use base 'IPlant::TreeRec::REST::Handler';
             $self->_create_json_response( $request, $response, $object );
         }
 
-        return Apache2::Const::HTTP_OK;
+        # Let callers revalidate cached copies of the response.
+        return $self->set_validators($object);
     }
 
     ##########################################################################
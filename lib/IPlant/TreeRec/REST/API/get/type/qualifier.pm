@@ -93,7 +93,8 @@ use base 'IPlant::TreeRec::REST::Handler';
     #
     # Purpose    : Handles a GET request.
     #
-    # Returns    : An HTTP OK staus code.
+    # Returns    : An HTTP OK status code, or HTTP_NOT_MODIFIED if the
+    #              caller's cached copy of the response is still current.
     #
     # Parameters : $request  - the request.
     #              $response - the response.
@@ -133,7 +134,8 @@ use base 'IPlant::TreeRec::REST::Handler';
             $self->_create_json_response( $request, $response, $object );
         }
 
-        return Apache2::Const::HTTP_OK;
+        # Let callers revalidate cached copies of the response.
+        return $self->set_validators($object);
     }
 
     ##########################################################################
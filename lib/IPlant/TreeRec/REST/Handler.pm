@@ -7,8 +7,12 @@ use warnings;
 
 our $VERSION = '0.0.2';
 
-use Apache2::Const -compile => qw( HTTP_OK HTTP_NOT_FOUND );
+use Apache2::Const -compile => qw( HTTP_OK HTTP_NOT_FOUND OK );
 use Apache2::REST::Handler;
+use Apache2::RequestUtil;
+use Apache2::Response;
+use Digest::MD5 qw(md5_hex);
+use JSON;
 
 use base 'Apache2::REST::Handler';
 
@@ -66,5 +70,39 @@ sub isAuth {
     return $method eq 'GET' ? 1 : 0;
 }
 
+##########################################################################
+# Usage      : $status = $handler->set_validators($object);
+#
+# Purpose    : Sets the entity tag of a GET response to a hash of the
+#              object being returned and checks it against the request's
+#              If-None-Match header.  This lets callers that have cached
+#              the response revalidate it without receiving it again.
+#
+# Returns    : HTTP_OK if the response should be sent or the status that
+#              should be returned instead (e.g. HTTP_NOT_MODIFIED).
+#
+# Parameters : $object - the object being returned.
+#
+# Throws     : No exceptions.
+sub set_validators {
+    my ( $self, $object ) = @_;
+
+    # Files are hashed as they are; other objects are hashed as canonical
+    # JSON so that the same object always produces the same tag.
+    my $content
+        = ref $object eq 'HASH' && exists $object->{filename}
+        ? $object->{contents}
+        : JSON->new()->utf8()->canonical()->allow_nonref()->allow_blessed()
+        ->encode($object);
+
+    # Set the entity tag.
+    my $r = Apache2::RequestUtil->request();
+    $r->headers_out()->set( 'ETag' => '"' . md5_hex($content) . '"' );
+
+    # Determine whether the caller's copy is still current.
+    my $status = $r->meets_conditions();
+    return $status == Apache2::Const::OK ? Apache2::Const::HTTP_OK : $status;
+}
+
 1;
 __END__
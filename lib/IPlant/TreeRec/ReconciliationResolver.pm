@@ -130,6 +130,83 @@ use JSON;
         return $results_ref;
     }
 
+    ##########################################################################
+    # Usage      : $map_ref = $resolver->resolve_all(
+    #                  {   'speciesTreeName' => $species_tree_name,
+    #                      'familyName'      => $family_name,
+    #                  }
+    #              );
+    #
+    # Purpose    : Resolves a complete reconciliation in two queries so that
+    #              callers can answer related node queries for the whole
+    #              gene family without asking about each node.  Every
+    #              reconciliation node that has a species tree node is
+    #              returned as a gene tree node ID, a species tree node ID
+    #              and a flag that is 1 if the gene tree node is on the
+    #              species tree node itself or 0 if it's on the edge leading
+    #              to it.  Every node in the species tree is also returned,
+    #              in order of left index, along with its left and right
+    #              indices so that subtrees can be found.
+    #
+    # Returns    : A reference to a hash containing the reconciliation nodes
+    #              (nodes) and the species tree nodes (speciesTreeNodes),
+    #              each as a reference to a list of array references.
+    #
+    # Parameters : speciesTreeName - the name of the species tree.
+    #              familyName      - the gene family name.
+    #
+    # Throws     : IPlant::TreeRec::IllegalArgumentException
+    #              IPlant::TreeRec::TreeNotFoundException
+    sub resolve_all {
+        my ( $self, $args_ref ) = @_;
+
+        # Extract the arguments.
+        my $species_tree_name = $args_ref->{speciesTreeName};
+        my $family_name       = $args_ref->{familyName};
+
+        # Validate the arguments.
+        IPlant::TreeRec::IllegalArgumentException->throw()
+            if !defined $species_tree_name || !defined $family_name;
+
+        # Fetch the database handle.
+        my $dbh = $dbh_of{ ident $self };
+
+        # Fetch the reconciliation.
+        my $reconciliation = $dbh->resultset('Reconciliation')
+            ->for_species_tree_and_family( $species_tree_name, $family_name );
+
+        # Fetch all of the reconciliation nodes at once.
+        my @nodes = map {
+            [   $_->node_id(), $_->host_child_node_id(),
+                $_->is_on_node() ? 1 : 0
+            ]
+            } $dbh->resultset('ReconciliationNode')->search(
+            {   -and => [
+                    reconciliation_id  => $reconciliation->id(),
+                    host_child_node_id => { '!=' => undef },
+                ],
+            },
+            {   columns  => [qw(node_id host_child_node_id is_on_node)],
+                order_by => [qw(node_id reconciliation_node_id)],
+            },
+            );
+
+        # Fetch the structure of the species tree.
+        my @species_tree_nodes = map {
+            [ $_->id(), $_->left_index(), $_->right_index() ]
+            } $dbh->resultset('SpeciesTreeNode')->search(
+            { species_tree_id => $reconciliation->species_tree_id() },
+            {   columns => [qw(species_tree_node_id left_index right_index)],
+                order_by => 'left_index',
+            },
+            );
+
+        return {
+            nodes            => \@nodes,
+            speciesTreeNodes => \@species_tree_nodes,
+        };
+    }
+
     ##########################################################################
     # Usage      : $results_ref = $resolver->_resolve_species_nodes(
     #                  $reconciliation, $search_params_ref );
@@ -14,12 +14,16 @@ import org.iplantc.tr.demo.client.events.SpeciesTreeInvestigationLeafSelectEvent
 import org.iplantc.tr.demo.client.events.SpeciesTreeInvestigationLeafSelectEventHandler;
 import org.iplantc.tr.demo.client.services.TreeServices;
 import org.iplantc.tr.demo.client.utils.JsonUtil;
+import org.iplantc.tr.demo.client.utils.ParsedTree;
+import org.iplantc.tr.demo.client.utils.ReconciliationResolver;
+import org.iplantc.tr.demo.client.utils.TreeRetriever;
 
 import com.extjs.gxt.ui.client.event.MenuEvent;
 import com.extjs.gxt.ui.client.event.SelectionListener;
 import com.extjs.gxt.ui.client.util.Point;
 import com.extjs.gxt.ui.client.widget.menu.Menu;
 import com.extjs.gxt.ui.client.widget.menu.MenuItem;
+import com.google.gwt.core.client.GWT;
 import com.google.gwt.event.shared.EventBus;
 import com.google.gwt.json.client.JSONArray;
 import com.google.gwt.json.client.JSONObject;
@@ -36,20 +40,30 @@ public class GeneTreeChannelPanel extends NavTreeChannelPanel
 
 	private String geneFamName;
 
+	/**
+	 * Finds the species tree nodes related to gene tree nodes, or null until the reconciliation map
+	 * has arrived.
+	 */
+	private ReconciliationResolver reconciliation;
+
+	/**
+	 * True once the reconciliation map has been requested.
+	 */
+	private boolean reconciliationRequested;
+
 	/**
 	 * Instantiate from an event bus, caption, id, tree and layout
 	 * 
 	 * @param eventbus event bus for firing/receiving events.
 	 * @param caption text to display in panel heading.
 	 * @param id unique id for this panel.
-	 * @param jsonTree tree data.
-	 * @param layoutTree layout data.
+	 * @param tree tree and layout data.
 	 * @param geneFamName gene family id
 	 */
-	public GeneTreeChannelPanel(EventBus eventbus, String caption, String id, String jsonTree,
-			String layoutTree, String geneFamName,int w, int h)
+	public GeneTreeChannelPanel(EventBus eventbus, String caption, String id, ParsedTree tree,
+			String geneFamName,int w, int h)
 	{
-		super(eventbus, caption, id, jsonTree, layoutTree,w,h);
+		super(eventbus, caption, id, tree,w,h);
 		this.geneFamName = geneFamName;
 	}
 
@@ -81,6 +95,7 @@ public class GeneTreeChannelPanel extends NavTreeChannelPanel
 		menu.setData("idNode", idNode);
 		menu.add(buildHighlightSpeciesMenuItem());
 		menu.add(buildSelectSubTreeMenuItem());
+		addLayoutEditMenuItems(menu, true);
 
 		menu.showAt(p.x, p.y);
 	}
@@ -109,9 +124,7 @@ public class GeneTreeChannelPanel extends NavTreeChannelPanel
 		@Override
 		public void onFire(HighlightNodesInGeneTreeEvent event)
 		{
-			treeView.clearHighlights();
-			ArrayList<Integer> idNodes = event.getNodesToHighlight();
-			highlightNodes(idNodes);
+			highlightNodes(event.getNodesToHighlight());
 		}
 	}
 
@@ -147,15 +160,7 @@ public class GeneTreeChannelPanel extends NavTreeChannelPanel
 		@Override
 		public void onFire(GeneTreeNavNodeSelectEvent event)
 		{
-			treeView.zoomToFitSubtree(event.getNodeId());
-		}
-	}
-
-	private void highlightNodes(ArrayList<Integer> idNodes)
-	{
-		for(int i = 0;i < idNodes.size();i++)
-		{
-			treeView.highlightNode(idNodes.get(i));
+			zoomToFitSubtree(event.getNodeId());
 		}
 	}
 
@@ -167,7 +172,7 @@ public class GeneTreeChannelPanel extends NavTreeChannelPanel
 		{
 			Menu m = (Menu)ce.getSource();
 			int idNode = Integer.parseInt(m.getData("idNode").toString());
-			treeView.highlightSubtree(idNode);
+			highlightSubtree(idNode, false);
 		}
 
 	}
@@ -188,6 +193,15 @@ public class GeneTreeChannelPanel extends NavTreeChannelPanel
 	private void getSpeciesDescendants(final int idNode, boolean edgeSelected, boolean includeSubtree,
 			final boolean highlightBranchs)
 	{
+		if(reconciliation != null)
+		{
+			fireHighlightSpeciesEvent(reconciliation.getSpeciesNodes(idNode, edgeSelected,
+					includeSubtree), highlightBranchs);
+			return;
+		}
+
+		requestReconciliation();
+
 		TreeServices.getRelationship("{\"familyName\":\"" + geneFamName + "\",\"geneTreeNode\":"
 				+ idNode + ",\"edgeSelected\":" + edgeSelected + ",\"includeSubtree\":" + includeSubtree
 				+ "}", new AsyncCallback<String>()
@@ -207,19 +221,7 @@ public class GeneTreeChannelPanel extends NavTreeChannelPanel
 					}
 				}
 
-				if(highlightBranchs)
-				{
-					HighlightBranchesInSpeciesTreeEvent event =
-							new HighlightBranchesInSpeciesTreeEvent(nodesToHighlight);
-					eventbus.fireEvent(event);
-				}
-				else
-				{
-					HighlightNodesInSpeciesTreeEvent event =
-							new HighlightNodesInSpeciesTreeEvent(nodesToHighlight);
-					eventbus.fireEvent(event);
-				}
-
+				fireHighlightSpeciesEvent(nodesToHighlight, highlightBranchs);
 			}
 
 			@Override
@@ -230,6 +232,53 @@ public class GeneTreeChannelPanel extends NavTreeChannelPanel
 		});
 	}
 
+	/**
+	 * Requests the reconciliation map the first time related nodes are needed, so that later related
+	 * nodes are found without asking the tree reconciliation service. Until the map arrives, or if it
+	 * can't be retrieved, related nodes are requested from the service.
+	 */
+	private void requestReconciliation()
+	{
+		if(reconciliationRequested)
+		{
+			return;
+		}
+
+		reconciliationRequested = true;
+		new TreeRetriever().getReconciliation(geneFamName,
+				new AsyncCallback<ReconciliationResolver>()
+				{
+					@Override
+					public void onFailure(Throwable caught)
+					{
+						GWT.log("reconciliation map for " + geneFamName + " not available", caught);
+					}
+
+					@Override
+					public void onSuccess(ReconciliationResolver result)
+					{
+						reconciliation = result;
+					}
+				});
+	}
+
+	private void fireHighlightSpeciesEvent(ArrayList<Integer> nodesToHighlight,
+			boolean highlightBranchs)
+	{
+		if(highlightBranchs)
+		{
+			HighlightBranchesInSpeciesTreeEvent event =
+					new HighlightBranchesInSpeciesTreeEvent(nodesToHighlight);
+			eventbus.fireEvent(event);
+		}
+		else
+		{
+			HighlightNodesInSpeciesTreeEvent event =
+					new HighlightNodesInSpeciesTreeEvent(nodesToHighlight);
+			eventbus.fireEvent(event);
+		}
+	}
+
 	private void getGenesForSpecies(final int idNode)
 	{
 		TreeServices.getGeneForSpecies("{\"familyName\":\"" + geneFamName + "\",\"speciesTreeNode\":"
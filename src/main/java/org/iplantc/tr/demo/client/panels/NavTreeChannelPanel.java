@@ -1,6 +1,7 @@
 package org.iplantc.tr.demo.client.panels;
 
 import org.iplantc.tr.demo.client.utils.PanelHelper;
+import org.iplantc.tr.demo.client.utils.ParsedTree;
 
 import com.extjs.gxt.ui.client.event.ButtonEvent;
 import com.extjs.gxt.ui.client.event.SelectionListener;
@@ -23,13 +24,12 @@ public class NavTreeChannelPanel extends TreeChannelPanel
 	 * @param eventbus event bus for firing/receiving events.
 	 * @param caption text to display in panel heading.
 	 * @param id unique id for this panel.
-	 * @param jsonTree tree data.
-	 * @param layoutTree layout data.
+	 * @param tree tree and layout data.
 	 */
-	public NavTreeChannelPanel(EventBus eventbus, String caption, String id, String jsonTree,
-			String layoutTree,int w,int h )
+	public NavTreeChannelPanel(EventBus eventbus, String caption, String id, ParsedTree tree,
+			int w,int h )
 	{
-		super(eventbus, caption, id, jsonTree, layoutTree,w,h);
+		super(eventbus, caption, id, tree,w,h);
 	}
 
 	private Button buildHomeButton()
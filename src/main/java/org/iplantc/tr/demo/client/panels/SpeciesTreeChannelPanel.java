@@ -17,12 +17,16 @@ import org.iplantc.tr.demo.client.events.SpeciesTreeNavNodeSelectEvent;
 import org.iplantc.tr.demo.client.events.SpeciesTreeNavNodeSelectEventHandler;
 import org.iplantc.tr.demo.client.services.TreeServices;
 import org.iplantc.tr.demo.client.utils.JsonUtil;
+import org.iplantc.tr.demo.client.utils.ParsedTree;
+import org.iplantc.tr.demo.client.utils.ReconciliationResolver;
+import org.iplantc.tr.demo.client.utils.TreeRetriever;
 
 import com.extjs.gxt.ui.client.event.MenuEvent;
 import com.extjs.gxt.ui.client.event.SelectionListener;
 import com.extjs.gxt.ui.client.util.Point;
 import com.extjs.gxt.ui.client.widget.menu.Menu;
 import com.extjs.gxt.ui.client.widget.menu.MenuItem;
+import com.google.gwt.core.client.GWT;
 import com.google.gwt.event.shared.EventBus;
 import com.google.gwt.json.client.JSONArray;
 import com.google.gwt.json.client.JSONObject;
@@ -38,20 +42,30 @@ public class SpeciesTreeChannelPanel extends NavTreeChannelPanel
 {
 	private String geneFamName;
 
+	/**
+	 * Finds the gene tree nodes related to species tree nodes, or null until the reconciliation map
+	 * has arrived.
+	 */
+	private ReconciliationResolver reconciliation;
+
+	/**
+	 * True once the reconciliation map has been requested.
+	 */
+	private boolean reconciliationRequested;
+
 	/**
 	 * Instantiate from an event bus, caption, id, tree and layout
 	 * 
 	 * @param eventbus event bus for firing/receiving events.
 	 * @param caption text to display in panel heading.
 	 * @param id unique id for this panel.
-	 * @param jsonTree tree data.
-	 * @param layoutTree layout data.
+	 * @param tree tree and layout data.
 	 * @param geneFamName gene family Id
 	 */
-	public SpeciesTreeChannelPanel(EventBus eventbus, String caption, String id, String jsonTree,
-			String layoutTree, String geneFamName,int w, int h)
+	public SpeciesTreeChannelPanel(EventBus eventbus, String caption, String id, ParsedTree tree,
+			String geneFamName,int w, int h)
 	{
-		super(eventbus, caption, id, jsonTree, layoutTree, w, h);
+		super(eventbus, caption, id, tree, w, h);
 
 		this.geneFamName = geneFamName;
 	}
@@ -87,7 +101,7 @@ public class SpeciesTreeChannelPanel extends NavTreeChannelPanel
 	 */
 	protected void handleSpeciesTreeNavNodeSelect(int idNode, Point p)
 	{
-		treeView.zoomToFitSubtree(idNode);
+		zoomToFitSubtree(idNode);
 	}
 
 	private void displayMenu(Point p, int idNode)
@@ -98,18 +112,11 @@ public class SpeciesTreeChannelPanel extends NavTreeChannelPanel
 		menu.add(buildHighlightSpeciesMenuItem());
 		menu.add(buildHighlightAllMenuItem());
 		menu.add(buildSelectSubTreeMenuItem());
+		addLayoutEditMenuItems(menu, false);
 
 		menu.showAt(p.x, p.y);
 	}
 
-	private void highlighBranchs(ArrayList<Integer> idNodes)
-	{
-		for(int i = 0;i < idNodes.size();i++)
-		{
-			treeView.highlightBranch(idNodes.get(i));
-		}
-	}
-
 	private MenuItem buildHighlightSpeciesMenuItem()
 	{
 		MenuItem item = new MenuItem("Highlight speciation event in gene tree");
@@ -166,8 +173,7 @@ public class SpeciesTreeChannelPanel extends NavTreeChannelPanel
 		@Override
 		public void onFire(HighlightSpeciesSubTreeEvent event)
 		{
-			treeView.clearHighlights();
-			treeView.highlightSubtree(event.getIdNode());
+			highlightSubtree(event.getIdNode(), true);
 		}
 	}
 
@@ -184,6 +190,21 @@ public class SpeciesTreeChannelPanel extends NavTreeChannelPanel
 
 	private void getGeneDescendants(final int idNode, boolean edgeSelected, boolean includeSubtree)
 	{
+		if(reconciliation != null)
+		{
+			ArrayList<Integer> related =
+					reconciliation.getGeneNodes(idNode, edgeSelected, includeSubtree);
+			if(related != null)
+			{
+				eventbus.fireEvent(new HighlightNodesInGeneTreeEvent(related));
+				return;
+			}
+		}
+		else
+		{
+			requestReconciliation();
+		}
+
 		TreeServices.getRelationship("{\"familyName\":\"" + geneFamName + "\",\"speciesTreeNode\":"
 				+ idNode + ",\"edgeSelected\":" + edgeSelected + ",\"includeSubtree\":" + includeSubtree
 				+ "}", new AsyncCallback<String>()
@@ -216,6 +237,36 @@ public class SpeciesTreeChannelPanel extends NavTreeChannelPanel
 		});
 	}
 
+	/**
+	 * Requests the reconciliation map the first time related nodes are needed, so that later related
+	 * nodes are found without asking the tree reconciliation service. Until the map arrives, or if it
+	 * can't be retrieved, related nodes are requested from the service.
+	 */
+	private void requestReconciliation()
+	{
+		if(reconciliationRequested)
+		{
+			return;
+		}
+
+		reconciliationRequested = true;
+		new TreeRetriever().getReconciliation(geneFamName,
+				new AsyncCallback<ReconciliationResolver>()
+				{
+					@Override
+					public void onFailure(Throwable caught)
+					{
+						GWT.log("reconciliation map for " + geneFamName + " not available", caught);
+					}
+
+					@Override
+					public void onSuccess(ReconciliationResolver result)
+					{
+						reconciliation = result;
+					}
+				});
+	}
+
 	private class SpeciesTreeInvestigationNodeSelectEventHandlerImpl implements
 			SpeciesTreeInvestigationNodeSelectEventHandler
 	{
@@ -233,7 +284,7 @@ public class SpeciesTreeChannelPanel extends NavTreeChannelPanel
 		@Override
 		public void onFire(SpeciesTreeNavNodeSelectEvent event)
 		{
-			treeView.zoomToFitSubtree(event.getNodeId());
+			zoomToFitSubtree(event.getNodeId());
 		}
 	}
 
@@ -253,9 +304,7 @@ public class SpeciesTreeChannelPanel extends NavTreeChannelPanel
 		@Override
 		public void onFire(HighlightBranchesInSpeciesTreeEvent event)
 		{
-			treeView.clearHighlights();
-			ArrayList<Integer> idNodes = event.getNodesToHighlight();
-			highlighBranchs(idNodes);
+			highlightBranches(event.getNodesToHighlight());
 		}
 	}
 
@@ -265,18 +314,7 @@ public class SpeciesTreeChannelPanel extends NavTreeChannelPanel
 		@Override
 		public void onFire(HighlightNodesInSpeciesTreeEvent event)
 		{
-			treeView.clearHighlights();
-			ArrayList<Integer> idNodes = event.getNodesToHighlight();
-			highlighNodes(idNodes);
+			highlightNodes(event.getNodesToHighlight());
 		}
 	}
-
-	private void highlighNodes(ArrayList<Integer> idNodes)
-	{
-		for(int i = 0;i < idNodes.size();i++)
-		{
-			treeView.highlightNode(idNodes.get(i));
-		}
-
-	}
 }
@@ -98,7 +98,7 @@ public class TRSearchPanel extends EventBusContainer
 			outerPanel.add(buildInfoLabel());
 			outerPanel.add(buildAdvSearch());
 			addSpeciesTreePanel(outerPanel, new TRSearchSpeciesChannelPanel(eventbus, "Species Tree",
-					"idSearchSpeciesTree", getTree(), getLayout()));
+					"idSearchSpeciesTree", getParsedTree()));
 
 			
 			layout();
@@ -1,5 +1,7 @@
 package org.iplantc.tr.demo.client.panels;
 
+import org.iplantc.tr.demo.client.utils.ParsedTree;
+
 import com.google.gwt.event.shared.EventBus;
 
 /**
@@ -16,12 +18,11 @@ public class TRSearchSpeciesChannelPanel extends TreeChannelPanel
 	 * @param eventbus event bus for firing/receiving events.
 	 * @param caption text to display in panel heading.
 	 * @param id unique id for this panel.
-	 * @param jsonTree tree data.
-	 * @param layoutTree layout data.
+	 * @param tree tree and layout data.
 	 */
-	public TRSearchSpeciesChannelPanel(EventBus eventbus, String caption, String id, String jsonTree,
-			String layoutTree)
+	public TRSearchSpeciesChannelPanel(EventBus eventbus, String caption, String id,
+			ParsedTree tree)
 	{
-		super(eventbus, caption, id, jsonTree, layoutTree,0,0);
+		super(eventbus, caption, id, tree,0,0);
 	}
 }
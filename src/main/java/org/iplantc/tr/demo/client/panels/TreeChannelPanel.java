@@ -1,23 +1,46 @@
 package org.iplantc.tr.demo.client.panels;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import org.iplantc.core.broadcaster.shared.BroadcastCommand;
 import org.iplantc.core.broadcaster.shared.Broadcaster;
-import org.iplantc.phyloviewer.client.layout.JsLayoutCladogram;
 import org.iplantc.phyloviewer.client.tree.viewer.DetailView;
 import org.iplantc.phyloviewer.client.tree.viewer.model.JsDocument;
+import org.iplantc.phyloviewer.shared.math.Matrix33;
+import org.iplantc.phyloviewer.shared.math.Vector2;
 import org.iplantc.phyloviewer.shared.model.Document;
 import org.iplantc.tr.demo.client.events.TreeNodeMouseOutEvent;
 import org.iplantc.tr.demo.client.events.TreeNodeMouseOutEventHandler;
 import org.iplantc.tr.demo.client.events.TreeNodeMouseOverEvent;
 import org.iplantc.tr.demo.client.events.TreeNodeMouseOverEventHandler;
-
+import org.iplantc.tr.demo.client.services.LayoutServiceFacade;
+import org.iplantc.tr.demo.client.utils.HighlightBatch;
+import org.iplantc.tr.demo.client.utils.LayoutDeltaDecoder;
+import org.iplantc.tr.demo.client.utils.LayoutWindowDecoder;
+import org.iplantc.tr.demo.client.utils.ParsedTree;
+import org.iplantc.tr.demo.shared.LayoutEdit;
+import org.iplantc.tr.demo.shared.LayoutViewport;
+import org.iplantc.tr.demo.shared.TreeLayout;
+
+import com.extjs.gxt.ui.client.event.MenuEvent;
+import com.extjs.gxt.ui.client.event.SelectionListener;
 import com.extjs.gxt.ui.client.util.Point;
 import com.extjs.gxt.ui.client.widget.ContentPanel;
+import com.extjs.gxt.ui.client.widget.menu.Menu;
+import com.extjs.gxt.ui.client.widget.menu.MenuItem;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.event.dom.client.MouseUpEvent;
+import com.google.gwt.event.dom.client.MouseUpHandler;
+import com.google.gwt.event.dom.client.MouseWheelEvent;
+import com.google.gwt.event.dom.client.MouseWheelHandler;
 import com.google.gwt.event.shared.EventBus;
 import com.google.gwt.event.shared.HandlerRegistration;
+import com.google.gwt.user.client.Timer;
+import com.google.gwt.user.client.rpc.AsyncCallback;
 
 /**
  * Basic tree channel panel.
@@ -29,15 +52,85 @@ public abstract class TreeChannelPanel extends ContentPanel
 {
 	protected DetailView treeView;
 
-	private final String jsonTree;
-	private final String layoutTree;
+	/**
+	 * The tree and layout being drawn, which may be shared with other panels until it's edited.
+	 */
+	private ParsedTree tree;
+
+	/**
+	 * The gene family whose layout windows are fetched as the view zooms, or null if the layout is
+	 * complete.
+	 */
+	private String idWindowGeneFamily;
+	private boolean windowGeneTree;
+
+	/**
+	 * The number of milliseconds the view has to stay still after a pan or a mouse wheel zoom before a
+	 * layout window is requested for it.
+	 */
+	private static final int WINDOW_REQUEST_DELAY = 250;
+
+	/**
+	 * Requests a layout window for the visible part of the tree. Scheduling it again cancels the
+	 * pending request, so a run of wheel events or drags only sends one.
+	 */
+	private final Timer windowRequest = new Timer()
+	{
+		@Override
+		public void run()
+		{
+			fetchLayoutWindow(getVisibleViewport());
+		}
+	};
+
+	/**
+	 * The handle of the layout session used to edit the tree, or null if none has been opened.
+	 */
+	private String layoutSession;
+
+	/**
+	 * True once the tree has been edited, after which it's a copy that layout windows no longer match.
+	 */
+	private boolean layoutEdited;
+
+	/**
+	 * Collects the highlights applied in the scheduled highlight pass.
+	 */
+	private final HighlightBatch highlights = new HighlightBatch(new HighlightBatch.Target()
+	{
+		@Override
+		public void applyHighlights(boolean clear, Set<Integer> idNodes, Set<Integer> idBranches,
+				Set<Integer> idSubtrees)
+		{
+			if(clear)
+			{
+				treeView.clearHighlights();
+			}
+			for(Integer idNode : idNodes)
+			{
+				treeView.highlightNode(idNode);
+			}
+			for(Integer idNode : idBranches)
+			{
+				treeView.highlightBranch(idNode);
+			}
+			for(Integer idNode : idSubtrees)
+			{
+				treeView.highlightSubtree(idNode);
+			}
+			treeView.requestRender();
+		}
+	});
 
 	protected EventBus eventbus;
 
 	protected List<HandlerRegistration> handlers;
 
-	int windowWidth=1600;
-	int windowHeight=800;
+	private static final int DEFAULT_WINDOW_WIDTH = 1600;
+	private static final int DEFAULT_WINDOW_HEIGHT = 800;
+
+	int windowWidth=DEFAULT_WINDOW_WIDTH;
+	int windowHeight=DEFAULT_WINDOW_HEIGHT;
 	
 	/**
 	 * Instantiate from an event bus, caption, id, tree and layout
@@ -45,15 +138,13 @@ public abstract class TreeChannelPanel extends ContentPanel
 	 * @param eventbus event bus for firing/receiving events.
 	 * @param caption text to display in panel heading.
 	 * @param id unique id for this panel.
-	 * @param jsonTree tree data.
-	 * @param layoutTree layout data.
+	 * @param tree tree and layout data.
 	 */
 	public TreeChannelPanel(final EventBus eventbus, final String caption, final String id,
-			final String jsonTree, final String layoutTree, int w, int h)
+			final ParsedTree tree, int w, int h)
 	{
 		this.eventbus = eventbus;
-		this.jsonTree = jsonTree;
-		this.layoutTree = layoutTree;
+		this.tree = tree;
 		if(w>0 && h>0) {
 			windowWidth =w;
 			windowHeight=h;
@@ -76,20 +167,330 @@ public abstract class TreeChannelPanel extends ContentPanel
 		handlers = new ArrayList<HandlerRegistration>();
 	}
 
-	private final static native JsDocument getDocument(String json) /*-{
-																	return eval(json);
-																	}-*/;
-
-	private final static native JsLayoutCladogram getLayout(String json) /*-{
-																			return eval(json);
-	
-		
-																				}-*/;
-
 	public void resizeView(int w , int h){
-		treeView.resize(w-((int)w/2)-30, h-200);
+		windowWidth = w;
+		windowHeight = h;
+		treeView.resize(getViewWidth(), getViewHeight());
 		treeView.requestRender();
 		treeView.zoomToFit();
+		fetchLayoutWindow(LayoutViewport.fit(getViewWidth(), getViewHeight()));
+	}
+
+	/**
+	 * Zooms to fit a subtree in the view, fetching more of the layout if needed.
+	 * 
+	 * @param idNode the id of the subtree's root.
+	 */
+	protected void zoomToFitSubtree(int idNode)
+	{
+		treeView.zoomToFitSubtree(idNode);
+		if(tree != null && tree.isWindow())
+		{
+			fetchLayoutWindow(LayoutWindowDecoder.getViewport(tree.getLayout(), idNode,
+					getViewWidth(), getViewHeight()));
+		}
+	}
+
+	/**
+	 * Fetches layout windows for this panel's tree as the view is panned and zoomed, and lets the tree
+	 * be edited. Only has an effect if the panel was created with a layout window: a server that can't
+	 * cut windows or open layout sessions sends the full layout instead, in which case neither is
+	 * requested and the edit menu items aren't added.
+	 * 
+	 * @param idGeneFamily the gene family.
+	 * @param geneTree true if the panel shows the gene tree, or false for the species tree.
+	 */
+	public void enableLayoutWindows(String idGeneFamily, boolean geneTree)
+	{
+		if(tree == null || !tree.isWindow())
+		{
+			return;
+		}
+
+		idWindowGeneFamily = idGeneFamily;
+		windowGeneTree = geneTree;
+	}
+
+	/**
+	 * Replaces the highlighted nodes with a set of nodes.
+	 * 
+	 * @param idNodes the IDs of the nodes to highlight.
+	 * @see #highlightBranches(Collection)
+	 */
+	protected void highlightNodes(Collection<Integer> idNodes)
+	{
+		scheduleHighlights();
+		highlights.replaceNodes(idNodes);
+	}
+
+	/**
+	 * Replaces the highlights with the branches leading to a set of nodes. Highlights are applied in a
+	 * single pass at the end of the current event, which clears the old highlights, highlights each
+	 * node once and renders the tree once however many nodes there are. If the highlights are replaced
+	 * again before then, only the last set is applied.
+	 * 
+	 * @param idNodes the IDs of the nodes whose branches are highlighted.
+	 */
+	protected void highlightBranches(Collection<Integer> idNodes)
+	{
+		scheduleHighlights();
+		highlights.replaceBranches(idNodes);
+	}
+
+	/**
+	 * Highlights a subtree in the same pass as any other highlights requested during the current
+	 * event.
+	 * 
+	 * @param idNode the ID of the subtree's root.
+	 * @param replace true to replace the highlights, or false to add the subtree to them.
+	 */
+	protected void highlightSubtree(int idNode, boolean replace)
+	{
+		scheduleHighlights();
+		if(replace)
+		{
+			highlights.replaceSubtree(idNode);
+		}
+		else
+		{
+			highlights.addSubtree(idNode);
+		}
+	}
+
+	private void scheduleHighlights()
+	{
+		if(highlights.isPending())
+		{
+			return;
+		}
+
+		Scheduler.get().scheduleFinally(new ScheduledCommand()
+		{
+			@Override
+			public void execute()
+			{
+				applyHighlights();
+			}
+		});
+	}
+
+	/**
+	 * Applies the scheduled highlights and renders the tree.
+	 */
+	private void applyHighlights()
+	{
+		if(treeView == null)
+		{
+			highlights.discard();
+			return;
+		}
+
+		highlights.apply();
+	}
+
+	/**
+	 * Requests a layout window for the visible part of the tree once the view stops moving.
+	 */
+	private void scheduleLayoutWindow()
+	{
+		if(idWindowGeneFamily != null && tree != null && tree.isWindow())
+		{
+			windowRequest.schedule(WINDOW_REQUEST_DELAY);
+		}
+	}
+
+	/**
+	 * Works out the part of the layout that is visible in the view from the view's camera.
+	 * 
+	 * @return the viewport, or null if there is no view.
+	 */
+	private LayoutViewport getVisibleViewport()
+	{
+		if(treeView == null)
+		{
+			return null;
+		}
+
+		int width = getViewWidth();
+		int height = getViewHeight();
+		Matrix33 toLayout = treeView.getCamera().getMatrix(width, height).inverse();
+		Vector2 corner = toLayout.transform(new Vector2(0, 0));
+		Vector2 opposite = toLayout.transform(new Vector2(width, height));
+
+		return new LayoutViewport(Math.min(corner.getX(), opposite.getX()), Math.min(corner.getY(),
+				opposite.getY()), Math.max(corner.getX(), opposite.getX()), Math.max(corner.getY(),
+				opposite.getY()), width, height);
+	}
+
+	/**
+	 * Fetches the part of the layout that is visible in a viewport and adds it to the layout being
+	 * drawn.
+	 * 
+	 * @param viewport the viewport, or null if it isn't known.
+	 */
+	private void fetchLayoutWindow(LayoutViewport viewport)
+	{
+		if(idWindowGeneFamily == null || viewport == null || tree == null || !tree.isWindow())
+		{
+			return;
+		}
+
+		LayoutServiceFacade.getInstance().getTreeLayoutWindow(idWindowGeneFamily, windowGeneTree,
+				viewport, false, new AsyncCallback<TreeLayout>()
+				{
+					@Override
+					public void onFailure(Throwable caught)
+					{
+						// the view keeps drawing the layout it already has
+					}
+
+					@Override
+					public void onSuccess(TreeLayout result)
+					{
+						LayoutWindowDecoder.merge(tree.getLayout(), result.getLayout());
+						treeView.requestRender();
+					}
+				});
+	}
+
+	/**
+	 * Collapses, expands or re-roots the tree and updates the layout with the delta returned by the
+	 * layout service. Only has an effect if layout windows are enabled, as the layout session is opened
+	 * for the same gene family and the server only sends windows when it can open sessions.
+	 * 
+	 * @param edit the edit.
+	 * @param idNode the id of the node to edit.
+	 */
+	protected void editLayout(final LayoutEdit edit, final int idNode)
+	{
+		if(idWindowGeneFamily == null || tree == null)
+		{
+			return;
+		}
+
+		if(layoutSession == null)
+		{
+			LayoutServiceFacade.getInstance().openLayoutSession(idWindowGeneFamily, windowGeneTree,
+					new AsyncCallback<String>()
+					{
+						@Override
+						public void onFailure(Throwable caught)
+						{
+							// the tree stays as it is
+						}
+
+						@Override
+						public void onSuccess(String result)
+						{
+							layoutSession = result;
+							editLayout(edit, idNode);
+						}
+					});
+			return;
+		}
+
+		LayoutServiceFacade.getInstance().editLayout(layoutSession, edit, idNode,
+				new AsyncCallback<String>()
+				{
+					@Override
+					public void onFailure(Throwable caught)
+					{
+						// a new session starts from the unedited tree, so it can only replace an
+						// expired one if nothing has been edited yet
+						if(!layoutEdited)
+						{
+							layoutSession = null;
+						}
+					}
+
+					@Override
+					public void onSuccess(String result)
+					{
+						if(!layoutEdited)
+						{
+							// the tree may be cached or drawn by another panel, so edit a copy
+							tree = tree.copy();
+							treeView.setDocument(buildDocument(tree));
+							layoutEdited = true;
+						}
+						LayoutDeltaDecoder.apply(tree.getDocument(), tree.getLayout(), result);
+						treeView.requestRender();
+					}
+				});
+	}
+
+	/**
+	 * Adds items that edit the tree to a node's menu. The menu's "idNode" data holds the node's id.
+	 * 
+	 * @param menu the menu.
+	 * @param reroot true to include re-rooting the tree at the node.
+	 */
+	protected void addLayoutEditMenuItems(Menu menu, boolean reroot)
+	{
+		if(idWindowGeneFamily == null)
+		{
+			return;
+		}
+
+		menu.add(buildLayoutEditMenuItem("Collapse clade", LayoutEdit.COLLAPSE));
+		menu.add(buildLayoutEditMenuItem("Expand clade", LayoutEdit.EXPAND));
+		if(reroot)
+		{
+			menu.add(buildLayoutEditMenuItem("Re-root tree here", LayoutEdit.REROOT));
+		}
+	}
+
+	private MenuItem buildLayoutEditMenuItem(String text, final LayoutEdit edit)
+	{
+		MenuItem item = new MenuItem(text);
+		item.addSelectionListener(new SelectionListener<MenuEvent>()
+		{
+			@Override
+			public void componentSelected(MenuEvent ce)
+			{
+				Menu m = (Menu)ce.getSource();
+				editLayout(edit, Integer.parseInt(m.getData("idNode").toString()));
+			}
+		});
+
+		return item;
+	}
+
+	/**
+	 * Creates a viewport that shows a complete tree in a panel of the given size.
+	 * 
+	 * @param w the width of the container, or 0 if it isn't known yet.
+	 * @param h the height of the container, or 0 if it isn't known yet.
+	 * @return the viewport.
+	 */
+	static LayoutViewport getFitViewport(int w, int h)
+	{
+		if(w <= 0 || h <= 0)
+		{
+			w = DEFAULT_WINDOW_WIDTH;
+			h = DEFAULT_WINDOW_HEIGHT;
+		}
+		return LayoutViewport.fit(getViewWidth(w), getViewHeight(h));
+	}
+
+	private int getViewWidth()
+	{
+		return getViewWidth(windowWidth);
+	}
+
+	private int getViewHeight()
+	{
+		return getViewHeight(windowHeight);
+	}
+
+	private static int getViewWidth(int w)
+	{
+		return w - ((int)w / 2) - 30;
+	}
+
+	private static int getViewHeight(int h)
+	{
+		return h - 200;
 	}
 	
 	public void setInitialTreeSizes(int w, int h) {
@@ -102,27 +503,30 @@ public abstract class TreeChannelPanel extends ContentPanel
 		DetailView ret = null; // assume failure
 
 		// we need at least a tree and a layout for rendering
-		if(jsonTree != null && layoutTree != null)
+		if(tree != null)
 		{
-			ret = new DetailView(windowWidth-((int)windowWidth/2)-30, windowHeight-200);
-
-			JsDocument doc = getDocument("(" + jsonTree + ") ");
-			JsLayoutCladogram layout = getLayout("(" + layoutTree + ")");
-
-			// build our document
-			Document document = new Document();
-			document.setTree(doc.getTree());
-			document.setStyleMap(doc.getStyleMap());
-			document.setLayout(layout);
+			ret = new DetailView(getViewWidth(), getViewHeight());
 
 			// set the document - if you don't do this TREES WONT APPEAR!
-			ret.setDocument(document);
+			ret.setDocument(buildDocument(tree));
 			ret.addEventFilter(DetailView.DrawableType.Line);
 		}
 
 		return ret;
 	}
 
+	private static Document buildDocument(ParsedTree tree)
+	{
+		JsDocument doc = tree.getDocument();
+
+		Document document = new Document();
+		document.setTree(doc.getTree());
+		document.setStyleMap(doc.getStyleMap());
+		document.setLayout(tree.getLayout());
+
+		return document;
+	}
+
 	/**
 	 * Sets our command for broadcasting JSON messages.
 	 * 
@@ -157,9 +561,35 @@ public abstract class TreeChannelPanel extends ContentPanel
 		{
 			add(treeView);
 			treeView.requestRender();
+			addViewportListeners();
 		}
 	}
 
+	/**
+	 * Requests layout windows after the view is panned, which ends with the mouse button being
+	 * released, or zoomed with the mouse wheel.
+	 */
+	private void addViewportListeners()
+	{
+		handlers.add(treeView.addDomHandler(new MouseUpHandler()
+		{
+			@Override
+			public void onMouseUp(MouseUpEvent event)
+			{
+				scheduleLayoutWindow();
+			}
+		}, MouseUpEvent.getType()));
+
+		handlers.add(treeView.addDomHandler(new MouseWheelHandler()
+		{
+			@Override
+			public void onMouseWheel(MouseWheelEvent event)
+			{
+				scheduleLayoutWindow();
+			}
+		}, MouseWheelEvent.getType()));
+	}
+
 	/**
 	 * Handle when mouse hover over a node.
 	 * 
@@ -218,6 +648,8 @@ public abstract class TreeChannelPanel extends ContentPanel
 	 */
 	public void cleanup()
 	{
+		windowRequest.cancel();
+
 		// unregister
 		for(HandlerRegistration reg : handlers)
 		{
@@ -28,12 +28,14 @@ import com.extjs.gxt.ui.client.event.SelectionListener;
 import com.extjs.gxt.ui.client.widget.Component;
 import com.extjs.gxt.ui.client.widget.HorizontalPanel;
 import com.extjs.gxt.ui.client.widget.LayoutContainer;
+import com.extjs.gxt.ui.client.widget.MessageBox;
 import com.extjs.gxt.ui.client.widget.button.ToggleButton;
 import com.extjs.gxt.ui.client.widget.toolbar.FillToolItem;
 import com.extjs.gxt.ui.client.widget.toolbar.ToolBar;
 import com.google.gwt.core.client.GWT;
 import com.google.gwt.json.client.JSONObject;
 import com.google.gwt.json.client.JSONValue;
+import com.google.gwt.user.client.Command;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 
 /**
@@ -109,7 +111,9 @@ public class TreeContainerPanel extends EventBusContainer
 		pnl.setInitialTreeSizes(getWidth(), getHeight());
 		treePanels.add(pnl);
 		pnl.setInitialTreeSizes(getWidth(), getHeight());
-		containerOuter.add(pnl);
+
+		// the gene tree may have arrived first, but the species tree always goes on the left
+		containerOuter.insert(pnl, 0);
 
 		layout();
 	}
@@ -275,7 +279,16 @@ public class TreeContainerPanel extends EventBusContainer
 		pnlOuter = new HorizontalPanel();
 		pnlOuter.setSpacing(10);
 
-		treeRetriever.getSpeciesTree(idGeneFamily, new SpeciesTreeRetrieverCallBack());
+		treeRetriever.getTrees(idGeneFamily, TreeChannelPanel.getFitViewport(getWidth(), getHeight()),
+				new SpeciesTreeRetrieverCallBack(), new GeneTreeRetrieverCallBack(), new Command()
+				{
+					@Override
+					public void execute()
+					{
+						// set our default mode
+						toggleMode(Mode.NAVIGATE);
+					}
+				});
 
 		// show
 		add(pnlOuter);
@@ -299,10 +312,17 @@ public class TreeContainerPanel extends EventBusContainer
 		@Override
 		public void execute()
 		{
-			addSpeciesTreePanel(pnlOuter, new SpeciesTreeChannelPanel(eventbus, "Species Tree",
-					"idSpeciesTree", getTree(), getLayout(), idGeneFamily,getWidth(),getHeight()));
+			TreeChannelPanel pnl = new SpeciesTreeChannelPanel(eventbus, "Species Tree",
+					"idSpeciesTree", getParsedTree(), idGeneFamily,getWidth(),getHeight());
+			pnl.enableLayoutWindows(idGeneFamily, false);
+			addSpeciesTreePanel(pnlOuter, pnl);
+		}
 
-			treeRetriever.getGeneTree(idGeneFamily, new GeneTreeRetrieverCallBack());
+		@Override
+		public void onFailure(Throwable caught)
+		{
+			super.onFailure(caught);
+			MessageBox.alert("Error", "Unable to retrieve the species tree.", null);
 		}
 	}
 
@@ -311,11 +331,17 @@ public class TreeContainerPanel extends EventBusContainer
 		@Override
 		public void execute()
 		{
-			addGeneTreePanel(pnlOuter, new GeneTreeChannelPanel(eventbus, "Gene Tree", "idGeneTree",
-					getTree(), getLayout(), idGeneFamily,getWidth(),getHeight()));
+			TreeChannelPanel pnl = new GeneTreeChannelPanel(eventbus, "Gene Tree", "idGeneTree",
+					getParsedTree(), idGeneFamily,getWidth(),getHeight());
+			pnl.enableLayoutWindows(idGeneFamily, true);
+			addGeneTreePanel(pnlOuter, pnl);
+		}
 
-			// set our default mode
-			toggleMode(Mode.NAVIGATE);
+		@Override
+		public void onFailure(Throwable caught)
+		{
+			super.onFailure(caught);
+			MessageBox.alert("Error", "Unable to retrieve the gene tree.", null);
 		}
 	}
 	
@@ -0,0 +1,25 @@
+package org.iplantc.tr.demo.client.services;
+
+import java.util.List;
+
+import org.iplantc.de.shared.services.ServiceCallWrapper;
+import org.iplantc.tr.demo.shared.ServiceCallResult;
+
+import com.google.gwt.user.client.rpc.RemoteService;
+import com.google.gwt.user.client.rpc.SerializationException;
+
+/**
+ * Sends several service calls through the service dispatcher in a single round trip.
+ */
+public interface BatchDEService extends RemoteService
+{
+	/**
+	 * Performs a batch of service calls concurrently.
+	 * 
+	 * @param wrappers the service calls.
+	 * @return the result of each service call, in the same order as the calls.
+	 * @throws SerializationException if the batch as a whole can't be performed.
+	 */
+	List<ServiceCallResult> getBatchServiceData(List<ServiceCallWrapper> wrappers)
+			throws SerializationException;
+}
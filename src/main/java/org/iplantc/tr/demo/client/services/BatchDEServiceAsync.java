@@ -0,0 +1,14 @@
+package org.iplantc.tr.demo.client.services;
+
+import java.util.List;
+
+import org.iplantc.de.shared.services.ServiceCallWrapper;
+import org.iplantc.tr.demo.shared.ServiceCallResult;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+public interface BatchDEServiceAsync
+{
+	void getBatchServiceData(List<ServiceCallWrapper> wrappers,
+			AsyncCallback<List<ServiceCallResult>> callback);
+}
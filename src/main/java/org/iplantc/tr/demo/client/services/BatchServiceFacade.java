@@ -0,0 +1,41 @@
+package org.iplantc.tr.demo.client.services;
+
+import java.util.List;
+
+import org.iplantc.de.shared.services.ServiceCallWrapper;
+import org.iplantc.tr.demo.shared.ServiceCallResult;
+
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.google.gwt.user.client.rpc.ServiceDefTarget;
+
+public class BatchServiceFacade
+{
+	private static final String SESSION_SERVICE = "deservice";
+
+	private static BatchServiceFacade instance = null;
+
+	private BatchDEServiceAsync proxy;
+
+	private BatchServiceFacade()
+	{
+		proxy = (BatchDEServiceAsync)GWT.create(BatchDEService.class);
+		((ServiceDefTarget)proxy).setServiceEntryPoint(GWT.getModuleBaseURL() + SESSION_SERVICE);
+	}
+
+	public static BatchServiceFacade getInstance()
+	{
+		if(instance == null)
+		{
+			instance = new BatchServiceFacade();
+		}
+
+		return instance;
+	}
+
+	public void getBatchServiceData(List<ServiceCallWrapper> wrappers,
+			AsyncCallback<List<ServiceCallResult>> callback)
+	{
+		proxy.getBatchServiceData(wrappers, callback);
+	}
+}
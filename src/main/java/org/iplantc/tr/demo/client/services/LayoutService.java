@@ -1,8 +1,86 @@
 package org.iplantc.tr.demo.client.services;
 
+import org.iplantc.tr.demo.shared.LayoutEdit;
+import org.iplantc.tr.demo.shared.LayoutViewport;
+import org.iplantc.tr.demo.shared.TreeLayout;
+
 import com.google.gwt.user.client.rpc.RemoteService;
+import com.google.gwt.user.client.rpc.SerializationException;
 
 public interface LayoutService extends RemoteService
 {
-	String getLayout(String json);
+	String getLayout(String json) throws SerializationException;
+
+	/**
+	 * Retrieves the species tree for a gene family and lays it out.
+	 * 
+	 * @param geneFamName the name of the gene family, or null for the complete species tree.
+	 * @param compact true if the client accepts layouts in the compact encoding.
+	 * @return the species tree and its layout.
+	 * @throws SerializationException if the tree can't be retrieved.
+	 */
+	TreeLayout getSpeciesTreeLayout(String geneFamName, boolean compact)
+			throws SerializationException;
+
+	/**
+	 * Retrieves the gene tree for a gene family and lays it out.
+	 * 
+	 * @param geneFamName the name of the gene family.
+	 * @param compact true if the client accepts layouts in the compact encoding.
+	 * @return the gene tree and its layout.
+	 * @throws SerializationException if the tree can't be retrieved.
+	 */
+	TreeLayout getGeneTreeLayout(String geneFamName, boolean compact) throws SerializationException;
+
+	/**
+	 * Retrieves the species or gene tree for a gene family and returns the part of its layout that is
+	 * visible in a viewport. Clades that are outside the viewport or too small to see are collapsed.
+	 * Servers that don't lay trees out from arrays return the tree and its full layout instead.
+	 * 
+	 * @param geneFamName the name of the gene family, or null for the complete species tree.
+	 * @param geneTree true for the gene tree, or false for the species tree.
+	 * @param viewport the viewport.
+	 * @param includeTree true if the tree should be returned along with the layout window.
+	 * @return the layout window, along with the tree if it was requested.
+	 * @throws SerializationException if the tree can't be retrieved.
+	 */
+	TreeLayout getTreeLayoutWindow(String geneFamName, boolean geneTree, LayoutViewport viewport,
+			boolean includeTree) throws SerializationException;
+
+	/**
+	 * Retrieves the species or gene tree for a gene family and opens a layout session for it, so that
+	 * it can be edited without sending or laying out the whole tree again. The session starts from the
+	 * layout returned by {@link #getTreeLayoutWindow(String, boolean, LayoutViewport, boolean)}.
+	 * 
+	 * @param geneFamName the name of the gene family, or null for the complete species tree.
+	 * @param geneTree true for the gene tree, or false for the species tree.
+	 * @return the handle of the session.
+	 * @throws SerializationException if the tree can't be retrieved or the server doesn't lay trees
+	 *             out from arrays.
+	 */
+	String openLayoutSession(String geneFamName, boolean geneTree) throws SerializationException;
+
+	/**
+	 * Edits the tree in a layout session.
+	 * 
+	 * @param session the handle of the session.
+	 * @param edit the edit.
+	 * @param idNode the ID of the node to edit.
+	 * @return the layout delta, which describes how the layout changed.
+	 * @throws SerializationException if the session has expired or the node can't be edited.
+	 */
+	String editLayout(String session, LayoutEdit edit, int idNode) throws SerializationException;
+
+	/**
+	 * Retrieves the reconciliation map of a gene family, which relates every gene tree node to species
+	 * tree nodes and every species tree node and edge to gene tree nodes, so that related nodes can be
+	 * found without asking the tree reconciliation service about each one. The map holds the whole
+	 * reconciliation, so it should only be requested once related nodes are needed.
+	 * 
+	 * @param geneFamName the name of the gene family.
+	 * @return the reconciliation map, in the form read by
+	 *         {@link org.iplantc.tr.demo.client.utils.ReconciliationResolver}.
+	 * @throws SerializationException if the reconciliation can't be retrieved.
+	 */
+	String getReconciliationMap(String geneFamName) throws SerializationException;
 }
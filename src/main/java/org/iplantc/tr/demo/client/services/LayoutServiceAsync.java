@@ -1,5 +1,9 @@
 package org.iplantc.tr.demo.client.services;
 
+import org.iplantc.tr.demo.shared.LayoutEdit;
+import org.iplantc.tr.demo.shared.LayoutViewport;
+import org.iplantc.tr.demo.shared.TreeLayout;
+
 import com.google.gwt.user.client.rpc.AsyncCallback;
 
 public interface LayoutServiceAsync
@@ -7,4 +11,19 @@ public interface LayoutServiceAsync
 
 	void getLayout(String json, AsyncCallback<String> callback);
 
+	void getSpeciesTreeLayout(String geneFamName, boolean compact,
+			AsyncCallback<TreeLayout> callback);
+
+	void getGeneTreeLayout(String geneFamName, boolean compact,
+			AsyncCallback<TreeLayout> callback);
+
+	void getTreeLayoutWindow(String geneFamName, boolean geneTree, LayoutViewport viewport,
+			boolean includeTree, AsyncCallback<TreeLayout> callback);
+
+	void openLayoutSession(String geneFamName, boolean geneTree, AsyncCallback<String> callback);
+
+	void editLayout(String session, LayoutEdit edit, int idNode, AsyncCallback<String> callback);
+
+	void getReconciliationMap(String geneFamName, AsyncCallback<String> callback);
+
 }
@@ -1,5 +1,9 @@
 package org.iplantc.tr.demo.client.services;
 
+import org.iplantc.tr.demo.shared.LayoutEdit;
+import org.iplantc.tr.demo.shared.LayoutViewport;
+import org.iplantc.tr.demo.shared.TreeLayout;
+
 import com.google.gwt.core.client.GWT;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.google.gwt.user.client.rpc.ServiceDefTarget;
@@ -33,4 +37,39 @@ public class LayoutServiceFacade
 		proxy.getLayout(json, callback);
 	}
 
+	public void getSpeciesTreeLayout(String geneFamName, boolean compact,
+			AsyncCallback<TreeLayout> callback)
+	{
+		proxy.getSpeciesTreeLayout(geneFamName, compact, callback);
+	}
+
+	public void getGeneTreeLayout(String geneFamName, boolean compact,
+			AsyncCallback<TreeLayout> callback)
+	{
+		proxy.getGeneTreeLayout(geneFamName, compact, callback);
+	}
+
+	public void getTreeLayoutWindow(String geneFamName, boolean geneTree, LayoutViewport viewport,
+			boolean includeTree, AsyncCallback<TreeLayout> callback)
+	{
+		proxy.getTreeLayoutWindow(geneFamName, geneTree, viewport, includeTree, callback);
+	}
+
+	public void openLayoutSession(String geneFamName, boolean geneTree,
+			AsyncCallback<String> callback)
+	{
+		proxy.openLayoutSession(geneFamName, geneTree, callback);
+	}
+
+	public void editLayout(String session, LayoutEdit edit, int idNode,
+			AsyncCallback<String> callback)
+	{
+		proxy.editLayout(session, edit, idNode, callback);
+	}
+
+	public void getReconciliationMap(String geneFamName, AsyncCallback<String> callback)
+	{
+		proxy.getReconciliationMap(geneFamName, callback);
+	}
+
 }
@@ -0,0 +1,116 @@
+package org.iplantc.tr.demo.client.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.iplantc.de.shared.SharedServiceFacade;
+import org.iplantc.de.shared.services.ServiceCallWrapper;
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * Remembers the responses to read-only service calls in the browser, so that repeating a query
+ * doesn't send it again. Calls are identified by their address and request body. A call that is
+ * already in progress isn't sent a second time; its response is passed to every callback waiting for
+ * it. Failed calls aren't remembered.
+ *
+ * As with cached trees, callbacks for remembered responses are executed after the call returns.
+ */
+public class ResponseMemo
+{
+	private final int maxEntries;
+
+	/**
+	 * The remembered responses, indexed by call, in access order.
+	 */
+	private final Map<String, String> responses;
+
+	/**
+	 * The callbacks waiting for each call in progress.
+	 */
+	private final Map<String, List<AsyncCallback<String>>> pending =
+			new HashMap<String, List<AsyncCallback<String>>>();
+
+	/**
+	 * @param maxEntries the maximum number of responses remembered.
+	 */
+	public ResponseMemo(int maxEntries)
+	{
+		this.maxEntries = maxEntries;
+		responses = new LinkedHashMap<String, String>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+			{
+				return size() > ResponseMemo.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Gets the remembered response to a service call or, failing that, performs it.
+	 *
+	 * @param wrapper the service call.
+	 * @param callback receives the response.
+	 */
+	public void getServiceData(ServiceCallWrapper wrapper, final AsyncCallback<String> callback)
+	{
+		final String key = wrapper.getAddress() + "\n" + wrapper.getBody();
+		final String response = responses.get(key);
+		if(response != null)
+		{
+			Scheduler.get().scheduleDeferred(new ScheduledCommand()
+			{
+				@Override
+				public void execute()
+				{
+					callback.onSuccess(response);
+				}
+			});
+			return;
+		}
+
+		List<AsyncCallback<String>> waiting = pending.get(key);
+		if(waiting != null)
+		{
+			waiting.add(callback);
+			return;
+		}
+
+		waiting = new ArrayList<AsyncCallback<String>>();
+		waiting.add(callback);
+		pending.put(key, waiting);
+
+		SharedServiceFacade.getInstance().getServiceData(wrapper, new AsyncCallback<String>()
+		{
+			@Override
+			public void onFailure(Throwable caught)
+			{
+				for(AsyncCallback<String> callback : pending.remove(key))
+				{
+					callback.onFailure(caught);
+				}
+			}
+
+			@Override
+			public void onSuccess(String result)
+			{
+				if(result != null)
+				{
+					responses.put(key, result);
+				}
+				for(AsyncCallback<String> callback : pending.remove(key))
+				{
+					callback.onSuccess(result);
+				}
+			}
+		});
+	}
+}
@@ -10,6 +10,17 @@ public class TreeServices
 
 	private static final String HOSTNAME = "http://votan.iplantcollaborative.org/";
 
+	/**
+	 * The maximum number of related node queries whose responses are remembered.
+	 */
+	private static final int MAX_RELATIONSHIPS = 256;
+
+	/**
+	 * Remembers the responses to related node queries, which users tend to repeat while comparing the
+	 * same few nodes.
+	 */
+	private static final ResponseMemo RELATIONSHIPS = new ResponseMemo(MAX_RELATIONSHIPS);
+
 	public static void getSpeciesData(String geneFamName, AsyncCallback<String> callback)
 	{
 		String url = HOSTNAME + "treereconciliation/get/species-data";
@@ -28,17 +39,32 @@ public class TreeServices
 		SharedServiceFacade.getInstance().getServiceData(wrapper, callback);
 	}
 
+	/**
+	 * Finds the nodes related to a node in the other tree of a gene family. Responses are remembered
+	 * by query, which holds the family, node, edgeSelected and includeSubtree, and an identical query
+	 * that is already in progress isn't sent again.
+	 * 
+	 * @param body the query.
+	 * @param callback receives the related nodes.
+	 */
 	public static void getRelationship(String body, AsyncCallback<String> callback)
 	{
 		String url = HOSTNAME + "treereconciliation/get/related-nodes";
 		ServiceCallWrapper wrapper = new ServiceCallWrapper(ServiceCallWrapper.Type.POST, url, body);
-		SharedServiceFacade.getInstance().getServiceData(wrapper, callback);
+		RELATIONSHIPS.getServiceData(wrapper, callback);
 	}
 
+	/**
+	 * Finds the gene tree nodes related to a species tree node. Responses are remembered in the same
+	 * way as those of {@link #getRelationship(String, AsyncCallback)}.
+	 * 
+	 * @param body the query.
+	 * @param callback receives the related gene tree nodes.
+	 */
 	public static void getGeneForSpecies(String body, AsyncCallback<String> callback)
 	{
 		String url = HOSTNAME + "treereconciliation/get/genes-for-species";
 		ServiceCallWrapper wrapper = new ServiceCallWrapper(ServiceCallWrapper.Type.POST, url, body);
-		SharedServiceFacade.getInstance().getServiceData(wrapper, callback);
+		RELATIONSHIPS.getServiceData(wrapper, callback);
 	}
 }
@@ -0,0 +1,96 @@
+package org.iplantc.tr.demo.client.utils;
+
+import org.iplantc.phyloviewer.client.layout.JsLayoutCladogram;
+import org.iplantc.tr.demo.shared.CompactLayout;
+
+/**
+ * Decodes layouts in the compact encoding described by {@link CompactLayout} into the same JavaScript
+ * objects that evaluating a JSON layout produces.
+ */
+public class CompactLayoutDecoder
+{
+	/**
+	 * Decodes a compact layout.
+	 *
+	 * @param layout the compact layout, including its prefix.
+	 * @return the layout.
+	 */
+	public static JsLayoutCladogram decode(String layout)
+	{
+		return decode(layout.substring(CompactLayout.PREFIX.length()), CompactLayout.VERSION,
+				CompactLayout.VALUES_PER_NODE);
+	}
+
+	/**
+	 * Decodes the base64 encoded data of a compact layout. JavaScript bitwise operators only work on 32
+	 * bit integers, so variable-length integers are assembled using arithmetic instead.
+	 *
+	 * @param data the base64 encoded data.
+	 * @param version the supported version of the encoding.
+	 * @param valuesPerNode the number of values stored for each node.
+	 * @return the layout.
+	 */
+	private static native JsLayoutCladogram decode(String data, int version, int valuesPerNode)
+	/*-{
+		var alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		var bytes = [];
+		for (var i = 0; i < data.length; i += 4) {
+			var chunk = 0;
+			var count = 0;
+			for (var j = 0; j < 4; j++) {
+				var c = data.charAt(i + j);
+				chunk = chunk * 64;
+				if (c != "=" && c != "") {
+					chunk += alphabet.indexOf(c);
+					count++;
+				}
+			}
+			bytes.push((chunk >> 16) & 0xff);
+			if (count > 2) {
+				bytes.push((chunk >> 8) & 0xff);
+			}
+			if (count > 3) {
+				bytes.push(chunk & 0xff);
+			}
+		}
+
+		if (bytes[0] != version) {
+			throw "unsupported compact layout version " + bytes[0];
+		}
+		var scale = Math.pow(2, bytes[1]);
+		var pos = 2;
+
+		var values = [];
+		for (var k = 0; k < valuesPerNode; k++) {
+			values.push(0);
+		}
+
+		var nodes = [];
+		while (pos < bytes.length) {
+			for (var k = 0; k < valuesPerNode; k++) {
+				var value = 0;
+				var multiplier = 1;
+				var b;
+				do {
+					b = bytes[pos++];
+					value += (b & 0x7f) * multiplier;
+					multiplier *= 128;
+				} while (b >= 0x80);
+
+				// undo the zigzag encoding
+				values[k] += value % 2 == 0 ? value / 2 : -(value + 1) / 2;
+			}
+
+			nodes.push({
+				"id" : values[0],
+				"position" : { "x" : values[1] / scale, "y" : values[2] / scale },
+				"boundingBox" : {
+					"min" : { "x" : values[3] / scale, "y" : values[4] / scale },
+					"max" : { "x" : values[5] / scale, "y" : values[6] / scale }
+				}
+			});
+		}
+
+		return { "nodes" : nodes };
+	}-*/;
+}
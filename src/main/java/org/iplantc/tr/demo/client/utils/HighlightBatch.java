@@ -0,0 +1,152 @@
+package org.iplantc.tr.demo.client.utils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Collects the highlights requested for a tree view during an event so that they're applied together,
+ * in one call to a {@link Target}, however many nodes there are. Nodes, branches and subtrees can be
+ * highlighted, each at most once per pass. The target still highlights the nodes one at a time; only
+ * clearing the old highlights and rendering the view happen once per pass.
+ *
+ * Replacing the highlights discards everything collected so far and clears the view's highlights
+ * before the pass is applied. Subtrees can also be added to the existing highlights; a subtree added
+ * after a replacement is applied after the view is cleared, so it isn't lost.
+ */
+public class HighlightBatch
+{
+	/**
+	 * Applies a pass of highlights to a tree view.
+	 */
+	public interface Target
+	{
+		/**
+		 * Applies highlights and renders the view once. The sets are only valid during the call.
+		 *
+		 * @param clear true to clear the view's highlights first.
+		 * @param idNodes the IDs of the nodes to highlight.
+		 * @param idBranches the IDs of the nodes whose branches are highlighted.
+		 * @param idSubtrees the IDs of the nodes whose subtrees are highlighted.
+		 */
+		void applyHighlights(boolean clear, Set<Integer> idNodes, Set<Integer> idBranches,
+				Set<Integer> idSubtrees);
+	}
+
+	private final Target target;
+
+	private final Set<Integer> idNodes = new LinkedHashSet<Integer>();
+	private final Set<Integer> idBranches = new LinkedHashSet<Integer>();
+	private final Set<Integer> idSubtrees = new LinkedHashSet<Integer>();
+
+	/**
+	 * True if the view's highlights are cleared before the pass is applied.
+	 */
+	private boolean clear;
+
+	/**
+	 * True if anything has been requested since the last pass.
+	 */
+	private boolean pending;
+
+	/**
+	 * @param target applies each pass.
+	 */
+	public HighlightBatch(Target target)
+	{
+		this.target = target;
+	}
+
+	/**
+	 * @return true if highlights have been requested since the last pass was applied or discarded.
+	 */
+	public boolean isPending()
+	{
+		return pending;
+	}
+
+	/**
+	 * Replaces the highlights with a set of nodes.
+	 *
+	 * @param ids the IDs of the nodes to highlight.
+	 */
+	public void replaceNodes(Collection<Integer> ids)
+	{
+		replace();
+		idNodes.addAll(ids);
+	}
+
+	/**
+	 * Replaces the highlights with the branches leading to a set of nodes.
+	 *
+	 * @param ids the IDs of the nodes whose branches are highlighted.
+	 */
+	public void replaceBranches(Collection<Integer> ids)
+	{
+		replace();
+		idBranches.addAll(ids);
+	}
+
+	/**
+	 * Replaces the highlights with a subtree.
+	 *
+	 * @param id the ID of the subtree's root.
+	 */
+	public void replaceSubtree(int id)
+	{
+		replace();
+		idSubtrees.add(id);
+	}
+
+	/**
+	 * Adds a subtree to the highlights.
+	 *
+	 * @param id the ID of the subtree's root.
+	 */
+	public void addSubtree(int id)
+	{
+		pending = true;
+		idSubtrees.add(id);
+	}
+
+	/**
+	 * Applies the highlights requested since the last pass in a single call to the target.
+	 *
+	 * @return the number of IDs applied.
+	 */
+	public int apply()
+	{
+		if(!pending)
+		{
+			return 0;
+		}
+
+		int count = idNodes.size() + idBranches.size() + idSubtrees.size();
+		target.applyHighlights(clear, Collections.unmodifiableSet(idNodes),
+				Collections.unmodifiableSet(idBranches), Collections.unmodifiableSet(idSubtrees));
+		discard();
+		return count;
+	}
+
+	/**
+	 * Discards the highlights requested since the last pass without applying them.
+	 */
+	public void discard()
+	{
+		idNodes.clear();
+		idBranches.clear();
+		idSubtrees.clear();
+		clear = false;
+		pending = false;
+	}
+
+	private void replace()
+	{
+		idNodes.clear();
+		idBranches.clear();
+		idSubtrees.clear();
+		clear = true;
+		pending = true;
+	}
+}
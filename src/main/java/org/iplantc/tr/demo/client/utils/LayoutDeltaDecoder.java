@@ -0,0 +1,134 @@
+package org.iplantc.tr.demo.client.utils;
+
+import org.iplantc.phyloviewer.client.layout.JsLayoutCladogram;
+import org.iplantc.phyloviewer.client.tree.viewer.model.JsDocument;
+import org.iplantc.tr.demo.shared.LayoutEdit;
+
+/**
+ * Applies the layout deltas returned by layout session edits, described by {@link LayoutEdit}, to a
+ * tree and its layout.
+ *
+ * The tree is restructured and the layout's entries are updated in place, so a tree view that holds
+ * them only needs to be redrawn. The first delta applied to a layout indexes its entries and the
+ * tree's nodes by ID; nodes that have no entry yet are given one.
+ */
+public class LayoutDeltaDecoder
+{
+	/**
+	 * Applies a layout delta.
+	 *
+	 * @param document the document containing the tree that was laid out, in the form read by the
+	 *            server's tree builders: <code>{"tree": {"root": node}}</code>, where each node has an
+	 *            <code>id</code> and an array of <code>children</code>.
+	 * @param layout the layout.
+	 * @param delta the layout delta.
+	 */
+	public static native void apply(JsDocument document, JsLayoutCladogram layout, String delta)
+	/*-{
+		var edit = eval("(" + delta + ")");
+
+		var index = layout.deltaIndex;
+		if (!index) {
+			var entries = {};
+			for (var i = 0; i < layout.nodes.length; i++) {
+				entries[layout.nodes[i].id] = layout.nodes[i];
+			}
+
+			// walk the tree with an explicit stack, as deep gene trees are common
+			index = {};
+			var stack = [ { "node" : document.tree.root, "parent" : null } ];
+			while (stack.length > 0) {
+				var item = stack.pop();
+				var node = item.node;
+				var entry = entries[node.id];
+				if (!entry) {
+					entry = {
+						"id" : node.id,
+						"position" : { "x" : 0, "y" : 0 },
+						"boundingBox" : { "min" : { "x" : 0, "y" : 0 }, "max" : { "x" : 0, "y" : 0 } }
+					};
+					layout.nodes.push(entry);
+				}
+				index[node.id] = { "node" : node, "entry" : entry, "parent" : item.parent };
+
+				var children = node.children || [];
+				for (var i = 0; i < children.length; i++) {
+					stack.push({ "node" : children[i], "parent" : node.id });
+				}
+			}
+			layout.deltaIndex = index;
+		}
+
+		var copy = function(from, to) {
+			to.position.x = from.position.x;
+			to.position.y = from.position.y;
+			to.boundingBox.min.x = from.boundingBox.min.x;
+			to.boundingBox.min.y = from.boundingBox.min.y;
+			to.boundingBox.max.x = from.boundingBox.max.x;
+			to.boundingBox.max.y = from.boundingBox.max.y;
+		};
+
+		// calls visit with the entry of every node in a subtree
+		var walk = function(id, visit) {
+			var stack = [ index[id].node ];
+			while (stack.length > 0) {
+				var node = stack.pop();
+				visit(index[node.id].entry);
+				var children = node.children || [];
+				for (var i = 0; i < children.length; i++) {
+					stack.push(children[i]);
+				}
+			}
+		};
+
+		for (var i = 0; i < edit.parents.length; i++) {
+			var item = index[edit.parents[i].id];
+			if (item.parent !== null) {
+				var siblings = index[item.parent].node.children;
+				for (var j = 0; j < siblings.length; j++) {
+					if (siblings[j] === item.node) {
+						siblings.splice(j, 1);
+						break;
+					}
+				}
+			}
+
+			item.parent = edit.parents[i].parent;
+			if (item.parent !== null) {
+				var parent = index[item.parent].node;
+				if (!parent.children) {
+					parent.children = [];
+				}
+				parent.children.push(item.node);
+			}
+		}
+		if (edit.root !== null) {
+			document.tree.root = index[edit.root].node;
+		}
+
+		for (var i = 0; i < edit.moves.length; i++) {
+			var move = edit.moves[i];
+			walk(move.id, function(entry) {
+				entry.position.x += move.dx;
+				entry.position.y += move.dy;
+				entry.boundingBox.min.x += move.dx;
+				entry.boundingBox.min.y += move.dy;
+				entry.boundingBox.max.x += move.dx;
+				entry.boundingBox.max.y += move.dy;
+			});
+		}
+
+		for (var i = 0; i < edit.nodes.length; i++) {
+			copy(edit.nodes[i], index[edit.nodes[i].id].entry);
+		}
+
+		for (var i = 0; i < edit.hidden.length; i++) {
+			var clade = index[edit.hidden[i]].entry;
+			walk(edit.hidden[i], function(entry) {
+				if (entry !== clade) {
+					copy(clade, entry);
+				}
+			});
+		}
+	}-*/;
+}
@@ -0,0 +1,154 @@
+package org.iplantc.tr.demo.client.utils;
+
+import org.iplantc.phyloviewer.client.layout.JsLayoutCladogram;
+import org.iplantc.phyloviewer.client.tree.viewer.model.JsDocument;
+import org.iplantc.tr.demo.shared.LayoutViewport;
+
+/**
+ * Builds complete layouts from the layout windows described by {@link LayoutViewport} and refines them
+ * as more detailed windows arrive.
+ *
+ * A layout built from a window has an entry for every node in the tree, so it can be drawn like any
+ * other layout. Nodes that were in a window have their exact positions, and the descendants of a
+ * collapsed clade are drawn at the clade's root until a window that shows them arrives. Entries are
+ * updated in place, so a tree view that holds the layout only needs to be redrawn.
+ */
+public class LayoutWindowDecoder
+{
+	/**
+	 * Builds a complete layout from a layout window.
+	 *
+	 * @param document the document containing the tree that was laid out.
+	 * @param window the layout window, including its prefix.
+	 * @return the layout.
+	 */
+	public static JsLayoutCladogram expand(JsDocument document, String window)
+	{
+		return expandWindow(document, window.substring(LayoutViewport.WINDOW_PREFIX.length()));
+	}
+
+	/**
+	 * Adds the nodes in a more detailed layout window to a layout built by
+	 * {@link #expand(JsDocument, String)}.
+	 *
+	 * @param layout the layout.
+	 * @param window the layout window, including its prefix.
+	 */
+	public static void merge(JsLayoutCladogram layout, String window)
+	{
+		mergeWindow(layout, window.substring(LayoutViewport.WINDOW_PREFIX.length()));
+	}
+
+	/**
+	 * Creates a viewport that shows a node and its descendants.
+	 *
+	 * @param layout a layout built by {@link #expand(JsDocument, String)}.
+	 * @param idNode the ID of the node.
+	 * @param width the width of the view in pixels.
+	 * @param height the height of the view in pixels.
+	 * @return the viewport, or null if the layout wasn't built from a window or has no such node.
+	 */
+	public static native LayoutViewport getViewport(JsLayoutCladogram layout, int idNode,
+			int width, int height)
+	/*-{
+		if (!layout.windowIndex || !layout.windowIndex[idNode]) {
+			return null;
+		}
+
+		var box = layout.windowIndex[idNode].entry.boundingBox;
+		return @org.iplantc.tr.demo.shared.LayoutViewport::new(DDDDII)(box.min.x, box.min.y,
+				box.max.x, box.max.y, width, height);
+	}-*/;
+
+	/**
+	 * Builds an entry for every node in the tree and fills them in from a window. The tree has the form
+	 * read by the server's tree builders: <code>{"tree": {"root": node}}</code>, where each node has an
+	 * <code>id</code> and an array of <code>children</code>.
+	 *
+	 * @param document the document containing the tree.
+	 * @param json the JSON of the layout window.
+	 * @return the layout.
+	 */
+	private static native JsLayoutCladogram expandWindow(JsDocument document, String json)
+	/*-{
+		var layout = { "nodes" : [] };
+		var index = {};
+
+		// walk the tree in pre-order with an explicit stack, as deep gene trees are common
+		var stack = [ document.tree.root ];
+		while (stack.length > 0) {
+			var node = stack.pop();
+			var entry = {
+				"id" : node.id,
+				"position" : { "x" : 0, "y" : 0 },
+				"boundingBox" : { "min" : { "x" : 0, "y" : 0 }, "max" : { "x" : 0, "y" : 0 } }
+			};
+			layout.nodes.push(entry);
+
+			var children = node.children || [];
+			var ids = [];
+			for (var i = 0; i < children.length; i++) {
+				ids.push(children[i].id);
+			}
+			for (var i = children.length - 1; i >= 0; i--) {
+				stack.push(children[i]);
+			}
+			index[node.id] = { "entry" : entry, "children" : ids, "exact" : false };
+		}
+
+		layout.windowIndex = index;
+		@org.iplantc.tr.demo.client.utils.LayoutWindowDecoder::mergeWindow(Lorg/iplantc/phyloviewer/client/layout/JsLayoutCladogram;Ljava/lang/String;)(layout, json);
+		return layout;
+	}-*/;
+
+	/**
+	 * Copies the positions in a window into a layout. Nodes in the window become exact, and every
+	 * descendant of a collapsed clade that isn't exact yet is moved to the clade's root.
+	 *
+	 * @param layout the layout.
+	 * @param json the JSON of the layout window.
+	 */
+	private static native void mergeWindow(JsLayoutCladogram layout, String json)
+	/*-{
+		var detail = eval("(" + json + ")");
+		var index = layout.windowIndex;
+
+		var copy = function(from, to) {
+			to.position.x = from.position.x;
+			to.position.y = from.position.y;
+			to.boundingBox.min.x = from.boundingBox.min.x;
+			to.boundingBox.min.y = from.boundingBox.min.y;
+			to.boundingBox.max.x = from.boundingBox.max.x;
+			to.boundingBox.max.y = from.boundingBox.max.y;
+		};
+
+		for (var i = 0; i < detail.nodes.length; i++) {
+			var node = index[detail.nodes[i].id];
+			if (node) {
+				copy(detail.nodes[i], node.entry);
+				node.exact = true;
+			}
+		}
+
+		for (var i = 0; i < detail.collapsed.length; i++) {
+			var clade = detail.collapsed[i];
+			var root = index[clade.id];
+			if (!root) {
+				continue;
+			}
+			copy(clade, root.entry);
+			root.exact = true;
+
+			var stack = root.children.slice(0);
+			while (stack.length > 0) {
+				var node = index[stack.pop()];
+				if (!node.exact) {
+					copy(clade, node.entry);
+				}
+				for (var j = 0; j < node.children.length; j++) {
+					stack.push(node.children[j]);
+				}
+			}
+		}
+	}-*/;
+}
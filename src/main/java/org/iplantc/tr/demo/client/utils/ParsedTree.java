@@ -0,0 +1,190 @@
+package org.iplantc.tr.demo.client.utils;
+
+import org.iplantc.phyloviewer.client.layout.JsLayoutCladogram;
+import org.iplantc.phyloviewer.client.tree.viewer.model.JsDocument;
+import org.iplantc.tr.demo.shared.CompactLayout;
+import org.iplantc.tr.demo.shared.LayoutViewport;
+
+/**
+ * A tree and its layout, parsed from the strings returned by the layout service into the objects drawn
+ * by a tree view. Parsing large trees is expensive, so parsed trees are cached by {@link TreeRetriever}.
+ *
+ * Layout windows are merged into the layout as they arrive, which only refines it, so a parsed tree
+ * can be shared. Editing the tree does change it, so a copy should be edited instead.
+ */
+public class ParsedTree
+{
+	/**
+	 * The estimated size of a layout entry, in characters of JSON.
+	 */
+	private static final int ESTIMATED_ENTRY_SIZE = 200;
+
+	private final JsDocument document;
+	private final JsLayoutCladogram layout;
+	private final boolean window;
+	private final int estimatedSize;
+
+	private ParsedTree(JsDocument document, JsLayoutCladogram layout, boolean window,
+			int estimatedSize)
+	{
+		this.document = document;
+		this.layout = layout;
+		this.window = window;
+		this.estimatedSize = estimatedSize;
+	}
+
+	/**
+	 * Parses a tree and its layout.
+	 *
+	 * @param jsonTree the tree in JSON format.
+	 * @param layoutTree the layout in JSON format, the compact encoding or a layout window.
+	 * @return the parsed tree, or null if either the tree or the layout is missing.
+	 */
+	public static ParsedTree parse(String jsonTree, String layoutTree)
+	{
+		if(jsonTree == null || layoutTree == null)
+		{
+			return null;
+		}
+
+		JsDocument document = getDocument("(" + jsonTree + ") ");
+		JsLayoutCladogram layout;
+		boolean window = LayoutViewport.isWindow(layoutTree);
+		if(window)
+		{
+			layout = LayoutWindowDecoder.expand(document, layoutTree);
+		}
+		else
+		{
+			layout = CompactLayout.isCompact(layoutTree) ? CompactLayoutDecoder.decode(layoutTree)
+					: getLayout("(" + layoutTree + ")");
+		}
+
+		return new ParsedTree(document, layout, window, jsonTree.length()
+				+ getEntryCount(layout) * ESTIMATED_ENTRY_SIZE);
+	}
+
+	/**
+	 * @return the document containing the tree.
+	 */
+	public JsDocument getDocument()
+	{
+		return document;
+	}
+
+	/**
+	 * @return the layout.
+	 */
+	public JsLayoutCladogram getLayout()
+	{
+		return layout;
+	}
+
+	/**
+	 * @return true if the layout was built from a layout window and can be refined by more windows.
+	 */
+	public boolean isWindow()
+	{
+		return window;
+	}
+
+	/**
+	 * Gets the estimated size of the parsed tree and layout. A layout built from a window already has an
+	 * entry for every node, which merging more windows only fills in, so the estimate stays the same as
+	 * windows are merged.
+	 *
+	 * @return the estimated size of the parsed tree and layout, in characters of JSON.
+	 */
+	public int getEstimatedSize()
+	{
+		return estimatedSize;
+	}
+
+	/**
+	 * Copies the tree and its layout so that the copy can be edited without changing this one. The copy
+	 * can no longer be refined by layout windows.
+	 *
+	 * @return the copy.
+	 */
+	public ParsedTree copy()
+	{
+		return new ParsedTree(copyDocument(document), copyLayout(layout), false, estimatedSize);
+	}
+
+	private static native JsDocument getDocument(String json)
+	/*-{
+		return eval(json);
+	}-*/;
+
+	private static native JsLayoutCladogram getLayout(String json)
+	/*-{
+		return eval(json);
+	}-*/;
+
+	private static native int getEntryCount(JsLayoutCladogram layout)
+	/*-{
+		return layout.nodes ? layout.nodes.length : 0;
+	}-*/;
+
+	/**
+	 * Copies a document, copying every node of its tree.
+	 *
+	 * @param document the document.
+	 * @return the copy.
+	 */
+	private static native JsDocument copyDocument(JsDocument document)
+	/*-{
+		var copyObject = function(source) {
+			var copy = {};
+			for (var key in source) {
+				if (source.hasOwnProperty(key)) {
+					copy[key] = source[key];
+				}
+			}
+			return copy;
+		};
+
+		var result = copyObject(document);
+		result.tree = copyObject(document.tree);
+		result.tree.root = copyObject(document.tree.root);
+
+		// copy the nodes with an explicit stack, as deep gene trees are common
+		var stack = [ result.tree.root ];
+		while (stack.length > 0) {
+			var node = stack.pop();
+			if (node.children) {
+				var children = [];
+				for (var i = 0; i < node.children.length; i++) {
+					children.push(copyObject(node.children[i]));
+					stack.push(children[i]);
+				}
+				node.children = children;
+			}
+		}
+
+		return result;
+	}-*/;
+
+	/**
+	 * Copies the entries of a layout.
+	 *
+	 * @param layout the layout.
+	 * @return the copy.
+	 */
+	private static native JsLayoutCladogram copyLayout(JsLayoutCladogram layout)
+	/*-{
+		var result = { "nodes" : [] };
+		for (var i = 0; i < layout.nodes.length; i++) {
+			var entry = layout.nodes[i];
+			result.nodes.push({
+				"id" : entry.id,
+				"position" : { "x" : entry.position.x, "y" : entry.position.y },
+				"boundingBox" : {
+					"min" : { "x" : entry.boundingBox.min.x, "y" : entry.boundingBox.min.y },
+					"max" : { "x" : entry.boundingBox.max.x, "y" : entry.boundingBox.max.y }
+				}
+			});
+		}
+		return result;
+	}-*/;
+}
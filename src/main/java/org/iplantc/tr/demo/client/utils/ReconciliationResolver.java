@@ -0,0 +1,186 @@
+package org.iplantc.tr.demo.client.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArray;
+import com.google.gwt.core.client.JsArrayInteger;
+
+/**
+ * Finds the nodes related to gene tree and species tree nodes of a gene family from its reconciliation
+ * map, without asking the tree reconciliation service. The map is returned by the layout service, in
+ * the form written by the server's <code>ReconciliationMapBuilder</code>, and holds the whole
+ * reconciliation. Queries are answered as the tree reconciliation service answers related node
+ * queries.
+ */
+public class ReconciliationResolver
+{
+	/**
+	 * The IDs of the species tree nodes related to each gene tree node, indexed by gene tree index.
+	 */
+	private final int[][] geneNodes;
+
+	private final Map<Integer, Integer> geneIndices;
+
+	private final int[] speciesSizes;
+
+	/**
+	 * The IDs of the gene tree nodes on each species tree node and on the edge leading to it, indexed
+	 * by species tree index.
+	 */
+	private final int[][] speciesNodes;
+	private final int[][] speciesEdges;
+
+	private final Map<Integer, Integer> speciesIndices;
+
+	private ReconciliationResolver(JavaScriptObject map)
+	{
+		geneNodes = toArrays(getArrays(map, "gene", "nodes"));
+		geneIndices = buildIndex(toArray(getArray(map, "gene", "ids")));
+		speciesSizes = toArray(getArray(map, "species", "sizes"));
+		speciesNodes = toArrays(getArrays(map, "species", "nodes"));
+		speciesEdges = toArrays(getArrays(map, "species", "edges"));
+		speciesIndices = buildIndex(toArray(getArray(map, "species", "ids")));
+	}
+
+	/**
+	 * Parses a reconciliation map.
+	 *
+	 * @param json the reconciliation map returned by the layout service.
+	 * @return the resolver, or null if there is no map.
+	 */
+	public static ReconciliationResolver parse(String json)
+	{
+		if(json == null)
+		{
+			return null;
+		}
+
+		return new ReconciliationResolver(eval("(" + json + ")"));
+	}
+
+	/**
+	 * Finds the species tree nodes related to a gene tree node. As with the tree reconciliation
+	 * service, these are the nodes the gene tree node is on or on the edges leading to, whichever of
+	 * the edge or subtree flags is given.
+	 *
+	 * @param idGeneNode the ID of the gene tree node.
+	 * @param edgeSelected true if the edge leading to the gene tree node is selected.
+	 * @param includeSubtree true if the gene tree node's subtree is selected.
+	 * @return the IDs of the species tree nodes.
+	 */
+	public ArrayList<Integer> getSpeciesNodes(int idGeneNode, boolean edgeSelected,
+			boolean includeSubtree)
+	{
+		Set<Integer> result = new LinkedHashSet<Integer>();
+		Integer index = geneIndices.get(idGeneNode);
+		if(index != null)
+		{
+			add(geneNodes[index], result);
+		}
+
+		return new ArrayList<Integer>(result);
+	}
+
+	/**
+	 * Finds the gene tree nodes related to a species tree node or to the edge leading to it. Queries
+	 * that include the subtree return the gene tree nodes on every node in the subtree and on every
+	 * edge within it, along with the edge leading to the species tree node if it's selected.
+	 *
+	 * @param idSpeciesNode the ID of the species tree node.
+	 * @param edgeSelected true to find the gene tree nodes on the edge leading to the species tree
+	 *            node, or false to find the gene tree nodes on the species tree node.
+	 * @param includeSubtree true to include the gene tree nodes related to the species tree node's
+	 *            descendants.
+	 * @return the IDs of the gene tree nodes, or null if the species tree node isn't in the map.
+	 */
+	public ArrayList<Integer> getGeneNodes(int idSpeciesNode, boolean edgeSelected,
+			boolean includeSubtree)
+	{
+		Integer index = speciesIndices.get(idSpeciesNode);
+		if(index == null)
+		{
+			return null;
+		}
+
+		Set<Integer> result = new LinkedHashSet<Integer>();
+		if(includeSubtree)
+		{
+			for(int i = index;i < index + speciesSizes[index];i++)
+			{
+				if(i != index || edgeSelected)
+				{
+					add(speciesEdges[i], result);
+				}
+				add(speciesNodes[i], result);
+			}
+		}
+		else
+		{
+			add(edgeSelected ? speciesEdges[index] : speciesNodes[index], result);
+		}
+
+		return new ArrayList<Integer>(result);
+	}
+
+	private static void add(int[] ids, Set<Integer> result)
+	{
+		for(int id : ids)
+		{
+			result.add(id);
+		}
+	}
+
+	private static Map<Integer, Integer> buildIndex(int[] ids)
+	{
+		Map<Integer, Integer> result = new HashMap<Integer, Integer>(ids.length * 2);
+		for(int i = 0;i < ids.length;i++)
+		{
+			result.put(ids[i], i);
+		}
+
+		return result;
+	}
+
+	private static int[] toArray(JsArrayInteger array)
+	{
+		int[] result = new int[array.length()];
+		for(int i = 0;i < result.length;i++)
+		{
+			result[i] = array.get(i);
+		}
+
+		return result;
+	}
+
+	private static int[][] toArrays(JsArray<JsArrayInteger> arrays)
+	{
+		int[][] result = new int[arrays.length()][];
+		for(int i = 0;i < result.length;i++)
+		{
+			result[i] = toArray(arrays.get(i));
+		}
+
+		return result;
+	}
+
+	private static native JavaScriptObject eval(String json)
+	/*-{
+		return eval(json);
+	}-*/;
+
+	private static native JsArrayInteger getArray(JavaScriptObject map, String tree, String member)
+	/*-{
+		return map[tree][member];
+	}-*/;
+
+	private static native JsArray<JsArrayInteger> getArrays(JavaScriptObject map, String tree,
+			String member)
+	/*-{
+		return map[tree][member];
+	}-*/;
+}
@@ -0,0 +1,93 @@
+package org.iplantc.tr.demo.client.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches parsed trees in the browser so that reopening a recently viewed tree doesn't download, lay out
+ * or parse it again. The cache is bounded by the estimated size of the trees it holds, and the least
+ * recently used trees are evicted first. A tree larger than the whole cache is still kept until the
+ * next tree is added.
+ *
+ * Sizes are taken when trees are added. Merging layout windows into a cached tree doesn't change its
+ * size, as the estimate already counts a layout entry for every node of the tree.
+ */
+public class TreeCache
+{
+	private final int maxSize;
+	private int size;
+
+	/**
+	 * The cached trees, in access order.
+	 */
+	private final Map<String, ParsedTree> trees = new LinkedHashMap<String, ParsedTree>(16, 0.75f,
+			true);
+
+	/**
+	 * @param maxSize the maximum total estimated size of the cached trees.
+	 */
+	public TreeCache(int maxSize)
+	{
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Builds the cache key of a tree. A tree built from a layout window is refined in place as more
+	 * windows arrive, so there's one entry per tree however the view has been zoomed: the viewport a
+	 * window was cut for isn't part of the key.
+	 *
+	 * @param geneFamilyID the gene family, or null for the complete species tree.
+	 * @param geneTree true for the gene tree, or false for the species tree.
+	 * @param window true for a tree built from layout windows, or false for the full layout.
+	 * @return the key.
+	 */
+	public static String buildKey(String geneFamilyID, boolean geneTree, boolean window)
+	{
+		return (geneTree ? "gene:" : "species:") + (window ? "window:" : "full:")
+				+ (geneFamilyID == null ? "" : geneFamilyID);
+	}
+
+	/**
+	 * @param key the key of the tree.
+	 * @return the tree, or null if it isn't cached.
+	 */
+	public ParsedTree get(String key)
+	{
+		return trees.get(key);
+	}
+
+	/**
+	 * Adds a tree, evicting the least recently used trees until the cache is within its size.
+	 *
+	 * @param key the key of the tree.
+	 * @param tree the tree.
+	 */
+	public void put(String key, ParsedTree tree)
+	{
+		ParsedTree old = trees.remove(key);
+		if(old != null)
+		{
+			size -= old.getEstimatedSize();
+		}
+
+		trees.put(key, tree);
+		size += tree.getEstimatedSize();
+
+		Iterator<ParsedTree> eldest = trees.values().iterator();
+		while(size > maxSize && trees.size() > 1)
+		{
+			ParsedTree evicted = eldest.next();
+			eldest.remove();
+			size -= evicted.getEstimatedSize();
+		}
+	}
+
+	/**
+	 * @return the total estimated size of the cached trees.
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+}
@@ -1,13 +1,60 @@
 package org.iplantc.tr.demo.client.utils;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.iplantc.tr.demo.client.services.LayoutServiceFacade;
-import org.iplantc.tr.demo.client.services.TreeServices;
+import org.iplantc.tr.demo.shared.LayoutViewport;
+import org.iplantc.tr.demo.shared.TreeLayout;
 
-import com.google.gwt.json.client.JSONObject;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.user.client.Command;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 
+/**
+ * Retrieves trees along with their layouts. Each tree is retrieved and laid out on the server in a
+ * single round trip. Layouts are requested in the compact encoding, or as layout windows when a
+ * viewport is given. A gene family's species and gene trees can be requested at the same time, so that
+ * opening it takes one round trip rather than two.
+ *
+ * Trees are parsed as they arrive, and the parsed trees are kept in a cache shared by all retrievers,
+ * so reopening a recently viewed tree doesn't request it again. A cached tree built from layout
+ * windows is returned for any viewport, along with the detail merged into it since. Callbacks for cached trees are still
+ * executed after the request returns, as they would be for a tree from the server.
+ *
+ * The reconciliation map of a gene family can be requested once related nodes are first needed, so
+ * that later related nodes are found without further requests. The most recently used maps are kept
+ * as well.
+ */
 public class TreeRetriever
 {
+	/**
+	 * The maximum total estimated size of the cached trees, in characters of JSON.
+	 */
+	private static final int MAX_CACHE_SIZE = 20000000;
+
+	private static final TreeCache CACHE = new TreeCache(MAX_CACHE_SIZE);
+
+	/**
+	 * The number of reconciliation maps kept.
+	 */
+	private static final int MAX_RECONCILIATIONS = 8;
+
+	/**
+	 * The most recently used reconciliation maps, indexed by gene family, in access order.
+	 */
+	private static final Map<String, ReconciliationResolver> RECONCILIATIONS =
+			new LinkedHashMap<String, ReconciliationResolver>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, ReconciliationResolver> eldest)
+				{
+					return size() > MAX_RECONCILIATIONS;
+				}
+			};
 
 	public TreeRetriever()
 	{
@@ -16,87 +63,210 @@ public class TreeRetriever
 
 	public void getSpeciesTree(String geneFamilyID, final TreeRetrieverCallBack callback)
 	{
-		TreeServices.getSpeciesData(geneFamilyID, new AsyncCallback<String>()
-		{
+		retrieve(geneFamilyID, false, null, callback, null);
+	}
+
+	public void getGeneTree(String geneFamilyID, final TreeRetrieverCallBack callback)
+	{
+		retrieve(geneFamilyID, true, null, callback, null);
+	}
+
+	public void getSpeciesTree(String geneFamilyID, LayoutViewport viewport,
+			final TreeRetrieverCallBack callback)
+	{
+		retrieve(geneFamilyID, false, viewport, callback, null);
+	}
 
-			@Override
-			public void onSuccess(String result)
+	public void getGeneTree(String geneFamilyID, LayoutViewport viewport,
+			final TreeRetrieverCallBack callback)
+	{
+		retrieve(geneFamilyID, true, viewport, callback, null);
+	}
+
+	/**
+	 * Requests the species and gene trees for a gene family at the same time. Each tree's callback is
+	 * executed as soon as that tree arrives, in whichever order they arrive, and the completion command
+	 * is executed once both trees have arrived. If either request fails, the failure is passed to that
+	 * tree's callback and the completion command isn't executed.
+	 * 
+	 * @param geneFamilyID the gene family.
+	 * @param viewport the viewport whose layout windows are requested.
+	 * @param speciesCallback executed when the species tree arrives.
+	 * @param geneCallback executed when the gene tree arrives.
+	 * @param completion executed when both trees have arrived.
+	 */
+	public void getTrees(String geneFamilyID, LayoutViewport viewport,
+			final TreeRetrieverCallBack speciesCallback, final TreeRetrieverCallBack geneCallback,
+			Command completion)
+	{
+		Join join = new Join(2, completion);
+		retrieve(geneFamilyID, false, viewport, speciesCallback, join);
+		retrieve(geneFamilyID, true, viewport, geneCallback, join);
+	}
+
+	/**
+	 * Gets the reconciliation map of a gene family from the cache or, failing that, requests it. As with
+	 * trees, the callback for a cached map is executed after the request returns.
+	 * 
+	 * @param geneFamilyID the gene family.
+	 * @param callback receives the resolver for the map.
+	 */
+	public void getReconciliation(final String geneFamilyID,
+			final AsyncCallback<ReconciliationResolver> callback)
+	{
+		final ReconciliationResolver cached = RECONCILIATIONS.get(geneFamilyID);
+		if(cached != null)
+		{
+			Scheduler.get().scheduleDeferred(new ScheduledCommand()
 			{
-				JSONObject o1 = JsonUtil.getObject(JsonUtil.getObject(result), "data");
-				final String tree = JsonUtil.getObject(o1, "item").toString();
-				if(tree != null)
+				@Override
+				public void execute()
 				{
-					LayoutServiceFacade.getInstance().getLayout(tree, new AsyncCallback<String>()
-					{
-
-						@Override
-						public void onFailure(Throwable caught)
-						{
-							System.out.println(caught.toString());
+					callback.onSuccess(cached);
+				}
+			});
+			return;
+		}
 
-						}
+		LayoutServiceFacade.getInstance().getReconciliationMap(geneFamilyID,
+				new AsyncCallback<String>()
+				{
+					@Override
+					public void onFailure(Throwable caught)
+					{
+						callback.onFailure(caught);
+					}
 
-						@Override
-						public void onSuccess(String result)
+					@Override
+					public void onSuccess(String result)
+					{
+						ReconciliationResolver resolver = ReconciliationResolver.parse(result);
+						if(resolver != null)
 						{
-							callback.setLayout(result);
-							callback.setTree(tree);
-							callback.execute();
+							RECONCILIATIONS.put(geneFamilyID, resolver);
 						}
-					});
-				}
-			}
+						callback.onSuccess(resolver);
+					}
+				});
+	}
 
-			@Override
-			public void onFailure(Throwable caught)
+	/**
+	 * Gets a tree from the cache or, failing that, requests it.
+	 * 
+	 * @param geneFamilyID the gene family, or null for the complete species tree.
+	 * @param geneTree true for the gene tree, or false for the species tree.
+	 * @param viewport the viewport whose layout window is requested, or null for the full layout.
+	 * @param callback executed when the tree arrives.
+	 * @param join notified when the request has finished, or null.
+	 */
+	private void retrieve(String geneFamilyID, boolean geneTree, LayoutViewport viewport,
+			final TreeRetrieverCallBack callback, final Join join)
+	{
+		String key = TreeCache.buildKey(geneFamilyID, geneTree, viewport != null);
+		final ParsedTree cached = CACHE.get(key);
+		if(cached != null)
+		{
+			Scheduler.get().scheduleDeferred(new ScheduledCommand()
 			{
-				System.out.println(caught.toString());
+				@Override
+				public void execute()
+				{
+					callback.setParsedTree(cached);
+					callback.execute();
+					if(join != null)
+					{
+						join.finished(true);
+					}
+				}
+			});
+			return;
+		}
 
-			}
-		});
+		TreeLayoutCallback result = new TreeLayoutCallback(callback, key, join);
+		if(viewport != null)
+		{
+			LayoutServiceFacade.getInstance().getTreeLayoutWindow(geneFamilyID, geneTree, viewport,
+					true, result);
+		}
+		else if(geneTree)
+		{
+			LayoutServiceFacade.getInstance().getGeneTreeLayout(geneFamilyID, true, result);
+		}
+		else
+		{
+			LayoutServiceFacade.getInstance().getSpeciesTreeLayout(geneFamilyID, true, result);
+		}
 	}
 
-	public void getGeneTree(String geneFamilyID, final TreeRetrieverCallBack callback)
+	/**
+	 * Executes a command once a number of requests have all succeeded.
+	 */
+	private class Join
 	{
-		TreeServices.getGeneData(geneFamilyID, new AsyncCallback<String>()
+		private int pending;
+		private boolean failed;
+		private final Command completion;
+
+		public Join(int pending, Command completion)
 		{
+			this.pending = pending;
+			this.completion = completion;
+		}
 
-			@Override
-			public void onFailure(Throwable caught)
+		/**
+		 * @param success false if the request failed, in which case the command is never executed.
+		 */
+		public void finished(boolean success)
+		{
+			pending--;
+			failed |= !success;
+			if(pending == 0 && !failed)
 			{
-				System.out.println(caught.toString());
+				completion.execute();
 			}
+		}
+	}
 
-			@Override
-			public void onSuccess(String result)
-			{
-
-				JSONObject o1 = JsonUtil.getObject(JsonUtil.getObject(result), "data");
-				JSONObject o2 = JsonUtil.getObject(o1, "item").isObject();
-				final String tree = JsonUtil.getObject(o2, "gene-tree").toString();
-				if(tree != null)
-				{
-					LayoutServiceFacade.getInstance().getLayout(tree, new AsyncCallback<String>()
-					{
+	/**
+	 * Parses a tree and its layout, caches them and passes them on to a TreeRetrieverCallBack.
+	 */
+	private class TreeLayoutCallback implements AsyncCallback<TreeLayout>
+	{
+		private final TreeRetrieverCallBack callback;
+		private final String key;
+		private final Join join;
 
-						@Override
-						public void onFailure(Throwable caught)
-						{
-							System.out.println(caught.toString());
+		public TreeLayoutCallback(TreeRetrieverCallBack callback, String key, Join join)
+		{
+			this.callback = callback;
+			this.key = key;
+			this.join = join;
+		}
 
-						}
+		@Override
+		public void onFailure(Throwable caught)
+		{
+			callback.onFailure(caught);
+			if(join != null)
+			{
+				join.finished(false);
+			}
+		}
 
-						@Override
-						public void onSuccess(String result)
-						{
-							callback.setLayout(result);
-							callback.setTree(tree);
-							callback.execute();
-						}
-					});
-				}
+		@Override
+		public void onSuccess(TreeLayout result)
+		{
+			ParsedTree tree = ParsedTree.parse(result.getTree(), result.getLayout());
+			if(tree != null)
+			{
+				CACHE.put(key, tree);
+			}
+			callback.setParsedTree(tree);
+			callback.execute();
+			if(join != null)
+			{
+				join.finished(true);
 			}
-		});
+		}
 	}
-
-}
\ No newline at end of file
+}
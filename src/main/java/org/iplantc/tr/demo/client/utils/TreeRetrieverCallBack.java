@@ -1,8 +1,10 @@
 package org.iplantc.tr.demo.client.utils;
 
+import com.google.gwt.core.client.GWT;
+
 /**
  * A call back object that can be passed to TreeRetriever. The TreeRetriever will call execute method
- * after fetching the tree and layout.
+ * after fetching the tree and layout, or onFailure if the tree can't be retrieved.
  * 
  * @author sriram
  * 
@@ -10,44 +12,37 @@ package org.iplantc.tr.demo.client.utils;
 public abstract class TreeRetrieverCallBack
 {
 
-	private String tree;
-
-	private String layout;
+	private ParsedTree parsedTree;
 
 	/**
-	 * @param layout the layout to set
+	 * @param parsedTree the tree and its layout, or null if either is missing.
 	 */
-	public void setLayout(String layout)
+	public void setParsedTree(ParsedTree parsedTree)
 	{
-		this.layout = layout;
+		this.parsedTree = parsedTree;
 	}
 
 	/**
-	 * @return the layout
+	 * @return the tree and its layout, or null if either is missing.
 	 */
-	public String getLayout()
+	public ParsedTree getParsedTree()
 	{
-		return layout;
+		return parsedTree;
 	}
 
 	/**
-	 * @param tree the tree to set
+	 * Call back method to be executed
 	 */
-	public void setTree(String tree)
-	{
-		this.tree = tree;
-	}
+	public abstract void execute();
 
 	/**
-	 * @return the tree
+	 * Called instead of execute if the tree or its layout can't be retrieved. By default the failure is
+	 * only logged.
+	 * 
+	 * @param caught the failure.
 	 */
-	public String getTree()
+	public void onFailure(Throwable caught)
 	{
-		return tree;
+		GWT.log("unable to retrieve tree", caught);
 	}
-
-	/**
-	 * Call back method to be executed
-	 */
-	public abstract void execute();
 }
@@ -1,17 +1,25 @@
 package org.iplantc.tr.demo.server;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URLConnection;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
+import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.log4j.Logger;
 
@@ -20,19 +28,34 @@ import org.iplantc.de.shared.services.BaseServiceCallWrapper;
 import org.iplantc.de.shared.services.HTTPPart;
 import org.iplantc.de.shared.services.MultiPartServiceWrapper;
 import org.iplantc.de.shared.services.ServiceCallWrapper;
+import org.iplantc.tr.demo.client.services.BatchDEService;
+import org.iplantc.tr.demo.shared.ServiceCallResult;
+import org.json.JSONException;
 
 import com.google.gwt.user.client.rpc.SerializationException;
 import com.google.gwt.user.server.rpc.RemoteServiceServlet;
 
 /**
- * Dispatches HTTP requests to other services.
+ * Dispatches HTTP requests to other services. Several requests may be dispatched in a single round
+ * trip through {@link #getBatchServiceData(List)}, in which case they're sent concurrently.
  */
-public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet implements DEService
+public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet implements DEService,
+		BatchDEService
 {
 
 	private static final long serialVersionUID = 1L;
 	private static final Logger LOGGER = Logger.getLogger(BaseDEServiceDispatcher.class);
 
+	/**
+	 * The default minimum size, in characters, of an RPC response that will be compressed.
+	 */
+	public static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
+	/**
+	 * The default maximum number of service calls in a batch.
+	 */
+	public static final int DEFAULT_BATCH_MAX_SIZE = 32;
+
 	/**
 	 * The servlet context to use when looking up the keystore path.
 	 */
@@ -48,6 +71,129 @@ public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet imple
 	 */
 	private UrlConnector urlConnector;
 
+	/**
+	 * Caches responses to GET requests and read-only POST queries, or null if response caching is
+	 * disabled.
+	 */
+	private ResponseCache responseCache;
+
+	/**
+	 * Substrings of the addresses of read-only queries sent as POST requests, whose responses are cached
+	 * like those of GET requests.
+	 */
+	private final List<String> cacheablePostAddresses = new ArrayList<String>();
+
+	/**
+	 * Collapses identical concurrent GET and POST requests, or null if coalescing is disabled.
+	 */
+	private RequestCoalescer<String> coalescer;
+
+	/**
+	 * Performs requests to other services on bounded pools of threads, one for each class of request.
+	 */
+	private UpstreamLanes lanes;
+
+	/**
+	 * Fans the service calls in a batch out so that they're sent concurrently.
+	 */
+	private BatchExecutor batchExecutor;
+
+	/**
+	 * The maximum number of service calls in a batch.
+	 */
+	private int batchMaxSize = DEFAULT_BATCH_MAX_SIZE;
+
+	/**
+	 * True if gzip encoded responses should be requested from other services.
+	 */
+	private boolean upstreamGzip = true;
+
+	/**
+	 * The minimum size, in characters, of an RPC response that will be gzip compressed for clients that
+	 * accept it.
+	 */
+	private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+
+	/**
+	 * The servlet request being served by the thread that handed a call to the batch executor.
+	 */
+	private final ThreadLocal<HttpServletRequest> forwardedRequest = new ThreadLocal<HttpServletRequest>();
+
+	/**
+	 * Initializes the servlet. The URL connector set by the subclass may be replaced by one selected
+	 * through the servlet's initialization parameters. The response cache, request coalescer, upstream
+	 * lanes and batch executor are configured here as well, and all of them are registered with the
+	 * service monitor.
+	 * 
+	 * @param config the servlet configuration.
+	 * @throws ServletException if the configuration is invalid.
+	 */
+	@Override
+	public void init(ServletConfig config) throws ServletException
+	{
+		super.init(config);
+		urlConnector = UrlConnectorFactory.createUrlConnector(config, urlConnector);
+		responseCache = ResponseCache.fromConfig(config);
+		for(String address : InitParameters.getString(config, "cacheablePostAddresses", "").split(","))
+		{
+			if(address.trim().length() > 0)
+			{
+				cacheablePostAddresses.add(address.trim());
+			}
+		}
+		lanes = UpstreamLanes.fromConfig(config, urlConnector);
+		upstreamGzip = InitParameters.getBoolean(config, "upstreamGzip", true);
+		compressionThreshold =
+				InitParameters.getInt(config, "compressionThreshold", DEFAULT_COMPRESSION_THRESHOLD);
+		if(InitParameters.getBoolean(config, "coalesceRequests", true))
+		{
+			coalescer = new RequestCoalescer<String>();
+		}
+		batchMaxSize = InitParameters.getInt(config, "batchMaxSize", DEFAULT_BATCH_MAX_SIZE);
+		batchExecutor = new BatchExecutor(config.getServletName() + "-batch", InitParameters.getInt(
+				config, "batchMaxThreads", BatchExecutor.DEFAULT_MAX_THREADS));
+
+		ServiceMonitor monitor = ServiceMonitor.getInstance(config.getServletContext());
+		if(urlConnector instanceof StatisticsSource)
+		{
+			monitor.register(config.getServletName() + ".connections", (StatisticsSource)urlConnector);
+		}
+		lanes.register(monitor, config.getServletName());
+		if(responseCache != null)
+		{
+			monitor.register(config.getServletName() + ".responseCache", responseCache);
+		}
+		if(coalescer != null)
+		{
+			monitor.register(config.getServletName() + ".coalescer", coalescer);
+		}
+		monitor.register(config.getServletName() + ".batch", batchExecutor);
+	}
+
+	/**
+	 * Stops the upstream lanes and batch executor and removes this servlet's resources from the service monitor.
+	 */
+	@Override
+	public void destroy()
+	{
+		ServiceMonitor monitor = ServiceMonitor.getInstance(getServletContext());
+		if(lanes != null)
+		{
+			lanes.shutdown();
+			lanes.unregister(monitor, getServletName());
+		}
+		if(batchExecutor != null)
+		{
+			batchExecutor.shutdown();
+		}
+
+		monitor.unregister(getServletName() + ".connections");
+		monitor.unregister(getServletName() + ".responseCache");
+		monitor.unregister(getServletName() + ".coalescer");
+		monitor.unregister(getServletName() + ".batch");
+		super.destroy();
+	}
+
 	/**
 	 * Sets the servlet context to use when looking up the keystore path.
 	 * 
@@ -85,7 +231,13 @@ public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet imple
 	 */
 	public HttpServletRequest getRequest()
 	{
-		return request == null ? getThreadLocalRequest() : request;
+		if(request != null)
+		{
+			return request;
+		}
+
+		HttpServletRequest forwarded = forwardedRequest.get();
+		return forwarded == null ? getThreadLocalRequest() : forwarded;
 	}
 
 	/**
@@ -109,37 +261,41 @@ public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet imple
 	 */
 	private String retrieveResult(URLConnection urlc) throws UnsupportedEncodingException, IOException
 	{
-		StringBuffer buffer = new StringBuffer();
-		BufferedReader br = null;
+		InputStream in = null;
 		try
 		{
-			br = new BufferedReader(new InputStreamReader(urlc.getInputStream(), "UTF-8"));
-
-			while(true)
-			{
-				int ch = br.read();
-
-				if(ch < 0)
-				{
-					break;
-				}
-
-				buffer.append((char)ch);
-			}
+			in = StreamUtils.getDecodedInputStream(urlc);
+			return StreamUtils.readString(in, "UTF-8");
 		}
 		finally
 		{
-			if(br != null)
+			if(in != null)
 			{
-				br.close();
+				in.close();
 			}
 		}
+	}
 
-		return buffer.toString();
+	/**
+	 * Compresses RPC responses that are at least as large as the compression threshold. GWT only calls
+	 * this method for clients that accept gzip encoded responses.
+	 * 
+	 * @param request the servlet request.
+	 * @param response the servlet response.
+	 * @param responsePayload the RPC response payload.
+	 * @return true if the response should be compressed.
+	 */
+	@Override
+	protected boolean shouldCompressResponse(HttpServletRequest request,
+			HttpServletResponse response, String responsePayload)
+	{
+		return responsePayload.length() >= compressionThreshold;
 	}
 
 	/**
-	 * Obtains a URL connection.
+	 * Obtains a URL connection. The connection is obtained from the connector reserved for the address's
+	 * upstream lane, if there is one. Gzip encoded responses are requested unless the
+	 * <code>upstreamGzip</code> initialization parameter is false.
 	 * 
 	 * @param address the address to connect to.
 	 * @return the URL connection.
@@ -147,11 +303,24 @@ public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet imple
 	 */
 	protected HttpURLConnection getUrlConnection(String address) throws IOException
 	{
-		if(urlConnector == null)
+		HttpURLConnection urlc;
+		if(lanes != null)
+		{
+			urlc = lanes.getLane(address).getUrlConnection(getRequest(), address);
+		}
+		else if(urlConnector != null)
+		{
+			urlc = urlConnector.getUrlConnection(getRequest(), address);
+		}
+		else
 		{
 			throw new IOException("No URL connector available.");
 		}
-		return urlConnector.getUrlConnection(getRequest(), address);
+		if(upstreamGzip)
+		{
+			urlc.setRequestProperty("Accept-Encoding", "gzip");
+		}
+		return urlc;
 	}
 
 	/**
@@ -161,7 +330,7 @@ public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet imple
 	 * @return the URL connection used to send the request.
 	 * @throws IOException if an error occurs.
 	 */
-	private URLConnection get(String address) throws IOException
+	private HttpURLConnection get(String address) throws IOException
 	{
 		if(LOGGER.isDebugEnabled())
 		{
@@ -169,7 +338,7 @@ public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet imple
 		}
 
 		// make post mode connection
-		URLConnection urlc = getUrlConnection(address);
+		HttpURLConnection urlc = getUrlConnection(address);
 		urlc.setDoOutput(true);
 
 		LOGGER.debug("GET request sent to " + address);
@@ -199,18 +368,20 @@ public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet imple
 		urlc.setDoOutput(true);
 
 		// send post
-		OutputStreamWriter outRemote = null;
+		boolean sent = false;
 		try
 		{
-			outRemote = new OutputStreamWriter(urlc.getOutputStream());
+			OutputStreamWriter outRemote = new OutputStreamWriter(urlc.getOutputStream());
 			outRemote.write(body);
-			outRemote.flush();
+			outRemote.close();
+			sent = true;
 		}
 		finally
 		{
-			if(outRemote != null)
+			if(!sent)
 			{
-				outRemote.close();
+				// nothing will read the response, so the connection has to be released here
+				urlc.disconnect();
 			}
 		}
 
@@ -220,28 +391,8 @@ public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet imple
 	}
 
 	/**
-	 * Creates the MIME content type for the given multipart boundary.
-	 * 
-	 * @param boundary the MIME multipart boundary.
-	 * @return the content type.
-	 */
-	private String getContentType(String boundary)
-	{
-		return "multipart/form-data; boundary=" + boundary;
-	}
-
-	/**
-	 * Builds a MIME multiparty boundary.
-	 * 
-	 * @return the boundary.
-	 */
-	private String buildBoundary()
-	{
-		return "--------------------" + Long.toString(System.currentTimeMillis(), 16);
-	}
-
-	/**
-	 * Sends a multipart HTTP update request to another service.
+	 * Sends a multipart HTTP update request to another service. The request body is streamed using
+	 * chunked transfer encoding so that it's never buffered in full.
 	 * 
 	 * @param address the address to send the request to.
 	 * @param parts the components of the multipart request.
@@ -257,37 +408,36 @@ public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet imple
 			LOGGER.debug("sending a multipart UPDATE request to " + address);
 		}
 
-		String boundary = buildBoundary();
+		String boundary = MultipartWriter.buildBoundary();
 
 		// make post mode connection
 		HttpURLConnection urlc = getUrlConnection(address);
-		urlc.setRequestProperty("content-type", getContentType(boundary));
+		urlc.setRequestProperty("content-type", MultipartWriter.getContentType(boundary));
 		urlc.setRequestMethod(requestMethod);
 		urlc.setDoOutput(true);
+		urlc.setChunkedStreamingMode(StreamUtils.COPY_BUFFER_SIZE);
 
 		// send post
-		DataOutputStream outRemote = null;
+		boolean sent = false;
 		try
 		{
-			outRemote = new DataOutputStream(urlc.getOutputStream());
+			OutputStream outRemote = urlc.getOutputStream();
+			MultipartWriter writer = new MultipartWriter(outRemote, boundary);
 			for(HTTPPart part : parts)
 			{
-				outRemote.writeBytes("--" + boundary);
-				outRemote.writeBytes("\n");
-				outRemote.writeBytes("Content-Disposition: form-data; " + part.getDisposition());
-				outRemote.writeBytes("\r\n\r\n");
-				outRemote.writeBytes(part.getBody());
-				outRemote.writeBytes("\r\n--" + boundary + "--\r\n");
+				writer.writePart(part.getDisposition(), part.getBody());
 			}
 
-			outRemote.flush();
+			writer.finish();
 			outRemote.close();
+			sent = true;
 		}
 		finally
 		{
-			if(outRemote != null)
+			if(!sent)
 			{
-				outRemote.close();
+				// nothing will read the response, so the connection has to be released here
+				urlc.disconnect();
 			}
 		}
 
@@ -400,6 +550,213 @@ public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet imple
 		return ret;
 	}
 
+	/**
+	 * Builds the key under which the response to a service call is cached. GET requests are cached by
+	 * address. POST requests are only cached if they're sent to one of the
+	 * <code>cacheablePostAddresses</code>, by the address and the members of the query in the request
+	 * body, so that the same query is found whatever order its members were written in.
+	 * 
+	 * @param wrapper the service call wrapper.
+	 * @param address the resolved service address.
+	 * @return the key, or null if the response may not be cached.
+	 */
+	private String getCacheKey(ServiceCallWrapper wrapper, String address)
+	{
+		if(responseCache == null)
+		{
+			return null;
+		}
+
+		String key = null;
+		if(wrapper.getType() == ServiceCallWrapper.Type.GET)
+		{
+			key = address;
+		}
+		else if(wrapper.getType() == ServiceCallWrapper.Type.POST && isCacheablePost(address))
+		{
+			key = buildQueryKey(address, wrapper.getBody());
+		}
+
+		return key != null && responseCache.isCacheable(key) ? key : null;
+	}
+
+	/**
+	 * Determines whether POST requests to an address are read-only queries.
+	 * 
+	 * @param address the address.
+	 * @return true if the address contains one of the <code>cacheablePostAddresses</code>.
+	 */
+	private boolean isCacheablePost(String address)
+	{
+		for(String cacheable : cacheablePostAddresses)
+		{
+			if(address.indexOf(cacheable) >= 0)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Builds the cache key of a query sent as a POST request. The key is the address followed by the
+	 * query's members in order of name, for example
+	 * <code>.../related-nodes?edgeSelected=false&amp;familyName=f&amp;geneTreeNode=7&amp;includeSubtree=false</code>.
+	 * 
+	 * @param address the address.
+	 * @param body the request body.
+	 * @return the key, or null if the body isn't an object whose members are all scalar values.
+	 */
+	private static String buildQueryKey(String address, String body)
+	{
+		if(body == null)
+		{
+			return null;
+		}
+
+		try
+		{
+			Map<String, String> members = new TreeMap<String, String>();
+			JsonScanner scanner = new JsonScanner(body);
+			scanner.beginObject();
+			while(scanner.hasNext())
+			{
+				String name = scanner.nextName();
+				char c = scanner.peek();
+				if(c == '{' || c == '[')
+				{
+					return null;
+				}
+				members.put(name, scanner.nextScalar());
+			}
+			scanner.endObject();
+
+			StringBuilder key = new StringBuilder(address);
+			char separator = '?';
+			for(Map.Entry<String, String> member : members.entrySet())
+			{
+				key.append(separator).append(member.getKey()).append('=').append(member.getValue());
+				separator = '&';
+			}
+			return key.toString();
+		}
+		catch(JSONException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Determines whether identical concurrent service calls of the given type may share a single request
+	 * to the remote service. Only GET and POST requests are coalesced.
+	 * 
+	 * @param type the type of service call.
+	 * @return true if identical concurrent calls may be coalesced.
+	 */
+	private boolean isCoalescable(ServiceCallWrapper.Type type)
+	{
+		return coalescer != null
+				&& (type == ServiceCallWrapper.Type.GET || type == ServiceCallWrapper.Type.POST);
+	}
+
+	/**
+	 * Performs a call within the limits of the address's upstream lane.
+	 * 
+	 * @param <V> the type of the result.
+	 * @param address the address the call will be sent to.
+	 * @param call the call to perform.
+	 * @return the result of the call.
+	 * @throws IOException if the call fails, times out or is rejected.
+	 */
+	private <V> V executeUpstream(String address, Callable<V> call) throws IOException
+	{
+		if(lanes == null)
+		{
+			throw new IOException("No upstream lanes available.");
+		}
+
+		return lanes.getLane(address).getExecutor().execute(call);
+	}
+
+	/**
+	 * Sends a GET request for a cacheable response to another service and caches the response along with
+	 * any validators the service returns. If an expired response is available, the request is made
+	 * conditional on the response having changed.
+	 * 
+	 * @param address the address to send the request to.
+	 * @param stale the expired response or null if there isn't one.
+	 * @return the response.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private String fetchCacheable(String address, ResponseCache.CachedResponse stale)
+			throws IOException
+	{
+		HttpURLConnection urlc = get(address);
+		if(stale != null)
+		{
+			if(stale.getETag() != null)
+			{
+				urlc.setRequestProperty("If-None-Match", stale.getETag());
+			}
+			if(stale.getLastModified() > 0)
+			{
+				urlc.setIfModifiedSince(stale.getLastModified());
+			}
+
+			if(urlc.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED)
+			{
+				// there's no body, but closing the stream frees the connection
+				urlc.getInputStream().close();
+				LOGGER.debug("cached response for " + address + " is still valid");
+				responseCache.renew(address, stale);
+				return stale.getValue();
+			}
+		}
+
+		String result = retrieveResult(urlc);
+		responseCache.put(address, result, urlc.getHeaderField("ETag"), urlc.getLastModified());
+		return result;
+	}
+
+	/**
+	 * Sends a request to another service and retrieves the response.
+	 * 
+	 * @param type the type of service call.
+	 * @param address the address to send the request to.
+	 * @param body the request body, used for PUT and POST requests.
+	 * @return the response.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private String fetch(ServiceCallWrapper.Type type, String address, String body) throws IOException
+	{
+		URLConnection urlc = null;
+
+		switch (type)
+		{
+			case GET:
+				urlc = get(address);
+				break;
+
+			case PUT:
+				urlc = update(address, body, "PUT");
+				break;
+
+			case POST:
+				urlc = update(address, body, "POST");
+				break;
+
+			case DELETE:
+				urlc = delete(address);
+				break;
+
+			default:
+				break;
+		}
+
+		return retrieveResult(urlc);
+	}
+
 	/**
 	 * Retrieve the service address for the wrapper.
 	 * 
@@ -427,38 +784,71 @@ public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet imple
 	public String getServiceData(ServiceCallWrapper wrapper) throws SerializationException
 	{
 		String json = null;
-		URLConnection urlc = null;
 
 		if(isValidServiceCall(wrapper))
 		{
-			String address = retrieveServiceAddress(wrapper);
-			String body = wrapper.getBody();
-			System.out.println("request json==>" + body);
-			try
+			final ServiceCallWrapper.Type type = wrapper.getType();
+			final String address = retrieveServiceAddress(wrapper);
+			final String body = wrapper.getBody();
+			if(LOGGER.isDebugEnabled())
 			{
-				switch (wrapper.getType())
-				{
-					case GET:
-						urlc = get(address);
-						break;
-
-					case PUT:
-						urlc = update(address, body, "PUT");
-						break;
-
-					case POST:
-						urlc = update(address, body, "POST");
-						break;
-
-					case DELETE:
-						urlc = delete(address);
-						break;
+				LOGGER.debug("request json==>" + body);
+			}
 
-					default:
-						break;
+			final String cacheKey = getCacheKey(wrapper, address);
+			ResponseCache.CachedResponse cached = null;
+			if(cacheKey != null)
+			{
+				cached = responseCache.lookup(cacheKey);
+				if(cached != null && cached.isFresh())
+				{
+					LOGGER.debug("response cache hit for " + cacheKey);
+					return cached.getValue();
 				}
+			}
 
-				json = retrieveResult(urlc);
+			final ResponseCache.CachedResponse stale = cached;
+			try
+			{
+				Callable<String> call = new Callable<String>()
+				{
+					@Override
+					public String call() throws Exception
+					{
+						return executeUpstream(address, new Callable<String>()
+						{
+							@Override
+							public String call() throws IOException
+							{
+								if(cacheKey == null)
+								{
+									return fetch(type, address, body);
+								}
+								if(type == ServiceCallWrapper.Type.GET)
+								{
+									return fetchCacheable(address, stale);
+								}
+
+								String result = fetch(type, address, body);
+								responseCache.put(cacheKey, result);
+								return result;
+							}
+						});
+					}
+				};
+
+				if(isCoalescable(type))
+				{
+					// cached queries are coalesced by their cache key, so equivalent bodies share a
+					// request
+					json =
+							coalescer.execute(type + " "
+									+ (cacheKey == null ? address + "\n" + body : cacheKey), call);
+				}
+				else
+				{
+					json = call.call();
+				}
 			}
 			catch(Exception ex)
 			{
@@ -470,11 +860,109 @@ public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet imple
 			}
 		}
 
-		LOGGER.debug("json==>" + json);
-		System.out.println("json==>" + json);
+		if(LOGGER.isDebugEnabled())
+		{
+			LOGGER.debug("json==>" + json);
+		}
 		return json;
 	}
 
+	/**
+	 * Implements the batch entry point for the service dispatcher. The service calls are performed
+	 * concurrently, each exactly as if it had been passed to {@link #getServiceData(ServiceCallWrapper)},
+	 * so they share the response cache, request coalescing and upstream lanes. A failed call doesn't
+	 * affect the others; its failure is reported in its own result.
+	 * 
+	 * @param wrappers the service call wrappers.
+	 * @return the result of each service call, in the same order as the wrappers.
+	 * @throws SerializationException if the batch is too large or the request is interrupted.
+	 */
+	@Override
+	public List<ServiceCallResult> getBatchServiceData(List<ServiceCallWrapper> wrappers)
+			throws SerializationException
+	{
+		List<ServiceCallResult> results = new ArrayList<ServiceCallResult>();
+		if(wrappers == null || wrappers.isEmpty())
+		{
+			return results;
+		}
+
+		if(wrappers.size() > batchMaxSize)
+		{
+			throw new SerializationException("too many service calls in batch: " + wrappers.size()
+					+ " (maximum " + batchMaxSize + ")");
+		}
+
+		final HttpServletRequest callerRequest = getRequest();
+		List<Callable<String>> calls = new ArrayList<Callable<String>>(wrappers.size());
+		for(final ServiceCallWrapper wrapper : wrappers)
+		{
+			calls.add(new Callable<String>()
+			{
+				@Override
+				public String call() throws Exception
+				{
+					forwardedRequest.set(callerRequest);
+					try
+					{
+						return getServiceData(wrapper);
+					}
+					finally
+					{
+						forwardedRequest.remove();
+					}
+				}
+			});
+		}
+
+		List<FutureTask<String>> tasks;
+		try
+		{
+			tasks = batchExecutor.invokeAll(calls);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new SerializationException("interrupted while performing batch");
+		}
+
+		for(FutureTask<String> task : tasks)
+		{
+			results.add(getResult(task));
+		}
+
+		return results;
+	}
+
+	/**
+	 * Converts a completed service call from a batch into its result.
+	 * 
+	 * @param task the completed service call.
+	 * @return the result.
+	 */
+	private ServiceCallResult getResult(FutureTask<String> task)
+	{
+		try
+		{
+			String json = task.get();
+			return json == null ? ServiceCallResult.failure("invalid service call")
+					: ServiceCallResult.success(json);
+		}
+		catch(ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if(cause instanceof SerializationException && cause.getCause() != null)
+			{
+				cause = cause.getCause();
+			}
+			return ServiceCallResult.failure(cause.toString());
+		}
+		catch(Exception e)
+		{
+			return ServiceCallResult.failure(e.toString());
+		}
+	}
+
 	/**
 	 * Implements entry point for service dispatcher for streaming data back to client.
 	 * 
@@ -486,7 +974,22 @@ public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet imple
 	public DEServiceInputStream getServiceStream(ServiceCallWrapper wrapper)
 			throws SerializationException, IOException
 	{
-		String json = null;
+		return getServiceStream(wrapper, true);
+	}
+
+	/**
+	 * Implements entry point for service dispatcher for streaming data back to client, optionally
+	 * leaving a gzip encoded response body encoded so that it can be passed straight through.
+	 * 
+	 * @param wrapper the service call wrapper.
+	 * @param decode true if a gzip encoded response body should be decompressed.
+	 * @return an input stream that can be used to retrieve the response from the service call.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws SerializationException if any other error occurs.
+	 */
+	public DEServiceInputStream getServiceStream(ServiceCallWrapper wrapper, boolean decode)
+			throws SerializationException, IOException
+	{
 		URLConnection urlc = null;
 
 		if(isValidServiceCall(wrapper))
@@ -527,9 +1030,12 @@ public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet imple
 			}
 		}
 
-		LOGGER.debug("json==>" + json);
-		System.out.println("json==>" + json);
-		return new DEServiceInputStream(urlc);
+		if(urlc == null)
+		{
+			throw new SerializationException("invalid service call");
+		}
+
+		return new DEServiceInputStream(urlc, decode);
 	}
 
 	/**
@@ -542,30 +1048,39 @@ public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet imple
 	public String getServiceData(MultiPartServiceWrapper wrapper) throws SerializationException
 	{
 		String json = null;
-		URLConnection urlc = null;
 
 		if(isValidServiceCall(wrapper))
 		{
-			String address = retrieveServiceAddress(wrapper);
-			List<HTTPPart> parts = wrapper.getParts();
+			final MultiPartServiceWrapper.Type type = wrapper.getType();
+			final String address = retrieveServiceAddress(wrapper);
+			final List<HTTPPart> parts = wrapper.getParts();
 
 			try
 			{
-				switch (wrapper.getType())
+				json = executeUpstream(address, new Callable<String>()
 				{
-					case PUT:
-						urlc = updateMultipart(address, parts, "PUT");
-						break;
+					@Override
+					public String call() throws IOException
+					{
+						URLConnection urlc = null;
 
-					case POST:
-						urlc = updateMultipart(address, parts, "POST");
-						break;
+						switch (type)
+						{
+							case PUT:
+								urlc = updateMultipart(address, parts, "PUT");
+								break;
 
-					default:
-						break;
-				}
+							case POST:
+								urlc = updateMultipart(address, parts, "POST");
+								break;
 
-				json = retrieveResult(urlc);
+							default:
+								break;
+						}
+
+						return retrieveResult(urlc);
+					}
+				});
 			}
 			catch(Exception ex)
 			{
@@ -576,7 +1091,10 @@ public abstract class BaseDEServiceDispatcher extends RemoteServiceServlet imple
 			}
 		}
 
-		System.out.println("json==>" + json);
+		if(LOGGER.isDebugEnabled())
+		{
+			LOGGER.debug("json==>" + json);
+		}
 		return json;
 	}
 }
@@ -0,0 +1,179 @@
+package org.iplantc.tr.demo.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fans the calls in a batch out over a small pool of threads so that they're sent to other services
+ * concurrently. The calls themselves are still subject to the limits of the upstream lanes; this pool
+ * only supplies the threads that wait for them. When every thread is busy, the remaining calls in a
+ * batch are performed on the thread that submitted the batch, so a batch always completes even under
+ * load, just with less parallelism.
+ */
+public class BatchExecutor implements StatisticsSource
+{
+	/**
+	 * The default maximum number of threads used to fan out batches.
+	 */
+	public static final int DEFAULT_MAX_THREADS = 16;
+
+	private final int maxThreads;
+	private final ThreadPoolExecutor executor;
+
+	private final AtomicLong batchCount = new AtomicLong();
+	private final AtomicLong callCount = new AtomicLong();
+
+	/**
+	 * The number of calls that were performed on the submitting thread because the pool was busy.
+	 */
+	private final AtomicLong callerRunsCount = new AtomicLong();
+
+	/**
+	 * @param name the name used for the executor's threads.
+	 * @param maxThreads the maximum number of threads used to fan out batches.
+	 */
+	public BatchExecutor(final String name, int maxThreads)
+	{
+		if(maxThreads < 1)
+		{
+			throw new IllegalArgumentException("maxThreads must be positive");
+		}
+
+		this.maxThreads = maxThreads;
+		executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory()
+				{
+					private final AtomicInteger threadCount = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable runnable)
+					{
+						Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Performs a batch of calls concurrently and waits for all of them to complete. The first call is
+	 * always performed on the current thread, which would otherwise sit idle.
+	 *
+	 * @param <V> the type of the results.
+	 * @param calls the calls to perform.
+	 * @return a completed task for each call, in the same order as the calls.
+	 * @throws InterruptedException if the current thread is interrupted while waiting.
+	 */
+	public <V> List<FutureTask<V>> invokeAll(List<? extends Callable<V>> calls)
+			throws InterruptedException
+	{
+		batchCount.incrementAndGet();
+		callCount.addAndGet(calls.size());
+
+		List<FutureTask<V>> tasks = new ArrayList<FutureTask<V>>(calls.size());
+		for(Callable<V> call : calls)
+		{
+			tasks.add(new FutureTask<V>(call));
+		}
+
+		List<FutureTask<V>> overflow = new ArrayList<FutureTask<V>>();
+		for(int i = 1;i < tasks.size();i++)
+		{
+			try
+			{
+				executor.execute(tasks.get(i));
+			}
+			catch(RejectedExecutionException e)
+			{
+				overflow.add(tasks.get(i));
+			}
+		}
+
+		if(!tasks.isEmpty())
+		{
+			tasks.get(0).run();
+		}
+
+		callerRunsCount.addAndGet(overflow.size());
+		for(FutureTask<V> task : overflow)
+		{
+			task.run();
+		}
+
+		try
+		{
+			for(FutureTask<V> task : tasks)
+			{
+				awaitQuietly(task);
+			}
+		}
+		catch(InterruptedException e)
+		{
+			for(FutureTask<V> task : tasks)
+			{
+				task.cancel(true);
+			}
+			throw e;
+		}
+
+		return tasks;
+	}
+
+	/**
+	 * Waits for a task to complete, ignoring the way in which it completed.
+	 *
+	 * @param task the task.
+	 * @throws InterruptedException if the current thread is interrupted while waiting.
+	 */
+	private void awaitQuietly(FutureTask<?> task) throws InterruptedException
+	{
+		try
+		{
+			task.get();
+		}
+		catch(InterruptedException e)
+		{
+			throw e;
+		}
+		catch(Exception e)
+		{
+			// the caller inspects the task itself
+		}
+	}
+
+	/**
+	 * Stops accepting batches and interrupts any calls in progress.
+	 */
+	public void shutdown()
+	{
+		executor.shutdownNow();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, Long> getStatistics()
+	{
+		Map<String, Long> stats = new LinkedHashMap<String, Long>();
+		stats.put("maxThreads", (long)maxThreads);
+		stats.put("active", (long)executor.getActiveCount());
+		stats.put("batches", batchCount.get());
+		stats.put("calls", callCount.get());
+		stats.put("callerRuns", callerRunsCount.get());
+		return Collections.unmodifiableMap(stats);
+	}
+}
@@ -0,0 +1,234 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.ByteArrayOutputStream;
+
+import org.iplantc.tr.demo.shared.CompactLayout;
+import org.json.JSONException;
+
+/**
+ * Converts JSON layouts into the compact layout encoding described by {@link CompactLayout}. The JSON
+ * layout is scanned rather than parsed, and coordinates are quantized to fixed-point numbers with
+ * {@link #FRACTION_BITS} fractional bits, which is far finer than a screen can show.
+ */
+public class CompactLayoutEncoder
+{
+	/**
+	 * The number of fractional bits used for coordinates.
+	 */
+	public static final int FRACTION_BITS = 20;
+
+	private static final char[] BASE64 =
+			"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	/**
+	 * The values written for the previous node, from which the values of the next node are encoded.
+	 */
+	private final long[] previous = new long[CompactLayout.VALUES_PER_NODE];
+
+	/**
+	 * The values read for the current node.
+	 */
+	private final long[] current = new long[CompactLayout.VALUES_PER_NODE];
+
+	private CompactLayoutEncoder()
+	{
+		out.write(CompactLayout.VERSION);
+		out.write(FRACTION_BITS);
+	}
+
+	/**
+	 * Encodes a JSON layout.
+	 *
+	 * @param json the layout in JSON format.
+	 * @return the compact layout or null if the layout can't be encoded, for example because a node has
+	 *         no bounding box.
+	 * @throws JSONException if the layout isn't valid JSON.
+	 */
+	public static String encode(String json) throws JSONException
+	{
+		JsonScanner scanner = new JsonScanner(json);
+		if(!scanner.findMember("nodes") || scanner.peek() != '[')
+		{
+			return null;
+		}
+
+		CompactLayoutEncoder encoder = new CompactLayoutEncoder();
+		scanner.beginArray();
+		while(scanner.hasNext())
+		{
+			if(!encoder.readNode(scanner))
+			{
+				return null;
+			}
+			encoder.writeNode();
+		}
+		scanner.endArray();
+
+		return CompactLayout.PREFIX + toBase64(encoder.out.toByteArray());
+	}
+
+	/**
+	 * Reads the values of a node into the current node's values.
+	 *
+	 * @param scanner the scanner, positioned at the start of the node.
+	 * @return true if the node had an ID, a position and a bounding box.
+	 * @throws JSONException if the layout isn't valid JSON.
+	 */
+	private boolean readNode(JsonScanner scanner) throws JSONException
+	{
+		int found = 0;
+		scanner.beginObject();
+		while(scanner.hasNext())
+		{
+			String name = scanner.nextName();
+			if(name.equals("id"))
+			{
+				current[0] = (long)scanner.nextDouble();
+				found |= 1;
+			}
+			else if(name.equals("position") && readVector(scanner, 1))
+			{
+				found |= 2;
+			}
+			else if(name.equals("boundingBox") && scanner.peek() == '{')
+			{
+				scanner.beginObject();
+				while(scanner.hasNext())
+				{
+					String corner = scanner.nextName();
+					if(corner.equals("min") && readVector(scanner, 3))
+					{
+						found |= 4;
+					}
+					else if(corner.equals("max") && readVector(scanner, 5))
+					{
+						found |= 8;
+					}
+					else
+					{
+						scanner.skipValue();
+					}
+				}
+				scanner.endObject();
+			}
+			else
+			{
+				scanner.skipValue();
+			}
+		}
+		scanner.endObject();
+
+		return found == 15;
+	}
+
+	/**
+	 * Reads a vector into two of the current node's values. Nothing is consumed if the vector is null.
+	 *
+	 * @param scanner the scanner, positioned at the start of the vector.
+	 * @param index the index of the value to store the x coordinate in.
+	 * @return true if the vector had both coordinates.
+	 * @throws JSONException if the layout isn't valid JSON.
+	 */
+	private boolean readVector(JsonScanner scanner, int index) throws JSONException
+	{
+		if(scanner.peek() != '{')
+		{
+			return false;
+		}
+
+		int found = 0;
+		scanner.beginObject();
+		while(scanner.hasNext())
+		{
+			String name = scanner.nextName();
+			if(name.equals("x"))
+			{
+				current[index] = quantize(scanner.nextDouble());
+				found |= 1;
+			}
+			else if(name.equals("y"))
+			{
+				current[index + 1] = quantize(scanner.nextDouble());
+				found |= 2;
+			}
+			else
+			{
+				scanner.skipValue();
+			}
+		}
+		scanner.endObject();
+
+		return found == 3;
+	}
+
+	/**
+	 * Converts a coordinate to a fixed-point number.
+	 *
+	 * @param value the coordinate.
+	 * @return the fixed-point number.
+	 */
+	private static long quantize(double value)
+	{
+		return Math.round(value * (1L << FRACTION_BITS));
+	}
+
+	/**
+	 * Writes the current node's values as differences from the previous node's values.
+	 */
+	private void writeNode()
+	{
+		for(int i = 0;i < current.length;i++)
+		{
+			long delta = current[i] - previous[i];
+			writeVarint((delta << 1) ^ (delta >> 63));
+			previous[i] = current[i];
+		}
+	}
+
+	/**
+	 * Writes an unsigned variable-length integer, seven bits at a time, least significant bits first.
+	 *
+	 * @param value the integer.
+	 */
+	private void writeVarint(long value)
+	{
+		while((value & ~0x7fL) != 0)
+		{
+			out.write((int)((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int)value);
+	}
+
+	/**
+	 * Encodes bytes as base64.
+	 *
+	 * @param bytes the bytes.
+	 * @return the base64 text.
+	 */
+	private static String toBase64(byte[] bytes)
+	{
+		StringBuilder builder = new StringBuilder((bytes.length + 2) / 3 * 4);
+		for(int i = 0;i < bytes.length;i += 3)
+		{
+			int remaining = bytes.length - i;
+			int chunk = (bytes[i] & 0xff) << 16;
+			if(remaining > 1)
+			{
+				chunk |= (bytes[i + 1] & 0xff) << 8;
+			}
+			if(remaining > 2)
+			{
+				chunk |= bytes[i + 2] & 0xff;
+			}
+
+			builder.append(BASE64[(chunk >> 18) & 0x3f]);
+			builder.append(BASE64[(chunk >> 12) & 0x3f]);
+			builder.append(remaining > 1 ? BASE64[(chunk >> 6) & 0x3f] : '=');
+			builder.append(remaining > 2 ? BASE64[chunk & 0x3f] : '=');
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,576 @@
+package org.iplantc.tr.demo.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.iplantc.phyloviewer.shared.model.INode;
+import org.iplantc.phyloviewer.shared.model.ITree;
+import org.iplantc.phyloviewer.shared.model.Node;
+import org.iplantc.phyloviewer.shared.model.Tree;
+import org.json.JSONException;
+
+/**
+ * A tree stored in arrays of primitives rather than as node objects. Nodes are identified by dense
+ * indices assigned in pre-order, so the root is node 0 and every subtree occupies a contiguous range
+ * of indices. Each node's parent, first child and next sibling are stored as indices, its branch length
+ * as a double (<code>NaN</code> if it has none) and its label as an index into a table of distinct
+ * labels.
+ *
+ * A tree with <i>n</i> nodes is held in a handful of arrays of length <i>n</i>, so building and laying
+ * out a large tree creates very little garbage compared with a tree of <code>Node</code> objects.
+ * Trees can be built directly from the JSON produced by the tree reconciliation service's tree data
+ * formatter, in the same form read by {@link StreamingTreeBuilder}, or converted from and to
+ * <code>Tree</code>. Trees are never modified once built; pruning and re-rooting create new trees.
+ */
+public class CompactTree
+{
+	/**
+	 * The index used for missing parents, children and siblings.
+	 */
+	public static final int NONE = -1;
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private int size;
+	private int[] ids;
+	private int[] parents;
+	private int[] firstChildren;
+	private int[] nextSiblings;
+	private int[] childCounts;
+	private double[] branchLengths;
+	private int[] labels;
+
+	/**
+	 * The distinct labels, indexed by label number.
+	 */
+	private final List<String> labelTable = new ArrayList<String>();
+
+	/**
+	 * The label numbers, indexed by label. Only used while the tree is being built.
+	 */
+	private Map<String, Integer> labelNumbers = new HashMap<String, Integer>();
+
+	/**
+	 * The index of the last child added to each node. Only used while the tree is being built.
+	 */
+	private int[] lastChildren;
+
+	private CompactTree(int capacity)
+	{
+		capacity = Math.max(1, capacity);
+		ids = new int[capacity];
+		parents = new int[capacity];
+		firstChildren = new int[capacity];
+		nextSiblings = new int[capacity];
+		childCounts = new int[capacity];
+		branchLengths = new double[capacity];
+		labels = new int[capacity];
+		lastChildren = new int[capacity];
+	}
+
+	/**
+	 * Builds a tree from JSON.
+	 *
+	 * @param json the tree in JSON format.
+	 * @return the tree.
+	 * @throws JSONException if the JSON is invalid or doesn't contain a tree.
+	 */
+	public static CompactTree parse(String json) throws JSONException
+	{
+		JsonScanner scanner = new JsonScanner(json);
+		if(!scanner.findMember("tree") || !scanner.findMember("root"))
+		{
+			throw new JSONException("no tree root found");
+		}
+
+		CompactTree tree = new CompactTree(INITIAL_CAPACITY);
+
+		// the index of each open node and whether its children are being read
+		int[] stack = new int[64];
+		boolean[] inChildren = new boolean[64];
+
+		scanner.beginObject();
+		stack[0] = tree.addNode(NONE);
+		int depth = 1;
+
+		while(depth > 0)
+		{
+			int current = stack[depth - 1];
+			if(inChildren[depth - 1])
+			{
+				if(scanner.hasNext())
+				{
+					scanner.beginObject();
+					if(depth == stack.length)
+					{
+						stack = Arrays.copyOf(stack, depth * 2);
+						inChildren = Arrays.copyOf(inChildren, depth * 2);
+					}
+					stack[depth] = tree.addNode(current);
+					inChildren[depth] = false;
+					depth++;
+				}
+				else
+				{
+					scanner.endArray();
+					inChildren[depth - 1] = false;
+				}
+			}
+			else if(scanner.hasNext())
+			{
+				inChildren[depth - 1] = tree.readMember(scanner, current);
+			}
+			else
+			{
+				scanner.endObject();
+				depth--;
+			}
+		}
+
+		tree.finish();
+		return tree;
+	}
+
+	/**
+	 * Converts a tree of node objects.
+	 *
+	 * @param source the tree.
+	 * @return the converted tree, which is empty if the source tree has no root.
+	 */
+	public static CompactTree fromTree(ITree source)
+	{
+		CompactTree tree = new CompactTree(INITIAL_CAPACITY);
+
+		List<INode> stack = new ArrayList<INode>();
+		List<Integer> stackParents = new ArrayList<Integer>();
+		if(source.getRootNode() != null)
+		{
+			stack.add(source.getRootNode());
+			stackParents.add(NONE);
+		}
+
+		while(!stack.isEmpty())
+		{
+			INode node = stack.remove(stack.size() - 1);
+			int index = tree.addNode(stackParents.remove(stackParents.size() - 1));
+			tree.ids[index] = node.getId();
+			tree.setLabel(index, node.getLabel());
+			Double branchLength = node.getBranchLength();
+			tree.branchLengths[index] = branchLength == null ? Double.NaN : branchLength;
+
+			// push the children in reverse so that they're numbered in order
+			for(int i = node.getNumberOfChildren() - 1;i >= 0;i--)
+			{
+				stack.add(node.getChild(i));
+				stackParents.add(index);
+			}
+		}
+
+		tree.finish();
+		return tree;
+	}
+
+	/**
+	 * Converts this tree to node objects.
+	 *
+	 * @return the tree.
+	 */
+	public Tree toTree()
+	{
+		Tree tree = new Tree();
+		if(size == 0)
+		{
+			return tree;
+		}
+
+		// children have higher indices than their parents, so build the nodes in reverse
+		Node[] nodes = new Node[size];
+		for(int i = size - 1;i >= 0;i--)
+		{
+			String label = getLabel(i);
+			Node node = new Node(ids[i], label == null ? "" : label);
+			if(hasBranchLength(i))
+			{
+				node.setBranchLength(branchLengths[i]);
+			}
+
+			Node[] children = new Node[childCounts[i]];
+			int child = firstChildren[i];
+			for(int j = 0;j < children.length;j++)
+			{
+				children[j] = nodes[child];
+				child = nextSiblings[child];
+			}
+			node.setChildren(children);
+			nodes[i] = node;
+		}
+
+		tree.setRootNode(nodes[0]);
+		return tree;
+	}
+
+	/**
+	 * Creates a copy of this tree in which the descendants of some nodes are removed, so that each of
+	 * those nodes becomes a leaf.
+	 *
+	 * @param collapsedIds the IDs of the nodes whose descendants are removed.
+	 * @return the pruned tree.
+	 */
+	public CompactTree prune(Set<Integer> collapsedIds)
+	{
+		CompactTree pruned = new CompactTree(size);
+
+		// the index of each copied node in the pruned tree, which is NONE for removed nodes
+		int[] copies = new int[size];
+		for(int i = 0;i < size;i++)
+		{
+			int parent = i == 0 ? NONE : copies[parents[i]];
+			if(i > 0 && (parent == NONE || collapsedIds.contains(ids[parents[i]])))
+			{
+				copies[i] = NONE;
+				continue;
+			}
+
+			copies[i] = pruned.copyNode(this, i, parent, branchLengths[i]);
+		}
+
+		pruned.finish();
+		return pruned;
+	}
+
+	/**
+	 * Creates a copy of this tree rooted at one of its nodes. The path from the old root to the new one
+	 * is reversed: each node on it becomes the last child of the node that was its child, and takes
+	 * over the length of the branch between them. All other nodes keep their children in order.
+	 *
+	 * @param index the index of the new root.
+	 * @return the re-rooted tree.
+	 */
+	public CompactTree reroot(int index)
+	{
+		CompactTree rerooted = new CompactTree(size);
+
+		// each node to copy, the node it's reached from and the index of its copy's parent
+		int[] stack = new int[64];
+		int[] from = new int[64];
+		int[] copyParents = new int[64];
+		stack[0] = index;
+		from[0] = NONE;
+		copyParents[0] = NONE;
+		int depth = 1;
+
+		while(depth > 0)
+		{
+			depth--;
+			int node = stack[depth];
+			int previous = from[depth];
+
+			double branchLength;
+			if(previous == NONE)
+			{
+				branchLength = Double.NaN;
+			}
+			else if(parents[node] == previous)
+			{
+				branchLength = branchLengths[node];
+			}
+			else
+			{
+				branchLength = branchLengths[previous];
+			}
+			int copy = rerooted.copyNode(this, node, copyParents[depth], branchLength);
+
+			// the new children are the old children other than the one the node was reached from,
+			// followed by the old parent; push them in reverse so that they're numbered in order, which
+			// means pushing the old parent first
+			int count = childCounts[node] + 1;
+			if(depth + count > stack.length)
+			{
+				int capacity = Math.max(stack.length * 2, depth + count);
+				stack = Arrays.copyOf(stack, capacity);
+				from = Arrays.copyOf(from, capacity);
+				copyParents = Arrays.copyOf(copyParents, capacity);
+			}
+
+			if(parents[node] != NONE && parents[node] != previous)
+			{
+				stack[depth] = parents[node];
+				from[depth] = node;
+				copyParents[depth] = copy;
+				depth++;
+			}
+			int children = depth;
+			for(int child = firstChildren[node];child != NONE;child = nextSiblings[child])
+			{
+				if(child != previous)
+				{
+					stack[depth] = child;
+					from[depth] = node;
+					copyParents[depth] = copy;
+					depth++;
+				}
+			}
+			reverse(stack, children, depth);
+			reverse(from, children, depth);
+			reverse(copyParents, children, depth);
+		}
+
+		rerooted.finish();
+		return rerooted;
+	}
+
+	/**
+	 * Finds a node by ID.
+	 *
+	 * @param id the ID of the node.
+	 * @return the index of the node or {@link #NONE} if there is no node with that ID.
+	 */
+	public int indexOf(int id)
+	{
+		for(int i = 0;i < size;i++)
+		{
+			if(ids[i] == id)
+			{
+				return i;
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * @return the number of nodes.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return the node's ID.
+	 */
+	public int getId(int index)
+	{
+		return ids[index];
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return the index of the node's parent or {@link #NONE} if the node is the root.
+	 */
+	public int getParent(int index)
+	{
+		return parents[index];
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return the index of the node's first child or {@link #NONE} if the node is a leaf.
+	 */
+	public int getFirstChild(int index)
+	{
+		return firstChildren[index];
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return the index of the node's next sibling or {@link #NONE} if the node is its parent's last
+	 *         child.
+	 */
+	public int getNextSibling(int index)
+	{
+		return nextSiblings[index];
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return the number of children the node has.
+	 */
+	public int getNumberOfChildren(int index)
+	{
+		return childCounts[index];
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return true if the node has a branch length.
+	 */
+	public boolean hasBranchLength(int index)
+	{
+		return !Double.isNaN(branchLengths[index]);
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return the length of the branch leading to the node, or <code>NaN</code> if it has none.
+	 */
+	public double getBranchLength(int index)
+	{
+		return branchLengths[index];
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return the node's label or null if it has none.
+	 */
+	public String getLabel(int index)
+	{
+		return labels[index] == NONE ? null : labelTable.get(labels[index]);
+	}
+
+	/**
+	 * Adds a node with no ID, label or branch length as the last child of its parent.
+	 *
+	 * @param parent the index of the node's parent or {@link #NONE} for the root.
+	 * @return the index of the new node.
+	 */
+	private int addNode(int parent)
+	{
+		if(size == ids.length)
+		{
+			int capacity = size * 2;
+			ids = Arrays.copyOf(ids, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			firstChildren = Arrays.copyOf(firstChildren, capacity);
+			nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+			childCounts = Arrays.copyOf(childCounts, capacity);
+			branchLengths = Arrays.copyOf(branchLengths, capacity);
+			labels = Arrays.copyOf(labels, capacity);
+			lastChildren = Arrays.copyOf(lastChildren, capacity);
+		}
+
+		int index = size++;
+		ids[index] = 0;
+		parents[index] = parent;
+		firstChildren[index] = NONE;
+		nextSiblings[index] = NONE;
+		childCounts[index] = 0;
+		branchLengths[index] = Double.NaN;
+		labels[index] = NONE;
+		lastChildren[index] = NONE;
+
+		if(parent != NONE)
+		{
+			if(lastChildren[parent] == NONE)
+			{
+				firstChildren[parent] = index;
+			}
+			else
+			{
+				nextSiblings[lastChildren[parent]] = index;
+			}
+			lastChildren[parent] = index;
+			childCounts[parent]++;
+		}
+		return index;
+	}
+
+	/**
+	 * Adds a copy of a node from another tree as the last child of its parent.
+	 *
+	 * @param source the tree containing the node.
+	 * @param index the index of the node in the source tree.
+	 * @param parent the index of the copy's parent or {@link #NONE} for the root.
+	 * @param branchLength the length of the branch leading to the copy, or <code>NaN</code> if it has
+	 *            none.
+	 * @return the index of the copy.
+	 */
+	private int copyNode(CompactTree source, int index, int parent, double branchLength)
+	{
+		int copy = addNode(parent);
+		ids[copy] = source.ids[index];
+		setLabel(copy, source.getLabel(index));
+		branchLengths[copy] = branchLength;
+		return copy;
+	}
+
+	/**
+	 * Reverses part of an array.
+	 *
+	 * @param values the array.
+	 * @param start the first index to reverse.
+	 * @param end the index that follows the last index to reverse.
+	 */
+	private static void reverse(int[] values, int start, int end)
+	{
+		for(int i = start, j = end - 1;i < j;i++, j--)
+		{
+			int value = values[i];
+			values[i] = values[j];
+			values[j] = value;
+		}
+	}
+
+	/**
+	 * Releases the state that is only needed while the tree is being built.
+	 */
+	private void finish()
+	{
+		labelNumbers = null;
+		lastChildren = null;
+	}
+
+	/**
+	 * Sets a node's label, adding it to the label table if it's new.
+	 *
+	 * @param index the index of the node.
+	 * @param label the label, which may be null.
+	 */
+	private void setLabel(int index, String label)
+	{
+		if(label == null)
+		{
+			labels[index] = NONE;
+			return;
+		}
+
+		Integer number = labelNumbers.get(label);
+		if(number == null)
+		{
+			number = labelTable.size();
+			labelTable.add(label);
+			labelNumbers.put(label, number);
+		}
+		labels[index] = number;
+	}
+
+	/**
+	 * Reads one member of a node. If the member is the children array, only the start of the array is
+	 * consumed.
+	 *
+	 * @param scanner the scanner, positioned at the member name.
+	 * @param index the index of the node.
+	 * @return true if the start of the children array was consumed.
+	 * @throws JSONException if the JSON is invalid.
+	 */
+	private boolean readMember(JsonScanner scanner, int index) throws JSONException
+	{
+		String name = scanner.nextName();
+		if(name.equals("id"))
+		{
+			ids[index] = scanner.nextInt();
+		}
+		else if(name.equals("name"))
+		{
+			setLabel(index, scanner.nextScalar());
+		}
+		else if(name.equals("branchLength") && scanner.peek() != 'n')
+		{
+			branchLengths[index] = scanner.nextDouble();
+		}
+		else if(name.equals("children") && scanner.peek() == '[')
+		{
+			scanner.beginArray();
+			return true;
+		}
+		else
+		{
+			scanner.skipValue();
+		}
+		return false;
+	}
+}
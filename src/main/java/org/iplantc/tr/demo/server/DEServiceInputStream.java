@@ -3,6 +3,8 @@ package org.iplantc.tr.demo.server;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.net.URLConnection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -22,16 +24,65 @@ public class DEServiceInputStream extends FilterInputStream
 	private Map<String,List<String>> httpHeaders;
 
 	/**
-	 * Creates a DEServiceInputStream for the given URL connection.
+	 * The content encoding of the bytes returned by this stream, or null if they aren't encoded.
+	 */
+	private String contentEncoding;
+
+	/**
+	 * Creates a DEServiceInputStream for the given URL connection. A gzip encoded response body is
+	 * decompressed as it's read.
 	 * 
 	 * @param urlConnection the URL connection.
 	 * @throws IOException if an I/O error occurs.
 	 */
 	public DEServiceInputStream(URLConnection urlConnection) throws IOException
 	{
-		super(urlConnection.getInputStream());
+		this(urlConnection, true);
+	}
+
+	/**
+	 * Creates a DEServiceInputStream for the given URL connection.
+	 * 
+	 * @param urlConnection the URL connection.
+	 * @param decode true if a gzip encoded response body should be decompressed as it's read.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public DEServiceInputStream(URLConnection urlConnection, boolean decode) throws IOException
+	{
+		super(decode ? StreamUtils.getDecodedInputStream(urlConnection) : urlConnection
+				.getInputStream());
 		contentType = urlConnection.getContentType();
 		httpHeaders = urlConnection.getHeaderFields();
+
+		if(decode && StreamUtils.isGzipEncoded(urlConnection))
+		{
+			// the encoding and length headers describe the compressed body
+			Map<String,List<String>> decodedHeaders = new LinkedHashMap<String,List<String>>();
+			for(Map.Entry<String,List<String>> header : httpHeaders.entrySet())
+			{
+				String name = header.getKey();
+				if(name == null || !(name.equalsIgnoreCase("Content-Encoding")
+						|| name.equalsIgnoreCase("Content-Length")))
+				{
+					decodedHeaders.put(name, header.getValue());
+				}
+			}
+			httpHeaders = Collections.unmodifiableMap(decodedHeaders);
+		}
+		else
+		{
+			contentEncoding = urlConnection.getContentEncoding();
+		}
+	}
+
+	/**
+	 * Gets the content encoding of the bytes returned by this stream.
+	 * 
+	 * @return the content encoding or null if the bytes aren't encoded.
+	 */
+	public String getContentEncoding()
+	{
+		return contentEncoding;
 	}
 
 	/**
@@ -44,6 +95,17 @@ public class DEServiceInputStream extends FilterInputStream
 		return contentType;
 	}
 
+	/**
+	 * Gets all of the HTTP header fields returned by the server. The status line is stored under a null
+	 * key.
+	 *
+	 * @return an unmodifiable map of header field names to header field values.
+	 */
+	public Map<String,List<String>> getHeaderFields()
+	{
+		return httpHeaders;
+	}
+
 	/**
 	 * Gets the value of the HTTP header field with the given name. If the named HTTP header has multiple
 	 * values then only the last value is returned.
@@ -0,0 +1,339 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+import org.iplantc.de.shared.services.ServiceCallWrapper;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.server.rpc.RPCServletUtils;
+
+/**
+ * Streams responses from other services straight through to the client. Unlike the RPC service
+ * dispatcher, the response body is never converted to a string or held in memory; it's copied to the
+ * client in large chunks as it arrives, along with the content type and other end-to-end headers.
+ *
+ * The address of the service is passed in the <code>address</code> request parameter. GET requests are
+ * forwarded as GET requests and POST requests are forwarded as POST requests with the same body. Only
+ * addresses that start with one of the prefixes in the <code>allowedAddressPrefixes</code>
+ * initialization parameter (a comma-separated list) are forwarded. The URL connector is configured using
+ * the same initialization parameters as the service dispatcher.
+ *
+ * If the client accepts gzip encoded responses then gzip encoded responses from the remote service are
+ * passed through without being decompressed, and textual responses that aren't already encoded are
+ * compressed if they're at least <code>compressionThreshold</code> bytes long or of unknown length.
+ * Otherwise, gzip encoded responses are decompressed as they're copied.
+ */
+public class DEServiceStreamingServlet extends HttpServlet
+{
+	private static final long serialVersionUID = 1L;
+	private static final Logger LOGGER = Logger.getLogger(DEServiceStreamingServlet.class);
+
+	/**
+	 * The name of the request parameter containing the service address.
+	 */
+	public static final String ADDRESS_PARAM = "address";
+
+	/**
+	 * The name of the initialization parameter listing the allowed service address prefixes.
+	 */
+	public static final String ALLOWED_PREFIXES_PARAM = "allowedAddressPrefixes";
+
+	/**
+	 * Hop-by-hop headers, which apply only to the connection to the remote service.
+	 */
+	private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<String>(Arrays.asList(
+			"connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "te", "trailer",
+			"trailers", "transfer-encoding", "upgrade"));
+
+	/**
+	 * The dispatcher used to send requests to other services.
+	 */
+	private UnsecuredDEServiceDispatcher dispatcher;
+
+	/**
+	 * The minimum length, in bytes, of a response that will be compressed.
+	 */
+	private int compressionThreshold;
+
+	/**
+	 * The service address prefixes that requests may be forwarded to.
+	 */
+	private List<String> allowedPrefixes;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void init() throws ServletException
+	{
+		dispatcher = new UnsecuredDEServiceDispatcher();
+		dispatcher.init(getServletConfig());
+		compressionThreshold =
+				InitParameters.getInt(getServletConfig(), "compressionThreshold",
+						BaseDEServiceDispatcher.DEFAULT_COMPRESSION_THRESHOLD);
+
+		allowedPrefixes = new ArrayList<String>();
+		String prefixes = InitParameters.getString(getServletConfig(), ALLOWED_PREFIXES_PARAM, "");
+		for(String prefix : prefixes.split(","))
+		{
+			if(prefix.trim().length() > 0)
+			{
+				allowedPrefixes.add(prefix.trim());
+			}
+		}
+
+		if(allowedPrefixes.isEmpty())
+		{
+			LOGGER.warn(getServletName() + ": no " + ALLOWED_PREFIXES_PARAM
+					+ " configured; all requests will be rejected");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void destroy()
+	{
+		if(dispatcher != null)
+		{
+			dispatcher.destroy();
+		}
+		super.destroy();
+	}
+
+	/**
+	 * Forwards a GET request to the service named in the address parameter.
+	 *
+	 * @param request the servlet request.
+	 * @param response the servlet response.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+	{
+		String address = getAddress(request, response);
+		if(address != null)
+		{
+			stream(new ServiceCallWrapper(address), request, response);
+		}
+	}
+
+	/**
+	 * Forwards a POST request, along with its body, to the service named in the address parameter.
+	 *
+	 * @param request the servlet request.
+	 * @param response the servlet response.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException
+	{
+		String address = getAddress(request, response);
+		if(address != null)
+		{
+			String encoding = request.getCharacterEncoding();
+			String body = StreamUtils.readString(request.getInputStream(), encoding == null ? "UTF-8"
+					: encoding);
+			stream(new ServiceCallWrapper(ServiceCallWrapper.Type.POST, address, body), request,
+					response);
+		}
+	}
+
+	/**
+	 * Gets and validates the service address from the request. If the address is missing or not
+	 * allowed, an error is sent to the client.
+	 *
+	 * @param request the servlet request.
+	 * @param response the servlet response.
+	 * @return the address or null if the request should not be forwarded.
+	 * @throws IOException if the error response can't be sent.
+	 */
+	private String getAddress(HttpServletRequest request, HttpServletResponse response)
+			throws IOException
+	{
+		String address = request.getParameter(ADDRESS_PARAM);
+		if(address == null || address.length() == 0)
+		{
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "missing " + ADDRESS_PARAM);
+			return null;
+		}
+
+		for(String prefix : allowedPrefixes)
+		{
+			if(address.startsWith(prefix))
+			{
+				return address;
+			}
+		}
+
+		LOGGER.warn("rejecting request for " + address + " from " + request.getRemoteAddr());
+		response.sendError(HttpServletResponse.SC_FORBIDDEN);
+		return null;
+	}
+
+	/**
+	 * Sends a request to another service and copies the response to the client.
+	 *
+	 * @param wrapper the service call wrapper.
+	 * @param request the servlet request.
+	 * @param response the servlet response.
+	 * @throws IOException if an I/O error occurs while writing to the client.
+	 */
+	private void stream(ServiceCallWrapper wrapper, HttpServletRequest request,
+			HttpServletResponse response) throws IOException
+	{
+		boolean acceptsGzip = RPCServletUtils.acceptsGzipEncoding(request);
+
+		DEServiceInputStream in = null;
+		try
+		{
+			try
+			{
+				in = dispatcher.getServiceStream(wrapper, !acceptsGzip);
+			}
+			catch(SerializationException e)
+			{
+				LOGGER.error("unable to reach " + wrapper.getAddress(), e);
+				response.sendError(HttpServletResponse.SC_BAD_GATEWAY);
+				return;
+			}
+			catch(IOException e)
+			{
+				LOGGER.error("request to " + wrapper.getAddress() + " failed", e);
+				response.sendError(HttpServletResponse.SC_BAD_GATEWAY);
+				return;
+			}
+
+			boolean compress = acceptsGzip && shouldCompress(in);
+			copyHeaders(in, response, compress);
+			response.addHeader("Vary", "Accept-Encoding");
+
+			OutputStream out = response.getOutputStream();
+			long count;
+			if(compress)
+			{
+				response.setHeader("Content-Encoding", "gzip");
+				GZIPOutputStream gzipOut = new GZIPOutputStream(out, StreamUtils.COPY_BUFFER_SIZE);
+				count = StreamUtils.copy(in, gzipOut);
+				gzipOut.finish();
+			}
+			else
+			{
+				count = StreamUtils.copy(in, out);
+			}
+			out.flush();
+
+			if(LOGGER.isDebugEnabled())
+			{
+				LOGGER.debug("streamed " + count + " bytes from " + wrapper.getAddress());
+			}
+		}
+		finally
+		{
+			closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Determines whether a response that the client will accept in gzip encoded form should be
+	 * compressed. Only textual responses that aren't already encoded and are either large or of unknown
+	 * length are compressed.
+	 *
+	 * @param in the stream containing the remote service's response.
+	 * @return true if the response should be compressed.
+	 */
+	private boolean shouldCompress(DEServiceInputStream in)
+	{
+		String contentType = in.getContentType();
+		if(in.getContentEncoding() != null || contentType == null)
+		{
+			return false;
+		}
+
+		contentType = contentType.toLowerCase();
+		if(!(contentType.startsWith("text/") || contentType.indexOf("json") >= 0
+				|| contentType.indexOf("xml") >= 0 || contentType.indexOf("javascript") >= 0))
+		{
+			return false;
+		}
+
+		String length = in.getHeaderField("Content-Length");
+		try
+		{
+			return length == null || Long.parseLong(length.trim()) >= compressionThreshold;
+		}
+		catch(NumberFormatException e)
+		{
+			return true;
+		}
+	}
+
+	/**
+	 * Copies the end-to-end headers from the remote service's response to the client response.
+	 *
+	 * @param in the stream containing the remote service's response.
+	 * @param response the servlet response.
+	 * @param compress true if the response will be compressed, in which case the length of the
+	 *            remote service's response no longer applies.
+	 */
+	private void copyHeaders(DEServiceInputStream in, HttpServletResponse response, boolean compress)
+	{
+		if(in.getContentType() != null)
+		{
+			response.setContentType(in.getContentType());
+		}
+
+		for(Map.Entry<String,List<String>> header : in.getHeaderFields().entrySet())
+		{
+			String name = header.getKey();
+			if(name == null || name.equalsIgnoreCase("content-type")
+					|| (compress && name.equalsIgnoreCase("content-length"))
+					|| HOP_BY_HOP_HEADERS.contains(name.toLowerCase()))
+			{
+				continue;
+			}
+
+			for(String value : header.getValue())
+			{
+				response.addHeader(name, value);
+			}
+		}
+	}
+
+	/**
+	 * Closes an input stream, logging rather than throwing any exception.
+	 *
+	 * @param in the input stream, which may be null.
+	 */
+	private void closeQuietly(InputStream in)
+	{
+		if(in != null)
+		{
+			try
+			{
+				in.close();
+			}
+			catch(IOException e)
+			{
+				LOGGER.warn("unable to close the service stream", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package org.iplantc.tr.demo.server;
+
+/**
+ * A cache that can be flushed through the service monitor.
+ */
+public interface FlushableCache extends StatisticsSource
+{
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public void flush();
+}
@@ -0,0 +1,103 @@
+package org.iplantc.tr.demo.server;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+
+/**
+ * Utility methods for reading servlet initialization parameters.
+ */
+public class InitParameters
+{
+	private InitParameters()
+	{
+	}
+
+	/**
+	 * Gets the value of a string initialization parameter.
+	 *
+	 * @param config the servlet configuration.
+	 * @param name the name of the parameter.
+	 * @param defaultValue the value to use if the parameter isn't defined.
+	 * @return the trimmed parameter value or the default value if the parameter is missing or blank.
+	 */
+	public static String getString(ServletConfig config, String name, String defaultValue)
+	{
+		String value = config == null ? null : config.getInitParameter(name);
+		if(value == null || value.trim().length() == 0)
+		{
+			return defaultValue;
+		}
+
+		return value.trim();
+	}
+
+	/**
+	 * Gets the value of an integer initialization parameter.
+	 *
+	 * @param config the servlet configuration.
+	 * @param name the name of the parameter.
+	 * @param defaultValue the value to use if the parameter isn't defined.
+	 * @return the parameter value.
+	 * @throws ServletException if the parameter value isn't a valid integer.
+	 */
+	public static int getInt(ServletConfig config, String name, int defaultValue)
+			throws ServletException
+	{
+		String value = getString(config, name, null);
+		if(value == null)
+		{
+			return defaultValue;
+		}
+
+		try
+		{
+			return Integer.parseInt(value);
+		}
+		catch(NumberFormatException e)
+		{
+			throw new ServletException("invalid value for init parameter " + name + ": " + value, e);
+		}
+	}
+
+	/**
+	 * Gets the value of a long integer initialization parameter.
+	 *
+	 * @param config the servlet configuration.
+	 * @param name the name of the parameter.
+	 * @param defaultValue the value to use if the parameter isn't defined.
+	 * @return the parameter value.
+	 * @throws ServletException if the parameter value isn't a valid long integer.
+	 */
+	public static long getLong(ServletConfig config, String name, long defaultValue)
+			throws ServletException
+	{
+		String value = getString(config, name, null);
+		if(value == null)
+		{
+			return defaultValue;
+		}
+
+		try
+		{
+			return Long.parseLong(value);
+		}
+		catch(NumberFormatException e)
+		{
+			throw new ServletException("invalid value for init parameter " + name + ": " + value, e);
+		}
+	}
+
+	/**
+	 * Gets the value of a boolean initialization parameter.
+	 *
+	 * @param config the servlet configuration.
+	 * @param name the name of the parameter.
+	 * @param defaultValue the value to use if the parameter isn't defined.
+	 * @return the parameter value.
+	 */
+	public static boolean getBoolean(ServletConfig config, String name, boolean defaultValue)
+	{
+		String value = getString(config, name, null);
+		return value == null ? defaultValue : Boolean.parseBoolean(value);
+	}
+}
@@ -0,0 +1,421 @@
+package org.iplantc.tr.demo.server;
+
+import org.json.JSONException;
+
+/**
+ * A pull parser that reads JSON text one token at a time without building a document tree. Nested
+ * values are skipped iteratively rather than recursively, so arbitrarily deep documents can be scanned
+ * without exhausting the stack. The scanner doesn't verify that commas and colons are correctly placed
+ * between tokens; it only uses them to separate tokens.
+ */
+public class JsonScanner
+{
+	private final String json;
+	private int pos;
+
+	/**
+	 * @param json the JSON text.
+	 */
+	public JsonScanner(String json)
+	{
+		this(json, 0);
+	}
+
+	/**
+	 * @param json the JSON text.
+	 * @param start the position of the first character to scan.
+	 */
+	public JsonScanner(String json, int start)
+	{
+		this.json = json;
+		this.pos = start;
+	}
+
+	/**
+	 * Finds a value by following a path of object member names from the top-level object.
+	 *
+	 * @param json the JSON text.
+	 * @param path the member names.
+	 * @return the text of the value or null if there is no value at the end of the path.
+	 * @throws JSONException if the text isn't valid JSON.
+	 */
+	public static String findValue(String json, String... path) throws JSONException
+	{
+		JsonScanner scanner = new JsonScanner(json);
+		for(String name : path)
+		{
+			if(scanner.peek() != '{' || !scanner.findMember(name))
+			{
+				return null;
+			}
+		}
+
+		scanner.peek();
+		int start = scanner.getPosition();
+		scanner.skipValue();
+		return json.substring(start, scanner.getPosition());
+	}
+
+	/**
+	 * @return the position of the next character to scan.
+	 */
+	public int getPosition()
+	{
+		return pos;
+	}
+
+	/**
+	 * Skips whitespace and separators and returns the first character of the next token without
+	 * consuming it.
+	 *
+	 * @return the first character of the next token.
+	 * @throws JSONException if the end of the text has been reached.
+	 */
+	public char peek() throws JSONException
+	{
+		while(pos < json.length())
+		{
+			char c = json.charAt(pos);
+			if(c == ',' || c == ':' || Character.isWhitespace(c))
+			{
+				pos++;
+			}
+			else
+			{
+				return c;
+			}
+		}
+
+		throw syntaxError("unexpected end of text");
+	}
+
+	/**
+	 * Consumes the start of an object.
+	 *
+	 * @throws JSONException if the next token isn't the start of an object.
+	 */
+	public void beginObject() throws JSONException
+	{
+		expect('{');
+	}
+
+	/**
+	 * Consumes the end of an object.
+	 *
+	 * @throws JSONException if the next token isn't the end of an object.
+	 */
+	public void endObject() throws JSONException
+	{
+		expect('}');
+	}
+
+	/**
+	 * Consumes the start of an array.
+	 *
+	 * @throws JSONException if the next token isn't the start of an array.
+	 */
+	public void beginArray() throws JSONException
+	{
+		expect('[');
+	}
+
+	/**
+	 * Consumes the end of an array.
+	 *
+	 * @throws JSONException if the next token isn't the end of an array.
+	 */
+	public void endArray() throws JSONException
+	{
+		expect(']');
+	}
+
+	/**
+	 * Determines whether the current object or array has another member or element.
+	 *
+	 * @return true if the next token isn't the end of an object or array.
+	 * @throws JSONException if the end of the text has been reached.
+	 */
+	public boolean hasNext() throws JSONException
+	{
+		char c = peek();
+		return c != '}' && c != ']';
+	}
+
+	/**
+	 * Consumes the name of an object member.
+	 *
+	 * @return the name.
+	 * @throws JSONException if the next token isn't a string.
+	 */
+	public String nextName() throws JSONException
+	{
+		return nextString();
+	}
+
+	/**
+	 * Consumes a string.
+	 *
+	 * @return the string.
+	 * @throws JSONException if the next token isn't a valid string.
+	 */
+	public String nextString() throws JSONException
+	{
+		expect('"');
+
+		StringBuilder builder = null;
+		int start = pos;
+		while(pos < json.length())
+		{
+			char c = json.charAt(pos);
+			if(c == '"')
+			{
+				String value = builder == null ? json.substring(start, pos) : builder.append(json,
+						start, pos).toString();
+				pos++;
+				return value;
+			}
+			if(c == '\\')
+			{
+				if(builder == null)
+				{
+					builder = new StringBuilder();
+				}
+				builder.append(json, start, pos);
+				pos++;
+				builder.append(unescape());
+				start = pos;
+			}
+			else
+			{
+				pos++;
+			}
+		}
+
+		throw syntaxError("unterminated string");
+	}
+
+	/**
+	 * Consumes a string, number, boolean or null and returns its text. Strings are unescaped.
+	 *
+	 * @return the text of the value or null if the value is null.
+	 * @throws JSONException if the next token isn't a scalar value.
+	 */
+	public String nextScalar() throws JSONException
+	{
+		if(peek() == '"')
+		{
+			return nextString();
+		}
+
+		String literal = nextLiteral();
+		return literal.equals("null") ? null : literal;
+	}
+
+	/**
+	 * Consumes a number.
+	 *
+	 * @return the number.
+	 * @throws JSONException if the next token isn't a number.
+	 */
+	public double nextDouble() throws JSONException
+	{
+		String literal = nextScalar();
+		try
+		{
+			if(literal != null)
+			{
+				return Double.parseDouble(literal);
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			// reported below
+		}
+
+		throw syntaxError("expected a number but found " + literal);
+	}
+
+	/**
+	 * Consumes a number and converts it to an integer.
+	 *
+	 * @return the integer.
+	 * @throws JSONException if the next token isn't a number.
+	 */
+	public int nextInt() throws JSONException
+	{
+		return (int)nextDouble();
+	}
+
+	/**
+	 * Consumes the next value, including any values nested within it.
+	 *
+	 * @throws JSONException if the value isn't valid JSON.
+	 */
+	public void skipValue() throws JSONException
+	{
+		int depth = 0;
+		do
+		{
+			char c = peek();
+			switch (c)
+			{
+				case '{':
+				case '[':
+					pos++;
+					depth++;
+					break;
+
+				case '}':
+				case ']':
+					pos++;
+					depth--;
+					break;
+
+				case '"':
+					nextString();
+					break;
+
+				default:
+					nextLiteral();
+					break;
+			}
+		}
+		while(depth > 0);
+
+		if(depth < 0)
+		{
+			throw syntaxError("unbalanced brackets");
+		}
+	}
+
+	/**
+	 * Advances to the value of the named member of the object that starts at the next token. Members
+	 * that precede it are skipped.
+	 *
+	 * @param name the member name.
+	 * @return true if the member was found; if it wasn't, the whole object has been consumed.
+	 * @throws JSONException if the object isn't valid JSON.
+	 */
+	public boolean findMember(String name) throws JSONException
+	{
+		beginObject();
+		while(hasNext())
+		{
+			if(nextName().equals(name))
+			{
+				return true;
+			}
+			skipValue();
+		}
+		endObject();
+		return false;
+	}
+
+	/**
+	 * Consumes a number, boolean or null literal.
+	 *
+	 * @return the text of the literal.
+	 * @throws JSONException if there is no literal.
+	 */
+	private String nextLiteral() throws JSONException
+	{
+		peek();
+		int start = pos;
+		while(pos < json.length())
+		{
+			char c = json.charAt(pos);
+			if(c == ',' || c == ':' || c == '}' || c == ']' || c == '"' || c == '{' || c == '['
+					|| Character.isWhitespace(c))
+			{
+				break;
+			}
+			pos++;
+		}
+
+		if(pos == start)
+		{
+			throw syntaxError("unexpected character " + json.charAt(pos));
+		}
+
+		return json.substring(start, pos);
+	}
+
+	/**
+	 * Decodes an escape sequence in a string. The backslash has already been consumed.
+	 *
+	 * @return the character represented by the escape sequence.
+	 * @throws JSONException if the escape sequence is invalid.
+	 */
+	private char unescape() throws JSONException
+	{
+		if(pos >= json.length())
+		{
+			throw syntaxError("unterminated string");
+		}
+
+		char c = json.charAt(pos++);
+		switch (c)
+		{
+			case 'b':
+				return '\b';
+
+			case 't':
+				return '\t';
+
+			case 'n':
+				return '\n';
+
+			case 'f':
+				return '\f';
+
+			case 'r':
+				return '\r';
+
+			case 'u':
+				if(pos + 4 > json.length())
+				{
+					throw syntaxError("invalid unicode escape");
+				}
+				try
+				{
+					char decoded = (char)Integer.parseInt(json.substring(pos, pos + 4), 16);
+					pos += 4;
+					return decoded;
+				}
+				catch(NumberFormatException e)
+				{
+					throw syntaxError("invalid unicode escape");
+				}
+
+			default:
+				return c;
+		}
+	}
+
+	/**
+	 * Consumes a single-character token.
+	 *
+	 * @param token the expected token.
+	 * @throws JSONException if the next token is something else.
+	 */
+	private void expect(char token) throws JSONException
+	{
+		char c = peek();
+		if(c != token)
+		{
+			throw syntaxError("expected " + token + " but found " + c);
+		}
+		pos++;
+	}
+
+	/**
+	 * Creates an exception describing a syntax error at the current position.
+	 *
+	 * @param message the description of the error.
+	 * @return the exception.
+	 */
+	private JSONException syntaxError(String message)
+	{
+		return new JSONException(message + " at character " + pos);
+	}
+}
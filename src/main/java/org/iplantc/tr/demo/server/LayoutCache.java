@@ -0,0 +1,148 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+
+/**
+ * A size-bounded, least-recently-used cache of tree layouts. Layouts are addressed by their content: the
+ * key is a digest of the tree in JSON format along with the parameters used to lay it out, so identical
+ * trees share a layout no matter where they came from, and a tree that changes gets a new layout.
+ *
+ * The cache is configured using the following servlet initialization parameters:
+ *
+ * <ul>
+ * <li><code>layoutCacheMaxBytes</code>: the maximum size of the cache; zero disables the cache.</li>
+ * <li><code>layoutCacheTtl</code>: the number of milliseconds that a layout is kept.</li>
+ * </ul>
+ */
+public class LayoutCache implements FlushableCache
+{
+	/**
+	 * The default maximum size of the cache in bytes.
+	 */
+	public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+	/**
+	 * The default number of milliseconds that a layout is kept.
+	 */
+	public static final long DEFAULT_TTL = 24L * 60 * 60 * 1000;
+
+	/**
+	 * The cached layouts, indexed by key.
+	 */
+	private final ResponseCache cache;
+
+	/**
+	 * @param maxBytes the maximum size of the cache in bytes.
+	 * @param ttl the number of milliseconds that a layout is kept.
+	 */
+	public LayoutCache(long maxBytes, long ttl)
+	{
+		cache = new ResponseCache(maxBytes, ttl, Collections.<ResponseCache.TtlRule> emptyList());
+	}
+
+	/**
+	 * Creates a layout cache from the servlet initialization parameters.
+	 *
+	 * @param config the servlet configuration.
+	 * @return the layout cache or null if caching is disabled.
+	 * @throws ServletException if the configuration is invalid.
+	 */
+	public static LayoutCache fromConfig(ServletConfig config) throws ServletException
+	{
+		long maxBytes = InitParameters.getLong(config, "layoutCacheMaxBytes", DEFAULT_MAX_BYTES);
+		long ttl = InitParameters.getLong(config, "layoutCacheTtl", DEFAULT_TTL);
+		return maxBytes <= 0 || ttl <= 0 ? null : new LayoutCache(maxBytes, ttl);
+	}
+
+	/**
+	 * Builds the key for the layout of a tree.
+	 *
+	 * @param json the tree in JSON format.
+	 * @param parameters a description of the parameters used to lay out the tree.
+	 * @return the key.
+	 */
+	public static String buildKey(String json, String parameters)
+	{
+		try
+		{
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] hash = digest.digest(json.getBytes("UTF-8"));
+
+			StringBuilder key = new StringBuilder(parameters.length() + 1 + 2 * hash.length);
+			key.append(parameters).append(':');
+			for(byte b : hash)
+			{
+				key.append(Character.forDigit((b >> 4) & 0xf, 16));
+				key.append(Character.forDigit(b & 0xf, 16));
+			}
+			return key.toString();
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			// every Java platform is required to support SHA-1
+			throw new IllegalStateException(e);
+		}
+		catch(UnsupportedEncodingException e)
+		{
+			// every Java platform is required to support UTF-8
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Gets a cached layout.
+	 *
+	 * @param key the key built from the tree and layout parameters.
+	 * @return the layout or null if it isn't cached.
+	 */
+	public String get(String key)
+	{
+		return cache.get(key);
+	}
+
+	/**
+	 * Caches a layout.
+	 *
+	 * @param key the key built from the tree and layout parameters.
+	 * @param layout the layout.
+	 */
+	public void put(String key, String layout)
+	{
+		cache.put(key, layout);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void flush()
+	{
+		cache.flush();
+	}
+
+	/**
+	 * Gets the statistics of the underlying response cache, without the revalidation counters, which
+	 * don't apply to layouts, and with the hit rate added.
+	 *
+	 * @return the statistics.
+	 */
+	@Override
+	public Map<String, Long> getStatistics()
+	{
+		Map<String, Long> stats = new LinkedHashMap<String, Long>(cache.getStatistics());
+		stats.remove("stale");
+		stats.remove("notModified");
+		long hits = stats.get("hits");
+		long lookups = hits + stats.get("misses");
+		stats.put("hitRatePercent", lookups == 0 ? 0 : 100 * hits / lookups);
+		return Collections.unmodifiableMap(stats);
+	}
+}
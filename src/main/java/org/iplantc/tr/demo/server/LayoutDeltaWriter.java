@@ -0,0 +1,250 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.iplantc.tr.demo.shared.LayoutEdit;
+
+/**
+ * Writes the difference between two layouts of the same nodes as a layout delta, in the format
+ * described by {@link LayoutEdit}. Nodes are matched by ID, so the trees may be pruned or re-rooted
+ * differently.
+ *
+ * A subtree whose nodes all moved by the same amount, and whose structure hasn't changed, is written
+ * as a single move however large it is. Since an edit laid out at the same scale as the previous
+ * layout only changes the positions of the nodes near the edit and shifts the subtrees around them,
+ * the delta grows with the number of subtrees that moved rather than with the size of the tree.
+ */
+public class LayoutDeltaWriter
+{
+	/**
+	 * The largest difference between coordinates that are considered equal, which absorbs rounding
+	 * when a node's position is computed from shifted values.
+	 */
+	private static final double EPSILON = 1e-9;
+
+	private LayoutDeltaWriter()
+	{
+	}
+
+	/**
+	 * Writes a layout delta.
+	 *
+	 * @param before the previous layout.
+	 * @param after the new layout.
+	 * @param hiddenClades the IDs of the clades whose descendants are hidden by the edit.
+	 * @return the layout delta.
+	 */
+	public static String toString(ParallelCladogramLayout before, ParallelCladogramLayout after,
+			List<Integer> hiddenClades)
+	{
+		StringBuilder out = new StringBuilder();
+		try
+		{
+			write(before, after, hiddenClades, out);
+		}
+		catch(IOException e)
+		{
+			// a StringBuilder never throws IOException
+			throw new IllegalStateException(e);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Writes a layout delta.
+	 *
+	 * @param before the previous layout.
+	 * @param after the new layout.
+	 * @param hiddenClades the IDs of the clades whose descendants are hidden by the edit.
+	 * @param out receives the layout delta.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private static void write(ParallelCladogramLayout before, ParallelCladogramLayout after,
+			List<Integer> hiddenClades, Appendable out) throws IOException
+	{
+		CompactTree oldTree = before.getTree();
+		CompactTree tree = after.getTree();
+		int count = tree.size();
+
+		Map<Integer, Integer> oldIndices = new HashMap<Integer, Integer>(oldTree.size() * 2);
+		for(int i = 0;i < oldTree.size();i++)
+		{
+			oldIndices.put(oldTree.getId(i), i);
+		}
+
+		// the index of each node in the previous layout, or NONE if it's new
+		int[] old = new int[count];
+		for(int i = 0;i < count;i++)
+		{
+			Integer index = oldIndices.get(tree.getId(i));
+			old[i] = index == null ? CompactTree.NONE : index;
+		}
+
+		out.append("{\"root\":");
+		out.append(count == 0 ? "null" : Integer.toString(tree.getId(0)));
+
+		out.append(",\"parents\":[");
+		boolean first = true;
+		for(int i = 0;i < count;i++)
+		{
+			if(old[i] == CompactTree.NONE || sameParent(tree, i, oldTree, old[i]))
+			{
+				continue;
+			}
+
+			if(!first)
+			{
+				out.append(',');
+			}
+			first = false;
+			out.append("{\"id\":").append(Integer.toString(tree.getId(i))).append(",\"parent\":");
+			out.append(i == 0 ? "null" : Integer.toString(tree.getId(tree.getParent(i))));
+			out.append('}');
+		}
+
+		boolean[] rigid = findRigidSubtrees(before, after, old);
+
+		StringBuilder nodes = new StringBuilder();
+		out.append("],\"moves\":[");
+		first = true;
+		int i = 0;
+		while(i < count)
+		{
+			if(rigid[i])
+			{
+				double dx = after.getX(i) - before.getX(old[i]);
+				double dy = after.getY(i) - before.getY(old[i]);
+				if(Math.abs(dx) > EPSILON || Math.abs(dy) > EPSILON)
+				{
+					if(!first)
+					{
+						out.append(',');
+					}
+					first = false;
+					out.append("{\"id\":").append(Integer.toString(tree.getId(i)));
+					out.append(",\"dx\":");
+					LayoutJsonWriter.writeNumber(dx, out);
+					out.append(",\"dy\":");
+					LayoutJsonWriter.writeNumber(dy, out);
+					out.append('}');
+				}
+
+				i += after.getSubtreeSize(i);
+				continue;
+			}
+
+			if(old[i] == CompactTree.NONE || !samePlace(before, old[i], after, i, 0.0, 0.0))
+			{
+				if(nodes.length() > 0)
+				{
+					nodes.append(',');
+				}
+				nodes.append('{');
+				LayoutJsonWriter.writeNodeMembers(after, i, nodes);
+				nodes.append('}');
+			}
+			i++;
+		}
+
+		out.append("],\"nodes\":[").append(nodes);
+
+		out.append("],\"hidden\":[");
+		first = true;
+		for(int id : hiddenClades)
+		{
+			if(!first)
+			{
+				out.append(',');
+			}
+			first = false;
+			out.append(Integer.toString(id));
+		}
+		out.append("]}");
+	}
+
+	/**
+	 * Finds the subtrees of the new layout that contain the same nodes, with the same parents, as in
+	 * the previous layout, and that all moved by the same amount.
+	 *
+	 * @param before the previous layout.
+	 * @param after the new layout.
+	 * @param old the index in the previous layout of each node in the new layout.
+	 * @return whether each node's subtree moved as a whole.
+	 */
+	private static boolean[] findRigidSubtrees(ParallelCladogramLayout before,
+			ParallelCladogramLayout after, int[] old)
+	{
+		CompactTree oldTree = before.getTree();
+		CompactTree tree = after.getTree();
+		boolean[] rigid = new boolean[tree.size()];
+
+		for(int i = tree.size() - 1;i >= 0;i--)
+		{
+			int j = old[i];
+			if(j == CompactTree.NONE || before.getSubtreeSize(j) != after.getSubtreeSize(i))
+			{
+				continue;
+			}
+
+			double dx = after.getX(i) - before.getX(j);
+			double dy = after.getY(i) - before.getY(j);
+			boolean moved = samePlace(before, j, after, i, dx, dy);
+			for(int child = tree.getFirstChild(i);moved && child != CompactTree.NONE;child =
+					tree.getNextSibling(child))
+			{
+				moved =
+						rigid[child] && oldTree.getParent(old[child]) == j
+								&& Math.abs(after.getX(child) - before.getX(old[child]) - dx) <= EPSILON
+								&& Math.abs(after.getY(child) - before.getY(old[child]) - dy) <= EPSILON;
+			}
+			rigid[i] = moved;
+		}
+
+		return rigid;
+	}
+
+	/**
+	 * Determines whether a node's position and bounding box moved by the given amount.
+	 *
+	 * @param before the previous layout.
+	 * @param j the index of the node in the previous layout.
+	 * @param after the new layout.
+	 * @param i the index of the node in the new layout.
+	 * @param dx the distance moved along the x axis.
+	 * @param dy the distance moved along the y axis.
+	 * @return true if the node moved by that amount.
+	 */
+	private static boolean samePlace(ParallelCladogramLayout before, int j,
+			ParallelCladogramLayout after, int i, double dx, double dy)
+	{
+		return Math.abs(after.getX(i) - before.getX(j) - dx) <= EPSILON
+				&& Math.abs(after.getY(i) - before.getY(j) - dy) <= EPSILON
+				&& Math.abs(after.getMinX(i) - before.getMinX(j) - dx) <= EPSILON
+				&& Math.abs(after.getMinY(i) - before.getMinY(j) - dy) <= EPSILON
+				&& Math.abs(after.getMaxX(i) - before.getMaxX(j) - dx) <= EPSILON
+				&& Math.abs(after.getMaxY(i) - before.getMaxY(j) - dy) <= EPSILON;
+	}
+
+	/**
+	 * Determines whether a node has the same parent in two trees.
+	 *
+	 * @param tree a tree.
+	 * @param i the index of the node in that tree.
+	 * @param oldTree another tree.
+	 * @param j the index of the node in the other tree.
+	 * @return true if both parents have the same ID or the node is the root of both trees.
+	 */
+	private static boolean sameParent(CompactTree tree, int i, CompactTree oldTree, int j)
+	{
+		int parent = tree.getParent(i);
+		int oldParent = oldTree.getParent(j);
+		if(parent == CompactTree.NONE || oldParent == CompactTree.NONE)
+		{
+			return parent == oldParent;
+		}
+		return tree.getId(parent) == oldTree.getId(oldParent);
+	}
+}
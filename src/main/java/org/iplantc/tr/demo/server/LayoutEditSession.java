@@ -0,0 +1,128 @@
+package org.iplantc.tr.demo.server;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.iplantc.tr.demo.shared.LayoutEdit;
+
+/**
+ * A tree being edited by one client, along with the layout the client is currently drawing. Each edit
+ * lays the edited tree out again at the scale of the original layout, which is fast for an array
+ * layout, and returns only the difference from the previous layout, written by
+ * {@link LayoutDeltaWriter}. Nodes that the edit doesn't affect keep their positions, and subtrees
+ * that are only shifted by it are sent as single moves, so neither the tree nor its layout has to be
+ * transferred again.
+ *
+ * Collapsed clades are laid out as leaves, so the clades below them move up to close the gap, but they
+ * are kept in the tree so that they can be expanded again.
+ */
+public class LayoutEditSession
+{
+	private final BatchExecutor executor;
+	private final int sequentialCutoff;
+
+	/**
+	 * The layout whose scale every later layout uses.
+	 */
+	private final ParallelCladogramLayout original;
+
+	/**
+	 * The tree with no clades collapsed, as rooted by the edits so far.
+	 */
+	private CompactTree tree;
+
+	/**
+	 * The IDs of the collapsed clades.
+	 */
+	private Set<Integer> collapsed = new HashSet<Integer>();
+
+	/**
+	 * The layout the client is drawing.
+	 */
+	private ParallelCladogramLayout layout;
+
+	/**
+	 * @param original the layout the client started with, which isn't modified.
+	 * @param executor the executor used to lay out subtrees in parallel, or null to lay out trees on
+	 *            the current thread.
+	 * @param sequentialCutoff the maximum number of nodes in a subtree that is laid out as a single
+	 *            task.
+	 */
+	public LayoutEditSession(ParallelCladogramLayout original, BatchExecutor executor,
+			int sequentialCutoff)
+	{
+		this.original = original;
+		this.executor = executor;
+		this.sequentialCutoff = sequentialCutoff;
+		tree = original.getTree();
+		layout = original;
+	}
+
+	/**
+	 * Edits the tree and lays it out again.
+	 *
+	 * @param edit the edit.
+	 * @param idNode the ID of the node to edit.
+	 * @return the layout delta.
+	 * @throws IllegalArgumentException if the node isn't in the tree, or the tree is to be rooted at a
+	 *             node that is hidden in a collapsed clade.
+	 * @throws InterruptedException if the current thread is interrupted while the tree is laid out.
+	 */
+	public synchronized String edit(LayoutEdit edit, int idNode) throws InterruptedException
+	{
+		int index = tree.indexOf(idNode);
+		if(index == CompactTree.NONE)
+		{
+			throw new IllegalArgumentException("no node " + idNode + " in the tree");
+		}
+
+		// the session is only updated once the edited tree has been laid out
+		CompactTree edited = tree;
+		Set<Integer> editedCollapsed = new HashSet<Integer>(collapsed);
+		List<Integer> hidden = new ArrayList<Integer>();
+		switch(edit)
+		{
+			case COLLAPSE:
+				if(tree.getFirstChild(index) != CompactTree.NONE && editedCollapsed.add(idNode))
+				{
+					hidden.add(idNode);
+				}
+				break;
+
+			case EXPAND:
+				editedCollapsed.remove(idNode);
+				break;
+
+			case REROOT:
+				for(int i = tree.getParent(index);i != CompactTree.NONE;i = tree.getParent(i))
+				{
+					if(collapsed.contains(tree.getId(i)))
+					{
+						throw new IllegalArgumentException("node " + idNode
+								+ " is hidden in a collapsed clade");
+					}
+				}
+				// the new root's clade is the whole tree, which stays visible
+				editedCollapsed.remove(idNode);
+				edited = tree.reroot(index);
+				break;
+
+			default:
+				throw new IllegalArgumentException("unknown edit " + edit);
+		}
+
+		ParallelCladogramLayout next = new ParallelCladogramLayout(0.8, 1.0, executor);
+		next.setUseBranchLengths(true);
+		next.setSequentialCutoff(sequentialCutoff);
+		next.setScale(original);
+		next.layout(editedCollapsed.isEmpty() ? edited : edited.prune(editedCollapsed));
+
+		String delta = LayoutDeltaWriter.toString(layout, next, hidden);
+		tree = edited;
+		collapsed = editedCollapsed;
+		layout = next;
+		return delta;
+	}
+}
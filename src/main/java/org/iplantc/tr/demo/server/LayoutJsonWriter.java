@@ -0,0 +1,276 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.iplantc.phyloviewer.shared.layout.LayoutCladogram;
+import org.iplantc.phyloviewer.shared.math.Box2D;
+import org.iplantc.phyloviewer.shared.math.Vector2;
+import org.iplantc.phyloviewer.shared.model.INode;
+import org.iplantc.phyloviewer.shared.model.ITree;
+
+/**
+ * Writes a tree layout as JSON directly to a character stream or buffer, without building a JSON
+ * document first. The output has the same structure as the output of <code>ConvertToJSON</code>: an
+ * object with a <code>nodes</code> array, where each element holds a node's <code>id</code>, its
+ * <code>position</code> and its <code>boundingBox</code>. Numbers are formatted the same way org.json
+ * formats them, so whole numbers have no fractional part.
+ *
+ * Nodes are visited in pre-order using an explicit stack, so deep trees can't exhaust the stack.
+ * Layouts computed by {@link ParallelCladogramLayout} are written straight from its arrays.
+ */
+public class LayoutJsonWriter
+{
+	/**
+	 * The initial capacity of the buffer used by {@link #toString(LayoutCladogram, ITree)}.
+	 */
+	private static final int INITIAL_CAPACITY = 16384;
+
+	private LayoutJsonWriter()
+	{
+	}
+
+	/**
+	 * Writes a layout to a string.
+	 *
+	 * @param layout the layout.
+	 * @param tree the tree that was laid out.
+	 * @return the layout in JSON format.
+	 */
+	public static String toString(LayoutCladogram layout, ITree tree)
+	{
+		StringBuilder builder = new StringBuilder(INITIAL_CAPACITY);
+		try
+		{
+			write(layout, tree, builder);
+		}
+		catch(IOException e)
+		{
+			// a StringBuilder never throws IOException
+			throw new IllegalStateException(e);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Writes a layout.
+	 *
+	 * @param layout the layout.
+	 * @param tree the tree that was laid out.
+	 * @param out the stream or buffer to write to.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static void write(LayoutCladogram layout, ITree tree, Appendable out) throws IOException
+	{
+		out.append("{\"nodes\":[");
+
+		List<INode> stack = new ArrayList<INode>();
+		if(tree.getRootNode() != null)
+		{
+			stack.add(tree.getRootNode());
+		}
+
+		boolean first = true;
+		while(!stack.isEmpty())
+		{
+			INode node = stack.remove(stack.size() - 1);
+			if(!first)
+			{
+				out.append(',');
+			}
+			first = false;
+			writeNode(layout, node, out);
+
+			// push the children in reverse so that they're written in order
+			for(int i = node.getNumberOfChildren() - 1;i >= 0;i--)
+			{
+				stack.add(node.getChild(i));
+			}
+		}
+
+		out.append("]}");
+	}
+
+	/**
+	 * Writes a layout computed on a {@link CompactTree} to a string.
+	 *
+	 * @param layout the layout.
+	 * @return the layout in JSON format.
+	 */
+	public static String toString(ParallelCladogramLayout layout)
+	{
+		StringBuilder builder = new StringBuilder(INITIAL_CAPACITY);
+		try
+		{
+			write(layout, builder);
+		}
+		catch(IOException e)
+		{
+			// a StringBuilder never throws IOException
+			throw new IllegalStateException(e);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Writes a layout computed on a {@link CompactTree}. The tree's nodes are already numbered in
+	 * pre-order, so they're written in index order and no stack is needed.
+	 *
+	 * @param layout the layout.
+	 * @param out the stream or buffer to write to.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static void write(ParallelCladogramLayout layout, Appendable out) throws IOException
+	{
+		out.append("{\"nodes\":[");
+
+		CompactTree tree = layout.getTree();
+		int count = tree == null ? 0 : tree.size();
+		for(int i = 0;i < count;i++)
+		{
+			if(i > 0)
+			{
+				out.append(',');
+			}
+			out.append('{');
+			writeNodeMembers(layout, i, out);
+			out.append('}');
+		}
+
+		out.append("]}");
+	}
+
+	/**
+	 * Writes the <code>id</code>, <code>position</code> and <code>boundingBox</code> members of a node
+	 * in a layout computed on a {@link CompactTree}, without the surrounding braces.
+	 *
+	 * @param layout the layout.
+	 * @param index the index of the node.
+	 * @param out the stream or buffer to write to.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	static void writeNodeMembers(ParallelCladogramLayout layout, int index, Appendable out)
+			throws IOException
+	{
+		out.append("\"id\":").append(Integer.toString(layout.getTree().getId(index)));
+		out.append(",\"position\":");
+		writeVector(layout.getX(index), layout.getY(index), out);
+		out.append(",\"boundingBox\":{\"min\":");
+		writeVector(layout.getMinX(index), layout.getMinY(index), out);
+		out.append(",\"max\":");
+		writeVector(layout.getMaxX(index), layout.getMaxY(index), out);
+		out.append('}');
+	}
+
+	/**
+	 * Writes the layout of a single node.
+	 *
+	 * @param layout the layout.
+	 * @param node the node.
+	 * @param out the stream or buffer to write to.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private static void writeNode(LayoutCladogram layout, INode node, Appendable out)
+			throws IOException
+	{
+		out.append("{\"id\":").append(Integer.toString(node.getId()));
+		out.append(",\"position\":");
+		writeVector(layout.getPosition(node), out);
+
+		Box2D box = layout.getBoundingBox(node);
+		out.append(",\"boundingBox\":");
+		if(box == null)
+		{
+			out.append("null");
+		}
+		else
+		{
+			out.append("{\"min\":");
+			writeVector(box.getMin(), out);
+			out.append(",\"max\":");
+			writeVector(box.getMax(), out);
+			out.append('}');
+		}
+		out.append('}');
+	}
+
+	/**
+	 * Writes a vector.
+	 *
+	 * @param vector the vector, which may be null.
+	 * @param out the stream or buffer to write to.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private static void writeVector(Vector2 vector, Appendable out) throws IOException
+	{
+		if(vector == null)
+		{
+			out.append("null");
+			return;
+		}
+
+		writeVector(vector.getX(), vector.getY(), out);
+	}
+
+	/**
+	 * Writes a vector.
+	 *
+	 * @param x the x coordinate.
+	 * @param y the y coordinate.
+	 * @param out the stream or buffer to write to.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private static void writeVector(double x, double y, Appendable out) throws IOException
+	{
+		out.append("{\"x\":");
+		writeNumber(x, out);
+		out.append(",\"y\":");
+		writeNumber(y, out);
+		out.append('}');
+	}
+
+	/**
+	 * Writes a number the way org.json does: trailing zeros after the decimal point are removed, along
+	 * with the decimal point itself if nothing follows it. Whole numbers are written without formatting
+	 * them as doubles first.
+	 *
+	 * @param value the number, which must be finite.
+	 * @param out the stream or buffer to write to.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	static void writeNumber(double value, Appendable out) throws IOException
+	{
+		if(Double.isNaN(value) || Double.isInfinite(value))
+		{
+			throw new IllegalArgumentException("JSON does not allow non-finite numbers");
+		}
+
+		long whole = (long)value;
+		if(whole == value && Math.abs(whole) < 10000000L && !(whole == 0 && 1 / value < 0))
+		{
+			// Double.toString uses plain notation below 10^7, so org.json would write the same digits
+			out.append(Long.toString(whole));
+			return;
+		}
+
+		String s = Double.toString(value);
+		if(s.indexOf('.') > 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0)
+		{
+			int end = s.length();
+			while(s.charAt(end - 1) == '0')
+			{
+				end--;
+			}
+			if(s.charAt(end - 1) == '.')
+			{
+				end--;
+			}
+			out.append(s, 0, end);
+		}
+		else
+		{
+			out.append(s);
+		}
+	}
+}
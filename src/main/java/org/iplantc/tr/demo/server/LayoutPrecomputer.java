@@ -0,0 +1,188 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONException;
+
+/**
+ * Fills a layout store offline so that the layout service doesn't have to lay out every tree again after
+ * it's redeployed. The complete species tree is laid out, followed by the species tree and gene tree
+ * of each gene family named in the family list. Layouts that are already in the store are skipped.
+ *
+ * Usage: <code>LayoutPrecomputer store-directory tree-service-host family-list</code>, where the family
+ * list is a file containing one gene family name per line, or <code>-</code> to read the names from
+ * standard input. Blank lines and lines starting with <code>#</code> are ignored.
+ */
+public class LayoutPrecomputer
+{
+	private final LayoutStore store;
+	private final String host;
+	private final UrlConnector urlConnector = new UnauthenticatedUrlConnector();
+
+	private int computedCount;
+	private int skippedCount;
+	private int failedCount;
+
+	/**
+	 * @param store the layout store to fill.
+	 * @param host the base address of the tree reconciliation service.
+	 */
+	public LayoutPrecomputer(LayoutStore store, String host)
+	{
+		this.store = store;
+		this.host = host.endsWith("/") ? host : host + "/";
+	}
+
+	/**
+	 * Lays out the complete species tree and the trees of each gene family.
+	 *
+	 * @param families the names of the gene families.
+	 */
+	public void precompute(List<String> families)
+	{
+		precompute(TreeLayoutBuilder.getSpeciesDataAddress(host, null), false);
+		for(String family : families)
+		{
+			precompute(TreeLayoutBuilder.getSpeciesDataAddress(host, family), false);
+			precompute(TreeLayoutBuilder.getGeneDataAddress(host, family), true);
+		}
+	}
+
+	/**
+	 * Retrieves a tree, lays it out and stores the layout. Failures are reported and counted rather than
+	 * thrown so that one bad family doesn't stop the run.
+	 *
+	 * @param address the address to retrieve the tree from.
+	 * @param geneTree true if the address returns gene data rather than species data.
+	 */
+	private void precompute(String address, boolean geneTree)
+	{
+		try
+		{
+			String response = retrieve(address);
+			String tree =
+					geneTree ? TreeLayoutBuilder.getGeneTree(response) : TreeLayoutBuilder
+							.getSpeciesTree(response);
+			if(tree == null)
+			{
+				throw new JSONException("no tree in response");
+			}
+
+			String key = LayoutCache.buildKey(tree, TreeLayoutBuilder.LAYOUT_PARAMETERS);
+			if(store.get(key) != null)
+			{
+				skippedCount++;
+				return;
+			}
+
+			String layout = TreeLayoutBuilder.layout(tree);
+			if(layout.equals("{}"))
+			{
+				throw new JSONException("unable to convert layout");
+			}
+
+			store.put(key, layout);
+			computedCount++;
+		}
+		catch(IOException e)
+		{
+			failedCount++;
+			System.err.println(address + ": " + e);
+		}
+		catch(JSONException e)
+		{
+			failedCount++;
+			System.err.println(address + ": " + e);
+		}
+	}
+
+	/**
+	 * Retrieves a response from the tree reconciliation service.
+	 *
+	 * @param address the address to retrieve.
+	 * @return the response.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private String retrieve(String address) throws IOException
+	{
+		HttpURLConnection urlc = urlConnector.getUrlConnection(null, address);
+		urlc.setRequestProperty("Accept-Encoding", "gzip");
+
+		InputStream in = StreamUtils.getDecodedInputStream(urlc);
+		try
+		{
+			return StreamUtils.readString(in, "UTF-8");
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads gene family names, one per line.
+	 *
+	 * @param in the stream to read the names from.
+	 * @return the names.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private static List<String> readFamilies(InputStream in) throws IOException
+	{
+		List<String> families = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+		String line;
+		while((line = reader.readLine()) != null)
+		{
+			line = line.trim();
+			if(line.length() > 0 && !line.startsWith("#"))
+			{
+				families.add(line);
+			}
+		}
+		return families;
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length != 3)
+		{
+			System.err.println("usage: LayoutPrecomputer store-directory tree-service-host family-list");
+			System.exit(1);
+		}
+
+		List<String> families;
+		if(args[2].equals("-"))
+		{
+			families = readFamilies(System.in);
+		}
+		else
+		{
+			InputStream in = new FileInputStream(args[2]);
+			try
+			{
+				families = readFamilies(in);
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+
+		LayoutPrecomputer precomputer =
+				new LayoutPrecomputer(new LayoutStore(new File(args[0]), true), args[1]);
+		precomputer.precompute(families);
+
+		System.out.println(families.size() + " families: " + precomputer.computedCount
+				+ " layouts computed, " + precomputer.skippedCount + " already stored, "
+				+ precomputer.failedCount + " failed");
+		System.exit(precomputer.failedCount == 0 ? 0 : 2);
+	}
+}
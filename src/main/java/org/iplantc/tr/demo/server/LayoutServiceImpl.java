@@ -1,15 +1,61 @@
 package org.iplantc.tr.demo.server;
 
-import org.iplantc.phyloviewer.model.BuildTreeFromJSON;
-import org.iplantc.phyloviewer.model.ConvertToJSON;
-import org.iplantc.phyloviewer.shared.layout.LayoutCladogram;
-import org.iplantc.phyloviewer.shared.model.Tree;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import javax.servlet.ServletException;
+
+import org.apache.log4j.Logger;
+import org.iplantc.de.shared.services.ServiceCallWrapper;
 import org.iplantc.tr.demo.client.services.LayoutService;
+import org.iplantc.tr.demo.shared.LayoutEdit;
+import org.iplantc.tr.demo.shared.LayoutViewport;
+import org.iplantc.tr.demo.shared.TreeLayout;
 import org.json.JSONException;
-import org.json.JSONObject;
 
+import com.google.gwt.user.client.rpc.SerializationException;
 import com.google.gwt.user.server.rpc.RemoteServiceServlet;
 
+/**
+ * Lays out trees. Trees can either be sent by the client or retrieved from the tree reconciliation
+ * service by gene family name, in which case the tree never has to make a round trip through the
+ * client before it's laid out. Trees are retrieved through a service dispatcher configured with this
+ * servlet's initialization parameters, and the <code>treeServiceHost</code> parameter selects the
+ * tree reconciliation service.
+ *
+ * Layouts are cached by the content of the tree and the layout parameters, so a tree that has been laid
+ * out before is neither parsed nor laid out again. If a layout store is configured, layouts that aren't
+ * in the cache are looked up in the store before they're computed, and computed layouts are added to
+ * the store. Up to <code>layoutStoreWarmup</code> stored layouts are loaded into the cache in the
+ * background when the servlet starts.
+ *
+ * Layouts are written straight to a buffer by {@link LayoutJsonWriter}. Setting the
+ * <code>streamingLayoutWriter</code> parameter to false converts them with <code>ConvertToJSON</code>
+ * instead. Clients that accept it are sent the compact layout encoding, which is several times smaller.
+ *
+ * Trees are read into a {@link CompactTree} and laid out with {@link ParallelCladogramLayout}, which
+ * creates far less garbage than building node objects. Setting the <code>arrayTreeModel</code>
+ * parameter to false builds node objects instead. Setting <code>parallelLayoutThreads</code> lays out
+ * subtrees of up to <code>parallelLayoutCutoff</code> nodes on that many threads at once.
+ *
+ * Clients can also request just the part of a layout that is visible in a viewport. Layout windows are
+ * cut from array layouts, so they're only sent with the array tree model; otherwise the full layout is
+ * sent instead, which tells the client that windows and layout sessions aren't available. The layouts of the most recently windowed trees are kept in memory so
+ * that zooming and panning don't lay the tree out again. Clades shorter than
+ * <code>windowMinCladePixels</code> pixels are collapsed.
+ *
+ * Clients that collapse, expand or re-root a tree open a layout session, which starts from the array
+ * layout the windows are cut from, so sessions also need the array tree model. Each edit
+ * returns only the layout delta. The <code>maxLayoutSessions</code> most recently used sessions are
+ * kept; an expired session has to be opened again.
+ *
+ * Clients can fetch the reconciliation map of a gene family and look up related nodes themselves.
+ * Maps are built by {@link ReconciliationMapBuilder} from a single query to the tree reconciliation
+ * service. Concurrent requests for the same map share one build, and the
+ * <code>maxReconciliationMaps</code> most recently requested maps are kept in memory.
+ */
 public class LayoutServiceImpl extends RemoteServiceServlet implements LayoutService
 {
 	/**
@@ -17,35 +63,687 @@ public class LayoutServiceImpl extends RemoteServiceServlet implements LayoutSer
 	*/
 	private static final long serialVersionUID = -2607722375152684106L;
 
+	private static final Logger LOGGER = Logger.getLogger(LayoutServiceImpl.class);
+
+	/**
+	 * The default base address of the tree reconciliation service.
+	 */
+	public static final String DEFAULT_TREE_SERVICE_HOST = "http://votan.iplantcollaborative.org/";
+
+	/**
+	 * The default maximum number of stored layouts loaded into the cache at startup.
+	 */
+	public static final int DEFAULT_LAYOUT_STORE_WARMUP = 1000;
+
+	/**
+	 * The number of array layouts kept in memory for layout windows.
+	 */
+	private static final int MAX_WINDOW_LAYOUTS = 8;
+
+	/**
+	 * The default number of layout sessions kept in memory.
+	 */
+	public static final int DEFAULT_MAX_LAYOUT_SESSIONS = 64;
+
+	/**
+	 * The default number of reconciliation maps kept in memory.
+	 */
+	public static final int DEFAULT_MAX_RECONCILIATION_MAPS = 16;
+
+	/**
+	 * The dispatcher used to retrieve trees from the tree reconciliation service.
+	 */
+	private UnsecuredDEServiceDispatcher dispatcher;
+
+	/**
+	 * The base address of the tree reconciliation service.
+	 */
+	private String treeServiceHost;
+
+	/**
+	 * Caches layouts, or null if layout caching is disabled.
+	 */
+	private LayoutCache layoutCache;
+
+	/**
+	 * Stores precomputed layouts on disk, or null if there is no layout store.
+	 */
+	private LayoutStore layoutStore;
+
+	/**
+	 * True if layouts should be written by the streaming layout writer.
+	 */
+	private boolean streamingLayoutWriter = true;
+
+	/**
+	 * True if trees should be laid out as {@link CompactTree}s.
+	 */
+	private boolean arrayTreeModel = true;
+
+	/**
+	 * Lays out subtrees in parallel, or null if trees are laid out on the requesting thread.
+	 */
+	private BatchExecutor layoutExecutor;
+
+	/**
+	 * The maximum number of nodes in a subtree that is laid out as a single task.
+	 */
+	private int parallelLayoutCutoff = ParallelCladogramLayout.DEFAULT_SEQUENTIAL_CUTOFF;
+
+	/**
+	 * The minimum height, in pixels, of a clade that is shown in full in a layout window.
+	 */
+	private int windowMinCladePixels = LayoutWindowWriter.DEFAULT_MIN_CLADE_PIXELS;
+
+	/**
+	 * The layouts of the most recently windowed trees, indexed by layout cache key, in access order.
+	 */
+	private final Map<String, ParallelCladogramLayout> windowLayouts =
+			new LinkedHashMap<String, ParallelCladogramLayout>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, ParallelCladogramLayout> eldest)
+				{
+					return size() > MAX_WINDOW_LAYOUTS;
+				}
+			};
+
+	/**
+	 * The maximum number of layout sessions kept in memory.
+	 */
+	private int maxLayoutSessions = DEFAULT_MAX_LAYOUT_SESSIONS;
+
+	/**
+	 * The open layout sessions, indexed by handle, in access order.
+	 */
+	private final Map<String, LayoutEditSession> layoutSessions =
+			new LinkedHashMap<String, LayoutEditSession>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, LayoutEditSession> eldest)
+				{
+					return size() > maxLayoutSessions;
+				}
+			};
+
+	/**
+	 * Builds reconciliation maps.
+	 */
+	private ReconciliationMapBuilder reconciliationMapBuilder;
+
+	/**
+	 * Collapses concurrent requests for the same reconciliation map into one build.
+	 */
+	private final RequestCoalescer<String> reconciliationBuilds = new RequestCoalescer<String>();
+
+	private int maxReconciliationMaps = DEFAULT_MAX_RECONCILIATION_MAPS;
+
+	/**
+	 * The most recently requested reconciliation maps, indexed by gene family name, in access order.
+	 */
+	private final Map<String, String> reconciliationMaps = new LinkedHashMap<String, String>(16,
+			0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+		{
+			return size() > maxReconciliationMaps;
+		}
+	};
+
+	/**
+	 * {@inheritDoc}
+	 */
 	@Override
-	public String getLayout(String json)
+	public void init() throws ServletException
+	{
+		dispatcher = new UnsecuredDEServiceDispatcher();
+		dispatcher.init(getServletConfig());
+		treeServiceHost =
+				InitParameters.getString(getServletConfig(), "treeServiceHost",
+						DEFAULT_TREE_SERVICE_HOST);
+
+		streamingLayoutWriter =
+				InitParameters.getBoolean(getServletConfig(), "streamingLayoutWriter", true);
+		windowMinCladePixels =
+				InitParameters.getInt(getServletConfig(), "windowMinCladePixels",
+						LayoutWindowWriter.DEFAULT_MIN_CLADE_PIXELS);
+		maxLayoutSessions =
+				InitParameters.getInt(getServletConfig(), "maxLayoutSessions",
+						DEFAULT_MAX_LAYOUT_SESSIONS);
+		reconciliationMapBuilder = new ReconciliationMapBuilder(dispatcher, treeServiceHost);
+		maxReconciliationMaps =
+				InitParameters.getInt(getServletConfig(), "maxReconciliationMaps",
+						DEFAULT_MAX_RECONCILIATION_MAPS);
+
+		ServiceMonitor monitor = ServiceMonitor.getInstance(getServletContext());
+		monitor.register(getServletName() + ".reconciliationBuilds", reconciliationBuilds);
+		arrayTreeModel = InitParameters.getBoolean(getServletConfig(), "arrayTreeModel", true);
+		int layoutThreads = InitParameters.getInt(getServletConfig(), "parallelLayoutThreads", 0);
+		if(layoutThreads > 0)
+		{
+			arrayTreeModel = true;
+			layoutExecutor = new BatchExecutor(getServletName() + "-layout", layoutThreads);
+			parallelLayoutCutoff =
+					InitParameters.getInt(getServletConfig(), "parallelLayoutCutoff",
+							ParallelCladogramLayout.DEFAULT_SEQUENTIAL_CUTOFF);
+			monitor.register(getServletName() + ".layoutExecutor", layoutExecutor);
+		}
+
+		layoutCache = LayoutCache.fromConfig(getServletConfig());
+		if(layoutCache != null)
+		{
+			monitor.register(getServletName() + ".layoutCache", layoutCache);
+		}
+
+		layoutStore = LayoutStore.fromConfig(getServletConfig());
+		if(layoutStore != null)
+		{
+			monitor.register(getServletName() + ".layoutStore", layoutStore);
+			int warmup =
+					InitParameters.getInt(getServletConfig(), "layoutStoreWarmup",
+							DEFAULT_LAYOUT_STORE_WARMUP);
+			if(layoutCache != null && warmup > 0)
+			{
+				startWarmUp(warmup);
+			}
+		}
+	}
+
+	/**
+	 * Loads stored layouts into the layout cache on a background thread so that startup isn't delayed.
+	 *
+	 * @param maxLayouts the maximum number of layouts to load.
+	 */
+	private void startWarmUp(final int maxLayouts)
 	{
+		Thread thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				long start = System.currentTimeMillis();
+				int count = layoutStore.warmUp(layoutCache, maxLayouts);
+				LOGGER.info("loaded " + count + " layouts from " + layoutStore.getDirectory() + " in "
+						+ (System.currentTimeMillis() - start) + " ms");
+			}
+		}, getServletName() + "-warmup");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void destroy()
+	{
+		if(dispatcher != null)
+		{
+			dispatcher.destroy();
+		}
+		if(layoutExecutor != null)
+		{
+			layoutExecutor.shutdown();
+		}
+		ServiceMonitor monitor = ServiceMonitor.getInstance(getServletContext());
+		monitor.unregister(getServletName() + ".layoutExecutor");
+		monitor.unregister(getServletName() + ".layoutCache");
+		monitor.unregister(getServletName() + ".layoutStore");
+		monitor.unregister(getServletName() + ".reconciliationBuilds");
+		super.destroy();
+	}
+
+	@Override
+	public String getLayout(String json) throws SerializationException
+	{
+		String key = buildKey(json);
+		String stored = getStoredLayout(key);
+		if(stored != null)
+		{
+			return stored;
+		}
+
 		try
 		{
+			return storeLayout(key, computeLayout(json));
+		}
+		catch(JSONException e)
+		{
+			LOGGER.error("unable to lay out tree", e);
+			throw new SerializationException("unable to lay out tree", e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TreeLayout getSpeciesTreeLayout(String geneFamName, boolean compact)
+			throws SerializationException
+	{
+		String address = TreeLayoutBuilder.getSpeciesDataAddress(treeServiceHost, geneFamName);
+
+		try
+		{
+			return buildTreeLayout(TreeLayoutBuilder.getSpeciesTree(retrieve(address)), address,
+					compact);
+		}
+		catch(JSONException e)
+		{
+			throw new SerializationException("invalid response from " + address, e);
+		}
+	}
 
-			JSONObject object = new JSONObject(json);
-			Tree tree = BuildTreeFromJSON.buildTree(object);
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TreeLayout getGeneTreeLayout(String geneFamName, boolean compact)
+			throws SerializationException
+	{
+		String address = TreeLayoutBuilder.getGeneDataAddress(treeServiceHost, geneFamName);
 
-			LayoutCladogram layout = new LayoutCladogram(0.8, 1.0);
-			layout.setUseBranchLengths(true);
-			layout.layout(tree);
+		try
+		{
+			return buildTreeLayout(TreeLayoutBuilder.getGeneTree(retrieve(address)), address,
+					compact);
+		}
+		catch(JSONException e)
+		{
+			throw new SerializationException("invalid response from " + address, e);
+		}
+	}
 
-			try
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TreeLayout getTreeLayoutWindow(String geneFamName, boolean geneTree,
+			LayoutViewport viewport, boolean includeTree) throws SerializationException
+	{
+		String json = retrieveTree(geneFamName, geneTree);
+		try
+		{
+			if(!arrayTreeModel)
 			{
-				return ConvertToJSON.buildJSON(layout).toString();
+				return buildTreeLayout(json, getTreeAddress(geneFamName, geneTree), true);
 			}
-			catch(JSONException e)
+
+			String window =
+					LayoutWindowWriter.toString(getWindowLayout(json), viewport, windowMinCladePixels);
+			return new TreeLayout(includeTree ? json : null, window);
+		}
+		catch(JSONException e)
+		{
+			throw new SerializationException("invalid tree for " + geneFamName, e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String openLayoutSession(String geneFamName, boolean geneTree)
+			throws SerializationException
+	{
+		if(!arrayTreeModel)
+		{
+			throw new SerializationException("layout sessions require the array tree model");
+		}
+
+		String json = retrieveTree(geneFamName, geneTree);
+		try
+		{
+			LayoutEditSession session =
+					new LayoutEditSession(getWindowLayout(json), layoutExecutor, parallelLayoutCutoff);
+			String handle = UUID.randomUUID().toString();
+			synchronized(layoutSessions)
 			{
-				return "{}";
+				layoutSessions.put(handle, session);
 			}
+			return handle;
+		}
+		catch(JSONException e)
+		{
+			throw new SerializationException("invalid tree for " + geneFamName, e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String editLayout(String session, LayoutEdit edit, int idNode)
+			throws SerializationException
+	{
+		LayoutEditSession editSession;
+		synchronized(layoutSessions)
+		{
+			editSession = layoutSessions.get(session);
+		}
+		if(editSession == null)
+		{
+			throw new SerializationException("no layout session " + session);
+		}
+
+		try
+		{
+			return editSession.edit(edit, idNode);
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw new SerializationException(e.getMessage(), e);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new SerializationException("interrupted while laying out " + session, e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getReconciliationMap(final String geneFamName) throws SerializationException
+	{
+		try
+		{
+			return reconciliationBuilds.execute(geneFamName, new Callable<String>()
+			{
+				@Override
+				public String call() throws Exception
+				{
+					return buildReconciliationMap(geneFamName);
+				}
+			});
+		}
+		catch(SerializationException e)
+		{
+			throw e;
+		}
+		catch(JSONException e)
+		{
+			throw new SerializationException("invalid reconciliation data for " + geneFamName, e);
+		}
+		catch(Exception e)
+		{
+			LOGGER.error(e.toString(), e);
+			throw new SerializationException(e);
+		}
+	}
+
+	/**
+	 * Gets the reconciliation map of a gene family from memory or, failing that, builds it.
+	 *
+	 * @param geneFamName the name of the gene family.
+	 * @return the reconciliation map.
+	 * @throws SerializationException if the reconciliation can't be retrieved.
+	 * @throws JSONException if the reconciliation is invalid.
+	 */
+	private String buildReconciliationMap(String geneFamName) throws SerializationException,
+			JSONException
+	{
+		synchronized(reconciliationMaps)
+		{
+			String map = reconciliationMaps.get(geneFamName);
+			if(map != null)
+			{
+				return map;
+			}
+		}
+
+		String map = reconciliationMapBuilder.build(geneFamName);
+		synchronized(reconciliationMaps)
+		{
+			reconciliationMaps.put(geneFamName, map);
+		}
+		return map;
+	}
+
+	/**
+	 * Builds the address of the species or gene tree for a gene family.
+	 *
+	 * @param geneFamName the name of the gene family, or null for the complete species tree.
+	 * @param geneTree true for the gene tree, or false for the species tree.
+	 * @return the address.
+	 */
+	private String getTreeAddress(String geneFamName, boolean geneTree)
+	{
+		return geneTree ? TreeLayoutBuilder.getGeneDataAddress(treeServiceHost, geneFamName)
+				: TreeLayoutBuilder.getSpeciesDataAddress(treeServiceHost, geneFamName);
+	}
 
+	/**
+	 * Retrieves the species or gene tree for a gene family from the tree reconciliation service.
+	 *
+	 * @param geneFamName the name of the gene family, or null for the complete species tree.
+	 * @param geneTree true for the gene tree, or false for the species tree.
+	 * @return the tree in JSON format.
+	 * @throws SerializationException if the tree can't be retrieved.
+	 */
+	private String retrieveTree(String geneFamName, boolean geneTree) throws SerializationException
+	{
+		String address = getTreeAddress(geneFamName, geneTree);
+
+		try
+		{
+			String response = retrieve(address);
+			String json =
+					geneTree ? TreeLayoutBuilder.getGeneTree(response) : TreeLayoutBuilder
+							.getSpeciesTree(response);
+			if(json == null)
+			{
+				LOGGER.warn("no tree returned by " + address);
+				throw new SerializationException("no tree returned by " + address);
+			}
+			return json;
 		}
 		catch(JSONException e)
 		{
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			return "{}";
+			throw new SerializationException("invalid response from " + address, e);
+		}
+	}
+
+	/**
+	 * Gets the array layout of a tree from the recently windowed layouts, laying it out if it isn't
+	 * there.
+	 *
+	 * @param json the tree in JSON format.
+	 * @return the layout.
+	 * @throws JSONException if the tree is invalid.
+	 */
+	private ParallelCladogramLayout getWindowLayout(String json) throws JSONException
+	{
+		String key = LayoutCache.buildKey(json, TreeLayoutBuilder.LAYOUT_PARAMETERS);
+		synchronized(windowLayouts)
+		{
+			ParallelCladogramLayout layout = windowLayouts.get(key);
+			if(layout != null)
+			{
+				return layout;
+			}
+		}
+
+		ParallelCladogramLayout layout =
+				TreeLayoutBuilder.layoutCompactTree(json, layoutExecutor, parallelLayoutCutoff);
+		synchronized(windowLayouts)
+		{
+			windowLayouts.put(key, layout);
+		}
+		return layout;
+	}
+
+	/**
+	 * Retrieves a response from the tree reconciliation service.
+	 *
+	 * @param address the address of the service.
+	 * @return the response.
+	 * @throws SerializationException if the service can't be reached.
+	 */
+	private String retrieve(String address) throws SerializationException
+	{
+		String json = dispatcher.getServiceData(new ServiceCallWrapper(address));
+		if(json == null)
+		{
+			throw new SerializationException("no response from " + address);
+		}
+
+		return json;
+	}
+
+	/**
+	 * Lays out a tree retrieved from the tree reconciliation service.
+	 *
+	 * @param json the tree in JSON format or null if the service didn't return one.
+	 * @param address the address the tree was retrieved from.
+	 * @param compact true if the client accepts layouts in the compact encoding.
+	 * @return the tree and its layout.
+	 * @throws SerializationException if there is no tree.
+	 * @throws JSONException if the tree can't be converted.
+	 */
+	private TreeLayout buildTreeLayout(String json, String address, boolean compact)
+			throws SerializationException, JSONException
+	{
+		if(json == null)
+		{
+			LOGGER.warn("no tree returned by " + address);
+			throw new SerializationException("no tree returned by " + address);
+		}
+
+		String key = buildKey(json);
+		String layout = getStoredLayout(key);
+		if(layout == null)
+		{
+			layout = storeLayout(key, computeLayout(json));
+		}
+
+		if(compact)
+		{
+			layout = getCompactLayout(key, layout);
+		}
+
+		return new TreeLayout(json, layout);
+	}
+
+	/**
+	 * Converts a layout to the compact encoding. Compact layouts are cached alongside the JSON layouts
+	 * they were encoded from, but they aren't stored.
+	 *
+	 * @param key the layout cache key of the JSON layout or null if layouts are neither cached nor
+	 *            stored.
+	 * @param layout the layout in JSON format.
+	 * @return the compact layout, or the JSON layout if it can't be encoded.
+	 * @throws JSONException if the layout isn't valid JSON.
+	 */
+	private String getCompactLayout(String key, String layout) throws JSONException
+	{
+		String compactKey = key == null || layoutCache == null ? null : key + ":compact";
+		String compact = compactKey == null ? null : layoutCache.get(compactKey);
+		if(compact == null)
+		{
+			compact = CompactLayoutEncoder.encode(layout);
+			if(compact == null)
+			{
+				return layout;
+			}
+			if(compactKey != null)
+			{
+				layoutCache.put(compactKey, compact);
+			}
+		}
+
+		return compact;
+	}
+
+	/**
+	 * Lays out a tree, in parallel if a layout executor is configured.
+	 *
+	 * @param json the tree in JSON format.
+	 * @return the layout in JSON format.
+	 * @throws JSONException if the tree is invalid.
+	 */
+	private String computeLayout(String json) throws JSONException
+	{
+		if(arrayTreeModel)
+		{
+			return TreeLayoutBuilder.layoutArrays(json, layoutExecutor, parallelLayoutCutoff);
+		}
+
+		return TreeLayoutBuilder.layout(json, streamingLayoutWriter);
+	}
+
+	/**
+	 * Builds the layout cache key for a tree.
+	 *
+	 * @param json the tree in JSON format.
+	 * @return the key or null if layouts are neither cached nor stored.
+	 */
+	private String buildKey(String json)
+	{
+		if(layoutCache == null && layoutStore == null)
+		{
+			return null;
+		}
+
+		return LayoutCache.buildKey(json, TreeLayoutBuilder.LAYOUT_PARAMETERS);
+	}
+
+	/**
+	 * Gets a layout from the layout cache or, failing that, from the layout store. Layouts found in the
+	 * store are added to the cache.
+	 *
+	 * @param key the layout cache key or null if layouts are neither cached nor stored.
+	 * @return the layout or null if it hasn't been computed.
+	 */
+	private String getStoredLayout(String key)
+	{
+		if(key == null)
+		{
+			return null;
 		}
+
+		String layout = layoutCache == null ? null : layoutCache.get(key);
+		if(layout == null && layoutStore != null)
+		{
+			layout = layoutStore.get(key);
+			if(layout != null && layoutCache != null)
+			{
+				layoutCache.put(key, layout);
+			}
+		}
+
+		return layout;
 	}
 
+	/**
+	 * Adds a layout to the layout cache and store. Empty layouts, which indicate failure, are not kept.
+	 *
+	 * @param key the layout cache key or null if layouts are neither cached nor stored.
+	 * @param layout the layout.
+	 * @return the layout.
+	 */
+	private String storeLayout(String key, String layout)
+	{
+		if(key != null && !layout.equals("{}"))
+		{
+			if(layoutCache != null)
+			{
+				layoutCache.put(key, layout);
+			}
+			if(layoutStore != null)
+			{
+				layoutStore.put(key, layout);
+			}
+		}
+
+		return layout;
+	}
 }
@@ -0,0 +1,263 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A persistent store of precomputed tree layouts. Each layout is kept in its own file in the store
+ * directory, named after its layout cache key, so the store survives redeployment and can be filled
+ * offline by {@link LayoutPrecomputer}. Files are written to a temporary name and then renamed, so a
+ * reader never sees a partially written layout.
+ *
+ * The store is configured using the following servlet initialization parameters:
+ *
+ * <ul>
+ * <li><code>layoutStoreDir</code>: the store directory; if omitted, there is no store.</li>
+ * <li><code>layoutStoreWritable</code>: true if layouts computed by the servlet should be added to the
+ * store; defaults to true.</li>
+ * </ul>
+ */
+public class LayoutStore implements StatisticsSource
+{
+	private static final Logger LOGGER = Logger.getLogger(LayoutStore.class);
+
+	/**
+	 * The suffix of layout files.
+	 */
+	private static final String SUFFIX = ".json";
+
+	/**
+	 * The character encoding of layout files.
+	 */
+	private static final String CHARSET = "UTF-8";
+
+	private final File directory;
+	private final boolean writable;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong writeCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+
+	/**
+	 * @param directory the store directory, which is created if it doesn't exist.
+	 * @param writable true if layouts may be added to the store.
+	 */
+	public LayoutStore(File directory, boolean writable)
+	{
+		this.directory = directory;
+		this.writable = writable;
+		if(writable && !directory.isDirectory() && !directory.mkdirs())
+		{
+			LOGGER.warn("unable to create layout store directory " + directory);
+		}
+	}
+
+	/**
+	 * Creates a layout store from the servlet initialization parameters.
+	 *
+	 * @param config the servlet configuration.
+	 * @return the layout store or null if there is no store.
+	 * @throws ServletException if the configuration is invalid.
+	 */
+	public static LayoutStore fromConfig(ServletConfig config) throws ServletException
+	{
+		String path = InitParameters.getString(config, "layoutStoreDir", "");
+		if(path.trim().length() == 0)
+		{
+			return null;
+		}
+
+		return new LayoutStore(new File(path.trim()), InitParameters.getBoolean(config,
+				"layoutStoreWritable", true));
+	}
+
+	/**
+	 * @return the store directory.
+	 */
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	/**
+	 * Gets a stored layout.
+	 *
+	 * @param key the layout cache key.
+	 * @return the layout or null if it isn't stored or can't be read.
+	 */
+	public String get(String key)
+	{
+		File file = getFile(key);
+		if(!file.isFile())
+		{
+			missCount.incrementAndGet();
+			return null;
+		}
+
+		try
+		{
+			String layout = read(file);
+			hitCount.incrementAndGet();
+			return layout;
+		}
+		catch(IOException e)
+		{
+			failedCount.incrementAndGet();
+			LOGGER.warn("unable to read stored layout " + file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a layout, replacing any layout already stored under the same key. Nothing is stored if the
+	 * store isn't writable.
+	 *
+	 * @param key the layout cache key.
+	 * @param layout the layout.
+	 */
+	public void put(String key, String layout)
+	{
+		if(!writable)
+		{
+			return;
+		}
+
+		File file = getFile(key);
+		File temp = new File(directory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		try
+		{
+			OutputStream out = new FileOutputStream(temp);
+			try
+			{
+				out.write(layout.getBytes(CHARSET));
+			}
+			finally
+			{
+				out.close();
+			}
+
+			// renaming over an existing file fails on some platforms
+			if(!temp.renameTo(file) && !(file.delete() && temp.renameTo(file)))
+			{
+				throw new IOException("unable to rename " + temp + " to " + file);
+			}
+			writeCount.incrementAndGet();
+		}
+		catch(IOException e)
+		{
+			failedCount.incrementAndGet();
+			LOGGER.warn("unable to store layout " + file, e);
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Loads stored layouts into a layout cache.
+	 *
+	 * @param cache the layout cache.
+	 * @param maxLayouts the maximum number of layouts to load.
+	 * @return the number of layouts loaded.
+	 */
+	public int warmUp(LayoutCache cache, int maxLayouts)
+	{
+		File[] files = directory.listFiles();
+		if(files == null)
+		{
+			return 0;
+		}
+
+		int count = 0;
+		for(int i = 0;i < files.length && count < maxLayouts;i++)
+		{
+			String name = files[i].getName();
+			if(!name.endsWith(SUFFIX))
+			{
+				continue;
+			}
+
+			try
+			{
+				cache.put(getKey(name), read(files[i]));
+				count++;
+			}
+			catch(IOException e)
+			{
+				failedCount.incrementAndGet();
+				LOGGER.warn("unable to read stored layout " + files[i], e);
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, Long> getStatistics()
+	{
+		Map<String, Long> stats = new LinkedHashMap<String, Long>();
+		stats.put("hits", hitCount.get());
+		stats.put("misses", missCount.get());
+		stats.put("writes", writeCount.get());
+		stats.put("failed", failedCount.get());
+		return Collections.unmodifiableMap(stats);
+	}
+
+	/**
+	 * Gets the file that a layout is stored in. Layout cache keys only contain letters, digits, periods
+	 * and colons, and colons are replaced so that the name is valid on every platform.
+	 *
+	 * @param key the layout cache key.
+	 * @return the file.
+	 */
+	private File getFile(String key)
+	{
+		return new File(directory, key.replace(':', '_') + SUFFIX);
+	}
+
+	/**
+	 * Recovers the layout cache key from the name of a layout file.
+	 *
+	 * @param name the file name.
+	 * @return the layout cache key.
+	 */
+	private String getKey(String name)
+	{
+		return name.substring(0, name.length() - SUFFIX.length()).replace('_', ':');
+	}
+
+	/**
+	 * Reads the contents of a layout file.
+	 *
+	 * @param file the file.
+	 * @return the layout.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private String read(File file) throws IOException
+	{
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			return StreamUtils.readString(in, CHARSET);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
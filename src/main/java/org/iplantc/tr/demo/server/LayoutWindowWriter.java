@@ -0,0 +1,113 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.IOException;
+
+import org.iplantc.tr.demo.shared.LayoutViewport;
+
+/**
+ * Writes the part of a layout that is visible in a viewport, in the layout window format described by
+ * {@link LayoutViewport}. Nodes are visited in pre-order, and whenever a clade lies outside the viewport
+ * or would be shorter than the minimum number of pixels, it's written as a single collapsed clade and
+ * its whole subtree is skipped. The output therefore grows with the number of nodes that can be told
+ * apart on screen rather than with the size of the tree.
+ */
+public class LayoutWindowWriter
+{
+	/**
+	 * The default minimum height, in pixels, of a clade that is shown in full.
+	 */
+	public static final int DEFAULT_MIN_CLADE_PIXELS = 4;
+
+	private LayoutWindowWriter()
+	{
+	}
+
+	/**
+	 * Writes a layout window.
+	 *
+	 * @param layout the complete layout.
+	 * @param viewport the viewport.
+	 * @param minCladePixels the minimum height, in pixels, of a clade that is shown in full.
+	 * @return the layout window, including its prefix.
+	 */
+	public static String toString(ParallelCladogramLayout layout, LayoutViewport viewport,
+			double minCladePixels)
+	{
+		StringBuilder nodes = new StringBuilder(LayoutViewport.WINDOW_PREFIX);
+		StringBuilder collapsed = new StringBuilder();
+		try
+		{
+			write(layout, viewport, minCladePixels, nodes, collapsed);
+		}
+		catch(IOException e)
+		{
+			// a StringBuilder never throws IOException
+			throw new IllegalStateException(e);
+		}
+		return nodes.append(collapsed).toString();
+	}
+
+	/**
+	 * Writes the nodes of a layout window and, separately, its collapsed clades.
+	 *
+	 * @param layout the complete layout.
+	 * @param viewport the viewport.
+	 * @param minCladePixels the minimum height, in pixels, of a clade that is shown in full.
+	 * @param nodes receives the start of the window and the visible nodes.
+	 * @param collapsed receives the collapsed clades and the end of the window.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private static void write(ParallelCladogramLayout layout, LayoutViewport viewport,
+			double minCladePixels, Appendable nodes, Appendable collapsed) throws IOException
+	{
+		double viewHeight = viewport.getMaxY() - viewport.getMinY();
+		double pixelsPerUnit = viewHeight > 0.0 ? viewport.getHeight() / viewHeight : 0.0;
+
+		nodes.append("{\"nodes\":[");
+		collapsed.append("],\"collapsed\":[");
+
+		boolean firstNode = true;
+		boolean firstClade = true;
+		int count = layout.getTree() == null ? 0 : layout.getTree().size();
+		int i = 0;
+		while(i < count)
+		{
+			boolean leaf = layout.getSubtreeSize(i) == 1;
+			boolean visible =
+					layout.getMaxX(i) >= viewport.getMinX() && layout.getMinX(i) <= viewport.getMaxX()
+							&& layout.getMaxY(i) >= viewport.getMinY()
+							&& layout.getMinY(i) <= viewport.getMaxY();
+			boolean small = (layout.getMaxY(i) - layout.getMinY(i)) * pixelsPerUnit < minCladePixels;
+
+			if(!leaf && (!visible || small))
+			{
+				if(!firstClade)
+				{
+					collapsed.append(',');
+				}
+				firstClade = false;
+				collapsed.append('{');
+				LayoutJsonWriter.writeNodeMembers(layout, i, collapsed);
+				collapsed.append(",\"leaves\":").append(Integer.toString(layout.getLeafCount(i)));
+				collapsed.append('}');
+
+				i += layout.getSubtreeSize(i);
+			}
+			else
+			{
+				if(!firstNode)
+				{
+					nodes.append(',');
+				}
+				firstNode = false;
+				nodes.append('{');
+				LayoutJsonWriter.writeNodeMembers(layout, i, nodes);
+				nodes.append('}');
+
+				i++;
+			}
+		}
+
+		collapsed.append("]}");
+	}
+}
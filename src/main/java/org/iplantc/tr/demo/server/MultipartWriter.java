@@ -0,0 +1,200 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Writes a multipart/form-data request body directly to an output stream. Each part is written as soon
+ * as it's added, so neither the parts nor the request body as a whole need to be held in memory. Text
+ * is encoded as UTF-8 and lines are terminated with CRLF as required by RFC 2046.
+ */
+public class MultipartWriter
+{
+	/**
+	 * The line terminator used in multipart bodies.
+	 */
+	private static final String CRLF = "\r\n";
+
+	/**
+	 * The character encoding used for headers and text parts.
+	 */
+	private static final String CHARSET = "UTF-8";
+
+	/**
+	 * The number of characters of a text part to encode at a time.
+	 */
+	private static final int TEXT_CHUNK_SIZE = 8192;
+
+	private static final Random RANDOM = new Random();
+
+	private final OutputStream out;
+	private final String boundary;
+	private boolean finished = false;
+
+	/**
+	 * Creates a multipart writer with a randomly generated boundary.
+	 *
+	 * @param out the stream to write the request body to.
+	 */
+	public MultipartWriter(OutputStream out)
+	{
+		this(out, buildBoundary());
+	}
+
+	/**
+	 * @param out the stream to write the request body to.
+	 * @param boundary the multipart boundary.
+	 */
+	public MultipartWriter(OutputStream out, String boundary)
+	{
+		this.out = out;
+		this.boundary = boundary;
+	}
+
+	/**
+	 * Builds a multipart boundary that is very unlikely to appear in the body of any part.
+	 *
+	 * @return the boundary.
+	 */
+	public static String buildBoundary()
+	{
+		long random;
+		synchronized(RANDOM)
+		{
+			random = RANDOM.nextLong();
+		}
+
+		return "--------------------" + Long.toString(System.currentTimeMillis(), 16)
+				+ Long.toHexString(random);
+	}
+
+	/**
+	 * Creates the MIME content type for a multipart boundary.
+	 *
+	 * @param boundary the multipart boundary.
+	 * @return the content type.
+	 */
+	public static String getContentType(String boundary)
+	{
+		return "multipart/form-data; boundary=" + boundary;
+	}
+
+	/**
+	 * @return the MIME content type of the request body.
+	 */
+	public String getContentType()
+	{
+		return getContentType(boundary);
+	}
+
+	/**
+	 * Writes a text part. The text is encoded as UTF-8 a chunk at a time.
+	 *
+	 * @param disposition the parameters of the Content-Disposition header, following "form-data; ".
+	 * @param body the text.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void writePart(String disposition, String body) throws IOException
+	{
+		writePartHeaders(disposition, null);
+
+		Writer writer = new OutputStreamWriter(new UnclosableOutputStream(out), CHARSET);
+		for(int start = 0;start < body.length();start += TEXT_CHUNK_SIZE)
+		{
+			writer.write(body, start, Math.min(TEXT_CHUNK_SIZE, body.length() - start));
+		}
+		writer.close();
+
+		writeAscii(CRLF);
+	}
+
+	/**
+	 * Writes a part whose body is copied from an input stream. The stream is not closed.
+	 *
+	 * @param disposition the parameters of the Content-Disposition header, following "form-data; ".
+	 * @param contentType the MIME content type of the part or null to omit the Content-Type header.
+	 * @param body the stream to copy the body of the part from.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void writePart(String disposition, String contentType, InputStream body)
+			throws IOException
+	{
+		writePartHeaders(disposition, contentType);
+		StreamUtils.copy(body, out);
+		writeAscii(CRLF);
+	}
+
+	/**
+	 * Writes the closing boundary and flushes the output stream. No more parts can be written.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void finish() throws IOException
+	{
+		if(!finished)
+		{
+			writeAscii("--" + boundary + "--" + CRLF);
+			out.flush();
+			finished = true;
+		}
+	}
+
+	/**
+	 * Writes the boundary and headers that precede the body of a part.
+	 *
+	 * @param disposition the parameters of the Content-Disposition header.
+	 * @param contentType the MIME content type of the part or null to omit the Content-Type header.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private void writePartHeaders(String disposition, String contentType) throws IOException
+	{
+		if(finished)
+		{
+			throw new IllegalStateException("the multipart body has already been finished");
+		}
+
+		StringBuilder headers = new StringBuilder();
+		headers.append("--").append(boundary).append(CRLF);
+		headers.append("Content-Disposition: form-data; ").append(disposition).append(CRLF);
+		if(contentType != null)
+		{
+			headers.append("Content-Type: ").append(contentType).append(CRLF);
+		}
+		headers.append(CRLF);
+
+		out.write(headers.toString().getBytes(CHARSET));
+	}
+
+	private void writeAscii(String text) throws IOException
+	{
+		out.write(text.getBytes("US-ASCII"));
+	}
+
+	/**
+	 * Keeps the encoding writer for a text part from closing the request body stream.
+	 */
+	private static class UnclosableOutputStream extends FilterOutputStream
+	{
+		UnclosableOutputStream(OutputStream out)
+		{
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			flush();
+		}
+	}
+}
@@ -0,0 +1,582 @@
+package org.iplantc.tr.demo.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Lays out a tree as a cladogram, like <code>LayoutCladogram</code>, but lays out independent
+ * subtrees in parallel.
+ *
+ * The tree is a {@link CompactTree}, whose nodes are numbered in pre-order so that every subtree
+ * occupies a contiguous range of indices. The tree is split into subtrees of at most
+ * {@link #getSequentialCutoff()} nodes joined by a spine of larger subtrees' roots. The layout then
+ * takes two passes, each of which handles the subtrees in parallel before handling the spine on the
+ * current thread:
+ * <ol>
+ * <li>bottom-up: the number of leaves, the depth and the branch length to the deepest leaf.</li>
+ * <li>top-down and then bottom-up: the order of the leaves, the depth and branch length from the root,
+ * the x positions and finally the y positions and bounding boxes.</li>
+ * </ol>
+ * Leaves are evenly spaced along the y axis in tree order, and the y position of an internal node is
+ * midway between its first and last children. Nodes are placed along the x axis by their depth or, if
+ * branch lengths are used, by their distance from the root.
+ *
+ * A layout can take its scale from an earlier layout instead of fitting the tree to the canvas, so
+ * that nodes whose distance from the root and place in the leaf order haven't changed keep exactly the
+ * same positions. This is how edited trees are laid out without moving the rest of the tree.
+ *
+ * All work is done on arrays of primitives indexed by node, and explicit loops are used rather than
+ * recursion, so deep trees can't exhaust the stack and no objects are created per node. Without an
+ * executor, or for trees that fit within the sequential cutoff, the whole layout is done on the current
+ * thread.
+ */
+public class ParallelCladogramLayout
+{
+	/**
+	 * The default maximum number of nodes in a subtree that is laid out as a single task.
+	 */
+	public static final int DEFAULT_SEQUENTIAL_CUTOFF = 4096;
+
+	private final double xCanvasSize;
+	private final double yCanvasSize;
+	private final BatchExecutor executor;
+
+	private boolean useBranchLengths;
+	private int sequentialCutoff = DEFAULT_SEQUENTIAL_CUTOFF;
+
+	/**
+	 * The layout whose scale is used, or null to fit the tree to the canvas.
+	 */
+	private ParallelCladogramLayout scaleReference;
+
+	/**
+	 * True if nodes are placed along the x axis by their distance from the root rather than their
+	 * depth.
+	 */
+	private boolean placedByDistance;
+
+	/**
+	 * The distance or depth that spans the width of the canvas.
+	 */
+	private double xExtent;
+
+	/**
+	 * The number of leaves that span the height of the canvas.
+	 */
+	private int leafSlots;
+
+	private CompactTree tree;
+
+	/**
+	 * The number of nodes in each node's subtree, including the node itself.
+	 */
+	private int[] size;
+
+	private int[] leafCount;
+
+	/**
+	 * The number of edges from each node to its deepest leaf.
+	 */
+	private int[] height;
+
+	/**
+	 * The largest sum of branch lengths from each node to one of its leaves.
+	 */
+	private double[] reach;
+
+	private int[] depth;
+	private double[] distance;
+
+	/**
+	 * The position of each node's first leaf in the leaf order.
+	 */
+	private int[] firstLeaf;
+
+	private double[] x;
+	private double[] y;
+	private double[] minX;
+	private double[] minY;
+	private double[] maxX;
+	private double[] maxY;
+
+	/**
+	 * The index of the root of each subtree that is laid out as a single task.
+	 */
+	private List<Integer> subtrees;
+
+	/**
+	 * The indices of the nodes that don't belong to any of the subtrees, in pre-order.
+	 */
+	private List<Integer> spine;
+
+	/**
+	 * @param xCanvasSize the width of the layout.
+	 * @param yCanvasSize the height of the layout.
+	 * @param executor the executor used to lay out subtrees in parallel, or null to lay out the whole
+	 *            tree on the current thread.
+	 */
+	public ParallelCladogramLayout(double xCanvasSize, double yCanvasSize, BatchExecutor executor)
+	{
+		this.xCanvasSize = xCanvasSize;
+		this.yCanvasSize = yCanvasSize;
+		this.executor = executor;
+	}
+
+	/**
+	 * @param useBranchLengths true to place nodes along the x axis by their distance from the root.
+	 */
+	public void setUseBranchLengths(boolean useBranchLengths)
+	{
+		this.useBranchLengths = useBranchLengths;
+	}
+
+	/**
+	 * @return the maximum number of nodes in a subtree that is laid out as a single task.
+	 */
+	public int getSequentialCutoff()
+	{
+		return sequentialCutoff;
+	}
+
+	/**
+	 * @param sequentialCutoff the maximum number of nodes in a subtree that is laid out as a single
+	 *            task.
+	 */
+	public void setSequentialCutoff(int sequentialCutoff)
+	{
+		if(sequentialCutoff < 1)
+		{
+			throw new IllegalArgumentException("sequentialCutoff must be positive");
+		}
+		this.sequentialCutoff = sequentialCutoff;
+	}
+
+	/**
+	 * Uses the scale of another layout rather than fitting the tree to the canvas. A node is then
+	 * positioned exactly as it would be in the other layout if its distance from the root, or its
+	 * depth, and the number of leaves before it are the same in both trees. Nodes can fall outside the
+	 * canvas.
+	 *
+	 * @param reference a completed layout, or null to fit the tree to the canvas.
+	 */
+	public void setScale(ParallelCladogramLayout reference)
+	{
+		scaleReference = reference;
+	}
+
+	/**
+	 * Lays out a tree, replacing any previous layout.
+	 *
+	 * @param tree the tree.
+	 * @throws InterruptedException if the current thread is interrupted while waiting for subtrees to
+	 *             be laid out.
+	 */
+	public void layout(CompactTree tree) throws InterruptedException
+	{
+		allocate(tree);
+		if(tree.size() == 0)
+		{
+			return;
+		}
+
+		split();
+
+		run(new RangeTask()
+		{
+			@Override
+			protected void layout(int start, int end)
+			{
+				for(int i = end - 1;i >= start;i--)
+				{
+					measure(i);
+				}
+			}
+		});
+		for(int i = spine.size() - 1;i >= 0;i--)
+		{
+			measure(spine.get(i));
+		}
+
+		chooseScale();
+		for(int i : spine)
+		{
+			place(i);
+		}
+		run(new RangeTask()
+		{
+			@Override
+			protected void layout(int start, int end)
+			{
+				for(int i = start;i < end;i++)
+				{
+					place(i);
+				}
+				for(int i = end - 1;i >= start;i--)
+				{
+					position(i);
+				}
+			}
+		});
+		for(int i = spine.size() - 1;i >= 0;i--)
+		{
+			position(spine.get(i));
+		}
+	}
+
+	/**
+	 * @return the tree that was laid out.
+	 */
+	public CompactTree getTree()
+	{
+		return tree;
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return the number of nodes in the node's subtree, including the node itself.
+	 */
+	public int getSubtreeSize(int index)
+	{
+		return size[index];
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return the number of leaves in the node's subtree.
+	 */
+	public int getLeafCount(int index)
+	{
+		return leafCount[index];
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return the x coordinate of the node's position.
+	 */
+	public double getX(int index)
+	{
+		return x[index];
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return the y coordinate of the node's position.
+	 */
+	public double getY(int index)
+	{
+		return y[index];
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return the smallest x coordinate in the bounding box of the node and its descendants.
+	 */
+	public double getMinX(int index)
+	{
+		return minX[index];
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return the smallest y coordinate in the bounding box of the node and its descendants.
+	 */
+	public double getMinY(int index)
+	{
+		return minY[index];
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return the largest x coordinate in the bounding box of the node and its descendants.
+	 */
+	public double getMaxX(int index)
+	{
+		return maxX[index];
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return the largest y coordinate in the bounding box of the node and its descendants.
+	 */
+	public double getMaxY(int index)
+	{
+		return maxY[index];
+	}
+
+	/**
+	 * Allocates the arrays for a tree and counts the nodes in each subtree.
+	 *
+	 * @param tree the tree.
+	 */
+	private void allocate(CompactTree tree)
+	{
+		this.tree = tree;
+		int count = tree.size();
+
+		size = new int[count];
+		for(int i = count - 1;i >= 0;i--)
+		{
+			size[i]++;
+			if(i > 0)
+			{
+				size[tree.getParent(i)] += size[i];
+			}
+		}
+
+		leafCount = new int[count];
+		height = new int[count];
+		reach = new double[count];
+		depth = new int[count];
+		distance = new double[count];
+		firstLeaf = new int[count];
+		x = new double[count];
+		y = new double[count];
+		minX = new double[count];
+		minY = new double[count];
+		maxX = new double[count];
+		maxY = new double[count];
+	}
+
+	/**
+	 * Splits the tree into the subtrees that are laid out as single tasks and the spine that joins
+	 * them.
+	 */
+	private void split()
+	{
+		subtrees = new ArrayList<Integer>();
+		spine = new ArrayList<Integer>();
+
+		List<Integer> stack = new ArrayList<Integer>();
+		stack.add(0);
+		while(!stack.isEmpty())
+		{
+			int index = stack.remove(stack.size() - 1);
+			if(size[index] <= sequentialCutoff)
+			{
+				subtrees.add(index);
+				continue;
+			}
+
+			spine.add(index);
+
+			// push the children in reverse so that the spine is listed in pre-order
+			int first = stack.size();
+			for(int child = tree.getFirstChild(index);child != CompactTree.NONE;child =
+					tree.getNextSibling(child))
+			{
+				stack.add(child);
+			}
+			Collections.reverse(stack.subList(first, stack.size()));
+		}
+	}
+
+	/**
+	 * Counts a node's leaves and finds its deepest leaf. Its children must already have been measured.
+	 *
+	 * @param index the index of the node.
+	 */
+	private void measure(int index)
+	{
+		int child = tree.getFirstChild(index);
+		if(child == CompactTree.NONE)
+		{
+			leafCount[index] = 1;
+			height[index] = 0;
+			reach[index] = 0.0;
+			return;
+		}
+
+		int leaves = 0;
+		int maxHeight = 0;
+		double maxReach = 0.0;
+		for(;child != CompactTree.NONE;child = tree.getNextSibling(child))
+		{
+			leaves += leafCount[child];
+			maxHeight = Math.max(maxHeight, height[child] + 1);
+			maxReach = Math.max(maxReach, reach[child] + getBranchLength(child));
+		}
+
+		leafCount[index] = leaves;
+		height[index] = maxHeight;
+		reach[index] = maxReach;
+	}
+
+	/**
+	 * Chooses the scale of the layout once the root has been measured.
+	 */
+	private void chooseScale()
+	{
+		if(scaleReference != null)
+		{
+			placedByDistance = scaleReference.placedByDistance;
+			xExtent = scaleReference.xExtent;
+			leafSlots = scaleReference.leafSlots;
+			return;
+		}
+
+		placedByDistance = useBranchLengths && reach[0] > 0.0;
+		xExtent = placedByDistance ? reach[0] : height[0];
+		leafSlots = leafCount[0];
+	}
+
+	/**
+	 * Passes a node's depth, distance from the root and leaf order on to its children.
+	 *
+	 * @param index the index of the node.
+	 */
+	private void place(int index)
+	{
+		int leaf = firstLeaf[index];
+		for(int child = tree.getFirstChild(index);child != CompactTree.NONE;child =
+				tree.getNextSibling(child))
+		{
+			depth[child] = depth[index] + 1;
+			distance[child] = distance[index] + getBranchLength(child);
+			firstLeaf[child] = leaf;
+			leaf += leafCount[child];
+		}
+	}
+
+	/**
+	 * Computes a node's position and bounding box. Its children must already have been positioned.
+	 *
+	 * @param index the index of the node.
+	 */
+	private void position(int index)
+	{
+		double nodeX;
+		if(placedByDistance)
+		{
+			nodeX = distance[index] / xExtent * xCanvasSize;
+		}
+		else
+		{
+			nodeX = xExtent > 0.0 ? depth[index] / xExtent * xCanvasSize : 0.0;
+		}
+		x[index] = nodeX;
+
+		int child = tree.getFirstChild(index);
+		if(child == CompactTree.NONE)
+		{
+			double nodeY = (firstLeaf[index] + 0.5) * yCanvasSize / leafSlots;
+			y[index] = nodeY;
+			minX[index] = nodeX;
+			minY[index] = nodeY;
+			maxX[index] = nodeX;
+			maxY[index] = nodeY;
+			return;
+		}
+
+		double boxMinX = nodeX;
+		double boxMinY = Double.MAX_VALUE;
+		double boxMaxX = nodeX;
+		double boxMaxY = -Double.MAX_VALUE;
+		double firstY = y[child];
+		double lastY = firstY;
+		for(;child != CompactTree.NONE;child = tree.getNextSibling(child))
+		{
+			boxMinX = Math.min(boxMinX, minX[child]);
+			boxMinY = Math.min(boxMinY, minY[child]);
+			boxMaxX = Math.max(boxMaxX, maxX[child]);
+			boxMaxY = Math.max(boxMaxY, maxY[child]);
+			lastY = y[child];
+		}
+
+		double nodeY = (firstY + lastY) / 2.0;
+		y[index] = nodeY;
+		minX[index] = boxMinX;
+		minY[index] = Math.min(boxMinY, nodeY);
+		maxX[index] = boxMaxX;
+		maxY[index] = Math.max(boxMaxY, nodeY);
+	}
+
+	/**
+	 * @param index the index of a node.
+	 * @return the length of the branch leading to the node, or zero if it has none.
+	 */
+	private double getBranchLength(int index)
+	{
+		return tree.hasBranchLength(index) ? tree.getBranchLength(index) : 0.0;
+	}
+
+	/**
+	 * Runs a task for each subtree, in parallel if there is an executor and more than one subtree.
+	 *
+	 * @param task the task.
+	 * @throws InterruptedException if the current thread is interrupted while waiting.
+	 */
+	private void run(RangeTask task) throws InterruptedException
+	{
+		if(executor == null || subtrees.size() < 2)
+		{
+			for(int start : subtrees)
+			{
+				task.layout(start, start + size[start]);
+			}
+			return;
+		}
+
+		List<Callable<Void>> calls = new ArrayList<Callable<Void>>(subtrees.size());
+		for(int start : subtrees)
+		{
+			calls.add(task.forSubtree(start, start + size[start]));
+		}
+
+		for(FutureTask<Void> result : executor.invokeAll(calls))
+		{
+			try
+			{
+				result.get();
+			}
+			catch(ExecutionException e)
+			{
+				Throwable cause = e.getCause();
+				if(cause instanceof RuntimeException)
+				{
+					throw (RuntimeException)cause;
+				}
+				if(cause instanceof Error)
+				{
+					throw (Error)cause;
+				}
+				throw new IllegalStateException(cause);
+			}
+		}
+	}
+
+	/**
+	 * A step of the layout that is applied to each subtree independently.
+	 */
+	private abstract static class RangeTask
+	{
+		/**
+		 * Lays out a subtree.
+		 *
+		 * @param start the index of the subtree's root.
+		 * @param end the index that follows the subtree's last node.
+		 */
+		protected abstract void layout(int start, int end);
+
+		/**
+		 * @param start the index of the subtree's root.
+		 * @param end the index that follows the subtree's last node.
+		 * @return a call that lays out the subtree.
+		 */
+		Callable<Void> forSubtree(final int start, final int end)
+		{
+			return new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					layout(start, end);
+					return null;
+				}
+			};
+		}
+	}
+}
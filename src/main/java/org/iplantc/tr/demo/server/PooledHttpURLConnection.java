@@ -0,0 +1,452 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.security.Permission;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An HTTP URL connection leased from a {@link PooledUrlConnector}. All calls are delegated to the
+ * underlying JDK connection. The lease is returned to the pool when the response stream is closed, when
+ * the connection is disconnected or when the request fails.
+ */
+class PooledHttpURLConnection extends HttpURLConnection
+{
+	/**
+	 * The maximum number of bytes to read from an error stream so that the socket can be reused.
+	 */
+	private static final int MAX_ERROR_DRAIN = 65536;
+
+	private final HttpURLConnection delegate;
+	private final PooledUrlConnector owner;
+	private final String routeName;
+	private final AtomicBoolean released = new AtomicBoolean(false);
+
+	/**
+	 * The time of the last read from or write to this connection.
+	 */
+	private volatile long lastActivity = System.currentTimeMillis();
+
+	/**
+	 * @param delegate the connection to delegate calls to.
+	 * @param owner the connector that leased this connection.
+	 * @param routeName the name of the route this connection was leased for.
+	 */
+	PooledHttpURLConnection(HttpURLConnection delegate, PooledUrlConnector owner, String routeName)
+	{
+		super(delegate.getURL());
+		this.delegate = delegate;
+		this.owner = owner;
+		this.routeName = routeName;
+	}
+
+	/**
+	 * @return the name of the route this connection was leased for.
+	 */
+	String getRouteName()
+	{
+		return routeName;
+	}
+
+	/**
+	 * @return the time of the last read from or write to this connection.
+	 */
+	long getLastActivity()
+	{
+		return lastActivity;
+	}
+
+	private void touch()
+	{
+		lastActivity = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns this connection's lease to the pool if it hasn't been returned already.
+	 */
+	private void release()
+	{
+		if(released.compareAndSet(false, true))
+		{
+			owner.release(this);
+		}
+	}
+
+	/**
+	 * Reads what's left of the error stream so that the JDK can reuse the socket, then releases the lease.
+	 */
+	private void drainAndRelease()
+	{
+		try
+		{
+			InputStream in = delegate.getErrorStream();
+			if(in != null)
+			{
+				try
+				{
+					byte[] buffer = new byte[4096];
+					int total = 0;
+					int count;
+					while(total < MAX_ERROR_DRAIN && (count = in.read(buffer)) >= 0)
+					{
+						total += count;
+					}
+				}
+				finally
+				{
+					in.close();
+				}
+			}
+		}
+		catch(IOException ignore)
+		{
+			// the socket won't be reused
+		}
+		finally
+		{
+			release();
+		}
+	}
+
+	@Override
+	public void connect() throws IOException
+	{
+		touch();
+		try
+		{
+			delegate.connect();
+		}
+		catch(IOException e)
+		{
+			release();
+			throw e;
+		}
+	}
+
+	@Override
+	public void disconnect()
+	{
+		try
+		{
+			delegate.disconnect();
+		}
+		finally
+		{
+			release();
+		}
+	}
+
+	@Override
+	public boolean usingProxy()
+	{
+		return delegate.usingProxy();
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException
+	{
+		touch();
+		try
+		{
+			return new ReleasingInputStream(delegate.getInputStream());
+		}
+		catch(IOException e)
+		{
+			drainAndRelease();
+			throw e;
+		}
+	}
+
+	@Override
+	public InputStream getErrorStream()
+	{
+		InputStream in = delegate.getErrorStream();
+		return in == null ? null : new ReleasingInputStream(in);
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException
+	{
+		touch();
+		try
+		{
+			return new TouchingOutputStream(delegate.getOutputStream());
+		}
+		catch(IOException e)
+		{
+			release();
+			throw e;
+		}
+	}
+
+	@Override
+	public int getResponseCode() throws IOException
+	{
+		touch();
+		try
+		{
+			return delegate.getResponseCode();
+		}
+		catch(IOException e)
+		{
+			release();
+			throw e;
+		}
+	}
+
+	@Override
+	public String getResponseMessage() throws IOException
+	{
+		return delegate.getResponseMessage();
+	}
+
+	@Override
+	public String getHeaderField(String name)
+	{
+		return delegate.getHeaderField(name);
+	}
+
+	@Override
+	public String getHeaderField(int n)
+	{
+		return delegate.getHeaderField(n);
+	}
+
+	@Override
+	public String getHeaderFieldKey(int n)
+	{
+		return delegate.getHeaderFieldKey(n);
+	}
+
+	@Override
+	public Map<String, List<String>> getHeaderFields()
+	{
+		return delegate.getHeaderFields();
+	}
+
+	@Override
+	public void setRequestMethod(String method) throws ProtocolException
+	{
+		delegate.setRequestMethod(method);
+	}
+
+	@Override
+	public String getRequestMethod()
+	{
+		return delegate.getRequestMethod();
+	}
+
+	@Override
+	public void setRequestProperty(String key, String value)
+	{
+		delegate.setRequestProperty(key, value);
+	}
+
+	@Override
+	public void addRequestProperty(String key, String value)
+	{
+		delegate.addRequestProperty(key, value);
+	}
+
+	@Override
+	public String getRequestProperty(String key)
+	{
+		return delegate.getRequestProperty(key);
+	}
+
+	@Override
+	public Map<String, List<String>> getRequestProperties()
+	{
+		return delegate.getRequestProperties();
+	}
+
+	@Override
+	public void setDoOutput(boolean doOutput)
+	{
+		delegate.setDoOutput(doOutput);
+	}
+
+	@Override
+	public boolean getDoOutput()
+	{
+		return delegate.getDoOutput();
+	}
+
+	@Override
+	public void setDoInput(boolean doInput)
+	{
+		delegate.setDoInput(doInput);
+	}
+
+	@Override
+	public boolean getDoInput()
+	{
+		return delegate.getDoInput();
+	}
+
+	@Override
+	public void setUseCaches(boolean useCaches)
+	{
+		delegate.setUseCaches(useCaches);
+	}
+
+	@Override
+	public boolean getUseCaches()
+	{
+		return delegate.getUseCaches();
+	}
+
+	@Override
+	public void setIfModifiedSince(long ifModifiedSince)
+	{
+		delegate.setIfModifiedSince(ifModifiedSince);
+	}
+
+	@Override
+	public long getIfModifiedSince()
+	{
+		return delegate.getIfModifiedSince();
+	}
+
+	@Override
+	public void setAllowUserInteraction(boolean allowUserInteraction)
+	{
+		delegate.setAllowUserInteraction(allowUserInteraction);
+	}
+
+	@Override
+	public boolean getAllowUserInteraction()
+	{
+		return delegate.getAllowUserInteraction();
+	}
+
+	@Override
+	public void setConnectTimeout(int timeout)
+	{
+		delegate.setConnectTimeout(timeout);
+	}
+
+	@Override
+	public int getConnectTimeout()
+	{
+		return delegate.getConnectTimeout();
+	}
+
+	@Override
+	public void setReadTimeout(int timeout)
+	{
+		delegate.setReadTimeout(timeout);
+	}
+
+	@Override
+	public int getReadTimeout()
+	{
+		return delegate.getReadTimeout();
+	}
+
+	@Override
+	public void setInstanceFollowRedirects(boolean followRedirects)
+	{
+		delegate.setInstanceFollowRedirects(followRedirects);
+	}
+
+	@Override
+	public boolean getInstanceFollowRedirects()
+	{
+		return delegate.getInstanceFollowRedirects();
+	}
+
+	@Override
+	public void setChunkedStreamingMode(int chunkLength)
+	{
+		delegate.setChunkedStreamingMode(chunkLength);
+	}
+
+	@Override
+	public void setFixedLengthStreamingMode(int contentLength)
+	{
+		delegate.setFixedLengthStreamingMode(contentLength);
+	}
+
+	@Override
+	public Permission getPermission() throws IOException
+	{
+		return delegate.getPermission();
+	}
+
+	@Override
+	public String toString()
+	{
+		return delegate.toString();
+	}
+
+	/**
+	 * Releases the lease when the stream is closed.
+	 */
+	private class ReleasingInputStream extends FilterInputStream
+	{
+		ReleasingInputStream(InputStream in)
+		{
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			touch();
+			return super.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			touch();
+			return super.read(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			try
+			{
+				super.close();
+			}
+			finally
+			{
+				release();
+			}
+		}
+	}
+
+	/**
+	 * Records activity whenever the request body is written to.
+	 */
+	private class TouchingOutputStream extends FilterOutputStream
+	{
+		TouchingOutputStream(OutputStream out)
+		{
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			touch();
+			out.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			touch();
+			out.write(b, off, len);
+		}
+	}
+}
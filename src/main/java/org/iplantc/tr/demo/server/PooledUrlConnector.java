@@ -0,0 +1,285 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Used to establish keep-alive connections to URLs over which authentication information will not be
+ * sent. The number of connections that may be open to a single route (scheme, host and port) at any one
+ * time is bounded; callers that can't obtain a connection within the configured wait timeout receive an
+ * IOException rather than piling more load onto the remote service.
+ *
+ * Sockets are reused through the JDK keep-alive cache, which hands a socket back to the pool once the
+ * response body has been read to the end and the stream has been closed. The keep-alive cache also
+ * closes sockets that have been idle for longer than the keep-alive timeout advertised by the server. The
+ * number of idle sockets retained for each route is governed by the <code>http.maxConnections</code>
+ * system property.
+ *
+ * Connections that are leased but never released (for example, a stream that is never closed) are evicted
+ * once they have been idle for longer than the idle timeout.
+ */
+public class PooledUrlConnector implements UrlConnector, StatisticsSource
+{
+	private static final Logger LOGGER = Logger.getLogger(PooledUrlConnector.class);
+
+	/**
+	 * The default maximum number of connections that may be leased for a single route.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+
+	/**
+	 * The default number of milliseconds to wait for a connection to become available.
+	 */
+	public static final long DEFAULT_CONNECTION_WAIT_TIMEOUT = 5000;
+
+	/**
+	 * The default connect timeout in milliseconds.
+	 */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+	/**
+	 * The default read timeout in milliseconds. BLAST searches can take a while.
+	 */
+	public static final int DEFAULT_READ_TIMEOUT = 180000;
+
+	/**
+	 * The default number of milliseconds after which an unused lease is evicted.
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = 600000;
+
+	private final int maxConnectionsPerRoute;
+	private final long connectionWaitTimeout;
+	private final int connectTimeout;
+	private final int readTimeout;
+	private final long idleTimeout;
+
+	/**
+	 * The routes that connections have been requested for, indexed by route name.
+	 */
+	private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<String, Route>();
+
+	private final AtomicLong leaseCount = new AtomicLong();
+	private final AtomicLong waitCount = new AtomicLong();
+	private final AtomicLong exhaustedCount = new AtomicLong();
+	private final AtomicLong evictedCount = new AtomicLong();
+
+	/**
+	 * Creates a connector that uses the default settings.
+	 */
+	public PooledUrlConnector()
+	{
+		this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_CONNECTION_WAIT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT,
+				DEFAULT_READ_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * Creates a connector with the given settings.
+	 *
+	 * @param maxConnectionsPerRoute the maximum number of connections that may be leased per route.
+	 * @param connectionWaitTimeout the number of milliseconds to wait for a connection to become free.
+	 * @param connectTimeout the connect timeout in milliseconds.
+	 * @param readTimeout the read timeout in milliseconds.
+	 * @param idleTimeout the number of milliseconds after which an unused lease is evicted; this should
+	 *            be longer than the sum of the connect and read timeouts.
+	 */
+	public PooledUrlConnector(int maxConnectionsPerRoute, long connectionWaitTimeout, int connectTimeout,
+			int readTimeout, long idleTimeout)
+	{
+		if(maxConnectionsPerRoute < 1)
+		{
+			throw new IllegalArgumentException("maxConnectionsPerRoute must be positive");
+		}
+
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		this.connectionWaitTimeout = connectionWaitTimeout;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public HttpURLConnection getUrlConnection(HttpServletRequest request, String address)
+			throws IOException
+	{
+		URL url = new URL(address);
+		Route route = getRoute(url);
+
+		evictIdleConnections(route);
+		acquire(route);
+
+		try
+		{
+			HttpURLConnection urlc = (HttpURLConnection)url.openConnection();
+			urlc.setConnectTimeout(connectTimeout);
+			urlc.setReadTimeout(readTimeout);
+			urlc.setRequestProperty("Connection", "keep-alive");
+
+			PooledHttpURLConnection pooled = new PooledHttpURLConnection(urlc, this, route.getName());
+			route.leases.add(pooled);
+			leaseCount.incrementAndGet();
+
+			return pooled;
+		}
+		catch(IOException e)
+		{
+			route.permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the statistics for this connector.
+	 *
+	 * @return the number of leases, waits, exhausted pool conditions, evictions and connections in use.
+	 */
+	@Override
+	public Map<String, Long> getStatistics()
+	{
+		long inUse = 0;
+		for(Route route : routes.values())
+		{
+			inUse += route.leases.size();
+		}
+
+		Map<String, Long> stats = new LinkedHashMap<String, Long>();
+		stats.put("maxConnectionsPerRoute", (long)maxConnectionsPerRoute);
+		stats.put("routes", (long)routes.size());
+		stats.put("inUse", inUse);
+		stats.put("leased", leaseCount.get());
+		stats.put("waited", waitCount.get());
+		stats.put("exhausted", exhaustedCount.get());
+		stats.put("evicted", evictedCount.get());
+		return stats;
+	}
+
+	/**
+	 * Returns a connection to the pool. Called by the connection itself once it's finished with, so each
+	 * connection calls this at most once.
+	 *
+	 * @param connection the connection being released.
+	 */
+	void release(PooledHttpURLConnection connection)
+	{
+		Route route = routes.get(connection.getRouteName());
+		if(route != null && route.leases.remove(connection))
+		{
+			route.permits.release();
+		}
+	}
+
+	/**
+	 * Waits for a connection to become available for the given route.
+	 *
+	 * @param route the route.
+	 * @throws IOException if no connection becomes available within the wait timeout.
+	 */
+	private void acquire(Route route) throws IOException
+	{
+		if(route.permits.tryAcquire())
+		{
+			return;
+		}
+
+		waitCount.incrementAndGet();
+		boolean acquired = false;
+		try
+		{
+			acquired = route.permits.tryAcquire(connectionWaitTimeout, TimeUnit.MILLISECONDS);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		if(!acquired)
+		{
+			exhaustedCount.incrementAndGet();
+			LOGGER.warn("connection pool exhausted for " + route.getName() + " ("
+					+ maxConnectionsPerRoute + " connections in use)");
+			throw new IOException("no connection available for " + route.getName());
+		}
+	}
+
+	/**
+	 * Evicts leases for the given route that haven't been used within the idle timeout.
+	 *
+	 * @param route the route.
+	 */
+	private void evictIdleConnections(Route route)
+	{
+		long cutoff = System.currentTimeMillis() - idleTimeout;
+		for(PooledHttpURLConnection connection : route.leases)
+		{
+			if(connection.getLastActivity() < cutoff)
+			{
+				LOGGER.warn("evicting idle connection to " + connection.getURL());
+				evictedCount.incrementAndGet();
+				connection.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Gets the route for a URL, creating it if necessary.
+	 *
+	 * @param url the URL.
+	 * @return the route.
+	 */
+	private Route getRoute(URL url)
+	{
+		int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+		String name = url.getProtocol() + "://" + url.getHost().toLowerCase() + ":" + port;
+
+		Route route = routes.get(name);
+		if(route == null)
+		{
+			Route newRoute = new Route(name, maxConnectionsPerRoute);
+			route = routes.putIfAbsent(name, newRoute);
+			if(route == null)
+			{
+				route = newRoute;
+			}
+		}
+
+		return route;
+	}
+
+	/**
+	 * The connection budget and outstanding leases for one route.
+	 */
+	private static class Route
+	{
+		private final String name;
+		private final Semaphore permits;
+		private final Set<PooledHttpURLConnection> leases =
+				Collections.newSetFromMap(new ConcurrentHashMap<PooledHttpURLConnection, Boolean>());
+
+		Route(String name, int maxConnections)
+		{
+			this.name = name;
+			permits = new Semaphore(maxConnections, true);
+		}
+
+		String getName()
+		{
+			return name;
+		}
+	}
+}
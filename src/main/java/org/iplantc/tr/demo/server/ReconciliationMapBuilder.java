@@ -0,0 +1,295 @@
+package org.iplantc.tr.demo.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.iplantc.de.shared.services.ServiceCallWrapper;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+
+/**
+ * Builds the reconciliation map of a gene family: the species tree nodes that each gene tree node is
+ * related to and the gene tree nodes related to each species tree node and edge, along with the
+ * structure of the species tree, so that a client can answer related node queries itself. The map is
+ * built from a single reconciliation map query, which returns every node of the reconciliation and
+ * the nested set indices of the species tree.
+ *
+ * The map is written in this form:
+ *
+ * <pre>
+ * {"gene":{"ids":[...],"nodes":[[...],...]},
+ *  "species":{"ids":[...],"sizes":[...],"nodes":[[...],...],"edges":[[...],...]}}
+ * </pre>
+ *
+ * The n-th entry of the gene tree's <code>nodes</code> holds the IDs of the species tree nodes related
+ * to the gene tree node with the n-th ID. The species tree node IDs are in pre-order and
+ * <code>sizes</code> holds the number of nodes in each node's subtree, so a subtree is a contiguous
+ * range of nodes. The n-th entries of the species tree's <code>nodes</code> and <code>edges</code> hold
+ * the IDs of the gene tree nodes on the n-th species tree node and on the edge leading to it.
+ */
+public class ReconciliationMapBuilder
+{
+	private final BaseDEServiceDispatcher dispatcher;
+	private final String address;
+
+	/**
+	 * @param dispatcher the dispatcher the query is sent through.
+	 * @param host the base address of the tree reconciliation service.
+	 */
+	public ReconciliationMapBuilder(BaseDEServiceDispatcher dispatcher, String host)
+	{
+		this.dispatcher = dispatcher;
+		this.address = host + "treereconciliation/get/reconciliation-map";
+	}
+
+	/**
+	 * Builds the reconciliation map of a gene family.
+	 *
+	 * @param geneFamName the name of the gene family.
+	 * @return the reconciliation map.
+	 * @throws SerializationException if the query fails.
+	 * @throws JSONException if the response is invalid.
+	 */
+	public String build(String geneFamName) throws SerializationException, JSONException
+	{
+		String response =
+				dispatcher.getServiceData(new ServiceCallWrapper(ServiceCallWrapper.Type.POST,
+						address, "{\"familyName\":" + JSONObject.quote(geneFamName) + "}"));
+		if(response == null)
+		{
+			throw new SerializationException("no response from " + address);
+		}
+
+		String item = JsonScanner.findValue(response, "data", "item");
+		if(item == null || !item.startsWith("{"))
+		{
+			throw new JSONException("no reconciliation map for " + geneFamName);
+		}
+
+		return buildMap(item);
+	}
+
+	/**
+	 * Builds a reconciliation map from the result of a reconciliation map query.
+	 *
+	 * @param item the result, holding the reconciliation <code>nodes</code>, each a gene tree node ID,
+	 *            a species tree node ID and 1 if the gene tree node is on the species tree node or 0
+	 *            if it's on the edge leading to it, and the <code>speciesTreeNodes</code>, each an ID
+	 *            and the left and right indices, in order of left index.
+	 * @return the reconciliation map.
+	 * @throws JSONException if the result is invalid.
+	 */
+	private static String buildMap(String item) throws JSONException
+	{
+		List<int[]> nodes = new ArrayList<int[]>();
+		List<int[]> speciesNodes = new ArrayList<int[]>();
+
+		JsonScanner scanner = new JsonScanner(item);
+		scanner.beginObject();
+		while(scanner.hasNext())
+		{
+			String name = scanner.nextName();
+			if(name.equals("nodes"))
+			{
+				readTuples(scanner, nodes);
+			}
+			else if(name.equals("speciesTreeNodes"))
+			{
+				readTuples(scanner, speciesNodes);
+			}
+			else
+			{
+				scanner.skipValue();
+			}
+		}
+		scanner.endObject();
+
+		StringBuilder out = new StringBuilder();
+		out.append("{\"gene\":");
+		writeGeneSide(nodes, out);
+		out.append(",\"species\":");
+		writeSpeciesSide(nodes, speciesNodes, out);
+		out.append('}');
+		return out.toString();
+	}
+
+	/**
+	 * Reads an array of arrays of three integers.
+	 *
+	 * @param scanner the scanner, positioned at the outer array.
+	 * @param out receives the arrays.
+	 * @throws JSONException if the array is invalid.
+	 */
+	private static void readTuples(JsonScanner scanner, List<int[]> out) throws JSONException
+	{
+		scanner.beginArray();
+		while(scanner.hasNext())
+		{
+			scanner.beginArray();
+			int[] tuple = new int[3];
+			for(int i = 0;i < tuple.length;i++)
+			{
+				tuple[i] = scanner.nextInt();
+			}
+			scanner.endArray();
+			out.add(tuple);
+		}
+		scanner.endArray();
+	}
+
+	/**
+	 * Writes the species tree nodes related to each gene tree node. As with related node queries, a
+	 * gene tree node is related to the species tree nodes it's on or on the edges leading to.
+	 *
+	 * @param nodes the reconciliation nodes.
+	 * @param out receives the gene side of the map.
+	 */
+	private static void writeGeneSide(List<int[]> nodes, StringBuilder out)
+	{
+		Map<Integer, List<Integer>> related = new LinkedHashMap<Integer, List<Integer>>();
+		for(int[] node : nodes)
+		{
+			List<Integer> species = related.get(node[0]);
+			if(species == null)
+			{
+				species = new ArrayList<Integer>();
+				related.put(node[0], species);
+			}
+			species.add(node[1]);
+		}
+
+		out.append("{\"ids\":");
+		writeArray(related.keySet(), out);
+		out.append(",\"nodes\":[");
+		boolean first = true;
+		for(List<Integer> species : related.values())
+		{
+			if(!first)
+			{
+				out.append(',');
+			}
+			first = false;
+			writeArray(species, out);
+		}
+		out.append("]}");
+	}
+
+	/**
+	 * Writes the structure of the species tree and the gene tree nodes on each species tree node and
+	 * edge.
+	 *
+	 * @param nodes the reconciliation nodes.
+	 * @param speciesNodes the species tree nodes, in order of left index.
+	 * @param out receives the species side of the map.
+	 */
+	private static void writeSpeciesSide(List<int[]> nodes, List<int[]> speciesNodes,
+			StringBuilder out)
+	{
+		int count = speciesNodes.size();
+		List<Integer> ids = new ArrayList<Integer>(count);
+		Map<Integer, Integer> indices = new HashMap<Integer, Integer>(count * 2);
+		List<List<Integer>> onNodes = new ArrayList<List<Integer>>(count);
+		List<List<Integer>> onEdges = new ArrayList<List<Integer>>(count);
+		for(int i = 0;i < count;i++)
+		{
+			ids.add(speciesNodes.get(i)[0]);
+			indices.put(speciesNodes.get(i)[0], i);
+			onNodes.add(new ArrayList<Integer>());
+			onEdges.add(new ArrayList<Integer>());
+		}
+
+		for(int[] node : nodes)
+		{
+			Integer index = indices.get(node[1]);
+			if(index != null)
+			{
+				(node[2] != 0 ? onNodes : onEdges).get(index).add(node[0]);
+			}
+		}
+
+		out.append("{\"ids\":");
+		writeArray(ids, out);
+		out.append(",\"sizes\":[");
+		int[] sizes = getSubtreeSizes(speciesNodes);
+		for(int i = 0;i < sizes.length;i++)
+		{
+			if(i > 0)
+			{
+				out.append(',');
+			}
+			out.append(sizes[i]);
+		}
+		out.append("],\"nodes\":");
+		writeArrays(onNodes, out);
+		out.append(",\"edges\":");
+		writeArrays(onEdges, out);
+		out.append('}');
+	}
+
+	/**
+	 * Counts the nodes in each node's subtree. A node's subtree holds the nodes that follow it in order
+	 * of left index until one has a left index beyond its right index.
+	 *
+	 * @param speciesNodes the species tree nodes, in order of left index.
+	 * @return the number of nodes in the subtree of each node.
+	 */
+	private static int[] getSubtreeSizes(List<int[]> speciesNodes)
+	{
+		int count = speciesNodes.size();
+		int[] sizes = new int[count];
+		int[] open = new int[count];
+		int depth = 0;
+		for(int i = 0;i < count;i++)
+		{
+			int left = speciesNodes.get(i)[1];
+			while(depth > 0 && speciesNodes.get(open[depth - 1])[2] < left)
+			{
+				depth--;
+				sizes[open[depth]] = i - open[depth];
+			}
+			open[depth++] = i;
+		}
+		while(depth > 0)
+		{
+			depth--;
+			sizes[open[depth]] = count - open[depth];
+		}
+
+		return sizes;
+	}
+
+	private static void writeArrays(List<List<Integer>> arrays, StringBuilder out)
+	{
+		out.append('[');
+		for(int i = 0;i < arrays.size();i++)
+		{
+			if(i > 0)
+			{
+				out.append(',');
+			}
+			writeArray(arrays.get(i), out);
+		}
+		out.append(']');
+	}
+
+	private static void writeArray(Iterable<Integer> values, StringBuilder out)
+	{
+		out.append('[');
+		boolean first = true;
+		for(Integer value : values)
+		{
+			if(!first)
+			{
+				out.append(',');
+			}
+			first = false;
+			out.append(value);
+		}
+		out.append(']');
+	}
+}
@@ -0,0 +1,118 @@
+package org.iplantc.tr.demo.server;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses identical concurrent requests into a single call. The first thread to make a request with a
+ * given key performs the call in its own thread; any thread that makes a request with the same key while
+ * the call is in progress waits for it to complete and receives the same result or exception. Once the
+ * call completes, the next request with that key starts a new call.
+ *
+ * @param <V> the type of the result.
+ */
+public class RequestCoalescer<V> implements StatisticsSource
+{
+	/**
+	 * The calls that are currently in progress, indexed by request key.
+	 */
+	private final ConcurrentMap<String, FutureTask<V>> inFlight =
+			new ConcurrentHashMap<String, FutureTask<V>>();
+
+	private final AtomicLong executedCount = new AtomicLong();
+	private final AtomicLong coalescedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+
+	/**
+	 * Performs a call, or waits for an identical call that's already in progress.
+	 *
+	 * @param key the key identifying identical requests.
+	 * @param call the call to make if no identical call is in progress.
+	 * @return the result of the call.
+	 * @throws Exception if the call fails.
+	 */
+	public V execute(String key, Callable<V> call) throws Exception
+	{
+		FutureTask<V> task = new FutureTask<V>(call);
+		FutureTask<V> existing = inFlight.putIfAbsent(key, task);
+		if(existing != null)
+		{
+			coalescedCount.incrementAndGet();
+			return getResult(existing);
+		}
+
+		executedCount.incrementAndGet();
+		try
+		{
+			task.run();
+		}
+		finally
+		{
+			inFlight.remove(key, task);
+		}
+
+		try
+		{
+			return getResult(task);
+		}
+		catch(Exception e)
+		{
+			failedCount.incrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, Long> getStatistics()
+	{
+		Map<String, Long> stats = new LinkedHashMap<String, Long>();
+		stats.put("inFlight", (long)inFlight.size());
+		stats.put("executed", executedCount.get());
+		stats.put("coalesced", coalescedCount.get());
+		stats.put("failed", failedCount.get());
+		return Collections.unmodifiableMap(stats);
+	}
+
+	/**
+	 * Waits for a call to complete and returns its result, unwrapping any exception thrown by the call.
+	 *
+	 * @param task the task performing the call.
+	 * @return the result of the call.
+	 * @throws Exception if the call failed or the thread was interrupted while waiting.
+	 */
+	private V getResult(FutureTask<V> task) throws Exception
+	{
+		try
+		{
+			return task.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw e;
+		}
+		catch(ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if(cause instanceof Exception)
+			{
+				throw (Exception)cause;
+			}
+			if(cause instanceof Error)
+			{
+				throw (Error)cause;
+			}
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,421 @@
+package org.iplantc.tr.demo.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+
+/**
+ * A size-bounded, least-recently-used cache of service responses. The size of the cache is measured in
+ * bytes rather than entries so that a handful of large gene trees can't crowd out the heap. Each entry
+ * expires after a time-to-live that is selected by matching the cached address against a list of rules;
+ * addresses that don't match any rule use the default time-to-live, and a time-to-live of zero means that
+ * the response isn't cached at all.
+ *
+ * Expired entries that carry a validator (an entity tag or last modification time from the remote
+ * service) are kept so that they can be revalidated with a conditional request. If the remote service
+ * reports that the response hasn't changed, the entry is renewed without transferring the body again.
+ *
+ * The cache is configured using the following servlet initialization parameters:
+ *
+ * <ul>
+ * <li><code>responseCacheMaxBytes</code>: the maximum size of the cache; zero disables the cache.</li>
+ * <li><code>responseCacheDefaultTtl</code>: the default time-to-live in milliseconds.</li>
+ * <li><code>responseCacheTtls</code>: a comma-separated list of <code>substring=ttl</code> rules; the
+ * first rule whose substring appears in the address is used.</li>
+ * </ul>
+ */
+public class ResponseCache implements FlushableCache
+{
+	/**
+	 * The default maximum size of the cache in bytes.
+	 */
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	/**
+	 * The approximate number of bytes used by an entry in addition to its key and value.
+	 */
+	private static final long ENTRY_OVERHEAD = 96;
+
+	private final long maxBytes;
+	private final long defaultTtl;
+	private final List<TtlRule> rules;
+
+	/**
+	 * The cached entries in access order, least recently used first.
+	 */
+	private final LinkedHashMap<String, CachedResponse> entries =
+			new LinkedHashMap<String, CachedResponse>(64, 0.75f, true);
+
+	private long currentBytes;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+	private long expirationCount;
+	private long staleCount;
+	private long notModifiedCount;
+
+	/**
+	 * @param maxBytes the maximum size of the cache in bytes.
+	 * @param defaultTtl the time-to-live in milliseconds for addresses that don't match a rule.
+	 * @param rules the time-to-live rules, in order of precedence.
+	 */
+	public ResponseCache(long maxBytes, long defaultTtl, List<TtlRule> rules)
+	{
+		this.maxBytes = maxBytes;
+		this.defaultTtl = defaultTtl;
+		this.rules = new ArrayList<TtlRule>(rules);
+	}
+
+	/**
+	 * Creates a response cache from the servlet initialization parameters.
+	 *
+	 * @param config the servlet configuration.
+	 * @return the response cache or null if caching is disabled.
+	 * @throws ServletException if the configuration is invalid.
+	 */
+	public static ResponseCache fromConfig(ServletConfig config) throws ServletException
+	{
+		long maxBytes = InitParameters.getLong(config, "responseCacheMaxBytes", DEFAULT_MAX_BYTES);
+		if(maxBytes <= 0)
+		{
+			return null;
+		}
+
+		long defaultTtl = InitParameters.getLong(config, "responseCacheDefaultTtl", 0);
+		List<TtlRule> rules = new ArrayList<TtlRule>();
+		String ttls = InitParameters.getString(config, "responseCacheTtls", "");
+		for(String rule : ttls.split(","))
+		{
+			if(rule.trim().length() == 0)
+			{
+				continue;
+			}
+
+			int separator = rule.lastIndexOf('=');
+			if(separator <= 0)
+			{
+				throw new ServletException("invalid response cache rule: " + rule);
+			}
+
+			try
+			{
+				rules.add(new TtlRule(rule.substring(0, separator).trim(), Long.parseLong(rule
+						.substring(separator + 1).trim())));
+			}
+			catch(NumberFormatException e)
+			{
+				throw new ServletException("invalid response cache rule: " + rule, e);
+			}
+		}
+
+		return new ResponseCache(maxBytes, defaultTtl, rules);
+	}
+
+	/**
+	 * Determines whether responses from the given address may be cached.
+	 *
+	 * @param address the address.
+	 * @return true if responses from the address have a non-zero time-to-live.
+	 */
+	public boolean isCacheable(String address)
+	{
+		return getTtl(address) > 0;
+	}
+
+	/**
+	 * Gets a cached response that hasn't expired.
+	 *
+	 * @param address the address the response was retrieved from.
+	 * @return the response or null if it isn't cached or has expired.
+	 */
+	public String get(String address)
+	{
+		CachedResponse entry = lookup(address);
+		return entry == null || !entry.isFresh() ? null : entry.getValue();
+	}
+
+	/**
+	 * Gets a cached response, including an expired response that can be revalidated.
+	 *
+	 * @param address the address the response was retrieved from.
+	 * @return the cached response or null if it isn't cached or has expired without a validator.
+	 */
+	public synchronized CachedResponse lookup(String address)
+	{
+		CachedResponse entry = entries.get(address);
+		if(entry != null && !entry.isFresh())
+		{
+			if(entry.hasValidator())
+			{
+				staleCount++;
+				return entry;
+			}
+
+			remove(address);
+			expirationCount++;
+			entry = null;
+		}
+
+		if(entry == null)
+		{
+			missCount++;
+			return null;
+		}
+
+		hitCount++;
+		return entry;
+	}
+
+	/**
+	 * Caches a response that has no validators.
+	 *
+	 * @param address the address the response was retrieved from.
+	 * @param value the response.
+	 */
+	public void put(String address, String value)
+	{
+		put(address, value, null, 0);
+	}
+
+	/**
+	 * Caches a response. Responses from addresses with a time-to-live of zero and responses larger than
+	 * the cache itself are not cached.
+	 *
+	 * @param address the address the response was retrieved from.
+	 * @param value the response.
+	 * @param etag the entity tag returned by the remote service or null if there isn't one.
+	 * @param lastModified the last modification time returned by the remote service or zero if there
+	 *            isn't one.
+	 */
+	public void put(String address, String value, String etag, long lastModified)
+	{
+		long ttl = getTtl(address);
+		long size = sizeOf(address, value, etag);
+		if(ttl <= 0 || value == null || size > maxBytes)
+		{
+			return;
+		}
+
+		store(address, new CachedResponse(value, etag, lastModified, size, System.currentTimeMillis()
+				+ ttl));
+	}
+
+	/**
+	 * Renews an expired response after the remote service has confirmed that it hasn't changed. If the
+	 * entry has been replaced or evicted in the meantime, it's cached again.
+	 *
+	 * @param address the address the response was retrieved from.
+	 * @param entry the revalidated response.
+	 */
+	public void renew(String address, CachedResponse entry)
+	{
+		synchronized(this)
+		{
+			notModifiedCount++;
+		}
+
+		put(address, entry.getValue(), entry.getETag(), entry.getLastModified());
+	}
+
+	/**
+	 * Stores an entry, evicting the least recently used entries if the cache is too large.
+	 *
+	 * @param address the address the response was retrieved from.
+	 * @param entry the entry.
+	 */
+	private synchronized void store(String address, CachedResponse entry)
+	{
+		remove(address);
+		entries.put(address, entry);
+		currentBytes += entry.size;
+
+		Iterator<Map.Entry<String, CachedResponse>> iterator = entries.entrySet().iterator();
+		while(currentBytes > maxBytes && iterator.hasNext())
+		{
+			CachedResponse eldest = iterator.next().getValue();
+			iterator.remove();
+			currentBytes -= eldest.size;
+			evictionCount++;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void flush()
+	{
+		entries.clear();
+		currentBytes = 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized Map<String, Long> getStatistics()
+	{
+		Map<String, Long> stats = new LinkedHashMap<String, Long>();
+		stats.put("entries", (long)entries.size());
+		stats.put("bytes", currentBytes);
+		stats.put("maxBytes", maxBytes);
+		stats.put("hits", hitCount);
+		stats.put("misses", missCount);
+		stats.put("evictions", evictionCount);
+		stats.put("expirations", expirationCount);
+		stats.put("stale", staleCount);
+		stats.put("notModified", notModifiedCount);
+		return Collections.unmodifiableMap(stats);
+	}
+
+	/**
+	 * Removes an entry, adjusting the current size of the cache. Must be called while holding the lock.
+	 *
+	 * @param address the address of the entry to remove.
+	 */
+	private void remove(String address)
+	{
+		CachedResponse entry = entries.remove(address);
+		if(entry != null)
+		{
+			currentBytes -= entry.size;
+		}
+	}
+
+	/**
+	 * Gets the time-to-live for responses from an address.
+	 *
+	 * @param address the address.
+	 * @return the time-to-live in milliseconds.
+	 */
+	private long getTtl(String address)
+	{
+		for(TtlRule rule : rules)
+		{
+			if(address.indexOf(rule.getPattern()) >= 0)
+			{
+				return rule.getTtl();
+			}
+		}
+
+		return defaultTtl;
+	}
+
+	/**
+	 * Estimates the number of bytes of heap used by a cache entry. Java strings use two bytes per
+	 * character.
+	 *
+	 * @param address the address.
+	 * @param value the response.
+	 * @param etag the entity tag, which may be null.
+	 * @return the estimated size.
+	 */
+	private long sizeOf(String address, String value, String etag)
+	{
+		return ENTRY_OVERHEAD + 2L * address.length() + (value == null ? 0 : 2L * value.length())
+				+ (etag == null ? 0 : 2L * etag.length());
+	}
+
+	/**
+	 * Selects the time-to-live for addresses containing a given substring.
+	 */
+	public static class TtlRule
+	{
+		private final String pattern;
+		private final long ttl;
+
+		/**
+		 * @param pattern the substring to look for in the address.
+		 * @param ttl the time-to-live in milliseconds.
+		 */
+		public TtlRule(String pattern, long ttl)
+		{
+			this.pattern = pattern;
+			this.ttl = ttl;
+		}
+
+		/**
+		 * @return the substring to look for in the address.
+		 */
+		public String getPattern()
+		{
+			return pattern;
+		}
+
+		/**
+		 * @return the time-to-live in milliseconds.
+		 */
+		public long getTtl()
+		{
+			return ttl;
+		}
+	}
+
+	/**
+	 * A cached response along with the validators needed to revalidate it.
+	 */
+	public static class CachedResponse
+	{
+		private final String value;
+		private final String etag;
+		private final long lastModified;
+		private final long size;
+		private final long expires;
+
+		CachedResponse(String value, String etag, long lastModified, long size, long expires)
+		{
+			this.value = value;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.size = size;
+			this.expires = expires;
+		}
+
+		/**
+		 * @return the response.
+		 */
+		public String getValue()
+		{
+			return value;
+		}
+
+		/**
+		 * @return the entity tag returned by the remote service or null if there wasn't one.
+		 */
+		public String getETag()
+		{
+			return etag;
+		}
+
+		/**
+		 * @return the last modification time returned by the remote service or zero if there wasn't
+		 *         one.
+		 */
+		public long getLastModified()
+		{
+			return lastModified;
+		}
+
+		/**
+		 * @return true if the response hasn't expired.
+		 */
+		public boolean isFresh()
+		{
+			return expires > System.currentTimeMillis();
+		}
+
+		/**
+		 * @return true if the response can be revalidated with a conditional request.
+		 */
+		public boolean hasValidator()
+		{
+			return etag != null || lastModified > 0;
+		}
+	}
+}
@@ -1,13 +1,17 @@
 package org.iplantc.tr.demo.server;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.net.URLConnection;
+import java.util.concurrent.Callable;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.iplantc.tr.demo.client.services.SearchService;
 
@@ -15,39 +19,133 @@ import com.google.gwt.user.server.rpc.RemoteServiceServlet;
 
 /**
  * The server side implementation of the RPC service.
+ *
+ * Gene family lookups that only change when the database is reloaded can be cached; the cache is
+ * configured with the same initialization parameters as {@link ResponseCache}. Searches are never
+ * cached.
  */
 @SuppressWarnings("serial")
 public class SearchServiceImpl extends RemoteServiceServlet implements SearchService
 {
 	private static String HOSTNAME = "http://ripley.iplantcollaborative.org/";
 
-	private HttpURLConnection getUrlConnection(String address) throws IOException
+	/**
+	 * Used to establish URL connections.
+	 */
+	private UrlConnector urlConnector = new UnauthenticatedUrlConnector();
+
+	/**
+	 * Limits the searches in progress for each class of search, so that slow BLAST searches can't hold
+	 * up the quick lookups.
+	 */
+	private UpstreamLanes lanes;
+
+	/**
+	 * Caches gene family lookups, or null if caching is disabled.
+	 */
+	private ResponseCache responseCache;
+
+	/**
+	 * The minimum size, in characters, of an RPC response that will be gzip compressed for clients that
+	 * accept it.
+	 */
+	private int compressionThreshold = BaseDEServiceDispatcher.DEFAULT_COMPRESSION_THRESHOLD;
+
+	/**
+	 * Initializes the servlet, selecting the URL connector and configuring the upstream lanes and
+	 * response cache from the initialization parameters and registering them with the service monitor.
+	 * 
+	 * @param config the servlet configuration.
+	 * @throws ServletException if the configuration is invalid.
+	 */
+	@Override
+	public void init(ServletConfig config) throws ServletException
+	{
+		super.init(config);
+		urlConnector = UrlConnectorFactory.createUrlConnector(config, urlConnector);
+		lanes = UpstreamLanes.fromConfig(config, urlConnector);
+		responseCache = ResponseCache.fromConfig(config);
+		compressionThreshold =
+				InitParameters.getInt(config, "compressionThreshold",
+						BaseDEServiceDispatcher.DEFAULT_COMPRESSION_THRESHOLD);
+
+		ServiceMonitor monitor = ServiceMonitor.getInstance(config.getServletContext());
+		lanes.register(monitor, config.getServletName());
+		if(responseCache != null)
+		{
+			monitor.register(config.getServletName() + ".responseCache", responseCache);
+		}
+		if(urlConnector instanceof StatisticsSource)
+		{
+			monitor.register(config.getServletName() + ".connections", (StatisticsSource)urlConnector);
+		}
+	}
+
+	/**
+	 * Stops the upstream lanes and removes this servlet's resources from the service monitor.
+	 */
+	@Override
+	public void destroy()
+	{
+		ServiceMonitor monitor = ServiceMonitor.getInstance(getServletContext());
+		if(lanes != null)
+		{
+			lanes.shutdown();
+			lanes.unregister(monitor, getServletName());
+		}
+
+		monitor.unregister(getServletName() + ".connections");
+		monitor.unregister(getServletName() + ".responseCache");
+		super.destroy();
+	}
+
+	private HttpURLConnection getUrlConnection(HttpServletRequest request, String address)
+			throws IOException
 	{
-		URL url = new URL(address);
+		HttpURLConnection urlc = lanes.getLane(address).getUrlConnection(request, address);
+		urlc.setRequestProperty("Accept-Encoding", "gzip");
+		return urlc;
+	}
 
-		return (HttpURLConnection)url.openConnection();
+	/**
+	 * Compresses RPC responses that are at least as large as the compression threshold. GWT only calls
+	 * this method for clients that accept gzip encoded responses.
+	 * 
+	 * @param request the servlet request.
+	 * @param response the servlet response.
+	 * @param responsePayload the RPC response payload.
+	 * @return true if the response should be compressed.
+	 */
+	@Override
+	protected boolean shouldCompressResponse(HttpServletRequest request,
+			HttpServletResponse response, String responsePayload)
+	{
+		return responsePayload.length() >= compressionThreshold;
 	}
 
-	private URLConnection update(String address, String body) throws IOException
+	private URLConnection update(HttpServletRequest request, String address, String body)
+			throws IOException
 	{
 		// make post mode connection
-		HttpURLConnection urlc = getUrlConnection(address);
+		HttpURLConnection urlc = getUrlConnection(request, address);
 		urlc.setRequestMethod("POST");
 		urlc.setDoOutput(true);
 
 		// send post
-		OutputStreamWriter outRemote = null;
+		boolean sent = false;
 		try
 		{
-			outRemote = new OutputStreamWriter(urlc.getOutputStream());
+			OutputStreamWriter outRemote = new OutputStreamWriter(urlc.getOutputStream());
 			outRemote.write(body);
-			outRemote.flush();
+			outRemote.close();
+			sent = true;
 		}
 		finally
 		{
-			if(outRemote != null)
+			if(!sent)
 			{
-				outRemote.close();
+				// nothing will read the response, so the connection has to be released here
+				urlc.disconnect();
 			}
 		}
 
@@ -56,51 +154,148 @@ public class SearchServiceImpl extends RemoteServiceServlet implements SearchSer
 
 	private String retrieveResult(URLConnection urlc) throws UnsupportedEncodingException, IOException
 	{
-		StringBuffer buffer = new StringBuffer();
-		BufferedReader br = null;
+		InputStream in = null;
 		try
 		{
-			br = new BufferedReader(new InputStreamReader(urlc.getInputStream(), "UTF-8"));
-
-			while(true)
-			{
-				int ch = br.read();
-
-				if(ch < 0)
-				{
-					break;
-				}
-
-				buffer.append((char)ch);
-			}
+			in = StreamUtils.getDecodedInputStream(urlc);
+			return StreamUtils.readString(in, "UTF-8");
 		}
 		finally
 		{
-			if(br != null)
+			if(in != null)
 			{
-				br.close();
+				in.close();
 			}
 		}
-
-		return buffer.toString();
 	}
 
 	/**
 	 * Sends an HTTP GET request to another service.
 	 * 
+	 * @param request the servlet request being served.
 	 * @param address the address to connect to.
 	 * @return the URL connection used to send the request.
 	 * @throws IOException if an error occurs.
 	 */
-	private URLConnection get(String address) throws IOException
+	private URLConnection get(HttpServletRequest request, String address) throws IOException
 	{
 		// make post mode connection
-		URLConnection urlc = getUrlConnection(address);
+		URLConnection urlc = getUrlConnection(request, address);
 		urlc.setDoOutput(true);
 
 		return urlc;
 	}
 
+	/**
+	 * Sends a request to the search service using the address's upstream lane and retrieves the
+	 * response. GET responses from addresses with a time-to-live are taken from the response cache
+	 * when possible, and expired responses with validators are revalidated rather than fetched again.
+	 * 
+	 * @param address the address to send the request to.
+	 * @param body the body of a POST request or null to send a GET request.
+	 * @return the response.
+	 * @throws IOException if the request fails, times out or is rejected.
+	 */
+	private String retrieve(final String address, final String body) throws IOException
+	{
+		final boolean cacheable =
+				body == null && responseCache != null && responseCache.isCacheable(address);
+		ResponseCache.CachedResponse cached = null;
+		if(cacheable)
+		{
+			cached = responseCache.lookup(address);
+			if(cached != null && cached.isFresh())
+			{
+				return cached.getValue();
+			}
+		}
+
+		final ResponseCache.CachedResponse stale = cached;
+		final HttpServletRequest request = getThreadLocalRequest();
+		return lanes.getLane(address).getExecutor().execute(new Callable<String>()
+		{
+			@Override
+			public String call() throws IOException
+			{
+				if(cacheable)
+				{
+					return fetchCacheable(request, address, stale);
+				}
+
+				URLConnection connection =
+						body == null ? get(request, address) : update(request, address, body);
+				return retrieveResult(connection);
+			}
+		});
+	}
+
+	/**
+	 * Sends a GET request for a cacheable response to the search service and caches the response along
+	 * with any validators the service returns. If an expired response is available, the request is
+	 * made conditional on the response having changed.
+	 * 
+	 * @param request the servlet request being served.
+	 * @param address the address to send the request to.
+	 * @param stale the expired response or null if there isn't one.
+	 * @return the response.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private String fetchCacheable(HttpServletRequest request, String address,
+			ResponseCache.CachedResponse stale) throws IOException
+	{
+		HttpURLConnection urlc = getUrlConnection(request, address);
+		if(stale != null)
+		{
+			if(stale.getETag() != null)
+			{
+				urlc.setRequestProperty("If-None-Match", stale.getETag());
+			}
+			if(stale.getLastModified() > 0)
+			{
+				urlc.setIfModifiedSince(stale.getLastModified());
+			}
+
+			if(urlc.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED)
+			{
+				// there's no body, but closing the stream frees the connection
+				urlc.getInputStream().close();
+				responseCache.renew(address, stale);
+				return stale.getValue();
+			}
+		}
+
+		String result = retrieveResult(urlc);
+		responseCache.put(address, result, urlc.getHeaderField("ETag"), urlc.getLastModified());
+		return result;
+	}
+
+	/**
+	 * @param idGeneFamily the gene family.
+	 * @return the address of the gene family's details.
+	 */
+	static String getDetailsAddress(String idGeneFamily)
+	{
+		return HOSTNAME + "treereconciliation/get/gene-family-details/" + idGeneFamily;
+	}
+
+	/**
+	 * @param idGeneFamily the gene family.
+	 * @return the address of the gene family's summary.
+	 */
+	static String getSummaryAddress(String idGeneFamily)
+	{
+		return HOSTNAME + "treereconciliation/get/gene-family-summary/" + idGeneFamily;
+	}
+
+	/**
+	 * @param idGeneFamily the gene family.
+	 * @return the address of the gene family's GO term cloud.
+	 */
+	static String getGoCloudAddress(String idGeneFamily)
+	{
+		return HOSTNAME + "treereconciliation/get/go-cloud/" + idGeneFamily;
+	}
+
 	// perform BLAST search
 	@Override
 	public String doBLASTSearch(String json) throws IllegalArgumentException
@@ -109,9 +304,7 @@ public class SearchServiceImpl extends RemoteServiceServlet implements SearchSer
 
 		try
 		{
-			URLConnection connection = update(HOSTNAME + "treereconciliation/search/blast-search", json);
-
-			ret = retrieveResult(connection);
+			ret = retrieve(HOSTNAME + "treereconciliation/search/blast-search", json);
 		}
 		catch(IOException e)
 		{
@@ -129,10 +322,7 @@ public class SearchServiceImpl extends RemoteServiceServlet implements SearchSer
 
 		try
 		{
-			URLConnection connection =
-					get(HOSTNAME + "treereconciliation/search/gene-id-search/" + term);
-
-			ret = retrieveResult(connection);
+			ret = retrieve(HOSTNAME + "treereconciliation/search/gene-id-search/" + term, null);
 		}
 		catch(IOException e)
 		{
@@ -150,10 +340,7 @@ public class SearchServiceImpl extends RemoteServiceServlet implements SearchSer
 
 		try
 		{
-			URLConnection connection =
-					update(HOSTNAME + "treereconciliation/search/go-accession-search/", term);
-
-			ret = retrieveResult(connection);
+			ret = retrieve(HOSTNAME + "treereconciliation/search/go-accession-search/", term);
 		}
 		catch(IOException e)
 		{
@@ -171,9 +358,7 @@ public class SearchServiceImpl extends RemoteServiceServlet implements SearchSer
 
 		try
 		{
-			URLConnection connection = update(HOSTNAME + "treereconciliation/search/go-search/", term);
-
-			ret = retrieveResult(connection);
+			ret = retrieve(HOSTNAME + "treereconciliation/search/go-search/", term);
 		}
 		catch(IOException e)
 		{
@@ -191,10 +376,7 @@ public class SearchServiceImpl extends RemoteServiceServlet implements SearchSer
 
 		try
 		{
-			URLConnection connection =
-					get(HOSTNAME + "treereconciliation/get/gene-family-details/" + idGeneFamily);
-
-			ret = retrieveResult(connection);
+			ret = retrieve(getDetailsAddress(idGeneFamily), null);
 		}
 		catch(IOException e)
 		{
@@ -212,10 +394,7 @@ public class SearchServiceImpl extends RemoteServiceServlet implements SearchSer
 
 		try
 		{
-			URLConnection connection =
-					get(HOSTNAME + "treereconciliation/get/gene-family-summary/" + idGeneFamily);
-
-			ret = retrieveResult(connection);
+			ret = retrieve(getSummaryAddress(idGeneFamily), null);
 		}
 		catch(IOException e)
 		{
@@ -232,10 +411,7 @@ public class SearchServiceImpl extends RemoteServiceServlet implements SearchSer
 
 		try
 		{
-			URLConnection connection =
-					get(HOSTNAME + "treereconciliation/get/go-cloud/" + idGeneFamily);
-
-			ret = retrieveResult(connection);
+			ret = retrieve(getGoCloudAddress(idGeneFamily), null);
 		}
 		catch(IOException e)
 		{
@@ -254,10 +430,7 @@ public class SearchServiceImpl extends RemoteServiceServlet implements SearchSer
 		
 		try
 		{
-			URLConnection connection =
-					update(HOSTNAME + "treereconciliation/search/duplication-search/", json);
-
-			ret = retrieveResult(connection);
+			ret = retrieve(HOSTNAME + "treereconciliation/search/duplication-search/", json);
 		}
 		catch(IOException e)
 		{
@@ -0,0 +1,104 @@
+package org.iplantc.tr.demo.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.ServletContext;
+
+/**
+ * Keeps track of the connection pools, caches and other resources used by the servlets in the web
+ * application so that their statistics can be reported and their caches flushed from a single place.
+ * One monitor is shared by all of the servlets in a servlet context.
+ */
+public class ServiceMonitor
+{
+	/**
+	 * The name of the servlet context attribute that holds the monitor.
+	 */
+	private static final String ATTRIBUTE_NAME = ServiceMonitor.class.getName();
+
+	/**
+	 * The registered statistics sources, indexed by name.
+	 */
+	private final ConcurrentMap<String, StatisticsSource> sources =
+			new ConcurrentHashMap<String, StatisticsSource>();
+
+	/**
+	 * Gets the monitor for a servlet context, creating it if necessary.
+	 *
+	 * @param context the servlet context.
+	 * @return the service monitor.
+	 */
+	public static ServiceMonitor getInstance(ServletContext context)
+	{
+		synchronized(context)
+		{
+			ServiceMonitor monitor = (ServiceMonitor)context.getAttribute(ATTRIBUTE_NAME);
+			if(monitor == null)
+			{
+				monitor = new ServiceMonitor();
+				context.setAttribute(ATTRIBUTE_NAME, monitor);
+			}
+			return monitor;
+		}
+	}
+
+	/**
+	 * Registers a statistics source, replacing any source that was registered under the same name.
+	 *
+	 * @param name the name to report the statistics under.
+	 * @param source the statistics source.
+	 */
+	public void register(String name, StatisticsSource source)
+	{
+		sources.put(name, source);
+	}
+
+	/**
+	 * Removes a statistics source.
+	 *
+	 * @param name the name the source was registered under.
+	 */
+	public void unregister(String name)
+	{
+		sources.remove(name);
+	}
+
+	/**
+	 * Gets the statistics for all of the registered sources.
+	 *
+	 * @return the statistics for each source, indexed by source name.
+	 */
+	public Map<String, Map<String, Long>> getStatistics()
+	{
+		Map<String, Map<String, Long>> stats = new TreeMap<String, Map<String, Long>>();
+		for(Map.Entry<String, StatisticsSource> entry : sources.entrySet())
+		{
+			stats.put(entry.getKey(), entry.getValue().getStatistics());
+		}
+		return stats;
+	}
+
+	/**
+	 * Flushes the registered caches.
+	 *
+	 * @param name the name of the cache to flush or null to flush all caches.
+	 * @return the number of caches that were flushed.
+	 */
+	public int flush(String name)
+	{
+		int count = 0;
+		for(Map.Entry<String, StatisticsSource> entry : sources.entrySet())
+		{
+			if(entry.getValue() instanceof FlushableCache
+					&& (name == null || name.equals(entry.getKey())))
+			{
+				((FlushableCache)entry.getValue()).flush();
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,169 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * An administrative endpoint for the service monitor. A GET request returns the statistics for every
+ * registered connection pool and cache as a JSON object. A POST request flushes the cache named in the
+ * <code>cache</code> request parameter or all caches if the parameter is omitted.
+ *
+ * Requests are only accepted from the remote addresses listed in the <code>allowedRemoteAddresses</code>
+ * initialization parameter (a comma-separated list), which defaults to the local host.
+ */
+public class ServiceMonitorServlet extends HttpServlet
+{
+	private static final long serialVersionUID = 1L;
+	private static final Logger LOGGER = Logger.getLogger(ServiceMonitorServlet.class);
+
+	/**
+	 * The remote addresses that requests are accepted from by default.
+	 */
+	private static final String DEFAULT_ALLOWED_ADDRESSES = "127.0.0.1,0:0:0:0:0:0:0:1";
+
+	/**
+	 * The remote addresses that requests are accepted from.
+	 */
+	private List<String> allowedAddresses;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void init() throws ServletException
+	{
+		allowedAddresses = new ArrayList<String>();
+		String addresses =
+				InitParameters.getString(getServletConfig(), "allowedRemoteAddresses",
+						DEFAULT_ALLOWED_ADDRESSES);
+		for(String address : addresses.split(","))
+		{
+			if(address.trim().length() > 0)
+			{
+				allowedAddresses.add(address.trim());
+			}
+		}
+	}
+
+	/**
+	 * Reports the statistics for all registered resources.
+	 *
+	 * @param request the servlet request.
+	 * @param response the servlet response.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+	{
+		if(!isAllowed(request, response))
+		{
+			return;
+		}
+
+		Map<String, Map<String, Long>> stats = ServiceMonitor.getInstance(getServletContext())
+				.getStatistics();
+		try
+		{
+			JSONObject json = new JSONObject();
+			for(Map.Entry<String, Map<String, Long>> source : stats.entrySet())
+			{
+				JSONObject sourceJson = new JSONObject();
+				for(Map.Entry<String, Long> stat : source.getValue().entrySet())
+				{
+					sourceJson.put(stat.getKey(), stat.getValue().longValue());
+				}
+				json.put(source.getKey(), sourceJson);
+			}
+
+			writeJson(response, json);
+		}
+		catch(JSONException e)
+		{
+			LOGGER.error("unable to format statistics", e);
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * Flushes one or all of the registered caches.
+	 *
+	 * @param request the servlet request.
+	 * @param response the servlet response.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException
+	{
+		if(!isAllowed(request, response))
+		{
+			return;
+		}
+
+		String name = request.getParameter("cache");
+		int count = ServiceMonitor.getInstance(getServletContext()).flush(name);
+		LOGGER.info(request.getRemoteAddr() + " flushed " + count + " cache(s)"
+				+ (name == null ? "" : " named " + name));
+
+		try
+		{
+			writeJson(response, new JSONObject().put("flushed", count));
+		}
+		catch(JSONException e)
+		{
+			LOGGER.error("unable to format response", e);
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * Determines whether the request came from an allowed address. If it didn't, an error is sent to the
+	 * client.
+	 *
+	 * @param request the servlet request.
+	 * @param response the servlet response.
+	 * @return true if the request should be processed.
+	 * @throws IOException if the error response can't be sent.
+	 */
+	private boolean isAllowed(HttpServletRequest request, HttpServletResponse response)
+			throws IOException
+	{
+		if(allowedAddresses.contains(request.getRemoteAddr()))
+		{
+			return true;
+		}
+
+		LOGGER.warn("rejecting monitor request from " + request.getRemoteAddr());
+		response.sendError(HttpServletResponse.SC_FORBIDDEN);
+		return false;
+	}
+
+	/**
+	 * Writes a JSON object to the response.
+	 *
+	 * @param response the servlet response.
+	 * @param json the JSON object.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private void writeJson(HttpServletResponse response, JSONObject json) throws IOException
+	{
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-cache");
+
+		PrintWriter out = response.getWriter();
+		out.print(json.toString());
+		out.flush();
+	}
+}
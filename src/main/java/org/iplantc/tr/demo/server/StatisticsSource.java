@@ -0,0 +1,16 @@
+package org.iplantc.tr.demo.server;
+
+import java.util.Map;
+
+/**
+ * An object that can report statistics to the service monitor.
+ */
+public interface StatisticsSource
+{
+	/**
+	 * Gets the current statistics for this object.
+	 *
+	 * @return the statistics, indexed by name.
+	 */
+	public Map<String, Long> getStatistics();
+}
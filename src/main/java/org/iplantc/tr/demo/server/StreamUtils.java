@@ -0,0 +1,117 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLConnection;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Utility methods for reading and copying streams in bulk.
+ */
+public class StreamUtils
+{
+	/**
+	 * The size of the buffer used when copying bytes from one stream to another.
+	 */
+	public static final int COPY_BUFFER_SIZE = 65536;
+
+	/**
+	 * The size of the buffer used when reading characters.
+	 */
+	private static final int READ_BUFFER_SIZE = 8192;
+
+	private StreamUtils()
+	{
+	}
+
+	/**
+	 * Determines whether the response body of a URL connection is gzip encoded.
+	 *
+	 * @param urlc the URL connection.
+	 * @return true if the content encoding is gzip.
+	 */
+	public static boolean isGzipEncoded(URLConnection urlc)
+	{
+		String encoding = urlc.getContentEncoding();
+		return encoding != null
+				&& (encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip"));
+	}
+
+	/**
+	 * Gets the response body of a URL connection, decompressing it as it's read if it's gzip encoded.
+	 *
+	 * @param urlc the URL connection.
+	 * @return the decoded response body.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static InputStream getDecodedInputStream(URLConnection urlc) throws IOException
+	{
+		InputStream in = urlc.getInputStream();
+		if(!isGzipEncoded(urlc))
+		{
+			return in;
+		}
+
+		try
+		{
+			return new GZIPInputStream(in, READ_BUFFER_SIZE);
+		}
+		catch(IOException e)
+		{
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the remaining contents of an input stream into a string. The stream is not closed.
+	 *
+	 * @param in the input stream.
+	 * @param charsetName the name of the character set used to decode the stream.
+	 * @return the contents of the stream.
+	 * @throws UnsupportedEncodingException if the character set isn't supported.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static String readString(InputStream in, String charsetName)
+			throws UnsupportedEncodingException, IOException
+	{
+		Reader reader = new InputStreamReader(in, charsetName);
+		StringBuilder builder = new StringBuilder(READ_BUFFER_SIZE);
+		char[] buffer = new char[READ_BUFFER_SIZE];
+
+		int count;
+		while((count = reader.read(buffer)) >= 0)
+		{
+			builder.append(buffer, 0, count);
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Copies the remaining contents of an input stream to an output stream. Neither stream is closed.
+	 *
+	 * @param in the input stream.
+	 * @param out the output stream.
+	 * @return the number of bytes copied.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static long copy(InputStream in, OutputStream out) throws IOException
+	{
+		byte[] buffer = new byte[COPY_BUFFER_SIZE];
+		long total = 0;
+
+		int count;
+		while((count = in.read(buffer)) >= 0)
+		{
+			out.write(buffer, 0, count);
+			total += count;
+		}
+
+		return total;
+	}
+}
@@ -0,0 +1,155 @@
+package org.iplantc.tr.demo.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.iplantc.phyloviewer.shared.model.Node;
+import org.iplantc.phyloviewer.shared.model.Tree;
+import org.json.JSONException;
+
+/**
+ * Builds a tree directly from the JSON produced by the tree reconciliation service's tree data
+ * formatter, without first parsing the JSON into a document tree. The JSON has the form
+ * <code>{"tree": {"id": ..., "root": node}}</code>, where each node is an object with an
+ * <code>id</code>, an optional <code>name</code>, an optional <code>branchLength</code> and an array
+ * of <code>children</code>. Other members, such as reconciliation metadata, are skipped.
+ *
+ * Nodes are built using an explicit stack rather than recursion, so highly unbalanced gene trees can't
+ * exhaust the thread's stack.
+ */
+public class StreamingTreeBuilder
+{
+	private StreamingTreeBuilder()
+	{
+	}
+
+	/**
+	 * Builds a tree.
+	 *
+	 * @param json the tree in JSON format.
+	 * @return the tree.
+	 * @throws JSONException if the JSON is invalid or doesn't contain a tree.
+	 */
+	public static Tree buildTree(String json) throws JSONException
+	{
+		JsonScanner scanner = new JsonScanner(json);
+		if(!scanner.findMember("tree") || !scanner.findMember("root"))
+		{
+			throw new JSONException("no tree root found");
+		}
+
+		Tree tree = new Tree();
+		tree.setRootNode(buildNodes(scanner));
+		return tree;
+	}
+
+	/**
+	 * Builds a node and all of its descendants.
+	 *
+	 * @param scanner the scanner, positioned at the start of the node.
+	 * @return the node.
+	 * @throws JSONException if the JSON is invalid.
+	 */
+	private static Node buildNodes(JsonScanner scanner) throws JSONException
+	{
+		List<NodeBuilder> stack = new ArrayList<NodeBuilder>();
+		scanner.beginObject();
+		stack.add(new NodeBuilder());
+
+		while(true)
+		{
+			NodeBuilder current = stack.get(stack.size() - 1);
+			if(current.inChildren)
+			{
+				if(scanner.hasNext())
+				{
+					scanner.beginObject();
+					stack.add(new NodeBuilder());
+				}
+				else
+				{
+					scanner.endArray();
+					current.inChildren = false;
+				}
+			}
+			else if(scanner.hasNext())
+			{
+				current.readMember(scanner);
+			}
+			else
+			{
+				scanner.endObject();
+				stack.remove(stack.size() - 1);
+				Node node = current.build();
+				if(stack.isEmpty())
+				{
+					return node;
+				}
+				stack.get(stack.size() - 1).children.add(node);
+			}
+		}
+	}
+
+	/**
+	 * Accumulates the members of a node until the end of the node is reached.
+	 */
+	private static class NodeBuilder
+	{
+		private int id;
+		private String label;
+		private Double branchLength;
+		private final List<Node> children = new ArrayList<Node>();
+
+		/**
+		 * True while the elements of the node's children array are being read.
+		 */
+		private boolean inChildren;
+
+		/**
+		 * Reads one member of the node. If the member is the children array, only the start of the
+		 * array is consumed.
+		 *
+		 * @param scanner the scanner, positioned at the member name.
+		 * @throws JSONException if the JSON is invalid.
+		 */
+		void readMember(JsonScanner scanner) throws JSONException
+		{
+			String name = scanner.nextName();
+			if(name.equals("id"))
+			{
+				id = scanner.nextInt();
+			}
+			else if(name.equals("name"))
+			{
+				label = scanner.nextScalar();
+			}
+			else if(name.equals("branchLength") && scanner.peek() != 'n')
+			{
+				branchLength = scanner.nextDouble();
+			}
+			else if(name.equals("children") && scanner.peek() == '[')
+			{
+				scanner.beginArray();
+				inChildren = true;
+			}
+			else
+			{
+				scanner.skipValue();
+			}
+		}
+
+		/**
+		 * @return the node.
+		 */
+		Node build()
+		{
+			Node node = new Node(id, label == null ? "" : label);
+			if(branchLength != null)
+			{
+				node.setBranchLength(branchLength);
+			}
+			node.setChildren(children.toArray(new Node[children.size()]));
+			return node;
+		}
+	}
+}
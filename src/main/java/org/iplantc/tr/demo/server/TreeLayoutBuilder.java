@@ -0,0 +1,186 @@
+package org.iplantc.tr.demo.server;
+
+import org.iplantc.phyloviewer.model.ConvertToJSON;
+import org.iplantc.phyloviewer.shared.layout.LayoutCladogram;
+import org.iplantc.phyloviewer.shared.model.Tree;
+import org.json.JSONException;
+
+/**
+ * Utility methods for locating trees in tree reconciliation service responses and laying them out.
+ * These are shared by the layout service and the offline layout precomputer so that both produce the
+ * same layouts under the same layout cache keys. Responses are scanned rather than parsed into
+ * document trees, and trees are extracted as the exact text the service returned.
+ */
+public class TreeLayoutBuilder
+{
+	/**
+	 * The parameters passed to the cladogram layout, as they appear in layout cache keys.
+	 */
+	public static final String LAYOUT_PARAMETERS = "cladogram:0.8:1.0:branchLengths";
+
+	private TreeLayoutBuilder()
+	{
+	}
+
+	/**
+	 * Builds the address used to retrieve the species tree for a gene family.
+	 *
+	 * @param host the base address of the tree reconciliation service.
+	 * @param geneFamName the name of the gene family, or null for the complete species tree.
+	 * @return the address.
+	 */
+	public static String getSpeciesDataAddress(String host, String geneFamName)
+	{
+		String address = host + "treereconciliation/get/species-data";
+		if(geneFamName != null && !geneFamName.equals(""))
+		{
+			address = address + "/" + geneFamName;
+		}
+		return address;
+	}
+
+	/**
+	 * Builds the address used to retrieve the gene tree for a gene family.
+	 *
+	 * @param host the base address of the tree reconciliation service.
+	 * @param geneFamName the name of the gene family.
+	 * @return the address.
+	 */
+	public static String getGeneDataAddress(String host, String geneFamName)
+	{
+		return host + "treereconciliation/get/gene-data/" + geneFamName;
+	}
+
+	/**
+	 * Extracts the species tree from a species data response.
+	 *
+	 * @param response the response from the tree reconciliation service.
+	 * @return the species tree in JSON format or null if the response doesn't contain one.
+	 * @throws JSONException if the response isn't valid JSON.
+	 */
+	public static String getSpeciesTree(String response) throws JSONException
+	{
+		return getObject(JsonScanner.findValue(response, "data", "item"));
+	}
+
+	/**
+	 * Extracts the gene tree from a gene data response.
+	 *
+	 * @param response the response from the tree reconciliation service.
+	 * @return the gene tree in JSON format or null if the response doesn't contain one.
+	 * @throws JSONException if the response isn't valid JSON.
+	 */
+	public static String getGeneTree(String response) throws JSONException
+	{
+		return getObject(JsonScanner.findValue(response, "data", "item", "gene-tree"));
+	}
+
+	/**
+	 * Filters out values that aren't objects.
+	 *
+	 * @param value the text of a JSON value, which may be null.
+	 * @return the value if it's an object or null otherwise.
+	 */
+	private static String getObject(String value)
+	{
+		return value == null || !value.startsWith("{") ? null : value;
+	}
+
+	/**
+	 * Lays out a tree as a cladogram. The tree is built directly from the JSON text and the layout is
+	 * written without building a JSON document.
+	 *
+	 * @param json the tree in JSON format.
+	 * @return the layout in JSON format.
+	 * @throws JSONException if the tree is invalid.
+	 */
+	public static String layout(String json) throws JSONException
+	{
+		return layout(json, true);
+	}
+
+	/**
+	 * Lays out a tree as a cladogram. The tree is built directly from the JSON text.
+	 *
+	 * @param json the tree in JSON format.
+	 * @param streaming true if the layout should be written by {@link LayoutJsonWriter}, or false if it
+	 *            should be converted by <code>ConvertToJSON</code>.
+	 * @return the layout in JSON format, or an empty object if the layout can't be converted.
+	 * @throws JSONException if the tree is invalid.
+	 */
+	public static String layout(String json, boolean streaming) throws JSONException
+	{
+		Tree tree = StreamingTreeBuilder.buildTree(json);
+
+		LayoutCladogram layout = new LayoutCladogram(0.8, 1.0);
+		layout.setUseBranchLengths(true);
+		layout.layout(tree);
+
+		if(streaming)
+		{
+			return LayoutJsonWriter.toString(layout, tree);
+		}
+
+		try
+		{
+			return ConvertToJSON.buildJSON(layout).toString();
+		}
+		catch(JSONException e)
+		{
+			return "{}";
+		}
+	}
+
+	/**
+	 * Lays out a tree as a cladogram without building node objects. The tree is read into a
+	 * {@link CompactTree}, laid out by {@link ParallelCladogramLayout} and written by
+	 * {@link LayoutJsonWriter} straight from the layout's arrays.
+	 *
+	 * @param json the tree in JSON format.
+	 * @param executor the executor used to lay out subtrees in parallel, or null to lay out the tree
+	 *            on the current thread.
+	 * @param sequentialCutoff the maximum number of nodes in a subtree that is laid out as a single
+	 *            task.
+	 * @return the layout in JSON format.
+	 * @throws JSONException if the tree is invalid.
+	 */
+	public static String layoutArrays(String json, BatchExecutor executor, int sequentialCutoff)
+			throws JSONException
+	{
+		return LayoutJsonWriter.toString(layoutCompactTree(json, executor, sequentialCutoff));
+	}
+
+	/**
+	 * Reads a tree into a {@link CompactTree} and lays it out as a cladogram with
+	 * {@link ParallelCladogramLayout}.
+	 *
+	 * @param json the tree in JSON format.
+	 * @param executor the executor used to lay out subtrees in parallel, or null to lay out the tree
+	 *            on the current thread.
+	 * @param sequentialCutoff the maximum number of nodes in a subtree that is laid out as a single
+	 *            task.
+	 * @return the layout.
+	 * @throws JSONException if the tree is invalid.
+	 */
+	public static ParallelCladogramLayout layoutCompactTree(String json, BatchExecutor executor,
+			int sequentialCutoff) throws JSONException
+	{
+		CompactTree tree = CompactTree.parse(json);
+
+		ParallelCladogramLayout layout = new ParallelCladogramLayout(0.8, 1.0, executor);
+		layout.setUseBranchLengths(true);
+		layout.setSequentialCutoff(sequentialCutoff);
+		try
+		{
+			layout.layout(tree);
+		}
+		catch(InterruptedException e)
+		{
+			// finish the layout on this thread rather than fail the request
+			Thread.currentThread().interrupt();
+			return layoutCompactTree(json, null, sequentialCutoff);
+		}
+
+		return layout;
+	}
+}
@@ -0,0 +1,351 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Limits the calls to remote services that are in progress at any one time. This isn't a thread pool:
+ * calls are performed on the calling thread, and the limit is kept with semaphores. At most
+ * <code>maxInFlight</code> calls are in progress and at most <code>queueSize</code> calls wait for one
+ * of them to finish, in the order they arrived. Further calls wait up to the admission timeout for a
+ * place in the queue and are then rejected rather than tying up another request thread; an admission
+ * timeout of zero rejects them immediately. A call that waits in the queue longer than the queue
+ * timeout gets an exception without being performed.
+ *
+ * Calls in progress can't be abandoned, as a thread blocked reading from a socket can't be
+ * interrupted, so they're bounded by the read timeout of the connections the lanes hand out instead.
+ * The two timeouts are separate so that the time a slow remote service may hold a place in progress
+ * doesn't also set how long the calls behind it wait.
+ */
+public class UpstreamExecutor implements StatisticsSource
+{
+	private static final Logger LOGGER = Logger.getLogger(UpstreamExecutor.class);
+
+	/**
+	 * The default maximum number of calls in progress.
+	 */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 20;
+
+	/**
+	 * The default maximum number of calls waiting for a call in progress to finish.
+	 */
+	public static final int DEFAULT_QUEUE_SIZE = 40;
+
+	/**
+	 * The default number of milliseconds a call waits in the queue before it's abandoned.
+	 */
+	public static final long DEFAULT_QUEUE_TIMEOUT = 30000;
+
+	/**
+	 * The default number of milliseconds to wait for a remote service to answer a call in progress.
+	 */
+	public static final long DEFAULT_READ_TIMEOUT = 180000;
+
+	private final String name;
+	private final int maxInFlight;
+	private final long queueTimeout;
+	private final long readTimeout;
+	private final long admissionTimeout;
+
+	/**
+	 * A permit for each call that may be in progress.
+	 */
+	private final Semaphore inFlight;
+
+	/**
+	 * A permit for each call that may be in progress or waiting.
+	 */
+	private final Semaphore admitted;
+
+	private volatile boolean shutdown;
+
+	private final AtomicInteger activeCount = new AtomicInteger();
+	private final AtomicInteger queuedCount = new AtomicInteger();
+	private final AtomicLong completedCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong timedOutCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+
+	/**
+	 * The number of calls that have started running.
+	 */
+	private final AtomicLong startedCount = new AtomicLong();
+
+	/**
+	 * The total and maximum time calls spent waiting in the queue, in milliseconds.
+	 */
+	private final AtomicLong totalQueueTime = new AtomicLong();
+	private final AtomicLong maxQueueTime = new AtomicLong();
+
+	/**
+	 * The total and maximum time calls spent running, in milliseconds.
+	 */
+	private final AtomicLong totalRunTime = new AtomicLong();
+	private final AtomicLong maxRunTime = new AtomicLong();
+
+	/**
+	 * Creates an executor that rejects calls as soon as its queue is full.
+	 *
+	 * @param name the name used for log messages.
+	 * @param maxInFlight the maximum number of calls in progress.
+	 * @param queueSize the maximum number of calls waiting for a call in progress to finish.
+	 * @param queueTimeout the number of milliseconds a call waits in the queue.
+	 * @param readTimeout the number of milliseconds to wait for a remote service to answer.
+	 */
+	public UpstreamExecutor(String name, int maxInFlight, int queueSize, long queueTimeout,
+			long readTimeout)
+	{
+		this(name, maxInFlight, queueSize, queueTimeout, readTimeout, 0);
+	}
+
+	/**
+	 * @param name the name used for log messages.
+	 * @param maxInFlight the maximum number of calls in progress.
+	 * @param queueSize the maximum number of calls waiting for a call in progress to finish.
+	 * @param queueTimeout the number of milliseconds a call waits in the queue.
+	 * @param readTimeout the number of milliseconds to wait for a remote service to answer.
+	 * @param admissionTimeout the number of milliseconds to wait for space in a full queue.
+	 */
+	public UpstreamExecutor(String name, int maxInFlight, int queueSize, long queueTimeout,
+			long readTimeout, long admissionTimeout)
+	{
+		if(maxInFlight < 1)
+		{
+			throw new IllegalArgumentException("maxInFlight must be positive");
+		}
+		if(queueSize < 0)
+		{
+			throw new IllegalArgumentException("queueSize must not be negative");
+		}
+
+		this.name = name;
+		this.maxInFlight = maxInFlight;
+		this.queueTimeout = queueTimeout;
+		this.readTimeout = readTimeout;
+		this.admissionTimeout = admissionTimeout;
+
+		inFlight = new Semaphore(maxInFlight, true);
+		admitted = new Semaphore(maxInFlight + queueSize, true);
+	}
+
+	/**
+	 * @return the name of this executor.
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return the number of milliseconds a call waits in the queue.
+	 */
+	public long getQueueTimeout()
+	{
+		return queueTimeout;
+	}
+
+	/**
+	 * @return the number of milliseconds to wait for a remote service to answer a call in progress.
+	 */
+	public long getReadTimeout()
+	{
+		return readTimeout;
+	}
+
+	/**
+	 * Performs a call on the current thread once fewer than the maximum number of calls are in
+	 * progress.
+	 *
+	 * @param <V> the type of the result.
+	 * @param call the call to perform.
+	 * @return the result of the call.
+	 * @throws IOException if the call fails, times out or can't be admitted.
+	 */
+	public <V> V execute(Callable<V> call) throws IOException
+	{
+		long submitted = System.currentTimeMillis();
+		if(!admit())
+		{
+			rejectedCount.incrementAndGet();
+			LOGGER.warn(name + ": rejecting call; " + activeCount.get() + " calls in progress and "
+					+ queuedCount.get() + " waiting");
+			throw new IOException("too many concurrent requests to remote services");
+		}
+
+		try
+		{
+			boolean started;
+			queuedCount.incrementAndGet();
+			try
+			{
+				started = inFlight.tryAcquire(queueTimeout, TimeUnit.MILLISECONDS);
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while waiting for a remote service");
+			}
+			finally
+			{
+				queuedCount.decrementAndGet();
+			}
+
+			if(!started)
+			{
+				timedOutCount.incrementAndGet();
+				throw new IOException("remote service call waited more than " + queueTimeout
+						+ " ms to start");
+			}
+
+			try
+			{
+				return run(call, submitted);
+			}
+			finally
+			{
+				inFlight.release();
+			}
+		}
+		finally
+		{
+			admitted.release();
+		}
+	}
+
+	/**
+	 * Stops accepting calls. Calls already admitted are allowed to finish.
+	 */
+	public void shutdown()
+	{
+		shutdown = true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, Long> getStatistics()
+	{
+		Map<String, Long> stats = new LinkedHashMap<String, Long>();
+		long started = startedCount.get();
+		stats.put("maxInFlight", (long)maxInFlight);
+		stats.put("active", (long)activeCount.get());
+		stats.put("queued", (long)queuedCount.get());
+		stats.put("started", started);
+		stats.put("completed", completedCount.get());
+		stats.put("rejected", rejectedCount.get());
+		stats.put("timedOut", timedOutCount.get());
+		stats.put("failed", failedCount.get());
+		stats.put("avgQueueMillis", started == 0 ? 0 : totalQueueTime.get() / started);
+		stats.put("maxQueueMillis", maxQueueTime.get());
+		stats.put("avgRunMillis", started == 0 ? 0 : totalRunTime.get() / started);
+		stats.put("maxRunMillis", maxRunTime.get());
+		return Collections.unmodifiableMap(stats);
+	}
+
+	/**
+	 * Takes a place in progress or in the queue, waiting up to the admission timeout for one.
+	 *
+	 * @return true if the call was admitted.
+	 * @throws InterruptedIOException if the thread is interrupted while waiting.
+	 */
+	private boolean admit() throws InterruptedIOException
+	{
+		if(shutdown)
+		{
+			return false;
+		}
+
+		if(admissionTimeout <= 0)
+		{
+			return admitted.tryAcquire();
+		}
+
+		try
+		{
+			return admitted.tryAcquire(admissionTimeout, TimeUnit.MILLISECONDS);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a remote service");
+		}
+	}
+
+	/**
+	 * Performs a call, recording the time it spent waiting and running and whether it failed.
+	 *
+	 * @param <V> the type of the result.
+	 * @param call the call to perform.
+	 * @param submitted the time the call was submitted, in milliseconds.
+	 * @return the result of the call.
+	 * @throws IOException if the call fails or times out.
+	 */
+	private <V> V run(Callable<V> call, long submitted) throws IOException
+	{
+		long started = System.currentTimeMillis();
+		startedCount.incrementAndGet();
+		activeCount.incrementAndGet();
+		record(totalQueueTime, maxQueueTime, started - submitted);
+
+		try
+		{
+			return call.call();
+		}
+		catch(SocketTimeoutException e)
+		{
+			timedOutCount.incrementAndGet();
+			throw e;
+		}
+		catch(IOException e)
+		{
+			failedCount.incrementAndGet();
+			throw e;
+		}
+		catch(RuntimeException e)
+		{
+			failedCount.incrementAndGet();
+			throw e;
+		}
+		catch(Exception e)
+		{
+			failedCount.incrementAndGet();
+			throw new IOException(e.toString(), e);
+		}
+		finally
+		{
+			activeCount.decrementAndGet();
+			completedCount.incrementAndGet();
+			record(totalRunTime, maxRunTime, System.currentTimeMillis() - started);
+		}
+	}
+
+	/**
+	 * Adds a sample to a total and updates the corresponding maximum.
+	 *
+	 * @param total the running total.
+	 * @param max the running maximum.
+	 * @param sample the sample.
+	 */
+	private static void record(AtomicLong total, AtomicLong max, long sample)
+	{
+		total.addAndGet(sample);
+
+		long current = max.get();
+		while(sample > current && !max.compareAndSet(current, sample))
+		{
+			current = max.get();
+		}
+	}
+}
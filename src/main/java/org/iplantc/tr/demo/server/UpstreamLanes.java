@@ -0,0 +1,356 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Separates calls to remote services into lanes so that one class of call can't starve the others.
+ * Each lane has its own limit on the calls in progress and waiting and, optionally, its own connection
+ * budget, so a burst of slow BLAST searches only ever uses up the BLAST lane.
+ *
+ * Calls are assigned to the first lane with an address pattern (a substring) that appears in the call's
+ * address; calls that don't match any lane use the default lane. The lanes are, in order of precedence:
+ *
+ * <ul>
+ * <li><code>blast</code>: BLAST searches.</li>
+ * <li><code>relationships</code>: related node and genes-for-species lookups.</li>
+ * <li><code>downloads</code>: file downloads.</li>
+ * <li><code>search</code>: all other searches.</li>
+ * <li><code>tree</code>: tree data, gene family summaries, details and GO clouds.</li>
+ * </ul>
+ *
+ * Each lane is configured using servlet initialization parameters named
+ * <code>lane.&lt;name&gt;.&lt;setting&gt;</code>, where the settings are <code>patterns</code> (a
+ * comma-separated list), <code>maxInFlight</code>, <code>queueSize</code>, <code>queueTimeout</code>,
+ * <code>timeout</code> (the read timeout), <code>admissionTimeout</code> and
+ * <code>maxConnections</code>. Lanes share the servlet's URL connector and only limit how many calls
+ * are in progress; a lane gets a connection pool of its own only when <code>maxConnections</code> is
+ * set to a positive value. The default lane is configured using the <code>upstreamMaxInFlight</code>,
+ * <code>upstreamQueueSize</code>, <code>upstreamQueueTimeout</code> and <code>upstreamTimeout</code>
+ * parameters and always shares the servlet's URL connector.
+ *
+ * Calls are performed on the request thread. The connections a lane hands out time out if the remote
+ * service doesn't answer within the lane's read timeout, so a slow service can't hold a request thread
+ * any longer than that, while calls waiting behind it give up after the shorter queue timeout.
+ */
+public class UpstreamLanes
+{
+	/**
+	 * The name of the lane used for calls that don't match any other lane.
+	 */
+	public static final String DEFAULT_LANE = "default";
+
+	/**
+	 * The lanes other than the default lane, in order of precedence.
+	 */
+	private final List<Lane> lanes;
+
+	/**
+	 * The lane used for calls that don't match any other lane.
+	 */
+	private final Lane defaultLane;
+
+	/**
+	 * @param lanes the lanes other than the default lane, in order of precedence.
+	 * @param defaultLane the lane used for calls that don't match any other lane.
+	 */
+	public UpstreamLanes(List<Lane> lanes, Lane defaultLane)
+	{
+		this.lanes = Collections.unmodifiableList(new ArrayList<Lane>(lanes));
+		this.defaultLane = defaultLane;
+	}
+
+	/**
+	 * Creates the lanes from the servlet initialization parameters.
+	 *
+	 * @param config the servlet configuration.
+	 * @param urlConnector the servlet's URL connector.
+	 * @return the lanes.
+	 * @throws ServletException if the configuration is invalid.
+	 */
+	public static UpstreamLanes fromConfig(ServletConfig config, UrlConnector urlConnector)
+			throws ServletException
+	{
+		List<Lane> lanes = new ArrayList<Lane>();
+		lanes.add(createLane(config, urlConnector, "blast", "/search/blast-search", 4, 8, 60000,
+				180000));
+		lanes.add(createLane(config, urlConnector, "relationships",
+				"/get/related-nodes,/get/genes-for-species", 8, 32, 10000, 30000));
+		lanes.add(createLane(config, urlConnector, "downloads", "/download/", 4, 8, 30000, 300000));
+		lanes.add(createLane(config, urlConnector, "search", "/search/", 8, 16, 15000, 60000));
+		lanes.add(createLane(config, urlConnector, "tree", "/get/", 16, 32, 15000, 60000));
+
+		int maxInFlight =
+				InitParameters.getInt(config, "upstreamMaxInFlight",
+						UpstreamExecutor.DEFAULT_MAX_IN_FLIGHT);
+		int queueSize =
+				InitParameters.getInt(config, "upstreamQueueSize", UpstreamExecutor.DEFAULT_QUEUE_SIZE);
+		long queueTimeout =
+				InitParameters.getLong(config, "upstreamQueueTimeout",
+						UpstreamExecutor.DEFAULT_QUEUE_TIMEOUT);
+		long timeout =
+				InitParameters.getLong(config, "upstreamTimeout", UpstreamExecutor.DEFAULT_READ_TIMEOUT);
+		Lane defaultLane =
+				new Lane(DEFAULT_LANE, new ArrayList<String>(), createExecutor(config, DEFAULT_LANE,
+						maxInFlight, queueSize, queueTimeout, timeout, 0), urlConnector, false);
+
+		return new UpstreamLanes(lanes, defaultLane);
+	}
+
+	/**
+	 * Creates a lane from the servlet initialization parameters.
+	 *
+	 * @param config the servlet configuration.
+	 * @param urlConnector the servlet's URL connector.
+	 * @param name the name of the lane.
+	 * @param defaultPatterns the default comma-separated list of address patterns.
+	 * @param defaultMaxInFlight the default maximum number of calls in progress.
+	 * @param defaultQueueSize the default maximum number of calls waiting for a call in progress.
+	 * @param defaultQueueTimeout the default queue timeout in milliseconds.
+	 * @param defaultTimeout the default read timeout in milliseconds.
+	 * @return the lane.
+	 * @throws ServletException if the configuration is invalid.
+	 */
+	private static Lane createLane(ServletConfig config, UrlConnector urlConnector, String name,
+			String defaultPatterns, int defaultMaxInFlight, int defaultQueueSize,
+			long defaultQueueTimeout, long defaultTimeout) throws ServletException
+	{
+		String prefix = "lane." + name + ".";
+
+		List<String> patterns = new ArrayList<String>();
+		for(String pattern : InitParameters.getString(config, prefix + "patterns", defaultPatterns)
+				.split(","))
+		{
+			if(pattern.trim().length() > 0)
+			{
+				patterns.add(pattern.trim());
+			}
+		}
+
+		int maxInFlight = InitParameters.getInt(config, prefix + "maxInFlight", defaultMaxInFlight);
+		int queueSize = InitParameters.getInt(config, prefix + "queueSize", defaultQueueSize);
+		long queueTimeout =
+				InitParameters.getLong(config, prefix + "queueTimeout", defaultQueueTimeout);
+		long timeout = InitParameters.getLong(config, prefix + "timeout", defaultTimeout);
+		long admissionTimeout = InitParameters.getLong(config, prefix + "admissionTimeout", 0);
+		int maxConnections = InitParameters.getInt(config, prefix + "maxConnections", 0);
+
+		UrlConnector laneConnector = urlConnector;
+		if(maxConnections > 0)
+		{
+			laneConnector =
+					new PooledUrlConnector(maxConnections,
+							PooledUrlConnector.DEFAULT_CONNECTION_WAIT_TIMEOUT,
+							PooledUrlConnector.DEFAULT_CONNECT_TIMEOUT, (int)Math.min(timeout,
+									Integer.MAX_VALUE), PooledUrlConnector.DEFAULT_IDLE_TIMEOUT);
+		}
+
+		return new Lane(name, patterns, createExecutor(config, name, maxInFlight, queueSize,
+				queueTimeout, timeout, admissionTimeout), laneConnector, maxConnections > 0);
+	}
+
+	/**
+	 * Creates the executor for a lane.
+	 *
+	 * @param config the servlet configuration.
+	 * @param name the name of the lane.
+	 * @param maxInFlight the maximum number of calls in progress.
+	 * @param queueSize the maximum number of calls waiting for a call in progress.
+	 * @param queueTimeout the queue timeout in milliseconds.
+	 * @param timeout the read timeout in milliseconds.
+	 * @param admissionTimeout the number of milliseconds to wait for space in a full queue.
+	 * @return the executor.
+	 * @throws ServletException if the settings are invalid.
+	 */
+	private static UpstreamExecutor createExecutor(ServletConfig config, String name, int maxInFlight,
+			int queueSize, long queueTimeout, long timeout, long admissionTimeout)
+			throws ServletException
+	{
+		try
+		{
+			return new UpstreamExecutor(config.getServletName() + "-" + name, maxInFlight, queueSize,
+					queueTimeout, timeout, admissionTimeout);
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw new ServletException("invalid settings for lane " + name + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Gets the lane for a remote service address.
+	 *
+	 * @param address the address.
+	 * @return the first lane with a matching pattern or the default lane.
+	 */
+	public Lane getLane(String address)
+	{
+		for(Lane lane : lanes)
+		{
+			if(lane.matches(address))
+			{
+				return lane;
+			}
+		}
+
+		return defaultLane;
+	}
+
+	/**
+	 * Registers the executor and connection budget of each lane with a service monitor.
+	 *
+	 * @param monitor the service monitor.
+	 * @param prefix the prefix for the registered names.
+	 */
+	public void register(ServiceMonitor monitor, String prefix)
+	{
+		for(Lane lane : getAllLanes())
+		{
+			monitor.register(prefix + ".lane." + lane.getName(), lane.getExecutor());
+			if(lane.hasOwnConnector() && lane.getUrlConnector() instanceof StatisticsSource)
+			{
+				monitor.register(prefix + ".lane." + lane.getName() + ".connections",
+						(StatisticsSource)lane.getUrlConnector());
+			}
+		}
+	}
+
+	/**
+	 * Removes the lanes from a service monitor.
+	 *
+	 * @param monitor the service monitor.
+	 * @param prefix the prefix the names were registered with.
+	 */
+	public void unregister(ServiceMonitor monitor, String prefix)
+	{
+		for(Lane lane : getAllLanes())
+		{
+			monitor.unregister(prefix + ".lane." + lane.getName());
+			monitor.unregister(prefix + ".lane." + lane.getName() + ".connections");
+		}
+	}
+
+	/**
+	 * Stops the executors of all lanes.
+	 */
+	public void shutdown()
+	{
+		for(Lane lane : getAllLanes())
+		{
+			lane.getExecutor().shutdown();
+		}
+	}
+
+	private List<Lane> getAllLanes()
+	{
+		List<Lane> all = new ArrayList<Lane>(lanes);
+		all.add(defaultLane);
+		return all;
+	}
+
+	/**
+	 * A class of calls to remote services along with the resources reserved for them.
+	 */
+	public static class Lane
+	{
+		private final String name;
+		private final List<String> patterns;
+		private final UpstreamExecutor executor;
+		private final UrlConnector urlConnector;
+		private final boolean ownConnector;
+
+		/**
+		 * @param name the name of the lane.
+		 * @param patterns the substrings that identify addresses belonging to this lane.
+		 * @param executor the executor used to perform calls in this lane.
+		 * @param urlConnector the URL connector used for calls in this lane.
+		 * @param ownConnector true if the URL connector is reserved for this lane.
+		 */
+		public Lane(String name, List<String> patterns, UpstreamExecutor executor,
+				UrlConnector urlConnector, boolean ownConnector)
+		{
+			this.name = name;
+			this.patterns = new ArrayList<String>(patterns);
+			this.executor = executor;
+			this.urlConnector = urlConnector;
+			this.ownConnector = ownConnector;
+		}
+
+		/**
+		 * @return the name of the lane.
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * @return the executor used to perform calls in this lane.
+		 */
+		public UpstreamExecutor getExecutor()
+		{
+			return executor;
+		}
+
+		/**
+		 * @return the URL connector used for calls in this lane.
+		 */
+		public UrlConnector getUrlConnector()
+		{
+			return urlConnector;
+		}
+
+		/**
+		 * Obtains a URL connection from the lane's connector that times out after the lane's read
+		 * timeout.
+		 *
+		 * @param request the servlet request.
+		 * @param address the address to connect to.
+		 * @return the URL connection.
+		 * @throws IOException if the connection can't be established.
+		 */
+		public HttpURLConnection getUrlConnection(HttpServletRequest request, String address)
+				throws IOException
+		{
+			HttpURLConnection urlc = urlConnector.getUrlConnection(request, address);
+			int timeout = (int)Math.min(executor.getReadTimeout(), Integer.MAX_VALUE);
+			urlc.setConnectTimeout(Math.min(PooledUrlConnector.DEFAULT_CONNECT_TIMEOUT, timeout));
+			urlc.setReadTimeout(timeout);
+			return urlc;
+		}
+
+		/**
+		 * Determines whether an address belongs to this lane.
+		 *
+		 * @param address the address.
+		 * @return true if one of the lane's patterns appears in the address.
+		 */
+		public boolean matches(String address)
+		{
+			for(String pattern : patterns)
+			{
+				if(address.indexOf(pattern) >= 0)
+				{
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		/**
+		 * @return true if the lane's URL connector is reserved for this lane.
+		 */
+		public boolean hasOwnConnector()
+		{
+			return ownConnector;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package org.iplantc.tr.demo.server;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+
+/**
+ * Creates URL connectors from servlet initialization parameters. The <code>urlConnector</code> parameter
+ * selects the connector type, which may be either <code>unauthenticated</code> or <code>pooled</code>. The
+ * pooled connector also accepts the <code>maxConnectionsPerRoute</code>,
+ * <code>connectionWaitTimeout</code>, <code>connectTimeout</code>, <code>readTimeout</code> and
+ * <code>idleTimeout</code> parameters; all timeouts are in milliseconds.
+ */
+public class UrlConnectorFactory
+{
+	/**
+	 * The name of the initialization parameter used to select the connector type.
+	 */
+	public static final String CONNECTOR_PARAM = "urlConnector";
+
+	public static final String UNAUTHENTICATED = "unauthenticated";
+
+	public static final String POOLED = "pooled";
+
+	private UrlConnectorFactory()
+	{
+	}
+
+	/**
+	 * Creates the URL connector selected by the servlet configuration.
+	 *
+	 * @param config the servlet configuration.
+	 * @param defaultConnector the connector to use if no connector type is configured.
+	 * @return the URL connector.
+	 * @throws ServletException if the configuration is invalid.
+	 */
+	public static UrlConnector createUrlConnector(ServletConfig config, UrlConnector defaultConnector)
+			throws ServletException
+	{
+		String type = InitParameters.getString(config, CONNECTOR_PARAM, null);
+
+		if(type == null)
+		{
+			return defaultConnector;
+		}
+		else if(type.equals(UNAUTHENTICATED))
+		{
+			return new UnauthenticatedUrlConnector();
+		}
+		else if(type.equals(POOLED))
+		{
+			return createPooledUrlConnector(config);
+		}
+
+		throw new ServletException("unknown URL connector type: " + type);
+	}
+
+	private static PooledUrlConnector createPooledUrlConnector(ServletConfig config)
+			throws ServletException
+	{
+		int maxConnectionsPerRoute =
+				InitParameters.getInt(config, "maxConnectionsPerRoute",
+						PooledUrlConnector.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+		long connectionWaitTimeout =
+				InitParameters.getLong(config, "connectionWaitTimeout",
+						PooledUrlConnector.DEFAULT_CONNECTION_WAIT_TIMEOUT);
+		int connectTimeout =
+				InitParameters.getInt(config, "connectTimeout",
+						PooledUrlConnector.DEFAULT_CONNECT_TIMEOUT);
+		int readTimeout =
+				InitParameters.getInt(config, "readTimeout", PooledUrlConnector.DEFAULT_READ_TIMEOUT);
+		long idleTimeout =
+				InitParameters.getLong(config, "idleTimeout", PooledUrlConnector.DEFAULT_IDLE_TIMEOUT);
+
+		try
+		{
+			return new PooledUrlConnector(maxConnectionsPerRoute, connectionWaitTimeout,
+					connectTimeout, readTimeout, idleTimeout);
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw new ServletException(e.getMessage(), e);
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package org.iplantc.tr.demo.shared;
+
+/**
+ * Describes the compact layout encoding. A compact layout is a string consisting of {@link #PREFIX}
+ * followed by base64 encoded binary data. The data starts with a version byte and a byte holding the
+ * number of fractional bits used for coordinates. It is followed by seven values for each node, in
+ * order: the node ID and the x and y coordinates of its position, bounding box minimum and bounding box
+ * maximum. Coordinates are stored as fixed-point numbers and each value is stored as the difference
+ * from the same value for the previous node, encoded as a zigzag variable-length integer.
+ */
+public class CompactLayout
+{
+	/**
+	 * The prefix that distinguishes compact layouts from JSON layouts.
+	 */
+	public static final String PREFIX = "compact:";
+
+	/**
+	 * The version of the encoding.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * The number of values stored for each node.
+	 */
+	public static final int VALUES_PER_NODE = 7;
+
+	private CompactLayout()
+	{
+	}
+
+	/**
+	 * Determines whether a layout uses the compact encoding.
+	 * 
+	 * @param layout the layout.
+	 * @return true if the layout is compact, or false if it's JSON.
+	 */
+	public static boolean isCompact(String layout)
+	{
+		return layout != null && layout.startsWith(PREFIX);
+	}
+}
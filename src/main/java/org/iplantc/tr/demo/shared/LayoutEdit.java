@@ -0,0 +1,34 @@
+package org.iplantc.tr.demo.shared;
+
+/**
+ * An edit applied to a tree in a layout session, which holds a tree and its layout on the server so
+ * that edits don't require the tree to be sent or laid out from scratch.
+ *
+ * Each edit returns a layout delta, which describes how to update the previous layout, in JSON of the
+ * form
+ * <code>{"root": id, "parents": [...], "moves": [...], "nodes": [...], "hidden": [...]}</code>. The
+ * <code>root</code> is the ID of the tree's root. Each entry in <code>parents</code> has the
+ * <code>id</code> of a node whose <code>parent</code> has changed, and the ID of its new parent, which
+ * is null for the root; the node becomes its new parent's last child. Each entry in <code>moves</code>
+ * has the <code>id</code> of the root of a subtree whose nodes all move by <code>dx</code> and
+ * <code>dy</code>, after the parents have been updated. The <code>nodes</code> have new positions and
+ * bounding boxes, in the same form as in a full layout, and include nodes that weren't in the previous
+ * layout. Finally, the descendants of each clade in <code>hidden</code> are drawn at the clade's root.
+ */
+public enum LayoutEdit
+{
+	/**
+	 * Hides a clade's descendants and closes the gap they leave.
+	 */
+	COLLAPSE,
+
+	/**
+	 * Shows the descendants of a collapsed clade.
+	 */
+	EXPAND,
+
+	/**
+	 * Roots the tree at a node.
+	 */
+	REROOT
+}
@@ -0,0 +1,137 @@
+package org.iplantc.tr.demo.shared;
+
+import java.io.Serializable;
+
+/**
+ * The part of a tree layout that is visible in a tree view, along with the size of the view in pixels,
+ * which determines how far the view is zoomed in.
+ *
+ * A layout window requested for a viewport is a string consisting of {@link #WINDOW_PREFIX} followed
+ * by JSON of the form <code>{"nodes": [...], "collapsed": [...]}</code>. The nodes are the visible
+ * nodes, in the same form as in a full layout. Each collapsed clade has the <code>id</code>,
+ * <code>position</code> and <code>boundingBox</code> of its root and the number of <code>leaves</code>
+ * it contains; clades are collapsed when they lie outside the viewport or when they would be smaller
+ * than a few pixels, and none of their descendants are included.
+ */
+public class LayoutViewport implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The prefix that distinguishes layout windows from full layouts.
+	 */
+	public static final String WINDOW_PREFIX = "window:";
+
+	/**
+	 * The width of a complete cladogram layout.
+	 */
+	public static final double LAYOUT_WIDTH = 0.8;
+
+	/**
+	 * The height of a complete cladogram layout.
+	 */
+	public static final double LAYOUT_HEIGHT = 1.0;
+
+	private double minX;
+	private double minY;
+	private double maxX;
+	private double maxY;
+	private int width;
+	private int height;
+
+	/**
+	 * Used by GWT serialization.
+	 */
+	public LayoutViewport()
+	{
+	}
+
+	/**
+	 * @param minX the smallest visible x coordinate.
+	 * @param minY the smallest visible y coordinate.
+	 * @param maxX the largest visible x coordinate.
+	 * @param maxY the largest visible y coordinate.
+	 * @param width the width of the view in pixels.
+	 * @param height the height of the view in pixels.
+	 */
+	public LayoutViewport(double minX, double minY, double maxX, double maxY, int width, int height)
+	{
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Creates a viewport that shows a complete layout.
+	 *
+	 * @param width the width of the view in pixels.
+	 * @param height the height of the view in pixels.
+	 * @return the viewport.
+	 */
+	public static LayoutViewport fit(int width, int height)
+	{
+		return new LayoutViewport(0.0, 0.0, LAYOUT_WIDTH, LAYOUT_HEIGHT, width, height);
+	}
+
+	/**
+	 * Determines whether a layout is a layout window.
+	 *
+	 * @param layout the layout.
+	 * @return true if the layout is a window, or false if it's a full layout.
+	 */
+	public static boolean isWindow(String layout)
+	{
+		return layout != null && layout.startsWith(WINDOW_PREFIX);
+	}
+
+	/**
+	 * @return the smallest visible x coordinate.
+	 */
+	public double getMinX()
+	{
+		return minX;
+	}
+
+	/**
+	 * @return the smallest visible y coordinate.
+	 */
+	public double getMinY()
+	{
+		return minY;
+	}
+
+	/**
+	 * @return the largest visible x coordinate.
+	 */
+	public double getMaxX()
+	{
+		return maxX;
+	}
+
+	/**
+	 * @return the largest visible y coordinate.
+	 */
+	public double getMaxY()
+	{
+		return maxY;
+	}
+
+	/**
+	 * @return the width of the view in pixels.
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * @return the height of the view in pixels.
+	 */
+	public int getHeight()
+	{
+		return height;
+	}
+}
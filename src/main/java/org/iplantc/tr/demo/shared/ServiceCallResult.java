@@ -0,0 +1,91 @@
+package org.iplantc.tr.demo.shared;
+
+import java.io.Serializable;
+
+/**
+ * The outcome of one service call in a batch. Each call in a batch succeeds or fails independently.
+ */
+public class ServiceCallResult implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * True if the service call succeeded.
+	 */
+	private boolean success;
+
+	/**
+	 * The response from the service, if the call succeeded.
+	 */
+	private String result;
+
+	/**
+	 * A description of the error, if the call failed.
+	 */
+	private String error;
+
+	/**
+	 * Used by GWT serialization.
+	 */
+	public ServiceCallResult()
+	{
+	}
+
+	/**
+	 * @param success true if the service call succeeded.
+	 * @param result the response from the service.
+	 * @param error a description of the error.
+	 */
+	private ServiceCallResult(boolean success, String result, String error)
+	{
+		this.success = success;
+		this.result = result;
+		this.error = error;
+	}
+
+	/**
+	 * Creates the result of a successful service call.
+	 * 
+	 * @param result the response from the service.
+	 * @return the service call result.
+	 */
+	public static ServiceCallResult success(String result)
+	{
+		return new ServiceCallResult(true, result, null);
+	}
+
+	/**
+	 * Creates the result of a failed service call.
+	 * 
+	 * @param error a description of the error.
+	 * @return the service call result.
+	 */
+	public static ServiceCallResult failure(String error)
+	{
+		return new ServiceCallResult(false, null, error);
+	}
+
+	/**
+	 * @return true if the service call succeeded.
+	 */
+	public boolean isSuccess()
+	{
+		return success;
+	}
+
+	/**
+	 * @return the response from the service, or null if the call failed.
+	 */
+	public String getResult()
+	{
+		return result;
+	}
+
+	/**
+	 * @return a description of the error, or null if the call succeeded.
+	 */
+	public String getError()
+	{
+		return error;
+	}
+}
@@ -0,0 +1,54 @@
+package org.iplantc.tr.demo.shared;
+
+import java.io.Serializable;
+
+/**
+ * A tree along with its layout, both in JSON format.
+ */
+public class TreeLayout implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The tree.
+	 */
+	private String tree;
+
+	/**
+	 * The layout of the tree.
+	 */
+	private String layout;
+
+	/**
+	 * Used by GWT serialization.
+	 */
+	public TreeLayout()
+	{
+	}
+
+	/**
+	 * @param tree the tree.
+	 * @param layout the layout of the tree.
+	 */
+	public TreeLayout(String tree, String layout)
+	{
+		this.tree = tree;
+		this.layout = layout;
+	}
+
+	/**
+	 * @return the tree.
+	 */
+	public String getTree()
+	{
+		return tree;
+	}
+
+	/**
+	 * @return the layout of the tree.
+	 */
+	public String getLayout()
+	{
+		return layout;
+	}
+}
@@ -0,0 +1,167 @@
+package org.iplantc.tr.demo.client.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link HighlightBatch}.
+ */
+public class HighlightBatchTest
+{
+	private CountingTarget target;
+	private HighlightBatch batch;
+
+	@Before
+	public void setUp()
+	{
+		target = new CountingTarget();
+		batch = new HighlightBatch(target);
+	}
+
+	@Test
+	public void largeSetIsAppliedInOneCall()
+	{
+		List<Integer> ids = new ArrayList<Integer>();
+		for(int i = 0;i < 10000;i++)
+		{
+			ids.add(i);
+		}
+
+		batch.replaceNodes(ids);
+
+		assertEquals(10000, batch.apply());
+		assertEquals(1, target.calls);
+		assertEquals(1, target.clears);
+		assertEquals(10000, target.idNodes.size());
+	}
+
+	@Test
+	public void duplicatesAreAppliedOnce()
+	{
+		batch.replaceBranches(Arrays.asList(3, 1, 3, 2, 1));
+
+		assertEquals(3, batch.apply());
+		assertEquals(Arrays.asList(3, 1, 2), new ArrayList<Integer>(target.idBranches));
+	}
+
+	@Test
+	public void lastReplacementWins()
+	{
+		batch.replaceNodes(Arrays.asList(1, 2));
+		batch.replaceBranches(Arrays.asList(3));
+
+		batch.apply();
+
+		assertEquals(1, target.calls);
+		assertTrue(target.idNodes.isEmpty());
+		assertEquals(Arrays.asList(3), new ArrayList<Integer>(target.idBranches));
+	}
+
+	@Test
+	public void subtreeAddedAfterReplacementSurvivesClear()
+	{
+		batch.replaceNodes(Arrays.asList(1, 2));
+		batch.addSubtree(7);
+
+		batch.apply();
+
+		assertEquals(1, target.calls);
+		assertEquals(1, target.clears);
+		assertEquals(Arrays.asList(1, 2), new ArrayList<Integer>(target.idNodes));
+		assertEquals(Arrays.asList(7), new ArrayList<Integer>(target.idSubtrees));
+	}
+
+	@Test
+	public void subtreeIsAddedWithoutClearing()
+	{
+		batch.addSubtree(7);
+
+		batch.apply();
+
+		assertEquals(1, target.calls);
+		assertEquals(0, target.clears);
+	}
+
+	@Test
+	public void subtreeReplacementDropsEarlierHighlights()
+	{
+		batch.replaceNodes(Arrays.asList(1, 2));
+		batch.addSubtree(5);
+		batch.replaceSubtree(7);
+
+		batch.apply();
+
+		assertEquals(1, target.clears);
+		assertTrue(target.idNodes.isEmpty());
+		assertEquals(Arrays.asList(7), new ArrayList<Integer>(target.idSubtrees));
+	}
+
+	@Test
+	public void applyWithNothingPendingDoesNothing()
+	{
+		assertFalse(batch.isPending());
+		assertEquals(0, batch.apply());
+		assertEquals(0, target.calls);
+	}
+
+	@Test
+	public void applyEndsThePass()
+	{
+		batch.replaceNodes(Arrays.asList(1));
+		assertTrue(batch.isPending());
+
+		batch.apply();
+
+		assertFalse(batch.isPending());
+		assertEquals(0, batch.apply());
+		assertEquals(1, target.calls);
+	}
+
+	@Test
+	public void discardedHighlightsAreNotApplied()
+	{
+		batch.replaceNodes(Arrays.asList(1));
+
+		batch.discard();
+
+		assertFalse(batch.isPending());
+		assertEquals(0, batch.apply());
+		assertEquals(0, target.calls);
+	}
+
+	/**
+	 * Records each pass instead of highlighting a view.
+	 */
+	private static class CountingTarget implements HighlightBatch.Target
+	{
+		private int calls;
+		private int clears;
+		private Set<Integer> idNodes;
+		private Set<Integer> idBranches;
+		private Set<Integer> idSubtrees;
+
+		@Override
+		public void applyHighlights(boolean clear, Set<Integer> idNodes, Set<Integer> idBranches,
+				Set<Integer> idSubtrees)
+		{
+			calls++;
+			if(clear)
+			{
+				clears++;
+			}
+			this.idNodes = new LinkedHashSet<Integer>(idNodes);
+			this.idBranches = new LinkedHashSet<Integer>(idBranches);
+			this.idSubtrees = new LinkedHashSet<Integer>(idSubtrees);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package org.iplantc.tr.demo.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.iplantc.tr.demo.shared.CompactLayout;
+import org.json.JSONException;
+import org.junit.Test;
+
+/**
+ * Tests that layouts survive a round trip through {@link CompactLayoutEncoder}, by decoding them as
+ * the client does.
+ */
+public class CompactLayoutEncoderTest
+{
+	private static final double RESOLUTION = 1.0 / (1 << CompactLayoutEncoder.FRACTION_BITS);
+
+	@Test
+	public void encodedNodesDecodeToTheirValues() throws JSONException
+	{
+		String json = "{\"nodes\":[" + node(7, 0.5, 0.25, 0.0, 0.0, 1.0, 0.5) + ","
+				+ node(3, -0.125, 0.75, -1.5, 0.7, 0.3, 0.8) + ","
+				+ node(1000000, 123.456789, 1e-7, 0.0, -2.0, 1e5, 3.0) + "]}";
+
+		List<double[]> nodes = decode(CompactLayoutEncoder.encode(json));
+
+		assertEquals(3, nodes.size());
+		assertNode(nodes.get(0), 7, 0.5, 0.25, 0.0, 0.0, 1.0, 0.5);
+		assertNode(nodes.get(1), 3, -0.125, 0.75, -1.5, 0.7, 0.3, 0.8);
+		assertNode(nodes.get(2), 1000000, 123.456789, 1e-7, 0.0, -2.0, 1e5, 3.0);
+	}
+
+	@Test
+	public void unknownMembersAreIgnored() throws JSONException
+	{
+		String json = "{\"version\":2,\"nodes\":[{\"extra\":{\"position\":null},\"id\":5,"
+				+ "\"position\":{\"x\":1,\"y\":2,\"z\":3},\"boundingBox\":{\"min\":{\"x\":0,\"y\":1},"
+				+ "\"max\":{\"x\":2,\"y\":3},\"center\":[1,2]}}],\"other\":[]}";
+
+		List<double[]> nodes = decode(CompactLayoutEncoder.encode(json));
+
+		assertEquals(1, nodes.size());
+		assertNode(nodes.get(0), 5, 1, 2, 0, 1, 2, 3);
+	}
+
+	@Test
+	public void emptyLayoutsHaveNoNodes() throws JSONException
+	{
+		String encoded = CompactLayoutEncoder.encode("{\"nodes\":[]}");
+
+		assertTrue(CompactLayout.isCompact(encoded));
+		assertEquals(0, decode(encoded).size());
+	}
+
+	@Test
+	public void nodesWithoutBoundingBoxesCantBeEncoded() throws JSONException
+	{
+		assertNull(CompactLayoutEncoder.encode("{\"nodes\":[{\"id\":1,\"position\":{\"x\":0,\"y\":0},"
+				+ "\"boundingBox\":null}]}"));
+		assertNull(CompactLayoutEncoder.encode("{\"nodes\":[{\"id\":1,\"position\":{\"x\":0,\"y\":0},"
+				+ "\"boundingBox\":{\"min\":{\"x\":0,\"y\":0}}}]}"));
+	}
+
+	@Test
+	public void layoutsWithoutNodesCantBeEncoded() throws JSONException
+	{
+		assertNull(CompactLayoutEncoder.encode("{\"edges\":[]}"));
+		assertNull(CompactLayoutEncoder.encode("{\"nodes\":null}"));
+	}
+
+	@Test
+	public void treeLayoutsSurviveARoundTrip() throws Exception
+	{
+		CompactTree tree =
+				CompactTree.parse("{\"tree\":{\"root\":{\"id\":1,\"children\":[{\"id\":2,"
+						+ "\"branchLength\":0.3},{\"id\":3,\"branchLength\":1.7,\"children\":["
+						+ "{\"id\":4,\"branchLength\":0.1},{\"id\":5,\"branchLength\":2.9}]}]}}}");
+		ParallelCladogramLayout layout = new ParallelCladogramLayout(0.8, 1.0, null);
+		layout.setUseBranchLengths(true);
+		layout.layout(tree);
+
+		List<double[]> nodes = decode(CompactLayoutEncoder.encode(LayoutJsonWriter.toString(layout)));
+
+		assertEquals(tree.size(), nodes.size());
+		for(int i = 0;i < tree.size();i++)
+		{
+			assertNode(nodes.get(i), tree.getId(i), layout.getX(i), layout.getY(i),
+					layout.getMinX(i), layout.getMinY(i), layout.getMaxX(i), layout.getMaxY(i));
+		}
+	}
+
+	private static String node(int id, double x, double y, double minX, double minY, double maxX,
+			double maxY)
+	{
+		return "{\"id\":" + id + ",\"position\":" + vector(x, y) + ",\"boundingBox\":{\"min\":"
+				+ vector(minX, minY) + ",\"max\":" + vector(maxX, maxY) + "}}";
+	}
+
+	private static String vector(double x, double y)
+	{
+		return "{\"x\":" + x + ",\"y\":" + y + "}";
+	}
+
+	private static void assertNode(double[] actual, int id, double x, double y, double minX,
+			double minY, double maxX, double maxY)
+	{
+		double[] expected = {id, x, y, minX, minY, maxX, maxY};
+		for(int i = 0;i < expected.length;i++)
+		{
+			assertEquals("value " + i + " of node " + id, expected[i], actual[i], RESOLUTION);
+		}
+	}
+
+	/**
+	 * Decodes a compact layout in the same way as the client.
+	 *
+	 * @param layout the compact layout.
+	 * @return the values of each node, with coordinates converted back to doubles.
+	 */
+	private static List<double[]> decode(String layout)
+	{
+		assertTrue(CompactLayout.isCompact(layout));
+		byte[] data = fromBase64(layout.substring(CompactLayout.PREFIX.length()));
+		assertEquals(CompactLayout.VERSION, data[0]);
+		int fractionBits = data[1];
+
+		List<double[]> nodes = new ArrayList<double[]>();
+		long[] values = new long[CompactLayout.VALUES_PER_NODE];
+		int pos = 2;
+		while(pos < data.length)
+		{
+			double[] node = new double[values.length];
+			for(int i = 0;i < values.length;i++)
+			{
+				long encoded = 0;
+				int shift = 0;
+				byte b;
+				do
+				{
+					b = data[pos++];
+					encoded |= (long)(b & 0x7f) << shift;
+					shift += 7;
+				}
+				while((b & 0x80) != 0);
+
+				values[i] += (encoded >>> 1) ^ -(encoded & 1);
+				node[i] = i == 0 ? values[i] : values[i] / (double)(1L << fractionBits);
+			}
+			nodes.add(node);
+		}
+
+		return nodes;
+	}
+
+	private static byte[] fromBase64(String text)
+	{
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		int padding = text.endsWith("==") ? 2 : text.endsWith("=") ? 1 : 0;
+		byte[] bytes = new byte[text.length() / 4 * 3 - padding];
+		for(int i = 0, j = 0;i < text.length();i += 4)
+		{
+			int chunk = 0;
+			for(int k = 0;k < 4;k++)
+			{
+				char c = text.charAt(i + k);
+				chunk = (chunk << 6) | (c == '=' ? 0 : alphabet.indexOf(c));
+			}
+			for(int k = 2;k >= 0 && j < bytes.length;k--)
+			{
+				bytes[j++] = (byte)(chunk >> (8 * k));
+			}
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,235 @@
+package org.iplantc.tr.demo.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+/**
+ * Tests for parsing, pruning and re-rooting {@link CompactTree}s.
+ */
+public class CompactTreeTest
+{
+	/**
+	 * A tree with nodes 1(2, 3(4)), where node 3 has a null branch length.
+	 */
+	private static final String TREE = "{\"tree\":{\"root\":{\"id\":1,\"name\":\"root\",\"children\":["
+			+ "{\"id\":2,\"name\":\"a\",\"branchLength\":0.5,\"children\":[]},"
+			+ "{\"id\":3,\"name\":\"b\",\"branchLength\":null,\"extra\":{\"children\":[{\"id\":9}]},"
+			+ "\"children\":[{\"id\":4,\"name\":\"a\",\"branchLength\":1}]}]}}}";
+
+	@Test
+	public void parseNumbersNodesInPreOrder() throws JSONException
+	{
+		CompactTree tree = CompactTree.parse(TREE);
+
+		assertEquals(4, tree.size());
+		assertIds(tree, 1, 2, 3, 4);
+		assertParents(tree, CompactTree.NONE, 0, 0, 2);
+		assertEquals(2, tree.getNumberOfChildren(0));
+		assertEquals(1, tree.getFirstChild(0));
+		assertEquals(2, tree.getNextSibling(1));
+		assertEquals(CompactTree.NONE, tree.getNextSibling(2));
+		assertEquals(0, tree.getNumberOfChildren(1));
+		assertEquals(CompactTree.NONE, tree.getFirstChild(1));
+	}
+
+	@Test
+	public void parseReadsLabelsAndBranchLengths() throws JSONException
+	{
+		CompactTree tree = CompactTree.parse(TREE);
+
+		assertEquals("root", tree.getLabel(0));
+		assertEquals("a", tree.getLabel(1));
+		assertEquals("a", tree.getLabel(3));
+		assertFalse(tree.hasBranchLength(0));
+		assertEquals(0.5, tree.getBranchLength(1), 0.0);
+		assertFalse(tree.hasBranchLength(2));
+		assertEquals(1.0, tree.getBranchLength(3), 0.0);
+	}
+
+	@Test
+	public void parseUnescapesLabels() throws JSONException
+	{
+		CompactTree tree =
+				CompactTree.parse("{\"tree\":{\"root\":{\"id\":1,\"name\":\"a \\\"b\\\" \\u00e9\\\\\"}}}");
+
+		assertEquals("a \"b\" \u00e9\\", tree.getLabel(0));
+	}
+
+	@Test
+	public void parseAcceptsAnEmptyRoot() throws JSONException
+	{
+		CompactTree tree = CompactTree.parse("{\"tree\":{\"root\":{}}}");
+
+		assertEquals(1, tree.size());
+		assertEquals(0, tree.getId(0));
+		assertNull(tree.getLabel(0));
+		assertFalse(tree.hasBranchLength(0));
+		assertEquals(0, tree.getNumberOfChildren(0));
+	}
+
+	@Test(expected = JSONException.class)
+	public void parseRejectsDocumentsWithoutARoot() throws JSONException
+	{
+		CompactTree.parse("{\"tree\":{}}");
+	}
+
+	@Test(expected = JSONException.class)
+	public void parseRejectsTruncatedTrees() throws JSONException
+	{
+		CompactTree.parse("{\"tree\":{\"root\":{\"id\":1,\"children\":[{\"id\":2}");
+	}
+
+	@Test
+	public void parseHandlesDeeplyNestedTrees() throws JSONException
+	{
+		int depth = 20000;
+		CompactTree tree = CompactTree.parse(buildChain(depth));
+
+		assertEquals(depth, tree.size());
+		assertEquals(depth - 2, tree.getParent(depth - 1));
+		assertEquals(depth, tree.getId(depth - 1));
+	}
+
+	@Test
+	public void pruneRemovesDescendantsOfCollapsedNodes() throws JSONException
+	{
+		CompactTree pruned = CompactTree.parse(TREE).prune(Collections.singleton(3));
+
+		assertIds(pruned, 1, 2, 3);
+		assertParents(pruned, CompactTree.NONE, 0, 0);
+		assertEquals(0, pruned.getNumberOfChildren(2));
+		assertEquals(0.5, pruned.getBranchLength(1), 0.0);
+		assertEquals("b", pruned.getLabel(2));
+	}
+
+	@Test
+	public void pruneCanCollapseTheRoot() throws JSONException
+	{
+		Set<Integer> collapsed = new HashSet<Integer>();
+		collapsed.add(1);
+		collapsed.add(3);
+		CompactTree pruned = CompactTree.parse(TREE).prune(collapsed);
+
+		assertIds(pruned, 1);
+		assertEquals(0, pruned.getNumberOfChildren(0));
+	}
+
+	@Test
+	public void pruneWithNothingCollapsedCopiesTheTree() throws JSONException
+	{
+		CompactTree pruned = CompactTree.parse(TREE).prune(Collections.<Integer>emptySet());
+
+		assertIds(pruned, 1, 2, 3, 4);
+		assertParents(pruned, CompactTree.NONE, 0, 0, 2);
+	}
+
+	@Test
+	public void rerootReversesThePathToTheNewRoot() throws JSONException
+	{
+		CompactTree tree = CompactTree.parse(TREE);
+		CompactTree rerooted = tree.reroot(tree.indexOf(4));
+
+		assertIds(rerooted, 4, 3, 1, 2);
+		assertParents(rerooted, CompactTree.NONE, 0, 1, 2);
+		assertFalse(rerooted.hasBranchLength(0));
+		// each node on the path takes the length of the branch to the node it was reached from
+		assertEquals(1.0, rerooted.getBranchLength(1), 0.0);
+		assertFalse(rerooted.hasBranchLength(2));
+		assertEquals(0.5, rerooted.getBranchLength(3), 0.0);
+		assertEquals("root", rerooted.getLabel(2));
+	}
+
+	@Test
+	public void rerootMakesTheOldParentTheLastChild() throws JSONException
+	{
+		CompactTree tree =
+				CompactTree.parse("{\"tree\":{\"root\":{\"id\":1,\"children\":[{\"id\":2,\"children\":["
+						+ "{\"id\":5},{\"id\":6}]},{\"id\":3}]}}}");
+		CompactTree rerooted = tree.reroot(tree.indexOf(2));
+
+		assertIds(rerooted, 2, 5, 6, 1, 3);
+		assertParents(rerooted, CompactTree.NONE, 0, 0, 0, 3);
+	}
+
+	@Test
+	public void rerootAtTheRootCopiesTheTree() throws JSONException
+	{
+		CompactTree rerooted = CompactTree.parse(TREE).reroot(0);
+
+		assertIds(rerooted, 1, 2, 3, 4);
+		assertParents(rerooted, CompactTree.NONE, 0, 0, 2);
+		assertEquals(1.0, rerooted.getBranchLength(3), 0.0);
+	}
+
+	@Test
+	public void rerootHandlesDeeplyNestedTrees() throws JSONException
+	{
+		int depth = 20000;
+		CompactTree rerooted = CompactTree.parse(buildChain(depth)).reroot(depth - 1);
+
+		assertEquals(depth, rerooted.size());
+		assertEquals(depth, rerooted.getId(0));
+		assertEquals(1, rerooted.getId(depth - 1));
+		assertEquals(0, rerooted.getNumberOfChildren(depth - 1));
+	}
+
+	@Test
+	public void indexOfFindsNodesById() throws JSONException
+	{
+		CompactTree tree = CompactTree.parse(TREE);
+
+		assertEquals(3, tree.indexOf(4));
+		assertEquals(CompactTree.NONE, tree.indexOf(9));
+	}
+
+	/**
+	 * Builds a tree in which each node has a single child.
+	 *
+	 * @param depth the number of nodes, whose IDs are 1 to <code>depth</code> from the root down.
+	 * @return the tree in JSON format.
+	 */
+	private static String buildChain(int depth)
+	{
+		StringBuilder json = new StringBuilder("{\"tree\":{\"root\":");
+		for(int i = 1;i <= depth;i++)
+		{
+			json.append("{\"id\":").append(i).append(",\"branchLength\":1");
+			if(i < depth)
+			{
+				json.append(",\"children\":[");
+			}
+		}
+		for(int i = 1;i <= depth;i++)
+		{
+			json.append(i < depth ? "}]" : "}");
+		}
+		json.append("}}");
+		return json.toString();
+	}
+
+	private static void assertIds(CompactTree tree, int... ids)
+	{
+		assertEquals(ids.length, tree.size());
+		for(int i = 0;i < ids.length;i++)
+		{
+			assertEquals("ID of node " + i, ids[i], tree.getId(i));
+		}
+	}
+
+	private static void assertParents(CompactTree tree, int... parents)
+	{
+		assertEquals(parents.length, tree.size());
+		for(int i = 0;i < parents.length;i++)
+		{
+			assertEquals("parent of node " + i, parents[i], tree.getParent(i));
+		}
+	}
+}
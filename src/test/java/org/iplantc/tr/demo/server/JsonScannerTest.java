@@ -0,0 +1,133 @@
+package org.iplantc.tr.demo.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JsonScanner}.
+ */
+public class JsonScannerTest
+{
+	@Test
+	public void findValueFollowsPath() throws JSONException
+	{
+		String json = "{\"status\":\"success\",\"data\":{\"skip\":[1,{\"item\":0}],\"item\":[{\"a\":1}]}}";
+
+		assertEquals("[{\"a\":1}]", JsonScanner.findValue(json, "data", "item"));
+		assertEquals("\"success\"", JsonScanner.findValue(json, "status"));
+	}
+
+	@Test
+	public void findValueReturnsNullForMissingMembers() throws JSONException
+	{
+		String json = "{\"data\":{\"item\":[]},\"status\":\"success\"}";
+
+		assertNull(JsonScanner.findValue(json, "missing"));
+		assertNull(JsonScanner.findValue(json, "data", "missing"));
+		assertNull(JsonScanner.findValue(json, "status", "item"));
+		assertNull(JsonScanner.findValue("[1,2]", "data"));
+	}
+
+	@Test
+	public void emptyObjectsAndArraysHaveNoMembers() throws JSONException
+	{
+		JsonScanner scanner = new JsonScanner(" { } [ ] ");
+		scanner.beginObject();
+		assertFalse(scanner.hasNext());
+		scanner.endObject();
+		scanner.beginArray();
+		assertFalse(scanner.hasNext());
+		scanner.endArray();
+	}
+
+	@Test
+	public void stringsAreUnescaped() throws JSONException
+	{
+		JsonScanner scanner =
+				new JsonScanner("[\"plain\",\"q\\\"b\\\\s\\/t\\tn\\n\",\"\\u00e9\\u0041\",\"\"]");
+		scanner.beginArray();
+
+		assertEquals("plain", scanner.nextString());
+		assertEquals("q\"b\\s/t\tn\n", scanner.nextString());
+		assertEquals("\u00e9A", scanner.nextString());
+		assertEquals("", scanner.nextString());
+		assertFalse(scanner.hasNext());
+	}
+
+	@Test
+	public void escapedQuotesDontEndSkippedStrings() throws JSONException
+	{
+		JsonScanner scanner = new JsonScanner("{\"a\":\"x\\\"}]\",\"b\":2}");
+
+		assertTrue(scanner.findMember("b"));
+		assertEquals(2, scanner.nextInt());
+	}
+
+	@Test
+	public void scalarsAreReturnedAsText() throws JSONException
+	{
+		JsonScanner scanner = new JsonScanner("[null,true,-1.5e3,\"s\",7]");
+		scanner.beginArray();
+
+		assertNull(scanner.nextScalar());
+		assertEquals("true", scanner.nextScalar());
+		assertEquals(-1500.0, scanner.nextDouble(), 0.0);
+		assertEquals("s", scanner.nextScalar());
+		assertEquals(7, scanner.nextInt());
+		scanner.endArray();
+	}
+
+	@Test
+	public void deeplyNestedValuesAreSkipped() throws JSONException
+	{
+		int depth = 100000;
+		StringBuilder json = new StringBuilder("{\"deep\":");
+		for(int i = 0;i < depth;i++)
+		{
+			json.append(i % 2 == 0 ? "[" : "{\"n\":");
+		}
+		json.append("0");
+		for(int i = depth - 1;i >= 0;i--)
+		{
+			json.append(i % 2 == 0 ? "]" : "}");
+		}
+		json.append(",\"after\":1}");
+
+		assertEquals("1", JsonScanner.findValue(json.toString(), "after"));
+	}
+
+	@Test(expected = JSONException.class)
+	public void unterminatedStringsAreRejected() throws JSONException
+	{
+		new JsonScanner("\"abc").nextString();
+	}
+
+	@Test(expected = JSONException.class)
+	public void unterminatedValuesAreRejected() throws JSONException
+	{
+		new JsonScanner("{\"a\":[1,2").skipValue();
+	}
+
+	@Test(expected = JSONException.class)
+	public void unbalancedBracketsAreRejected() throws JSONException
+	{
+		new JsonScanner("]").skipValue();
+	}
+
+	@Test(expected = JSONException.class)
+	public void invalidUnicodeEscapesAreRejected() throws JSONException
+	{
+		new JsonScanner("\"\\u12\"").nextString();
+	}
+
+	@Test(expected = JSONException.class)
+	public void nonNumbersAreRejected() throws JSONException
+	{
+		new JsonScanner("true").nextDouble();
+	}
+}
@@ -0,0 +1,106 @@
+package org.iplantc.tr.demo.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link LayoutCache} keys and eviction.
+ */
+public class LayoutCacheTest
+{
+	private static final String TREE = "{\"tree\":{\"root\":{\"id\":1,\"children\":[]}}}";
+
+	private static final String LAYOUT = "0123456789012345678901234567890123456789";
+
+	@Test
+	public void sameContentHasTheSameKey()
+	{
+		assertEquals(LayoutCache.buildKey(TREE, "cladogram"),
+				LayoutCache.buildKey(new String(TREE), "cladogram"));
+	}
+
+	@Test
+	public void differentContentHasADifferentKey()
+	{
+		String other = "{\"tree\":{\"root\":{\"id\":2,\"children\":[]}}}";
+
+		assertFalse(LayoutCache.buildKey(TREE, "cladogram").equals(
+				LayoutCache.buildKey(other, "cladogram")));
+	}
+
+	@Test
+	public void differentParametersHaveADifferentKey()
+	{
+		assertFalse(LayoutCache.buildKey(TREE, "cladogram").equals(
+				LayoutCache.buildKey(TREE, "compact")));
+	}
+
+	@Test
+	public void keysHoldTheParametersAndAnSha1Digest()
+	{
+		String key = LayoutCache.buildKey(TREE, "cladogram");
+
+		assertTrue(key, key.matches("cladogram:[0-9a-f]{40}"));
+	}
+
+	@Test
+	public void layoutsAreReturnedByKey()
+	{
+		LayoutCache cache = new LayoutCache(1024 * 1024, 60000);
+		String key = LayoutCache.buildKey(TREE, "cladogram");
+		cache.put(key, LAYOUT);
+
+		assertEquals(LAYOUT, cache.get(LayoutCache.buildKey(TREE, "cladogram")));
+		assertNull(cache.get(LayoutCache.buildKey(TREE, "compact")));
+	}
+
+	@Test
+	public void leastRecentlyUsedLayoutsAreEvicted()
+	{
+		String a = LayoutCache.buildKey("a", "cladogram");
+		String b = LayoutCache.buildKey("b", "cladogram");
+		String c = LayoutCache.buildKey("c", "cladogram");
+
+		// room for two of these layouts but not three
+		LayoutCache sizing = new LayoutCache(1024 * 1024, 60000);
+		sizing.put(a, LAYOUT);
+		long entryBytes = sizing.getStatistics().get("bytes");
+		LayoutCache cache = new LayoutCache(2 * entryBytes + entryBytes / 2, 60000);
+
+		cache.put(a, LAYOUT);
+		cache.put(b, LAYOUT);
+		assertNotNull(cache.get(a));
+		cache.put(c, LAYOUT);
+
+		assertNotNull(cache.get(a));
+		assertNull(cache.get(b));
+		assertNotNull(cache.get(c));
+		assertEquals(Long.valueOf(1), cache.getStatistics().get("evictions"));
+	}
+
+	@Test
+	public void hitRateIsReported()
+	{
+		LayoutCache cache = new LayoutCache(1024 * 1024, 60000);
+		String key = LayoutCache.buildKey(TREE, "cladogram");
+		cache.put(key, LAYOUT);
+		cache.get(key);
+		cache.get(LayoutCache.buildKey(TREE, "compact"));
+
+		assertEquals(Long.valueOf(50), cache.getStatistics().get("hitRatePercent"));
+	}
+
+	@Test
+	public void revalidationCountersAreNotReported()
+	{
+		LayoutCache cache = new LayoutCache(1024 * 1024, 60000);
+
+		assertFalse(cache.getStatistics().containsKey("stale"));
+		assertFalse(cache.getStatistics().containsKey("notModified"));
+	}
+}
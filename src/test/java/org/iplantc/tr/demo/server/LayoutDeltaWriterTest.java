@@ -0,0 +1,252 @@
+package org.iplantc.tr.demo.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+/**
+ * Tests that applying the deltas written by {@link LayoutDeltaWriter} to the previous layout, as the
+ * client does, reproduces the new layout.
+ */
+public class LayoutDeltaWriterTest
+{
+	private static final double EPSILON = 1e-9;
+
+	private static final String TREE = "{\"tree\":{\"root\":{\"id\":1,\"children\":["
+			+ "{\"id\":2,\"branchLength\":1,\"children\":[{\"id\":4,\"branchLength\":1},"
+			+ "{\"id\":5,\"branchLength\":2,\"children\":[{\"id\":8,\"branchLength\":1},"
+			+ "{\"id\":9,\"branchLength\":1}]}]},"
+			+ "{\"id\":3,\"branchLength\":2,\"children\":[{\"id\":6,\"branchLength\":1},"
+			+ "{\"id\":7,\"branchLength\":3}]}]}}}";
+
+	@Test
+	public void identicalLayoutsHaveAnEmptyDelta() throws Exception
+	{
+		ParallelCladogramLayout layout = layout(CompactTree.parse(TREE), null);
+
+		assertEquals("{\"root\":1,\"parents\":[],\"moves\":[],\"nodes\":[],\"hidden\":[]}",
+				LayoutDeltaWriter.toString(layout, layout(CompactTree.parse(TREE), null),
+						Collections.<Integer>emptyList()));
+	}
+
+	@Test
+	public void collapseDeltaReproducesTheNewLayout() throws Exception
+	{
+		CompactTree tree = CompactTree.parse(TREE);
+		ParallelCladogramLayout before = layout(tree, null);
+		ParallelCladogramLayout after = layout(tree.prune(Collections.singleton(5)), before);
+
+		String delta = LayoutDeltaWriter.toString(before, after, Collections.singletonList(5));
+
+		assertLayout(after, apply(before, delta));
+		assertEquals("[5]", JsonScanner.findValue(delta, "hidden"));
+	}
+
+	@Test
+	public void expandDeltaReproducesTheNewLayout() throws Exception
+	{
+		CompactTree tree = CompactTree.parse(TREE);
+		ParallelCladogramLayout before = layout(tree.prune(Collections.singleton(2)), null);
+		ParallelCladogramLayout after = layout(tree, before);
+
+		String delta = LayoutDeltaWriter.toString(before, after, Collections.<Integer>emptyList());
+
+		assertLayout(after, apply(before, delta));
+	}
+
+	@Test
+	public void rerootDeltaReproducesTheNewLayout() throws Exception
+	{
+		CompactTree tree = CompactTree.parse(TREE);
+		ParallelCladogramLayout before = layout(tree, null);
+		ParallelCladogramLayout after = layout(tree.reroot(tree.indexOf(5)), before);
+
+		String delta = LayoutDeltaWriter.toString(before, after, Collections.<Integer>emptyList());
+
+		assertEquals("5", JsonScanner.findValue(delta, "root"));
+		assertLayout(after, apply(before, delta));
+	}
+
+	@Test
+	public void subtreesThatMoveTogetherAreWrittenAsOneMove() throws Exception
+	{
+		CompactTree tree = CompactTree.parse(TREE);
+		ParallelCladogramLayout before = layout(tree, null);
+		ParallelCladogramLayout after = layout(tree.prune(Collections.singleton(5)), before);
+
+		String delta = LayoutDeltaWriter.toString(before, after, Collections.singletonList(5));
+
+		// collapsing 5 removes a leaf row, so the clade of 3 below it moves up as a whole
+		JsonScanner scanner = new JsonScanner(JsonScanner.findValue(delta, "moves"));
+		List<Integer> moved = new ArrayList<Integer>();
+		scanner.beginArray();
+		while(scanner.hasNext())
+		{
+			assertTrue(scanner.findMember("id"));
+			moved.add(scanner.nextInt());
+			while(scanner.hasNext())
+			{
+				scanner.nextName();
+				scanner.skipValue();
+			}
+			scanner.endObject();
+		}
+		assertEquals(Collections.singletonList(3), moved);
+	}
+
+	private static ParallelCladogramLayout layout(CompactTree tree, ParallelCladogramLayout reference)
+			throws InterruptedException
+	{
+		ParallelCladogramLayout layout = new ParallelCladogramLayout(0.8, 1.0, null);
+		layout.setUseBranchLengths(true);
+		layout.setScale(reference);
+		layout.layout(tree);
+		return layout;
+	}
+
+	private static void assertLayout(ParallelCladogramLayout expected, Map<Integer, double[]> actual)
+	{
+		CompactTree tree = expected.getTree();
+		for(int i = 0;i < tree.size();i++)
+		{
+			double[] values = actual.get(tree.getId(i));
+			assertNotNull("node " + tree.getId(i), values);
+			double[] wanted =
+					{expected.getX(i), expected.getY(i), expected.getMinX(i), expected.getMinY(i),
+							expected.getMaxX(i), expected.getMaxY(i)};
+			for(int j = 0;j < wanted.length;j++)
+			{
+				assertEquals("value " + j + " of node " + tree.getId(i), wanted[j], values[j], EPSILON);
+			}
+		}
+	}
+
+	/**
+	 * Applies a layout delta to a layout in the same way as the client: parents are updated first,
+	 * then subtrees are moved and finally nodes are given their new positions.
+	 *
+	 * @param before the previous layout.
+	 * @param delta the layout delta.
+	 * @return the position and bounding box of each node, indexed by ID.
+	 * @throws JSONException if the delta is invalid.
+	 */
+	private static Map<Integer, double[]> apply(ParallelCladogramLayout before, String delta)
+			throws JSONException
+	{
+		CompactTree tree = before.getTree();
+		Map<Integer, double[]> values = new HashMap<Integer, double[]>();
+		Map<Integer, Integer> parents = new HashMap<Integer, Integer>();
+		for(int i = 0;i < tree.size();i++)
+		{
+			values.put(tree.getId(i), new double[] {before.getX(i), before.getY(i),
+					before.getMinX(i), before.getMinY(i), before.getMaxX(i), before.getMaxY(i)});
+			parents.put(tree.getId(i), i == 0 ? null : tree.getId(tree.getParent(i)));
+		}
+
+		JsonScanner scanner = new JsonScanner(delta);
+		assertTrue(scanner.findMember("parents"));
+		scanner.beginArray();
+		while(scanner.hasNext())
+		{
+			Map<String, String> entry = readObject(scanner);
+			String parent = entry.get("parent");
+			parents.put(Integer.valueOf(entry.get("id")), parent == null ? null : Integer
+					.valueOf(parent));
+		}
+		scanner.endArray();
+
+		assertEquals("moves", scanner.nextName());
+		scanner.beginArray();
+		while(scanner.hasNext())
+		{
+			Map<String, String> entry = readObject(scanner);
+			int root = Integer.parseInt(entry.get("id"));
+			double dx = Double.parseDouble(entry.get("dx"));
+			double dy = Double.parseDouble(entry.get("dy"));
+			for(Map.Entry<Integer, Integer> node : parents.entrySet())
+			{
+				if(isInSubtree(node.getKey(), root, parents))
+				{
+					double[] moved = values.get(node.getKey());
+					for(int j = 0;j < moved.length;j++)
+					{
+						moved[j] += j % 2 == 0 ? dx : dy;
+					}
+				}
+			}
+		}
+		scanner.endArray();
+
+		assertEquals("nodes", scanner.nextName());
+		scanner.beginArray();
+		while(scanner.hasNext())
+		{
+			assertTrue(scanner.findMember("id"));
+			double[] node = new double[6];
+			values.put(scanner.nextInt(), node);
+			while(scanner.hasNext())
+			{
+				String name = scanner.nextName();
+				if(name.equals("position"))
+				{
+					readVector(scanner, node, 0);
+				}
+				else
+				{
+					assertEquals("boundingBox", name);
+					scanner.beginObject();
+					assertEquals("min", scanner.nextName());
+					readVector(scanner, node, 2);
+					assertEquals("max", scanner.nextName());
+					readVector(scanner, node, 4);
+					scanner.endObject();
+				}
+			}
+			scanner.endObject();
+		}
+		scanner.endArray();
+
+		return values;
+	}
+
+	private static boolean isInSubtree(Integer id, int root, Map<Integer, Integer> parents)
+	{
+		for(Integer node = id;node != null;node = parents.get(node))
+		{
+			if(node == root)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Map<String, String> readObject(JsonScanner scanner) throws JSONException
+	{
+		Map<String, String> members = new HashMap<String, String>();
+		scanner.beginObject();
+		while(scanner.hasNext())
+		{
+			members.put(scanner.nextName(), scanner.nextScalar());
+		}
+		scanner.endObject();
+		return members;
+	}
+
+	private static void readVector(JsonScanner scanner, double[] values, int index)
+			throws JSONException
+	{
+		Map<String, String> vector = readObject(scanner);
+		values[index] = Double.parseDouble(vector.get("x"));
+		values[index + 1] = Double.parseDouble(vector.get("y"));
+	}
+}
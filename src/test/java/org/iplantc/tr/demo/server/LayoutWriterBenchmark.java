@@ -0,0 +1,194 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Iterator;
+
+import org.iplantc.phyloviewer.model.ConvertToJSON;
+import org.iplantc.phyloviewer.shared.layout.LayoutCladogram;
+import org.iplantc.phyloviewer.shared.model.Tree;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Compares the streaming layout writer with <code>ConvertToJSON</code>. The tree in the given file is
+ * laid out once, the layout is written repeatedly with each serializer and the average time and, on
+ * JVMs that can measure it, the average number of bytes allocated per node are reported. The outputs
+ * are also checked for equivalence: the same members and values, although members may appear in a
+ * different order.
+ *
+ * Usage: <code>LayoutWriterBenchmark tree-file [iterations]</code>, where the tree file contains a tree
+ * in the format returned by the tree reconciliation service's tree data formatter. The benchmark is run
+ * from the test classpath, so it isn't part of the web application.
+ */
+public class LayoutWriterBenchmark
+{
+	private final LayoutCladogram layout;
+	private final Tree tree;
+	private final int nodeCount;
+
+	/**
+	 * @param json the tree in JSON format.
+	 * @throws JSONException if the tree is invalid.
+	 */
+	public LayoutWriterBenchmark(String json) throws JSONException
+	{
+		tree = StreamingTreeBuilder.buildTree(json);
+		layout = new LayoutCladogram(0.8, 1.0);
+		layout.setUseBranchLengths(true);
+		layout.layout(tree);
+		nodeCount = new JSONObject(LayoutJsonWriter.toString(layout, tree)).getJSONArray("nodes")
+				.length();
+	}
+
+	/**
+	 * Writes the layout with the streaming writer or with ConvertToJSON.
+	 *
+	 * @param streaming true to use the streaming writer.
+	 * @return the layout in JSON format.
+	 * @throws JSONException if ConvertToJSON fails.
+	 */
+	private String write(boolean streaming) throws JSONException
+	{
+		return streaming ? LayoutJsonWriter.toString(layout, tree) : ConvertToJSON.buildJSON(layout)
+				.toString();
+	}
+
+	/**
+	 * Writes the layout repeatedly and reports the cost per node.
+	 *
+	 * @param streaming true to use the streaming writer.
+	 * @param iterations the number of times to write the layout.
+	 * @throws JSONException if ConvertToJSON fails.
+	 */
+	private void measure(boolean streaming, int iterations) throws JSONException
+	{
+		// warm up the JIT before measuring
+		for(int i = 0;i < Math.max(1, iterations / 10);i++)
+		{
+			write(streaming);
+		}
+
+		long startBytes = getAllocatedBytes();
+		long startTime = System.nanoTime();
+		for(int i = 0;i < iterations;i++)
+		{
+			write(streaming);
+		}
+		long elapsed = System.nanoTime() - startTime;
+		long allocated = getAllocatedBytes() - startBytes;
+
+		long nodeWrites = iterations * (long)Math.max(1, nodeCount);
+		System.out.println((streaming ? "LayoutJsonWriter" : "ConvertToJSON   ") + ": "
+				+ (elapsed / iterations / 1000) + " us per layout, " + (elapsed / nodeWrites)
+				+ " ns per node"
+				+ (startBytes < 0 ? "" : ", " + (allocated / nodeWrites) + " bytes allocated per node"));
+	}
+
+	/**
+	 * Gets the number of bytes allocated by the current thread, if the JVM can measure it.
+	 *
+	 * @return the number of bytes or -1 if it can't be measured.
+	 */
+	static long getAllocatedBytes()
+	{
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean)
+		{
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread
+					.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * Determines whether two JSON values are equivalent, ignoring the order of object members.
+	 *
+	 * @param a the first value.
+	 * @param b the second value.
+	 * @return true if the values are equivalent.
+	 * @throws JSONException if a value can't be read.
+	 */
+	private static boolean equivalent(Object a, Object b) throws JSONException
+	{
+		if(a instanceof JSONObject && b instanceof JSONObject)
+		{
+			JSONObject objectA = (JSONObject)a;
+			JSONObject objectB = (JSONObject)b;
+			if(objectA.length() != objectB.length())
+			{
+				return false;
+			}
+			for(Iterator<?> keys = objectA.keys();keys.hasNext();)
+			{
+				String key = (String)keys.next();
+				if(!objectB.has(key) || !equivalent(objectA.get(key), objectB.get(key)))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		if(a instanceof JSONArray && b instanceof JSONArray)
+		{
+			JSONArray arrayA = (JSONArray)a;
+			JSONArray arrayB = (JSONArray)b;
+			if(arrayA.length() != arrayB.length())
+			{
+				return false;
+			}
+			for(int i = 0;i < arrayA.length();i++)
+			{
+				if(!equivalent(arrayA.get(i), arrayB.get(i)))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		if(a instanceof Number && b instanceof Number)
+		{
+			return ((Number)a).doubleValue() == ((Number)b).doubleValue();
+		}
+
+		return a.toString().equals(b.toString());
+	}
+
+	public static void main(String[] args) throws IOException, JSONException
+	{
+		if(args.length < 1 || args.length > 2)
+		{
+			System.err.println("usage: LayoutWriterBenchmark tree-file [iterations]");
+			System.exit(1);
+		}
+
+		String json;
+		InputStream in = new FileInputStream(args[0]);
+		try
+		{
+			json = StreamUtils.readString(in, "UTF-8");
+		}
+		finally
+		{
+			in.close();
+		}
+
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		LayoutWriterBenchmark benchmark = new LayoutWriterBenchmark(json);
+
+		String streamed = benchmark.write(true);
+		String converted = benchmark.write(false);
+		System.out.println(benchmark.nodeCount + " nodes; outputs are "
+				+ (streamed.equals(converted) ? "identical" : equivalent(new JSONObject(streamed),
+						new JSONObject(converted)) ? "equivalent" : "DIFFERENT"));
+
+		benchmark.measure(false, iterations);
+		benchmark.measure(true, iterations);
+	}
+}
@@ -0,0 +1,166 @@
+package org.iplantc.tr.demo.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.iplantc.phyloviewer.shared.layout.LayoutCladogram;
+import org.iplantc.phyloviewer.shared.math.Box2D;
+import org.iplantc.phyloviewer.shared.math.Vector2;
+import org.iplantc.phyloviewer.shared.model.INode;
+import org.iplantc.phyloviewer.shared.model.Tree;
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests that {@link ParallelCladogramLayout} places every node exactly where
+ * <code>LayoutCladogram</code> does, with the parameters used by the layout service, whether the tree
+ * is laid out on one thread or split into subtrees laid out in parallel. Both layouts are cached under
+ * the same keys, so any difference would show up as layouts that depend on which server computed them.
+ */
+public class ParallelCladogramLayoutTest
+{
+	/**
+	 * A cutoff small enough to split the test trees into many subtrees.
+	 */
+	private static final int SMALL_CUTOFF = 2;
+
+	private final BatchExecutor executor = new BatchExecutor("test-layout", 4);
+
+	@After
+	public void tearDown()
+	{
+		executor.shutdown();
+	}
+
+	@Test
+	public void singleNodeTree() throws Exception
+	{
+		assertSameLayouts("{\"tree\":{\"root\":{\"id\":1,\"name\":\"only\"}}}");
+	}
+
+	@Test
+	public void smallTree() throws Exception
+	{
+		assertSameLayouts("{\"tree\":{\"root\":{\"id\":1,\"children\":["
+				+ "{\"id\":2,\"name\":\"a\",\"branchLength\":0.25},"
+				+ "{\"id\":3,\"branchLength\":1.5,\"children\":["
+				+ "{\"id\":4,\"name\":\"b\",\"branchLength\":0.75},"
+				+ "{\"id\":5,\"name\":\"c\",\"branchLength\":2}]}]}}}");
+	}
+
+	@Test
+	public void unbalancedTree() throws Exception
+	{
+		// a caterpillar: each internal node has a leaf and one deeper internal node
+		int depth = 500;
+		StringBuilder json = new StringBuilder("{\"tree\":{\"root\":");
+		int id = 1;
+		for(int i = 0;i < depth;i++)
+		{
+			json.append("{\"id\":").append(id++).append(",\"branchLength\":").append(0.1 * (i % 7 + 1));
+			json.append(",\"children\":[{\"id\":").append(id++).append(",\"branchLength\":");
+			json.append(0.05 * (i % 3 + 1)).append("},");
+		}
+		json.append("{\"id\":").append(id).append(",\"branchLength\":1}");
+		for(int i = 0;i < depth;i++)
+		{
+			json.append("]}");
+		}
+		json.append("}}");
+
+		assertSameLayouts(json.toString());
+	}
+
+	@Test
+	public void zeroBranchLengths() throws Exception
+	{
+		assertSameLayouts("{\"tree\":{\"root\":{\"id\":1,\"branchLength\":0,\"children\":["
+				+ "{\"id\":2,\"branchLength\":0,\"children\":[{\"id\":4,\"branchLength\":0},"
+				+ "{\"id\":5,\"branchLength\":0}]},"
+				+ "{\"id\":3,\"branchLength\":0,\"children\":[{\"id\":6,\"branchLength\":0}]}]}}}");
+	}
+
+	@Test
+	public void missingBranchLengths() throws Exception
+	{
+		assertSameLayouts("{\"tree\":{\"root\":{\"id\":1,\"children\":["
+				+ "{\"id\":2,\"branchLength\":null,\"children\":[{\"id\":4,\"branchLength\":1},"
+				+ "{\"id\":5}]},{\"id\":3,\"branchLength\":0.5}]}}}");
+	}
+
+	/**
+	 * Lays out a tree with both layouts, on one thread and in parallel, and compares them.
+	 *
+	 * @param json the tree in JSON format.
+	 * @throws JSONException if the tree is invalid.
+	 * @throws InterruptedException if the parallel layout is interrupted.
+	 */
+	private void assertSameLayouts(String json) throws JSONException, InterruptedException
+	{
+		Tree tree = StreamingTreeBuilder.buildTree(json);
+		LayoutCladogram expected = new LayoutCladogram(0.8, 1.0);
+		expected.setUseBranchLengths(true);
+		expected.layout(tree);
+
+		ParallelCladogramLayout sequential = new ParallelCladogramLayout(0.8, 1.0, null);
+		sequential.setUseBranchLengths(true);
+		sequential.layout(CompactTree.parse(json));
+		assertSameLayout(tree, expected, sequential);
+
+		ParallelCladogramLayout parallel = new ParallelCladogramLayout(0.8, 1.0, executor);
+		parallel.setUseBranchLengths(true);
+		parallel.setSequentialCutoff(SMALL_CUTOFF);
+		parallel.layout(CompactTree.parse(json));
+		assertSameLayout(tree, expected, parallel);
+	}
+
+	/**
+	 * Compares every node's position and bounding box exactly.
+	 *
+	 * @param tree the tree laid out by <code>LayoutCladogram</code>.
+	 * @param expected the node object layout.
+	 * @param actual the array layout.
+	 */
+	private static void assertSameLayout(Tree tree, LayoutCladogram expected,
+			ParallelCladogramLayout actual)
+	{
+		// both trees are visited in pre-order, so the visit count is also the compact tree's index
+		int index = 0;
+		List<INode> stack = new ArrayList<INode>();
+		stack.add(tree.getRootNode());
+		while(!stack.isEmpty())
+		{
+			INode node = stack.remove(stack.size() - 1);
+			int i = index++;
+			assertEquals(node.getId(), actual.getTree().getId(i));
+
+			Vector2 position = expected.getPosition(node);
+			Box2D box = expected.getBoundingBox(node);
+			String name = "node " + node.getId();
+			assertSameValue(name + " x", position.getX(), actual.getX(i));
+			assertSameValue(name + " y", position.getY(), actual.getY(i));
+			assertSameValue(name + " min x", box.getMin().getX(), actual.getMinX(i));
+			assertSameValue(name + " min y", box.getMin().getY(), actual.getMinY(i));
+			assertSameValue(name + " max x", box.getMax().getX(), actual.getMaxX(i));
+			assertSameValue(name + " max y", box.getMax().getY(), actual.getMaxY(i));
+
+			for(int j = node.getNumberOfChildren() - 1;j >= 0;j--)
+			{
+				stack.add(node.getChild(j));
+			}
+		}
+		assertEquals(index, actual.getTree().size());
+	}
+
+	private static void assertSameValue(String name, double expected, double actual)
+	{
+		if(expected != actual && !(Double.isNaN(expected) && Double.isNaN(actual)))
+		{
+			fail(name + " expected " + expected + " but was " + actual);
+		}
+	}
+}
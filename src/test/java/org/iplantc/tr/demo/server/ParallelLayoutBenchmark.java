@@ -0,0 +1,205 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.iplantc.phyloviewer.shared.layout.LayoutCladogram;
+import org.iplantc.phyloviewer.shared.math.Box2D;
+import org.iplantc.phyloviewer.shared.math.Vector2;
+import org.iplantc.phyloviewer.shared.model.INode;
+import org.iplantc.phyloviewer.shared.model.Tree;
+import org.json.JSONException;
+
+/**
+ * Compares {@link ParallelCladogramLayout} on a {@link CompactTree} with <code>LayoutCladogram</code>
+ * on a tree of node objects. The tree in the given file is laid out by both with the parameters used
+ * by the layout service, and every node's position and bounding box are compared exactly. Each way of
+ * handling a layout request, from the tree's JSON to the layout's JSON, is then repeated and the
+ * average time and, on JVMs that can measure it, the average number of bytes allocated per node are
+ * reported. The array layout should only be enabled in the layout service once this reports identical
+ * layouts, since both are cached under the same keys. {@link ParallelCladogramLayoutTest} makes the
+ * same comparison on small trees; this checks a real one.
+ *
+ * Usage: <code>ParallelLayoutBenchmark tree-file [threads [cutoff [iterations]]]</code>, where the tree
+ * file contains a tree in the format returned by the tree reconciliation service's tree data formatter.
+ * The benchmark is run from the test classpath, so it isn't part of the web application.
+ */
+public class ParallelLayoutBenchmark
+{
+	private final String json;
+	private final BatchExecutor executor;
+	private final int cutoff;
+	private int nodeCount;
+
+	/**
+	 * @param json the tree in JSON format.
+	 * @param threads the number of threads used by the parallel layout.
+	 * @param cutoff the maximum number of nodes in a subtree that is laid out as a single task.
+	 */
+	public ParallelLayoutBenchmark(String json, int threads, int cutoff)
+	{
+		this.json = json;
+		executor = new BatchExecutor("benchmark-layout", threads);
+		this.cutoff = cutoff;
+	}
+
+	/**
+	 * Compares the two layouts node by node and reports the first difference.
+	 *
+	 * @return true if the layouts are identical.
+	 * @throws JSONException if the tree is invalid.
+	 * @throws InterruptedException if the current thread is interrupted.
+	 */
+	private boolean compare() throws JSONException, InterruptedException
+	{
+		Tree tree = StreamingTreeBuilder.buildTree(json);
+		LayoutCladogram expected = new LayoutCladogram(0.8, 1.0);
+		expected.setUseBranchLengths(true);
+		expected.layout(tree);
+
+		ParallelCladogramLayout actual = new ParallelCladogramLayout(0.8, 1.0, executor);
+		actual.setUseBranchLengths(true);
+		actual.setSequentialCutoff(cutoff);
+		actual.layout(CompactTree.parse(json));
+
+		// both trees are visited in pre-order, so the node count is also the compact tree's index
+		nodeCount = 0;
+		List<INode> stack = new ArrayList<INode>();
+		stack.add(tree.getRootNode());
+		while(!stack.isEmpty())
+		{
+			INode node = stack.remove(stack.size() - 1);
+			int i = nodeCount++;
+
+			Vector2 position = expected.getPosition(node);
+			Box2D box = expected.getBoundingBox(node);
+			if(position.getX() != actual.getX(i) || position.getY() != actual.getY(i)
+					|| box.getMin().getX() != actual.getMinX(i)
+					|| box.getMin().getY() != actual.getMinY(i)
+					|| box.getMax().getX() != actual.getMaxX(i)
+					|| box.getMax().getY() != actual.getMaxY(i))
+			{
+				System.out.println("node " + node.getId() + " differs: position (" + position.getX()
+						+ ", " + position.getY() + ") vs (" + actual.getX(i) + ", " + actual.getY(i)
+						+ ")");
+				return false;
+			}
+
+			for(int j = node.getNumberOfChildren() - 1;j >= 0;j--)
+			{
+				stack.add(node.getChild(j));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Handles the layout request repeatedly and reports the cost per node.
+	 *
+	 * @param name the name to report.
+	 * @param call the way of handling the request.
+	 * @param iterations the number of times to handle the request.
+	 * @throws Exception if the request fails.
+	 */
+	private void measure(String name, LayoutCall call, int iterations) throws Exception
+	{
+		// warm up the JIT before measuring
+		for(int i = 0;i < Math.max(1, iterations / 10);i++)
+		{
+			call.layout();
+		}
+
+		long startBytes = LayoutWriterBenchmark.getAllocatedBytes();
+		long startTime = System.nanoTime();
+		for(int i = 0;i < iterations;i++)
+		{
+			call.layout();
+		}
+		long elapsed = System.nanoTime() - startTime;
+		long allocated = LayoutWriterBenchmark.getAllocatedBytes() - startBytes;
+
+		long nodeLayouts = iterations * (long)Math.max(1, nodeCount);
+		System.out.println(name + ": " + (elapsed / iterations / 1000) + " us per layout"
+				+ (startBytes < 0 ? "" : ", " + (allocated / nodeLayouts) + " bytes allocated per node"));
+	}
+
+	/**
+	 * A way of handling a layout request.
+	 */
+	private interface LayoutCall
+	{
+		/**
+		 * @return the layout in JSON format.
+		 * @throws Exception if the request fails.
+		 */
+		String layout() throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length < 1 || args.length > 4)
+		{
+			System.err.println("usage: ParallelLayoutBenchmark tree-file [threads [cutoff [iterations]]]");
+			System.exit(1);
+		}
+
+		String json;
+		InputStream in = new FileInputStream(args[0]);
+		try
+		{
+			json = StreamUtils.readString(in, "UTF-8");
+		}
+		finally
+		{
+			in.close();
+		}
+
+		int threads =
+				args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime()
+						.availableProcessors();
+		final int cutoff =
+				args.length > 2 ? Integer.parseInt(args[2])
+						: ParallelCladogramLayout.DEFAULT_SEQUENTIAL_CUTOFF;
+		int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+		final ParallelLayoutBenchmark benchmark = new ParallelLayoutBenchmark(json, threads, cutoff);
+		try
+		{
+			boolean identical = benchmark.compare();
+			System.out.println(benchmark.nodeCount + " nodes; layouts are "
+					+ (identical ? "identical" : "DIFFERENT"));
+
+			benchmark.measure("node objects     ", new LayoutCall()
+			{
+				@Override
+				public String layout() throws JSONException
+				{
+					return TreeLayoutBuilder.layout(benchmark.json);
+				}
+			}, iterations);
+			benchmark.measure("arrays           ", new LayoutCall()
+			{
+				@Override
+				public String layout() throws JSONException
+				{
+					return TreeLayoutBuilder.layoutArrays(benchmark.json, null, cutoff);
+				}
+			}, iterations);
+			benchmark.measure("arrays, parallel ", new LayoutCall()
+			{
+				@Override
+				public String layout() throws JSONException
+				{
+					return TreeLayoutBuilder.layoutArrays(benchmark.json, benchmark.executor, cutoff);
+				}
+			}, iterations);
+		}
+		finally
+		{
+			benchmark.executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package org.iplantc.tr.demo.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.iplantc.de.shared.services.ServiceCallWrapper;
+import org.json.JSONException;
+import org.junit.Test;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+
+/**
+ * Tests for {@link ReconciliationMapBuilder}.
+ */
+public class ReconciliationMapBuilderTest
+{
+	/**
+	 * A reconciliation of gene tree 1(2, 3(4, 5)) with species tree 10(11, 12(13, 14)), whose nested
+	 * set indices are 10 [1, 10], 11 [2, 3], 12 [4, 9], 13 [5, 6] and 14 [7, 8]. Gene tree node 3 is a
+	 * duplication on the edge leading to 12 and also on 12 itself.
+	 */
+	private static final String RESPONSE = "{\"data\":{\"item\":{"
+			+ "\"nodes\":[[1,10,1],[2,11,1],[3,12,0],[3,12,1],[4,13,1],[5,14,1]],"
+			+ "\"speciesTreeNodes\":[[10,1,10],[11,2,3],[12,4,9],[13,5,6],[14,7,8]]}}}";
+
+	@Test
+	public void buildWritesBothSidesOfTheMap() throws SerializationException, JSONException
+	{
+		FakeDispatcher dispatcher = new FakeDispatcher(RESPONSE);
+		ReconciliationMapBuilder builder = new ReconciliationMapBuilder(dispatcher, "http://host/");
+
+		String map = builder.build("fam");
+
+		assertEquals("{\"gene\":{\"ids\":[1,2,3,4,5],\"nodes\":[[10],[11],[12,12],[13],[14]]},"
+				+ "\"species\":{\"ids\":[10,11,12,13,14],\"sizes\":[5,1,3,1,1],"
+				+ "\"nodes\":[[1],[2],[3],[4],[5]],\"edges\":[[],[],[3],[],[]]}}", map);
+	}
+
+	@Test
+	public void buildSendsOneQuery() throws SerializationException, JSONException
+	{
+		FakeDispatcher dispatcher = new FakeDispatcher(RESPONSE);
+		ReconciliationMapBuilder builder = new ReconciliationMapBuilder(dispatcher, "http://host/");
+
+		builder.build("fam");
+
+		assertEquals(1, dispatcher.wrappers.size());
+		ServiceCallWrapper wrapper = dispatcher.wrappers.get(0);
+		assertEquals(ServiceCallWrapper.Type.POST, wrapper.getType());
+		assertEquals("http://host/treereconciliation/get/reconciliation-map", wrapper.getAddress());
+		assertTrue(wrapper.getBody(), wrapper.getBody().contains("\"familyName\":\"fam\""));
+	}
+
+	@Test
+	public void subtreeSizesFollowTheNestedSetIndices() throws SerializationException,
+			JSONException
+	{
+		// 1(2(3, 4), 5)
+		FakeDispatcher dispatcher = new FakeDispatcher("{\"data\":{\"item\":{\"nodes\":[],"
+				+ "\"speciesTreeNodes\":[[1,1,10],[2,2,7],[3,3,4],[4,5,6],[5,8,9]]}}}");
+		ReconciliationMapBuilder builder = new ReconciliationMapBuilder(dispatcher, "http://host/");
+
+		String map = builder.build("fam");
+
+		assertTrue(map, map.contains("\"sizes\":[5,3,1,1,1]"));
+	}
+
+	@Test(expected = SerializationException.class)
+	public void buildFailsIfTheQueryFails() throws SerializationException, JSONException
+	{
+		new ReconciliationMapBuilder(new FakeDispatcher(null), "http://host/").build("fam");
+	}
+
+	@Test(expected = JSONException.class)
+	public void buildFailsWithoutAReconciliation() throws SerializationException, JSONException
+	{
+		new ReconciliationMapBuilder(new FakeDispatcher("{\"data\":{}}"), "http://host/")
+				.build("fam");
+	}
+
+	/**
+	 * Answers the reconciliation map query without a tree reconciliation service.
+	 */
+	private static class FakeDispatcher extends UnsecuredDEServiceDispatcher
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final String response;
+		private final List<ServiceCallWrapper> wrappers = new ArrayList<ServiceCallWrapper>();
+
+		/**
+		 * @param response the response to the query, or null if the query fails.
+		 */
+		FakeDispatcher(String response)
+		{
+			this.response = response;
+		}
+
+		@Override
+		public String getServiceData(ServiceCallWrapper wrapper) throws SerializationException
+		{
+			wrappers.add(wrapper);
+			if(response == null)
+			{
+				throw new SerializationException("unavailable");
+			}
+			return response;
+		}
+	}
+}
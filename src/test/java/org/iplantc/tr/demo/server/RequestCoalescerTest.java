@@ -0,0 +1,235 @@
+package org.iplantc.tr.demo.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests that {@link RequestCoalescer} shares results and failures between identical requests.
+ */
+public class RequestCoalescerTest
+{
+	private final RequestCoalescer<String> coalescer = new RequestCoalescer<String>();
+	private final ExecutorService threads = Executors.newCachedThreadPool();
+
+	@After
+	public void tearDown()
+	{
+		threads.shutdownNow();
+	}
+
+	@Test
+	public void concurrentRequestsShareOneCall() throws Exception
+	{
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger calls = new AtomicInteger();
+		Callable<String> call = new Callable<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				calls.incrementAndGet();
+				release.await();
+				return "result";
+			}
+		};
+
+		Future<String> leader = submit("key", call);
+		awaitInFlight(1);
+		Future<String> follower = submit("key", call);
+		awaitCoalesced(1);
+		release.countDown();
+
+		assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+		assertEquals("result", follower.get(5, TimeUnit.SECONDS));
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void failuresArePassedToEveryWaitingRequest() throws Exception
+	{
+		final CountDownLatch release = new CountDownLatch(1);
+		final IOException failure = new IOException("remote service unavailable");
+		Callable<String> call = new Callable<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				release.await();
+				throw failure;
+			}
+		};
+
+		Future<String> leader = submit("key", call);
+		awaitInFlight(1);
+		Future<String> follower = submit("key", call);
+		awaitCoalesced(1);
+		release.countDown();
+
+		assertSame(failure, getFailure(leader));
+		assertSame(failure, getFailure(follower));
+		assertEquals(Long.valueOf(1), coalescer.getStatistics().get("failed"));
+	}
+
+	@Test
+	public void failuresArentRemembered() throws Exception
+	{
+		try
+		{
+			coalescer.execute("key", new Callable<String>()
+			{
+				@Override
+				public String call() throws Exception
+				{
+					throw new IOException("first call fails");
+				}
+			});
+			fail("the failure wasn't passed on");
+		}
+		catch(IOException e)
+		{
+			assertEquals("first call fails", e.getMessage());
+		}
+
+		assertEquals("second", coalescer.execute("key", new Callable<String>()
+		{
+			@Override
+			public String call()
+			{
+				return "second";
+			}
+		}));
+		assertEquals(Long.valueOf(0), coalescer.getStatistics().get("inFlight"));
+	}
+
+	@Test
+	public void runtimeExceptionsAreNotWrapped() throws Exception
+	{
+		try
+		{
+			coalescer.execute("key", new Callable<String>()
+			{
+				@Override
+				public String call()
+				{
+					throw new IllegalStateException("bad state");
+				}
+			});
+			fail("the failure wasn't passed on");
+		}
+		catch(IllegalStateException e)
+		{
+			assertEquals("bad state", e.getMessage());
+		}
+	}
+
+	@Test
+	public void errorsAreNotWrapped() throws Exception
+	{
+		try
+		{
+			coalescer.execute("key", new Callable<String>()
+			{
+				@Override
+				public String call()
+				{
+					throw new OutOfMemoryError("no room");
+				}
+			});
+			fail("the error wasn't passed on");
+		}
+		catch(OutOfMemoryError e)
+		{
+			assertEquals("no room", e.getMessage());
+		}
+	}
+
+	@Test
+	public void requestsWithDifferentKeysAreNotCoalesced() throws Exception
+	{
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger calls = new AtomicInteger();
+		Callable<String> call = new Callable<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				calls.incrementAndGet();
+				release.await();
+				return "result";
+			}
+		};
+
+		Future<String> first = submit("a", call);
+		Future<String> second = submit("b", call);
+		awaitInFlight(2);
+		release.countDown();
+
+		first.get(5, TimeUnit.SECONDS);
+		second.get(5, TimeUnit.SECONDS);
+		assertEquals(2, calls.get());
+		assertEquals(Long.valueOf(0), coalescer.getStatistics().get("coalesced"));
+	}
+
+	private Future<String> submit(final String key, final Callable<String> call)
+	{
+		return threads.submit(new Callable<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				return coalescer.execute(key, call);
+			}
+		});
+	}
+
+	private static Throwable getFailure(Future<String> future) throws Exception
+	{
+		try
+		{
+			future.get(5, TimeUnit.SECONDS);
+		}
+		catch(ExecutionException e)
+		{
+			return e.getCause();
+		}
+		fail("the request didn't fail");
+		return null;
+	}
+
+	private void awaitInFlight(long count) throws InterruptedException
+	{
+		awaitStatistic("inFlight", count);
+	}
+
+	private void awaitCoalesced(long count) throws InterruptedException
+	{
+		awaitStatistic("coalesced", count);
+	}
+
+	private void awaitStatistic(String name, long value) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+		while(coalescer.getStatistics().get(name) < value)
+		{
+			if(System.currentTimeMillis() > deadline)
+			{
+				fail("timed out waiting for " + name + " to reach " + value);
+			}
+			Thread.sleep(5);
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package org.iplantc.tr.demo.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.iplantc.tr.demo.server.ResponseCache.CachedResponse;
+import org.iplantc.tr.demo.server.ResponseCache.TtlRule;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ResponseCache} expiry, revalidation and eviction, and for the time-to-live rules deployed in
+ * web.xml.
+ */
+public class ResponseCacheTest
+{
+	/**
+	 * A time-to-live short enough to wait out in a test.
+	 */
+	private static final long SHORT_TTL = 50;
+
+	@Test
+	public void freshResponsesAreReturned()
+	{
+		ResponseCache cache = createCache(60000);
+		cache.put("http://host/get/tree", "tree");
+
+		assertEquals("tree", cache.get("http://host/get/tree"));
+		assertNull(cache.get("http://host/get/other"));
+		assertEquals(Long.valueOf(1), cache.getStatistics().get("hits"));
+		assertEquals(Long.valueOf(1), cache.getStatistics().get("misses"));
+	}
+
+	@Test
+	public void ttlRulesSelectWhatIsCached()
+	{
+		ResponseCache cache =
+				new ResponseCache(1024 * 1024, 0, Arrays.asList(new TtlRule("/search/", 0),
+						new TtlRule("/get/", 60000)));
+
+		assertTrue(cache.isCacheable("http://host/get/tree"));
+		assertFalse(cache.isCacheable("http://host/search/get/tree"));
+		assertFalse(cache.isCacheable("http://host/other"));
+
+		cache.put("http://host/search/get/tree", "result");
+		assertNull(cache.get("http://host/search/get/tree"));
+	}
+
+	@Test
+	public void expiredResponsesWithoutValidatorsAreRemoved() throws InterruptedException
+	{
+		ResponseCache cache = createCache(SHORT_TTL);
+		cache.put("http://host/get/tree", "tree");
+		Thread.sleep(SHORT_TTL * 2);
+
+		assertNull(cache.get("http://host/get/tree"));
+		assertEquals(Long.valueOf(1), cache.getStatistics().get("expirations"));
+		assertEquals(Long.valueOf(0), cache.getStatistics().get("entries"));
+	}
+
+	@Test
+	public void expiredResponsesWithAnETagCanBeRevalidated() throws InterruptedException
+	{
+		ResponseCache cache = createCache(SHORT_TTL);
+		cache.put("http://host/get/tree", "tree", "\"v1\"", 0);
+		Thread.sleep(SHORT_TTL * 2);
+
+		assertNull(cache.get("http://host/get/tree"));
+		CachedResponse stale = cache.lookup("http://host/get/tree");
+		assertNotNull(stale);
+		assertFalse(stale.isFresh());
+		assertTrue(stale.hasValidator());
+		assertEquals("\"v1\"", stale.getETag());
+
+		cache.renew("http://host/get/tree", stale);
+
+		CachedResponse renewed = cache.lookup("http://host/get/tree");
+		assertTrue(renewed.isFresh());
+		assertEquals("tree", renewed.getValue());
+		assertEquals("\"v1\"", renewed.getETag());
+		assertEquals(Long.valueOf(1), cache.getStatistics().get("notModified"));
+	}
+
+	@Test
+	public void expiredResponsesWithALastModifiedTimeCanBeRevalidated()
+			throws InterruptedException
+	{
+		ResponseCache cache = createCache(SHORT_TTL);
+		cache.put("http://host/get/tree", "tree", null, 1234567890000L);
+		Thread.sleep(SHORT_TTL * 2);
+
+		CachedResponse stale = cache.lookup("http://host/get/tree");
+		assertNotNull(stale);
+		assertTrue(stale.hasValidator());
+		assertNull(stale.getETag());
+		assertEquals(1234567890000L, stale.getLastModified());
+		assertEquals(Long.valueOf(1), cache.getStatistics().get("stale"));
+
+		cache.renew("http://host/get/tree", stale);
+		assertEquals("tree", cache.get("http://host/get/tree"));
+	}
+
+	@Test
+	public void renewingAnEvictedResponseCachesItAgain() throws InterruptedException
+	{
+		ResponseCache cache = createCache(SHORT_TTL);
+		cache.put("http://host/get/tree", "tree", "\"v1\"", 0);
+		Thread.sleep(SHORT_TTL * 2);
+		CachedResponse stale = cache.lookup("http://host/get/tree");
+
+		cache.flush();
+		cache.renew("http://host/get/tree", stale);
+
+		assertEquals("tree", cache.get("http://host/get/tree"));
+	}
+
+	@Test
+	public void replacingAResponseReplacesItsValidators()
+	{
+		ResponseCache cache = createCache(60000);
+		cache.put("http://host/get/tree", "old", "\"v1\"", 0);
+		cache.put("http://host/get/tree", "new", "\"v2\"", 0);
+
+		CachedResponse entry = cache.lookup("http://host/get/tree");
+		assertEquals("new", entry.getValue());
+		assertEquals("\"v2\"", entry.getETag());
+		assertEquals(Long.valueOf(1), cache.getStatistics().get("entries"));
+	}
+
+	@Test
+	public void expiredResponsesWithoutValidatorsCantBeRevalidated() throws InterruptedException
+	{
+		ResponseCache cache = createCache(SHORT_TTL);
+		cache.put("http://host/get/tree", "tree", null, 0);
+		Thread.sleep(SHORT_TTL * 2);
+
+		assertNull(cache.lookup("http://host/get/tree"));
+		assertEquals(Long.valueOf(0), cache.getStatistics().get("stale"));
+	}
+
+	@Test
+	public void leastRecentlyUsedResponsesAreEvicted()
+	{
+		// room for two of these entries but not three
+		ResponseCache cache = new ResponseCache(600, 60000, Collections.<TtlRule>emptyList());
+		cache.put("http://host/a", "0123456789012345678901234567890123456789");
+		cache.put("http://host/b", "0123456789012345678901234567890123456789");
+		assertNotNull(cache.get("http://host/a"));
+		cache.put("http://host/c", "0123456789012345678901234567890123456789");
+
+		assertNotNull(cache.get("http://host/a"));
+		assertNull(cache.get("http://host/b"));
+		assertNotNull(cache.get("http://host/c"));
+		assertEquals(Long.valueOf(1), cache.getStatistics().get("evictions"));
+	}
+
+	@Test
+	public void responsesLargerThanTheCacheAreNotCached()
+	{
+		ResponseCache cache = new ResponseCache(200, 60000, Collections.<TtlRule>emptyList());
+		cache.put("http://host/a", "0123456789012345678901234567890123456789012345678901234567890");
+
+		assertNull(cache.get("http://host/a"));
+	}
+
+	@Test
+	public void lookupReturnsTheCachedEntry()
+	{
+		ResponseCache cache = createCache(60000);
+		cache.put("http://host/get/tree", "tree");
+
+		assertSame(cache.lookup("http://host/get/tree"), cache.lookup("http://host/get/tree"));
+	}
+
+	@Test
+	public void searchServletCachesGeneFamilyLookups() throws Exception
+	{
+		ResponseCache cache = ResponseCache.fromConfig(WebXmlConfig.forServlet("searchServlet"));
+
+		assertTrue(cache.isCacheable(SearchServiceImpl.getSummaryAddress("fam")));
+		assertTrue(cache.isCacheable(SearchServiceImpl.getDetailsAddress("fam")));
+		assertTrue(cache.isCacheable(SearchServiceImpl.getGoCloudAddress("fam")));
+	}
+
+	@Test
+	public void dispatcherCachesGeneFamilyLookups() throws Exception
+	{
+		ResponseCache cache =
+				ResponseCache.fromConfig(WebXmlConfig.forServlet("deServiceDispatcher"));
+
+		assertTrue(cache.isCacheable(SearchServiceImpl.getSummaryAddress("fam")));
+		assertTrue(cache.isCacheable(SearchServiceImpl.getDetailsAddress("fam")));
+		assertTrue(cache.isCacheable(SearchServiceImpl.getGoCloudAddress("fam")));
+	}
+
+	@Test
+	public void everyConfiguredRuleMatchesALookup() throws Exception
+	{
+		String[] addresses =
+				{SearchServiceImpl.getSummaryAddress("fam"), SearchServiceImpl.getDetailsAddress("fam"),
+						SearchServiceImpl.getGoCloudAddress("fam")};
+		String ttls =
+				WebXmlConfig.forServlet("searchServlet").getInitParameter("responseCacheTtls");
+		for(String rule : ttls.split(","))
+		{
+			String pattern = rule.substring(0, rule.lastIndexOf('='));
+			boolean matched = false;
+			for(String address : addresses)
+			{
+				matched |= address.indexOf(pattern) >= 0;
+			}
+			assertTrue("no lookup matches " + pattern, matched);
+		}
+	}
+
+	@Test
+	public void searchesAreNotCached() throws Exception
+	{
+		ResponseCache cache = ResponseCache.fromConfig(WebXmlConfig.forServlet("searchServlet"));
+
+		assertFalse(cache.isCacheable("http://ripley.iplantcollaborative.org/treereconciliation/"
+				+ "search/gene-id-search/term"));
+	}
+
+	private static ResponseCache createCache(long ttl)
+	{
+		return new ResponseCache(1024 * 1024, ttl, Collections.<TtlRule>emptyList());
+	}
+}
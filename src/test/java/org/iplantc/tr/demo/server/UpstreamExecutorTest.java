@@ -0,0 +1,233 @@
+package org.iplantc.tr.demo.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for the limits and timeouts enforced by {@link UpstreamExecutor}.
+ */
+public class UpstreamExecutorTest
+{
+	private final ExecutorService threads = Executors.newCachedThreadPool();
+
+	@After
+	public void tearDown()
+	{
+		threads.shutdownNow();
+	}
+
+	@Test
+	public void callsRunOnTheCallingThread() throws IOException
+	{
+		UpstreamExecutor executor = new UpstreamExecutor("test", 1, 0, 1000, 1000);
+		final Thread caller = Thread.currentThread();
+
+		assertSame(caller, executor.execute(new Callable<Thread>()
+		{
+			@Override
+			public Thread call()
+			{
+				return Thread.currentThread();
+			}
+		}));
+	}
+
+	@Test
+	public void callsBeyondTheQueueAreRejected() throws Exception
+	{
+		UpstreamExecutor executor = new UpstreamExecutor("test", 1, 1, 5000, 5000);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<String> running = submit(executor, blockingCall(release, "running"));
+		awaitStatistic(executor, "active", 1);
+		Future<String> queued = submit(executor, blockingCall(release, "queued"));
+		awaitStatistic(executor, "queued", 1);
+
+		try
+		{
+			executor.execute(blockingCall(release, "rejected"));
+			fail("the call wasn't rejected");
+		}
+		catch(IOException e)
+		{
+			assertEquals(Long.valueOf(1), executor.getStatistics().get("rejected"));
+		}
+
+		release.countDown();
+		assertEquals("running", running.get(5, TimeUnit.SECONDS));
+		assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+		assertEquals(Long.valueOf(2), executor.getStatistics().get("completed"));
+	}
+
+	@Test
+	public void callsWaitForAdmission() throws Exception
+	{
+		UpstreamExecutor executor = new UpstreamExecutor("test", 1, 0, 5000, 5000, 5000);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<String> running = submit(executor, blockingCall(release, "running"));
+		awaitStatistic(executor, "active", 1);
+		Future<String> waiting = submit(executor, blockingCall(release, "waiting"));
+
+		Thread.sleep(50);
+		release.countDown();
+		assertEquals("running", running.get(5, TimeUnit.SECONDS));
+		assertEquals("waiting", waiting.get(5, TimeUnit.SECONDS));
+		assertEquals(Long.valueOf(0), executor.getStatistics().get("rejected"));
+	}
+
+	@Test
+	public void queuedCallsTimeOutBeforeTheReadTimeout() throws Exception
+	{
+		// a call in progress may take a minute, but the calls behind it only wait 50 ms
+		UpstreamExecutor executor = new UpstreamExecutor("test", 1, 1, 50, 60000);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<String> running = submit(executor, blockingCall(release, "running"));
+		awaitStatistic(executor, "active", 1);
+
+		long start = System.currentTimeMillis();
+		try
+		{
+			executor.execute(blockingCall(release, "queued"));
+			fail("the call didn't time out");
+		}
+		catch(IOException e)
+		{
+			assertTrue(System.currentTimeMillis() - start < 5000);
+			assertEquals(Long.valueOf(1), executor.getStatistics().get("timedOut"));
+		}
+
+		release.countDown();
+		assertEquals("running", running.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void queueAndReadTimeoutsAreSeparate()
+	{
+		UpstreamExecutor executor = new UpstreamExecutor("test", 1, 1, 50, 60000);
+
+		assertEquals(50, executor.getQueueTimeout());
+		assertEquals(60000, executor.getReadTimeout());
+	}
+
+	@Test
+	public void failuresArePassedOnAndCounted() throws Exception
+	{
+		UpstreamExecutor executor = new UpstreamExecutor("test", 1, 0, 1000, 1000);
+		final IOException failure = new IOException("refused");
+
+		try
+		{
+			executor.execute(new Callable<String>()
+			{
+				@Override
+				public String call() throws IOException
+				{
+					throw failure;
+				}
+			});
+			fail("the failure wasn't passed on");
+		}
+		catch(IOException e)
+		{
+			assertSame(failure, e);
+		}
+
+		try
+		{
+			executor.execute(new Callable<String>()
+			{
+				@Override
+				public String call() throws IOException
+				{
+					throw new SocketTimeoutException("read timed out");
+				}
+			});
+			fail("the timeout wasn't passed on");
+		}
+		catch(SocketTimeoutException e)
+		{
+			assertEquals("read timed out", e.getMessage());
+		}
+
+		assertEquals(Long.valueOf(1), executor.getStatistics().get("failed"));
+		assertEquals(Long.valueOf(1), executor.getStatistics().get("timedOut"));
+		assertEquals(Long.valueOf(0), executor.getStatistics().get("active"));
+
+		// the permits were returned, so the next call runs
+		assertEquals("ok", executor.execute(new Callable<String>()
+		{
+			@Override
+			public String call()
+			{
+				return "ok";
+			}
+		}));
+	}
+
+	@Test(expected = IOException.class)
+	public void callsAreRejectedAfterShutdown() throws IOException
+	{
+		UpstreamExecutor executor = new UpstreamExecutor("test", 1, 0, 1000, 1000);
+		executor.shutdown();
+		executor.execute(new Callable<String>()
+		{
+			@Override
+			public String call()
+			{
+				return "ok";
+			}
+		});
+	}
+
+	private static Callable<String> blockingCall(final CountDownLatch release, final String result)
+	{
+		return new Callable<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				release.await();
+				return result;
+			}
+		};
+	}
+
+	private Future<String> submit(final UpstreamExecutor executor, final Callable<String> call)
+	{
+		return threads.submit(new Callable<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				return executor.execute(call);
+			}
+		});
+	}
+
+	private static void awaitStatistic(UpstreamExecutor executor, String name, long value)
+			throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+		while(executor.getStatistics().get(name) < value)
+		{
+			if(System.currentTimeMillis() > deadline)
+			{
+				fail("timed out waiting for " + name + " to reach " + value);
+			}
+			Thread.sleep(5);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package org.iplantc.tr.demo.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.iplantc.tr.demo.server.UpstreamLanes.Lane;
+import org.junit.Test;
+
+/**
+ * Tests for lane selection and connections in {@link UpstreamLanes}.
+ */
+public class UpstreamLanesTest
+{
+	@Test
+	public void callsUseTheFirstMatchingLane()
+	{
+		Lane relationships = createLane("relationships", 1000, "/get/related-nodes");
+		Lane tree = createLane("tree", 1000, "/get/");
+		Lane defaultLane = createLane(UpstreamLanes.DEFAULT_LANE, 1000);
+		UpstreamLanes lanes = new UpstreamLanes(Arrays.asList(relationships, tree), defaultLane);
+
+		assertSame(relationships, lanes.getLane("http://host/treereconciliation/get/related-nodes"));
+		assertSame(tree, lanes.getLane("http://host/treereconciliation/get/gene-tree"));
+		assertSame(defaultLane, lanes.getLane("http://host/treereconciliation/search/go"));
+	}
+
+	@Test
+	public void laneConnectionsTimeOutWithTheLane() throws IOException
+	{
+		Lane lane = createLane("tree", 30000, "/get/");
+		HttpURLConnection urlc = lane.getUrlConnection(null, "http://host/get/gene-tree");
+
+		assertEquals(30000, urlc.getReadTimeout());
+		assertEquals(PooledUrlConnector.DEFAULT_CONNECT_TIMEOUT, urlc.getConnectTimeout());
+
+		lane = createLane("quick", 500, "/get/");
+		urlc = lane.getUrlConnection(null, "http://host/get/gene-tree");
+		assertEquals(500, urlc.getReadTimeout());
+		assertEquals(500, urlc.getConnectTimeout());
+	}
+
+	@Test
+	public void lanesUseTheServletsConnectorByDefault() throws Exception
+	{
+		CountingConnector connector = new CountingConnector();
+		UpstreamLanes lanes =
+				UpstreamLanes.fromConfig(WebXmlConfig.forServlet("searchServlet"), connector);
+
+		for(String address : Arrays.asList("http://host/search/blast-search",
+				"http://host/get/related-nodes", "http://host/download/file",
+				"http://host/search/go-search/term", "http://host/get/gene-tree/fam",
+				"http://host/other"))
+		{
+			Lane lane = lanes.getLane(address);
+			assertSame(address, connector, lane.getUrlConnector());
+			assertFalse(address, lane.hasOwnConnector());
+		}
+
+		lanes.getLane("http://host/get/gene-tree/fam").getUrlConnection(null,
+				"http://host/get/gene-tree/fam");
+		assertEquals(1, connector.connections);
+	}
+
+	@Test
+	public void lanesWithMaxConnectionsHaveTheirOwnPool() throws Exception
+	{
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("lane.blast.maxConnections", "2");
+		CountingConnector connector = new CountingConnector();
+		UpstreamLanes lanes =
+				UpstreamLanes.fromConfig(new WebXmlConfig("test", parameters), connector);
+
+		Lane blast = lanes.getLane("http://host/search/blast-search");
+		assertTrue(blast.hasOwnConnector());
+		assertTrue(blast.getUrlConnector() instanceof PooledUrlConnector);
+		assertSame(connector, lanes.getLane("http://host/search/go-search/term").getUrlConnector());
+	}
+
+	private static Lane createLane(String name, long timeout, String... patterns)
+	{
+		List<String> list = new ArrayList<String>(Arrays.asList(patterns));
+		return new Lane(name, list, new UpstreamExecutor(name, 1, 0, timeout, timeout),
+				new CountingConnector(), false);
+	}
+
+	/**
+	 * Hands out connections that never connect and counts them.
+	 */
+	private static class CountingConnector implements UrlConnector
+	{
+		private int connections;
+
+		@Override
+		public HttpURLConnection getUrlConnection(HttpServletRequest request, String address)
+				throws IOException
+		{
+			connections++;
+			return new HttpURLConnection(new URL(address))
+			{
+				@Override
+				public void connect()
+				{
+				}
+
+				@Override
+				public void disconnect()
+				{
+				}
+
+				@Override
+				public boolean usingProxy()
+				{
+					return false;
+				}
+			};
+		}
+	}
+}
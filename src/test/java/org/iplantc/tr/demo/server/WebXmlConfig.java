@@ -0,0 +1,113 @@
+package org.iplantc.tr.demo.server;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+/**
+ * The configuration of a servlet as deployed, read from the initialization parameters in the web
+ * application's <code>web.xml</code>.
+ */
+class WebXmlConfig implements ServletConfig
+{
+	private static final File WEB_XML = new File("src/main/webapp/WEB-INF/web.xml");
+
+	private final String servletName;
+	private final Map<String, String> parameters;
+
+	/**
+	 * @param servletName the name of the servlet.
+	 * @param parameters the initialization parameters.
+	 */
+	WebXmlConfig(String servletName, Map<String, String> parameters)
+	{
+		this.servletName = servletName;
+		this.parameters = parameters;
+	}
+
+	/**
+	 * Reads the configuration of a servlet.
+	 *
+	 * @param servletName the name of the servlet.
+	 * @return the configuration.
+	 * @throws Exception if web.xml can't be read or doesn't declare the servlet.
+	 */
+	static WebXmlConfig forServlet(String servletName) throws Exception
+	{
+		DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		builder.setEntityResolver(new EntityResolver()
+		{
+			@Override
+			public InputSource resolveEntity(String publicId, String systemId)
+			{
+				// the DTD isn't needed and mustn't be fetched
+				return new InputSource(new StringReader(""));
+			}
+		});
+		Document document = builder.parse(WEB_XML);
+
+		NodeList servlets = document.getElementsByTagName("servlet");
+		for(int i = 0;i < servlets.getLength();i++)
+		{
+			Element servlet = (Element)servlets.item(i);
+			if(!servletName.equals(getText(servlet, "servlet-name")))
+			{
+				continue;
+			}
+
+			Map<String, String> parameters = new LinkedHashMap<String, String>();
+			NodeList params = servlet.getElementsByTagName("init-param");
+			for(int j = 0;j < params.getLength();j++)
+			{
+				Element param = (Element)params.item(j);
+				parameters.put(getText(param, "param-name"), getText(param, "param-value"));
+			}
+			return new WebXmlConfig(servletName, parameters);
+		}
+
+		throw new IllegalArgumentException("no servlet named " + servletName + " in " + WEB_XML);
+	}
+
+	private static String getText(Element parent, String tagName)
+	{
+		return parent.getElementsByTagName(tagName).item(0).getTextContent().trim();
+	}
+
+	@Override
+	public String getInitParameter(String name)
+	{
+		return parameters.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getInitParameterNames()
+	{
+		return Collections.enumeration(parameters.keySet());
+	}
+
+	@Override
+	public ServletContext getServletContext()
+	{
+		return null;
+	}
+
+	@Override
+	public String getServletName()
+	{
+		return servletName;
+	}
+}